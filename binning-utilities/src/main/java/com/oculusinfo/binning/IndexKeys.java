@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.binning;
+
+
+
+/**
+ * Static codecs packing tile and bin indices into single longs, so that they
+ * may be stored, hashed, compared and shuffled without allocating index
+ * objects.
+ *
+ * <h3>Tile keys</h3>
+ *
+ * A tile key holds the level of the tile in its lowest {@link #LEVEL_BITS}
+ * bits, and the Morton code (interleaved bits) of its x and y coordinates
+ * above that. Only tiles actually within the pyramid (0 &lt;= x, y &lt;
+ * 2<sup>level</sup>), and no deeper than {@link #MAX_LEVEL}, can be encoded;
+ * see {@link #isEncodable(int, int, int)}. Bin counts are not encoded, and must
+ * be supplied when converting back to a {@link TileIndex}.
+ *
+ * Tile keys on the same level sort in Morton (Z-order) order, so all
+ * descendants of a tile at any given level form a contiguous range of keys.
+ *
+ * <h3>Bin keys</h3>
+ *
+ * A bin key holds the x coordinate of the bin in its upper 32 bits, and the y
+ * coordinate in its lower 32 bits. Any bin, in tile or universal coordinates,
+ * can be encoded. Bin keys of bins with non-negative coordinates sort by x,
+ * then y.
+ */
+public class IndexKeys {
+	/** The number of bits of a tile key used to store the level of the tile */
+	public static final int  LEVEL_BITS = 5;
+	/** The deepest level at which tiles can be encoded as keys */
+	public static final int  MAX_LEVEL  = 29;
+	/** A value that is never a valid tile key, for use as a marker */
+	public static final long NO_TILE    = -1L;
+
+	private static final long LEVEL_MASK = (1L << LEVEL_BITS) - 1;
+	private static final long LOW_WORD   = 0xFFFFFFFFL;
+
+
+
+	private IndexKeys () {
+	}
+
+
+
+	// ////////////////////////////////////////////////////////////////////////
+	// Section: Morton codes
+	//
+	/**
+	 * Interleave the bits of two non-negative coordinates of up to 32 bits
+	 * each into a Morton code; the bits of x take the even positions, those of
+	 * y, the odd ones.
+	 */
+	public static long interleave (long x, long y) {
+		return spread(x) | (spread(y) << 1);
+	}
+
+	/**
+	 * Get the x coordinate (the even bits) out of a Morton code.
+	 */
+	public static int deinterleaveX (long morton) {
+		return compact(morton);
+	}
+
+	/**
+	 * Get the y coordinate (the odd bits) out of a Morton code.
+	 */
+	public static int deinterleaveY (long morton) {
+		return compact(morton >>> 1);
+	}
+
+	// Spread the low 32 bits of a value into the even bits of a long
+	private static long spread (long v) {
+		v &= LOW_WORD;
+		v = (v | (v << 16)) & 0x0000FFFF0000FFFFL;
+		v = (v | (v <<  8)) & 0x00FF00FF00FF00FFL;
+		v = (v | (v <<  4)) & 0x0F0F0F0F0F0F0F0FL;
+		v = (v | (v <<  2)) & 0x3333333333333333L;
+		v = (v | (v <<  1)) & 0x5555555555555555L;
+		return v;
+	}
+
+	// Gather the even bits of a long into the low 32 bits of a value
+	private static int compact (long v) {
+		v &= 0x5555555555555555L;
+		v = (v | (v >>>  1)) & 0x3333333333333333L;
+		v = (v | (v >>>  2)) & 0x0F0F0F0F0F0F0F0FL;
+		v = (v | (v >>>  4)) & 0x00FF00FF00FF00FFL;
+		v = (v | (v >>>  8)) & 0x0000FFFF0000FFFFL;
+		v = (v | (v >>> 16)) & LOW_WORD;
+		return (int) v;
+	}
+
+
+
+	// ////////////////////////////////////////////////////////////////////////
+	// Section: Tile keys
+	//
+	/**
+	 * Determine if the given tile can be represented by a tile key.
+	 */
+	public static boolean isEncodable (int level, int x, int y) {
+		if (level < 0 || level > MAX_LEVEL) return false;
+		int pow2 = 1 << level;
+		return 0 <= x && x < pow2 && 0 <= y && y < pow2;
+	}
+
+	/**
+	 * Determine if the given tile can be represented by a tile key.
+	 */
+	public static boolean isEncodable (TileIndex tile) {
+		return isEncodable(tile.getLevel(), tile.getX(), tile.getY());
+	}
+
+	/**
+	 * Get the key of the given tile.
+	 *
+	 * @throws IllegalArgumentException if the tile can't be encoded (see
+	 *             {@link #isEncodable(int, int, int)})
+	 */
+	public static long tileKey (int level, int x, int y) {
+		if (!isEncodable(level, x, y))
+			throw new IllegalArgumentException("Tile ["+x+", "+y+", lvl "+level+"] can't be encoded as a key");
+		return (interleave(x, y) << LEVEL_BITS) | level;
+	}
+
+	/**
+	 * Get the key of the given tile.
+	 *
+	 * @throws IllegalArgumentException if the tile can't be encoded (see
+	 *             {@link #isEncodable(int, int, int)})
+	 */
+	public static long tileKey (TileIndex tile) {
+		return tileKey(tile.getLevel(), tile.getX(), tile.getY());
+	}
+
+	/**
+	 * Get the level of the tile with the given key.
+	 */
+	public static int getLevel (long tileKey) {
+		return (int) (tileKey & LEVEL_MASK);
+	}
+
+	/**
+	 * Get the Morton code of the coordinates of the tile with the given key.
+	 * Within a level, tiles are in Z-order of their Morton codes.
+	 */
+	public static long getMortonCode (long tileKey) {
+		return tileKey >>> LEVEL_BITS;
+	}
+
+	/**
+	 * Get the x coordinate of the tile with the given key.
+	 */
+	public static int getX (long tileKey) {
+		return deinterleaveX(getMortonCode(tileKey));
+	}
+
+	/**
+	 * Get the y coordinate of the tile with the given key.
+	 */
+	public static int getY (long tileKey) {
+		return deinterleaveY(getMortonCode(tileKey));
+	}
+
+	/**
+	 * Convert a tile key back into a full tile index.
+	 */
+	public static TileIndex toTileIndex (long tileKey, int xBins, int yBins) {
+		return new TileIndex(getLevel(tileKey), getX(tileKey), getY(tileKey), xBins, yBins);
+	}
+
+	/**
+	 * Get the key of the tile one level up from the tile with the given key.
+	 *
+	 * @return The key of the parent tile, or {@link #NO_TILE} if the given tile
+	 *         is at level 0.
+	 */
+	public static long getParent (long tileKey) {
+		int level = getLevel(tileKey);
+		if (0 == level) return NO_TILE;
+		return ((getMortonCode(tileKey) >>> 2) << LEVEL_BITS) | (level - 1);
+	}
+
+	/**
+	 * Get the key of the ancestor of the tile with the given key at the given
+	 * level.
+	 *
+	 * @return The key of the ancestor tile, or {@link #NO_TILE} if the given
+	 *         level is deeper than the given tile.
+	 */
+	public static long getAncestor (long tileKey, int level) {
+		int levelDiff = getLevel(tileKey) - level;
+		if (levelDiff < 0 || level < 0) return NO_TILE;
+		return ((getMortonCode(tileKey) >>> (2 * levelDiff)) << LEVEL_BITS) | level;
+	}
+
+	/**
+	 * Get the key of one of the four tiles one level down from the tile with
+	 * the given key.
+	 *
+	 * @param quadrant Which child to get - one of {@link PyramidComparator#SW},
+	 *            {@link PyramidComparator#SE}, {@link PyramidComparator#NW}, or
+	 *            {@link PyramidComparator#NE}.
+	 * @return The key of the child tile, or {@link #NO_TILE} if the given tile
+	 *         is already at {@link #MAX_LEVEL}.
+	 */
+	public static long getChild (long tileKey, int quadrant) {
+		if (quadrant < 0 || quadrant > 3)
+			throw new IllegalArgumentException("Illegal quadrant "+quadrant);
+		int level = getLevel(tileKey);
+		if (MAX_LEVEL == level) return NO_TILE;
+		return (((getMortonCode(tileKey) << 2) | quadrant) << LEVEL_BITS) | (level + 1);
+	}
+
+	/**
+	 * Get the key of the tile offset by the given number of tiles from the tile
+	 * with the given key, on the same level.
+	 *
+	 * @return The key of the neighbouring tile, or {@link #NO_TILE} if it lies
+	 *         outside the pyramid.
+	 */
+	public static long getNeighbor (long tileKey, int dx, int dy) {
+		int level = getLevel(tileKey);
+		long x = (long) getX(tileKey) + dx;
+		long y = (long) getY(tileKey) + dy;
+		long pow2 = 1L << level;
+		if (x < 0 || x >= pow2 || y < 0 || y >= pow2) return NO_TILE;
+		return (interleave(x, y) << LEVEL_BITS) | level;
+	}
+
+	/**
+	 * Get the range of Morton codes, at the given level, of all descendants of
+	 * the tile with the given key.
+	 *
+	 * @return An array of two elements - the minimum and maximum Morton codes,
+	 *         inclusive, of the tile's descendants at the given level - or null
+	 *         if the given level is above the given tile.
+	 */
+	public static long[] getDescendantMortonRange (long tileKey, int level) {
+		int levelDiff = level - getLevel(tileKey);
+		if (levelDiff < 0) return null;
+		long min = getMortonCode(tileKey) << (2 * levelDiff);
+		return new long[] {min, min + (1L << (2 * levelDiff)) - 1};
+	}
+
+
+
+	// ////////////////////////////////////////////////////////////////////////
+	// Section: Bin keys
+	//
+	/**
+	 * Get the key of the given bin.
+	 */
+	public static long binKey (int x, int y) {
+		return ((long) x << 32) | (y & LOW_WORD);
+	}
+
+	/**
+	 * Get the key of the given bin.
+	 */
+	public static long binKey (BinIndex bin) {
+		return binKey(bin.getX(), bin.getY());
+	}
+
+	/**
+	 * Get the x coordinate of the bin with the given key.
+	 */
+	public static int getBinX (long binKey) {
+		return (int) (binKey >> 32);
+	}
+
+	/**
+	 * Get the y coordinate of the bin with the given key.
+	 */
+	public static int getBinY (long binKey) {
+		return (int) binKey;
+	}
+
+	/**
+	 * Convert a bin key back into a bin index.
+	 */
+	public static BinIndex toBinIndex (long binKey) {
+		return new BinIndex(getBinX(binKey), getBinY(binKey));
+	}
+
+	/**
+	 * Translate a bin, in universal bin coordinates, into the key of the tile
+	 * containing it, as per
+	 * {@link TileIndex#universalBinIndexToTileBinIndex(TileIndex, BinIndex)}.
+	 *
+	 * @return The key of the tile containing the bin, or {@link #NO_TILE} if
+	 *         that tile lies outside the pyramid.
+	 */
+	public static long universalBinKeyToTileKey (int level, int xBins, int yBins, long universalBinKey) {
+		int pow2 = 1 << level;
+		int tileX = getBinX(universalBinKey) / xBins;
+		int tileY = pow2 - getBinY(universalBinKey) / yBins - 1;
+		if (!isEncodable(level, tileX, tileY)) return NO_TILE;
+		return (interleave(tileX, tileY) << LEVEL_BITS) | level;
+	}
+
+	/**
+	 * Translate a bin, in universal bin coordinates, into the key of that bin
+	 * within its tile, as per
+	 * {@link TileIndex#universalBinIndexToTileBinIndex(TileIndex, BinIndex)}.
+	 */
+	public static long universalBinKeyToTileBinKey (int xBins, int yBins, long universalBinKey) {
+		int x = getBinX(universalBinKey);
+		int y = getBinY(universalBinKey);
+		return binKey(x - (x / xBins) * xBins, y - (y / yBins) * yBins);
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.binning;
+
+
+
+/**
+ * A tile pyramid whose projection is separable into independent horizontal
+ * and vertical components, each of which maps the root coordinate system onto
+ * the unit interval covered by the level 0 tile.
+ *
+ * For such pyramids, a point need only be projected once; its tile and bin at
+ * any level then follow from its normalized coordinates alone (see
+ * {@link TileLocator}).
+ */
+public interface NormalizingTilePyramid extends TilePyramid {
+	/**
+	 * Convert a horizontal root coordinate into the proportion of the way
+	 * across the level 0 tile at which it lies - 0 at the left edge, 1 at the
+	 * right.
+	 */
+	public double rootToNormalizedX (double x);
+
+	/**
+	 * Convert a vertical root coordinate into the proportion of the way up the
+	 * level 0 tile at which it lies - 0 at the bottom edge, 1 at the top.
+	 */
+	public double rootToNormalizedY (double y);
+}
@@ -46,6 +46,11 @@ import java.util.Comparator;
  * comparator implementation is needed, though - say, for instance, for sorting
  * - it can provide one.
  * 
+ * Where the pyramid can normalize coordinates, raw points are located just as
+ * a {@link TileLocator} would locate them, so that points sorted by this
+ * comparator fall in the same tiles in which they are binned, even exactly on
+ * tile boundaries.
+ * 
  * @author nkronenfeld
  */
 public class PyramidComparator implements Serializable {
@@ -79,6 +84,7 @@ public class PyramidComparator implements Serializable {
 
 	private int                   _comparisonLevel;
 	private TilePyramid           _pyramid;
+	private TileLocator           _locator;
 	private Comparator<Point>     _rawComparator;
 	private Comparator<TileIndex> _indexComparator;
 
@@ -109,6 +115,10 @@ public class PyramidComparator implements Serializable {
 	public PyramidComparator (TilePyramid pyramid, int comparisonLevel) {
 		_pyramid = pyramid;
 		_comparisonLevel = comparisonLevel;
+		if (pyramid instanceof NormalizingTilePyramid) {
+			// One bin per tile, so universal bins are tiles at the comparison level
+			_locator = new TileLocator((NormalizingTilePyramid) pyramid, 1, 1, comparisonLevel);
+		}
 		_rawComparator = new RawCoordinateComparator();
 		_indexComparator = new TileIndexComparator();
 	}
@@ -122,8 +132,8 @@ public class PyramidComparator implements Serializable {
 		// Mostly taken from http://en.wikipedia.org/wiki/Z-order_curve, but
 		// this is a very simple 2-dimensional case, so the results are rather 
 		// simplified.
-		TileIndex tile1 = _pyramid.rootToTile(pt1, _comparisonLevel);
-		TileIndex tile2 = _pyramid.rootToTile(pt2, _comparisonLevel);
+		TileIndex tile1 = rootToComparisonTile(pt1.getX(), pt1.getY());
+		TileIndex tile2 = rootToComparisonTile(pt2.getX(), pt2.getY());
 
 		return compareIndexAtLevel(tile1, tile2);
 	}
@@ -134,12 +144,20 @@ public class PyramidComparator implements Serializable {
 	 * @return Standard comparison values, as per {@link Comparator}
 	 */
 	public int compareRaw (double x1, double y1, double x2, double y2) {
-		TileIndex tile1 = _pyramid.rootToTile(x1, y1, _comparisonLevel);
-		TileIndex tile2 = _pyramid.rootToTile(x2, y2, _comparisonLevel);
+		TileIndex tile1 = rootToComparisonTile(x1, y1);
+		TileIndex tile2 = rootToComparisonTile(x2, y2);
 
 		return compareIndexAtLevel(tile1, tile2);
 	}
 
+	// Find the tile at the comparison level containing a raw point
+	private TileIndex rootToComparisonTile (double x, double y) {
+		if (null == _locator) {
+			return _pyramid.rootToTile(x, y, _comparisonLevel);
+		}
+		return _locator.getTile(_locator.rootToUniversalX(x), _locator.rootToUniversalY(y), _comparisonLevel);
+	}
+
 
 
 	/**
@@ -156,10 +174,82 @@ public class PyramidComparator implements Serializable {
 	 *         curve ordering.
 	 */
 	public long getComparisonKey (double rawX, double rawY) {
-		TileIndex index = _pyramid.rootToTile(rawX, rawY, _comparisonLevel);
-		long x = index.getX();
-		long y = index.getY();
+		TileIndex index = rootToComparisonTile(rawX, rawY);
+
+		// Apply fence bit
+		return getFence() | interleave(index.getX(), index.getY());
+	}
+
+	/**
+	 * Get the smallest comparison key (as per
+	 * {@link #getComparisonKey(double, double)}) of any raw point within the
+	 * given tile. Together with {@link #getMaximumComparisonKey(TileIndex)},
+	 * this gives the contiguous range of keys covered by the tile, since the
+	 * Morton curve visits every point in a tile before leaving it.
+	 * 
+	 * Tiles below the comparison level are treated as their ancestor at the
+	 * comparison level.
+	 */
+	public long getMinimumComparisonKey (TileIndex tile) {
+		int levelDiff = _comparisonLevel - tile.getLevel();
+		if (levelDiff <= 0) {
+			return getFence() | interleave(tile.getX() >> -levelDiff, tile.getY() >> -levelDiff);
+		} else {
+			return getFence() | (interleave(tile.getX(), tile.getY()) << (2 * levelDiff));
+		}
+	}
+
+	/**
+	 * Get the largest comparison key (as per
+	 * {@link #getComparisonKey(double, double)}) of any raw point within the
+	 * given tile.
+	 * 
+	 * @see #getMinimumComparisonKey(TileIndex)
+	 */
+	public long getMaximumComparisonKey (TileIndex tile) {
+		int levelDiff = _comparisonLevel - tile.getLevel();
+		if (levelDiff <= 0) {
+			return getMinimumComparisonKey(tile);
+		} else {
+			return getMinimumComparisonKey(tile) + (0x01L << (2 * levelDiff)) - 1;
+		}
+	}
+
+	private long getFence () {
+		return 0x01L << (2 * (_comparisonLevel + 1));
+	}
 
+	/**
+	 * Get the smallest comparison key of any raw point within the tile with the
+	 * given tile key (see {@link IndexKeys#tileKey(int, int, int)}), as per
+	 * {@link #getMinimumComparisonKey(TileIndex)}.
+	 */
+	public long getMinimumComparisonKey (long tileKey) {
+		int levelDiff = _comparisonLevel - IndexKeys.getLevel(tileKey);
+		long morton = IndexKeys.getMortonCode(tileKey);
+		if (levelDiff <= 0) {
+			return getFence() | (morton >>> (-2 * levelDiff));
+		} else {
+			return getFence() | (morton << (2 * levelDiff));
+		}
+	}
+
+	/**
+	 * Get the largest comparison key of any raw point within the tile with the
+	 * given tile key (see {@link IndexKeys#tileKey(int, int, int)}), as per
+	 * {@link #getMaximumComparisonKey(TileIndex)}.
+	 */
+	public long getMaximumComparisonKey (long tileKey) {
+		int levelDiff = _comparisonLevel - IndexKeys.getLevel(tileKey);
+		if (levelDiff <= 0) {
+			return getMinimumComparisonKey(tileKey);
+		} else {
+			return getMinimumComparisonKey(tileKey) + (0x01L << (2 * levelDiff)) - 1;
+		}
+	}
+
+	// Interleave the bits of x and y into a Morton code
+	private static long interleave (long x, long y) {
 		x = (x | (x << SHIFTS[4])) & BITS[4];
 		x = (x | (x << SHIFTS[3])) & BITS[3];
 		x = (x | (x << SHIFTS[2])) & BITS[2];
@@ -172,10 +262,7 @@ public class PyramidComparator implements Serializable {
 		y = (y | (y << SHIFTS[1])) & BITS[1];
 		y = (y | (y << SHIFTS[0])) & BITS[0];
 
-		long z = x | (y << 1);
-
-		// Apply fence bit
-		return (0x01L << (2 * (_comparisonLevel + 1))) | z;
+		return x | (y << 1);
 	}
 
 
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.binning;
+
+import java.io.Serializable;
+
+
+
+/**
+ * A class to locate points in the tiles and bins of many levels of a tile
+ * pyramid at once.
+ *
+ * Each point is projected only once, into a universal bin index at the
+ * deepest level of interest. Since bins at level l are exactly the universal
+ * bins at the deepest level, shifted right by the difference in levels, tile
+ * and bin coordinates at every shallower level follow by integer arithmetic
+ * alone.
+ *
+ * Universal coordinates used here are counted from the bottom left of the
+ * pyramid, as tile coordinates are; bin coordinates returned are, as always,
+ * counted from the top left of their tile.
+ */
+public class TileLocator implements Serializable {
+	private static final long serialVersionUID = 1L;
+	// Beyond this, doubles can no longer distinguish universal bins
+	private static final long MAX_UNIVERSAL_BINS = 1L << 52;
+
+
+
+	private NormalizingTilePyramid _pyramid;
+	private int                    _xBins;
+	private int                    _yBins;
+	private int                    _maxLevel;
+	private double                 _xScale;
+	private double                 _yScale;
+
+	/**
+	 * Create a locator for the given pyramid.
+	 *
+	 * @param pyramid The pyramid in which to locate points
+	 * @param xBins The number of bins per tile along the horizontal axis
+	 * @param yBins The number of bins per tile along the vertical axis
+	 * @param maxLevel The deepest level at which points will be located
+	 */
+	public TileLocator (NormalizingTilePyramid pyramid, int xBins, int yBins, int maxLevel) {
+		if (xBins < 1 || yBins < 1)
+			throw new IllegalArgumentException("Tiles must have at least one bin along each axis");
+		if (maxLevel < 0 || maxLevel > 62
+		    || ((long) xBins << maxLevel) > MAX_UNIVERSAL_BINS
+		    || ((long) yBins << maxLevel) > MAX_UNIVERSAL_BINS)
+			throw new IllegalArgumentException("Level "+maxLevel+" is too deep to locate points with "+xBins+"x"+yBins+" bins per tile");
+
+		_pyramid = pyramid;
+		_xBins = xBins;
+		_yBins = yBins;
+		_maxLevel = maxLevel;
+		_xScale = (double) ((long) xBins << maxLevel);
+		_yScale = (double) ((long) yBins << maxLevel);
+	}
+
+	public int getMaxLevel () {
+		return _maxLevel;
+	}
+
+	/**
+	 * Get the horizontal universal bin coordinate, at the deepest level, of a
+	 * horizontal root coordinate.
+	 */
+	public long rootToUniversalX (double x) {
+		return (long) Math.floor(_pyramid.rootToNormalizedX(x) * _xScale);
+	}
+
+	/**
+	 * Get the vertical universal bin coordinate, at the deepest level and
+	 * counted from the bottom, of a vertical root coordinate.
+	 */
+	public long rootToUniversalY (double y) {
+		return (long) Math.floor(_pyramid.rootToNormalizedY(y) * _yScale);
+	}
+
+	// Integer division, rounding down rather than towards 0
+	private static long floorDiv (long numerator, int denominator) {
+		long quotient = numerator / denominator;
+		if ((numerator % denominator) < 0) --quotient;
+		return quotient;
+	}
+
+	private void checkLevel (int level) {
+		if (level < 0 || level > _maxLevel)
+			throw new IllegalArgumentException("Level "+level+" is outside the range of this locator (0 to "+_maxLevel+")");
+	}
+
+	/**
+	 * Get the tile at the given level containing the given universal bin
+	 * coordinates (as returned by {@link #rootToUniversalX(double)} and
+	 * {@link #rootToUniversalY(double)}).
+	 */
+	public TileIndex getTile (long universalX, long universalY, int level) {
+		checkLevel(level);
+		int shift = _maxLevel - level;
+		return new TileIndex(level,
+		                     (int) floorDiv(universalX >> shift, _xBins),
+		                     (int) floorDiv(universalY >> shift, _yBins),
+		                     _xBins, _yBins);
+	}
+
+	/**
+	 * Get the bin, within its tile at the given level, containing the given
+	 * universal bin coordinates (as returned by
+	 * {@link #rootToUniversalX(double)} and {@link #rootToUniversalY(double)}).
+	 */
+	public BinIndex getBin (long universalX, long universalY, int level) {
+		checkLevel(level);
+		int shift = _maxLevel - level;
+		long levelX = universalX >> shift;
+		long levelY = universalY >> shift;
+		return new BinIndex((int) (levelX - floorDiv(levelX, _xBins) * _xBins),
+		                    _yBins - 1 - (int) (levelY - floorDiv(levelY, _yBins) * _yBins));
+	}
+
+	/**
+	 * Project a batch of points into universal bin coordinates at the deepest
+	 * level.
+	 *
+	 * @param x The horizontal root coordinates of the points
+	 * @param y The vertical root coordinates of the points
+	 * @param count The number of points to project
+	 * @param universalX An array of at least count entries into which to write
+	 *            the horizontal universal bin coordinates of the points
+	 * @param universalY An array of at least count entries into which to write
+	 *            the vertical universal bin coordinates of the points
+	 */
+	public void rootToUniversal (double[] x, double[] y, int count, long[] universalX, long[] universalY) {
+		for (int i=0; i<count; ++i) {
+			universalX[i] = (long) Math.floor(_pyramid.rootToNormalizedX(x[i]) * _xScale);
+			universalY[i] = (long) Math.floor(_pyramid.rootToNormalizedY(y[i]) * _yScale);
+		}
+	}
+
+	/**
+	 * Find the tile and bin coordinates, at a single level, of a batch of
+	 * points already projected by
+	 * {@link #rootToUniversal(double[], double[], int, long[], long[])}.
+	 *
+	 * @param universalX The horizontal universal bin coordinates of the points
+	 * @param universalY The vertical universal bin coordinates of the points
+	 * @param count The number of points to locate
+	 * @param level The level at which to locate them
+	 * @param tileX An array of at least count entries into which to write the
+	 *            horizontal tile coordinate of each point
+	 * @param tileY An array of at least count entries into which to write the
+	 *            vertical tile coordinate of each point
+	 * @param binX An array of at least count entries into which to write the
+	 *            horizontal bin coordinate of each point
+	 * @param binY An array of at least count entries into which to write the
+	 *            vertical bin coordinate of each point
+	 */
+	public void universalToTileAndBin (long[] universalX, long[] universalY, int count, int level,
+	                                   int[] tileX, int[] tileY, int[] binX, int[] binY) {
+		checkLevel(level);
+		int shift = _maxLevel - level;
+		for (int i=0; i<count; ++i) {
+			long levelX = universalX[i] >> shift;
+			long levelY = universalY[i] >> shift;
+			long tx = floorDiv(levelX, _xBins);
+			long ty = floorDiv(levelY, _yBins);
+			tileX[i] = (int) tx;
+			tileY[i] = (int) ty;
+			binX[i] = (int) (levelX - tx * _xBins);
+			binY[i] = _yBins - 1 - (int) (levelY - ty * _yBins);
+		}
+	}
+}
@@ -25,8 +25,8 @@
 package com.oculusinfo.binning.impl;
 
 import com.oculusinfo.binning.BinIndex;
+import com.oculusinfo.binning.NormalizingTilePyramid;
 import com.oculusinfo.binning.TileIndex;
-import com.oculusinfo.binning.TilePyramid;
 
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
@@ -41,7 +41,7 @@ import java.util.Collection;
  *
  * @author Jesse McGeachie
  */
-public class AOITilePyramid implements TilePyramid, Serializable {
+public class AOITilePyramid implements NormalizingTilePyramid, Serializable {
 	private static final long serialVersionUID = 1L;
 
 
@@ -77,6 +77,16 @@ public class AOITilePyramid implements TilePyramid, Serializable {
 		return "TMS";
 	}
 
+	@Override
+	public double rootToNormalizedX (double x) {
+		return (x-_minX)*_recipDiffX;
+	}
+
+	@Override
+	public double rootToNormalizedY (double y) {
+		return (y-_minY)*_recipDiffY;
+	}
+
 	@Override
 	public TileIndex rootToTile (Point2D point, int level) {
 		return rootToTile(point.getX(), point.getY(), level, 256, 256);
@@ -26,9 +26,9 @@ package com.oculusinfo.binning.impl;
 
 
 import com.oculusinfo.binning.BinIndex;
+import com.oculusinfo.binning.NormalizingTilePyramid;
 import com.oculusinfo.binning.TileIndex;
 import com.oculusinfo.binning.TileIterator;
-import com.oculusinfo.binning.TilePyramid;
 
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
@@ -55,7 +55,7 @@ import java.util.List;
  *
  * @author nkronenfeld
  */
-public class WebMercatorTilePyramid implements TilePyramid, Serializable {
+public class WebMercatorTilePyramid implements NormalizingTilePyramid, Serializable {
 	// We have no intrinsic data yet, so a default serial version should be fine.
 	private static final long serialVersionUID = 1L;
 
@@ -124,6 +124,17 @@ public class WebMercatorTilePyramid implements TilePyramid, Serializable {
 		return new Point2D.Double(x, pow2-y);
 	}
 
+	@Override
+	public double rootToNormalizedX (double lon) {
+		return (lon+180.0)/360.0;
+	}
+
+	@Override
+	public double rootToNormalizedY (double lat) {
+		double latR = Math.toRadians(lat);
+		return (1 + Math.log(Math.tan(latR) + 1 / Math.cos(latR)) / Math.PI) / 2;
+	}
+
 	@Override
 	public Rectangle2D getBounds()  {
 		return new Rectangle2D.Double( _minX, _minY, _maxX - _minX, _maxY - _minY );
@@ -252,15 +263,12 @@ public class WebMercatorTilePyramid implements TilePyramid, Serializable {
 
 	@Override
 	public double getBinOverlap (TileIndex tile, BinIndex bin, Rectangle2D area) {
-		Point2D lowerLeftRoot = new Point2D.Double(area.getMinX(), area.getMinY());
-		Point2D lowerLeftMercator = rootToTileMercator(lowerLeftRoot, tile.getLevel());
-		double left = (lowerLeftMercator.getX()-tile.getX())*tile.getXBins()-bin.getX();
-		double bottom = (tile.getYBins()-1) - (lowerLeftMercator.getY()-tile.getY())*tile.getYBins() - bin.getY();
-
-		Point2D upperRightRoot = new Point2D.Double(area.getMaxX(), area.getMaxY());
-		Point2D upperRightMercator = rootToTileMercator(upperRightRoot, tile.getLevel());
-		double right = (upperRightMercator.getX()-tile.getX())*tile.getXBins()-bin.getX();
-		double top = (tile.getYBins()-1) - (upperRightMercator.getY() - tile.getY())*tile.getYBins() - bin.getY();
+		// Project each edge of the area once, straight into tile coordinates
+		double pow2 = 1 << tile.getLevel();
+		double left = (rootToNormalizedX(area.getMinX())*pow2-tile.getX())*tile.getXBins()-bin.getX();
+		double bottom = (tile.getYBins()-1) - (rootToNormalizedY(area.getMinY())*pow2-tile.getY())*tile.getYBins() - bin.getY();
+		double right = (rootToNormalizedX(area.getMaxX())*pow2-tile.getX())*tile.getXBins()-bin.getX();
+		double top = (tile.getYBins()-1) - (rootToNormalizedY(area.getMaxY())*pow2 - tile.getY())*tile.getYBins() - bin.getY();
 
 		// Top and bottom actually reversed, but since we take absolute values, it doesn't really matter.
 		left = Math.min(Math.max(left, 0.0), 1.0);
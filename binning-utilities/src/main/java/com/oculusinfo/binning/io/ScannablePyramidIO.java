@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.binning.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+
+import com.oculusinfo.binning.TileIndex;
+
+/**
+ * A PyramidIO that can list which tiles of a pyramid actually exist, so that
+ * bulk operations (copies, exports) need only visit populated tiles rather
+ * than every possible index of every level.
+ */
+public interface ScannablePyramidIO extends PyramidIO {
+	/**
+	 * A lazy iteration over the tiles on one level of a pyramid. A scan may
+	 * hold resources (scanners, cursors) until it is exhausted or closed.
+	 * Errors reading further tiles while iterating are thrown as runtime
+	 * exceptions.
+	 */
+	public interface TileScan extends Iterator<TileIndex>, Closeable {
+	}
+
+	/**
+	 * Scan the tiles present on one level of a pyramid. Tiles are fetched as
+	 * the scan is iterated, so a level of any size can be scanned in bounded
+	 * memory.
+	 *
+	 * @param pyramidId The ID of the pyramid to be scanned; the meaning of this
+	 *            ID is dependent on the I/O type
+	 * @param level The level to scan
+	 * @param after Null to scan the whole level, or a tile previously returned
+	 *            by a scan of the same level, in which case the scan starts
+	 *            immediately after that tile, so an interrupted scan may be
+	 *            resumed where it left off
+	 * @return The indices of all tiles stored on the given level, in a stable
+	 *         order, or null if this particular pyramid can't be scanned
+	 */
+	public TileScan scanTiles (String pyramidId, int level, TileIndex after) throws IOException;
+}
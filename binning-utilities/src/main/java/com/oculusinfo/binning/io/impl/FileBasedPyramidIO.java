@@ -31,7 +31,7 @@ import java.util.Properties;
 
 import com.oculusinfo.binning.TileData;
 import com.oculusinfo.binning.TileIndex;
-import com.oculusinfo.binning.io.PyramidIO;
+import com.oculusinfo.binning.io.ScannablePyramidIO;
 import com.oculusinfo.binning.io.serialization.TileSerializer;
 import org.json.JSONObject;
 
@@ -42,7 +42,7 @@ import org.json.JSONObject;
  *  on the particular type of file system tile used.
  *
  */
-public class FileBasedPyramidIO implements PyramidIO {
+public class FileBasedPyramidIO implements ScannablePyramidIO {
 
 	private PyramidSource _source;
 
@@ -103,6 +103,15 @@ public class FileBasedPyramidIO implements PyramidIO {
 		return _source.readMetaData(basePath);
 	}
 
+	@Override
+	public TileScan scanTiles (String basePath, int level, TileIndex after) throws IOException {
+		// Only plain directories can be listed cheaply
+		if (_source instanceof FileSystemPyramidSource) {
+			return ((FileSystemPyramidSource) _source).scanTiles(basePath, level, after);
+		}
+		return null;
+	}
+
 	@Override
 	public void removeTiles (String id, Iterable<TileIndex> tiles ) throws IOException {
 		_source.removeTiles(id, tiles);
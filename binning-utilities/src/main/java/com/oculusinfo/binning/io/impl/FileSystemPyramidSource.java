@@ -31,13 +31,16 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Properties;
 
 import com.oculusinfo.binning.TileData;
 import com.oculusinfo.binning.TileIndex;
 import com.oculusinfo.binning.io.PyramidIO;
+import com.oculusinfo.binning.io.ScannablePyramidIO;
 import com.oculusinfo.binning.io.serialization.TileSerializer;
 import org.json.JSONObject;
 
@@ -159,6 +162,113 @@ public class FileSystemPyramidSource implements PyramidSource {
 		}
 	}
 
+	/**
+	 * List the tiles stored on one level of a pyramid, by listing the level's
+	 * directories rather than probing every possible tile file. Each x
+	 * directory is only listed once the scan reaches it.
+	 *
+	 * @param basePath The pyramid to scan
+	 * @param level The level to scan
+	 * @param after Null to scan the whole level, or a tile after which to
+	 *            start the scan
+	 * @return The tiles found, ordered by x, then y
+	 */
+	public ScannablePyramidIO.TileScan scanTiles (String basePath, int level, TileIndex after) {
+		return new DirectoryTileScan(basePath, level, after);
+	}
+
+	private class DirectoryTileScan implements ScannablePyramidIO.TileScan {
+		private String    _basePath;
+		private int       _level;
+		private int[]     _xs;
+		private int       _xIndex;
+		private int[]     _ys;
+		private int       _yIndex;
+		private TileIndex _next;
+
+		DirectoryTileScan (String basePath, int level, TileIndex after) {
+			_basePath = basePath;
+			_level = level;
+			_xs = listNumbers(getLevelDir(basePath, new TileIndex(level, 0, 0)), "");
+			_xIndex = -1;
+			_ys = new int[0];
+			_yIndex = 0;
+			if (null != after) {
+				// Skip the x directories before the start tile, and the start
+				// tile's own column up to and including it
+				_xIndex = Arrays.binarySearch(_xs, after.getX());
+				if (_xIndex < 0) {
+					_xIndex = -_xIndex - 2;
+				} else {
+					_ys = listYs(_xs[_xIndex]);
+					_yIndex = Arrays.binarySearch(_ys, after.getY());
+					_yIndex = (_yIndex < 0) ? -_yIndex - 1 : _yIndex + 1;
+				}
+			}
+			_next = findNext();
+		}
+
+		private int[] listYs (int x) {
+			return listNumbers(getXDir(_basePath, new TileIndex(_level, x, 0)), "." + _extension);
+		}
+
+		private TileIndex findNext () {
+			while (_yIndex >= _ys.length) {
+				++_xIndex;
+				if (_xIndex >= _xs.length) return null;
+				_ys = listYs(_xs[_xIndex]);
+				_yIndex = 0;
+			}
+			TileIndex tile = new TileIndex(_level, _xs[_xIndex], _ys[_yIndex]);
+			++_yIndex;
+			return tile;
+		}
+
+		@Override
+		public boolean hasNext () {
+			return null != _next;
+		}
+
+		@Override
+		public TileIndex next () {
+			if (null == _next) throw new NoSuchElementException();
+			TileIndex result = _next;
+			_next = findNext();
+			return result;
+		}
+
+		@Override
+		public void remove () {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close () {
+			_next = null;
+		}
+	}
+
+	// List the numerically-named entries of a directory, sorted
+	private static int[] listNumbers (File directory, String suffix) {
+		String[] names = directory.list();
+		if (null == names) return new int[0];
+
+		int[] numbers = new int[names.length];
+		int count = 0;
+		for (String name: names) {
+			if (!name.endsWith(suffix)) continue;
+			try {
+				numbers[count] = Integer.parseInt(name.substring(0, name.length() - suffix.length()));
+				++count;
+			} catch (NumberFormatException e) {
+				// Not a tile; ignore it.
+			}
+		}
+		numbers = Arrays.copyOf(numbers, count);
+		Arrays.sort(numbers);
+		return numbers;
+	}
+
 	@Override
 	public void initializeForRead(String pyramidId, int width, int height, Properties dataDescription) {
 		// Not Implemented
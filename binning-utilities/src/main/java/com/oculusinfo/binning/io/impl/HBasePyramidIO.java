@@ -33,18 +33,23 @@ import org.apache.hadoop.hbase.HColumnDescriptor;
 import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
 import com.oculusinfo.binning.TileData;
 import com.oculusinfo.binning.TileIndex;
-import com.oculusinfo.binning.io.PyramidIO;
+import com.oculusinfo.binning.io.ScannablePyramidIO;
 import com.oculusinfo.binning.io.serialization.TileSerializer;
 import org.json.JSONObject;
 
 
-public class HBasePyramidIO implements PyramidIO {
+public class HBasePyramidIO implements ScannablePyramidIO {
 	private static final String META_DATA_INDEX      = "metadata";
+	// Number of rows fetched per round trip when scanning tile keys
+	private static final int    SCAN_CACHING         = 10000;
 
 	public static class HBaseColumn {
 		byte[] family;
@@ -228,6 +233,20 @@ public class HBasePyramidIO implements PyramidIO {
 
 	@Override
 	public void initializeForWrite (String tableName) throws IOException {
+		initializeForWrite(tableName, null);
+	}
+
+	/**
+	 * Initialize the system for writing a pyramid, pre-splitting the table into
+	 * regions if it doesn't already exist.
+	 *
+	 * @param tableName The name of the table to be written
+	 * @param splitKeys The row keys at which to split the table into regions,
+	 *            in row key order. If null or empty, the table is created with
+	 *            a single region. This is ignored if the table already exists.
+	 * @see #getSplitKeys(Collection, int)
+	 */
+	public void initializeForWrite (String tableName, byte[][] splitKeys) throws IOException {
 		if ( !_admin.tableExists(TableName.valueOf(tableName)) ) {
 			try {
 				HTableDescriptor tableDesc = new HTableDescriptor(TableName.valueOf(tableName));
@@ -235,7 +254,11 @@ public class HBasePyramidIO implements PyramidIO {
 				tableDesc.addFamily(metadataFamily);
 				HColumnDescriptor tileFamily = new HColumnDescriptor(TILE_FAMILY_NAME);
 				tableDesc.addFamily(tileFamily);
-				_admin.createTable(tableDesc);
+				if (null == splitKeys || 0 == splitKeys.length) {
+					_admin.createTable(tableDesc);
+				} else {
+					_admin.createTable(tableDesc, splitKeys);
+				}
 			} catch (Exception e) {
 				e.printStackTrace();
 			}
@@ -243,6 +266,44 @@ public class HBasePyramidIO implements PyramidIO {
 		}
 	}
 
+	/**
+	 * Determine row keys at which to split a table so that each of the given
+	 * levels starts its own region, and each level is further divided into
+	 * (up to) the given number of regions by column of tiles. Since row keys
+	 * are ordered by level, then x, then y, this gives regions that each hold
+	 * a contiguous vertical strip of tiles of a single level.
+	 *
+	 * @param levels The levels expected to be written to the table
+	 * @param regionsPerLevel The maximum number of regions into which to split
+	 *            each level; levels with fewer columns of tiles than this get
+	 *            one region per column.
+	 * @return The split keys, in row key order, suitable for passing to
+	 *         {@link #initializeForWrite(String, byte[][])}
+	 */
+	public static byte[][] getSplitKeys (Collection<Integer> levels, int regionsPerLevel) {
+		SortedSet<String> keys = new TreeSet<String>();
+		for (int level: levels) {
+			int digits = (int) Math.floor(Math.log10(1 << level))+1;
+			long columns = 1L << level;
+			int regions = (int) Math.max(1, Math.min(regionsPerLevel, columns));
+			for (int i=0; i<regions; ++i) {
+				if (0 == i) {
+					keys.add(String.format("%02d,", level));
+				} else {
+					keys.add(String.format("%02d,%0"+digits+"d", level, i*columns/regions));
+				}
+			}
+		}
+
+		byte[][] splitKeys = new byte[keys.size()][];
+		int n = 0;
+		for (String key: keys) {
+			splitKeys[n] = key.getBytes();
+			++n;
+		}
+		return splitKeys;
+	}
+
 	/**
 	 * Get a distributable object that knows how to create HBase puts, so we can distribute our work across a cluster.
 	 */
@@ -367,6 +428,83 @@ public class HBasePyramidIO implements PyramidIO {
 		return new String(rawData.get(0).get(METADATA_COLUMN));
 	}
 
+	@Override
+	public TileScan scanTiles (String tableName, int level, TileIndex after) throws IOException {
+		// All row ids on a level start with the level and a comma; '-' sorts
+		// immediately after ',', so it bounds the level's key range.
+		String levelKey = String.format("%02d", level);
+		byte[] startRow;
+		if (null == after) {
+			startRow = (levelKey+",").getBytes();
+		} else {
+			// The smallest key greater than the start tile's row id
+			byte[] afterRow = rowIdFromTileIndex(after).getBytes();
+			startRow = Arrays.copyOf(afterRow, afterRow.length + 1);
+		}
+		Scan scan = new Scan(startRow, (levelKey+"-").getBytes());
+		scan.addFamily(TILE_FAMILY_NAME);
+		// We only need the keys, not the tile data
+		scan.setFilter(new FilterList(new FirstKeyOnlyFilter(), new KeyOnlyFilter()));
+		scan.setCaching(SCAN_CACHING);
+		scan.setCacheBlocks(false);
+
+		Table table = getTable(tableName);
+		try {
+			return new RowTileScan(table, table.getScanner(scan));
+		} catch (IOException|RuntimeException e) {
+			table.close();
+			throw e;
+		}
+	}
+
+	/*
+	 * Reads tile indices from an HBase scanner, a batch of rows at a time,
+	 * closing the scanner and its table once the scan is done.
+	 */
+	private static class RowTileScan implements TileScan {
+		private Table            _table;
+		private ResultScanner    _scanner;
+		private Iterator<Result> _results;
+
+		RowTileScan (Table table, ResultScanner scanner) {
+			_table = table;
+			_scanner = scanner;
+			_results = scanner.iterator();
+		}
+
+		@Override
+		public boolean hasNext () {
+			if (null == _scanner) return false;
+			if (_results.hasNext()) return true;
+			try {
+				close();
+			} catch (IOException e) {
+				throw new RuntimeException("Error closing tile scan", e);
+			}
+			return false;
+		}
+
+		@Override
+		public TileIndex next () {
+			if (!hasNext()) throw new NoSuchElementException();
+			return tileIndexFromRowId(new String(_results.next().getRow()));
+		}
+
+		@Override
+		public void remove () {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close () throws IOException {
+			if (null != _scanner) {
+				_scanner.close();
+				_scanner = null;
+				_table.close();
+			}
+		}
+	}
+
 	@Override
 	public void removeTiles (String tableName, Iterable<TileIndex> tiles) throws IOException {
 
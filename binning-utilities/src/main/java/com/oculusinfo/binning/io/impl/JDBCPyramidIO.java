@@ -34,13 +34,15 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Properties;
 
 import com.oculusinfo.binning.TileData;
 import com.oculusinfo.binning.TileIndex;
-import com.oculusinfo.binning.io.PyramidIO;
+import com.oculusinfo.binning.io.ScannablePyramidIO;
 import com.oculusinfo.binning.io.serialization.TileSerializer;
 import org.json.JSONObject;
 
@@ -50,7 +52,7 @@ import org.json.JSONObject;
  * @author rcameron
  *
  */
-public class JDBCPyramidIO implements PyramidIO {
+public class JDBCPyramidIO implements ScannablePyramidIO {
 	private static final String TABLE_METADATA = "metadata";
 	private static final int BATCH_SIZE = 10000;
 	private static final String COL_ZOOM_LVL = "zoom_level";
@@ -158,8 +160,10 @@ public class JDBCPyramidIO implements PyramidIO {
 		return exists;
 	}
 
+	// Synchronized because each write is a transaction on our single,
+	// shared connection; concurrent writers would commit each other's batches.
 	@Override
-	public <T> void writeTiles(String pyramidId,
+	synchronized public <T> void writeTiles(String pyramidId,
 	                           TileSerializer<T> serializer, Iterable<TileData<T>> data)
 		throws IOException {
 		PreparedStatement ps = null;
@@ -434,6 +438,122 @@ public class JDBCPyramidIO implements PyramidIO {
 		}
 	}
 
+	@Override
+	public TileScan scanTiles (String pyramidId, int level, TileIndex after) throws IOException {
+		return new PagedTileScan(pyramidId, level, after);
+	}
+
+	/*
+	 * Read one page of the tiles on a level, ordered by column, then row,
+	 * starting after the given tile. Pages are read with separate queries,
+	 * rather than from one open cursor, so a long scan doesn't hold a result
+	 * set open on the connection while tiles are read from it.
+	 */
+	private List<TileIndex> scanPage (String pyramidId, int level, TileIndex after) throws IOException {
+		PreparedStatement ps = null;
+		try {
+			List<TileIndex> results = new ArrayList<TileIndex>();
+			if (!tableExists(pyramidId)) {
+				return results;
+			}
+
+			StringBuilder sb = new StringBuilder();
+			sb.append("SELECT ");
+			sb.append(COL_TILE_COLUMN);
+			sb.append(", ");
+			sb.append(COL_TILE_ROW);
+			sb.append(" FROM ");
+			sb.append(toTableName(pyramidId));
+			sb.append(" WHERE ");
+			sb.append(COL_ZOOM_LVL);
+			sb.append(" = ?");
+			if (null != after) {
+				sb.append(" AND (");
+				sb.append(COL_TILE_COLUMN);
+				sb.append(" > ? OR (");
+				sb.append(COL_TILE_COLUMN);
+				sb.append(" = ? AND ");
+				sb.append(COL_TILE_ROW);
+				sb.append(" > ?))");
+			}
+			sb.append(" ORDER BY ");
+			sb.append(COL_TILE_COLUMN);
+			sb.append(", ");
+			sb.append(COL_TILE_ROW);
+			sb.append(" LIMIT ");
+			sb.append(BATCH_SIZE);
+
+			ps = _connection.prepareStatement(sb.toString());
+			ps.setInt(1, level);
+			if (null != after) {
+				ps.setInt(2, after.getX());
+				ps.setInt(3, after.getX());
+				ps.setInt(4, after.getY());
+			}
+
+			ResultSet resultSet = ps.executeQuery();
+			while (resultSet.next()) {
+				results.add(new TileIndex(level, resultSet.getInt(1), resultSet.getInt(2)));
+			}
+			return results;
+		} catch (SQLException e) {
+			throw new IOException("Error scanning tiles.", e);
+		} finally {
+			if (ps != null) {
+				try {
+					ps.close();
+				} catch (SQLException e) {
+					throw new IOException(e);
+				}
+			}
+		}
+	}
+
+	private class PagedTileScan implements TileScan {
+		private String          _pyramidId;
+		private int             _level;
+		private List<TileIndex> _page;
+		private int             _index;
+
+		PagedTileScan (String pyramidId, int level, TileIndex after) throws IOException {
+			_pyramidId = pyramidId;
+			_level = level;
+			_page = scanPage(pyramidId, level, after);
+			_index = 0;
+		}
+
+		@Override
+		public boolean hasNext () {
+			if (_index < _page.size()) return true;
+			// A short page is the last one
+			if (_page.size() < BATCH_SIZE) return false;
+			try {
+				_page = scanPage(_pyramidId, _level, _page.get(_page.size() - 1));
+				_index = 0;
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			return !_page.isEmpty();
+		}
+
+		@Override
+		public TileIndex next () {
+			if (!hasNext()) throw new NoSuchElementException();
+			return _page.get(_index++);
+		}
+
+		@Override
+		public void remove () {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close () {
+			_page = new ArrayList<TileIndex>();
+			_index = 0;
+		}
+	}
+
 	@Override
 	public void removeTiles (String id, Iterable<TileIndex> tiles ) throws IOException {
 		throw new IOException("removeTiles not currently supported for JDBCPyramidIO");
@@ -27,16 +27,29 @@ package com.oculusinfo.binning.util;
 
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.Writer;
 import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.oculusinfo.binning.TileData;
 import com.oculusinfo.binning.TileIndex;
+import com.oculusinfo.binning.io.ScannablePyramidIO;
 import com.oculusinfo.binning.io.serialization.DefaultTileSerializerFactoryProvider;
 import com.oculusinfo.binning.io.serialization.TileSerializer;
 import com.oculusinfo.binning.properties.TileIndexProperty;
@@ -60,6 +73,16 @@ import com.oculusinfo.factory.providers.StandardUberFactoryProvider;
 
 /**
  * Copy a tile pyramid from one location to another.
+ *
+ * The copy proceeds level by level. If the source can list the tiles it
+ * holds (see {@link ScannablePyramidIO}), only existing tiles are visited;
+ * otherwise every index within the copy area is tried. Either way, tiles are
+ * listed lazily, as blocks are handed to the readers. Blocks of tiles are
+ * read and written by separate thread pools, with a bounded number of blocks
+ * in flight at once, and may be re-serialized with a different serializer on
+ * the way through. If a checkpoint file is given, completed blocks are
+ * recorded there, and a restarted copy resumes its scan after the last of the
+ * blocks completed in order, skipping any later blocks that also completed.
  */
 public class CopyPyramid<T> {
 	public static void main (String[] args) {
@@ -99,11 +122,19 @@ public class CopyPyramid<T> {
 				serializerFactory.readConfiguration(props);
 				TileSerializer<?> serializer = serializerFactory.produce(TileSerializer.class);
 
+				TileSerializer<?> destinationSerializer = serializer;
+				if (props.has("destinationSerializer")) {
+					ConfigurableFactory<? extends TileSerializer<?>> destinationSerializerFactory =
+						tsFactoryProvider.createFactory(Arrays.asList("destinationSerializer"));
+					destinationSerializerFactory.readConfiguration(props);
+					destinationSerializer = destinationSerializerFactory.produce(TileSerializer.class);
+				}
+
 				ConfigurableFactory<CopyParameters> paramFactory = new CopyParametersFactory(null, Arrays.asList("copy"));
 				paramFactory.readConfiguration(props);
 				CopyParameters params = paramFactory.produce(CopyParameters.class);
 
-				CopyPyramid<?> copier = new CopyPyramid(source, destination, serializer, params);
+				CopyPyramid<?> copier = new CopyPyramid(source, destination, serializer, destinationSerializer, params);
 				System.out.println("Starting pyramid copy at "+new Date());
 				copier.copy(params._indices);
 				System.out.println("Pyramid copy finished at "+new Date());
@@ -128,6 +159,13 @@ public class CopyPyramid<T> {
 			                   "area of copied tiles.   Tiles that don't intersect any of the indicated indices are "+
 			                   "not exported.");
 			System.out.println("tileWidth and tileHeight may also be specified, but default to 256.");
+			System.out.println("An optional destinationSerializer node causes tiles to be re-serialized "+
+			                   "with that serializer when written.");
+			System.out.println("copy.readThreads, copy.writeThreads and copy.checkpoint control the "+
+			                   "number of reading and writing threads, and the file in which progress is "+
+			                   "recorded so that an interrupted copy can be resumed.  Both thread counts "+
+			                   "default to 1; only raise copy.writeThreads for destinations that can take "+
+			                   "concurrent writes.");
 		}
 	}
 
@@ -135,11 +173,26 @@ public class CopyPyramid<T> {
 	private PyramidIO         _source;
 	private PyramidIO         _destination;
 	private TileSerializer<T> _serializer;
+	private TileSerializer<T> _destinationSerializer;
 	private CopyParameters    _parameters;
 	public CopyPyramid (PyramidIO source, PyramidIO destination, TileSerializer<T> serializer, CopyParameters parameters) {
+		this(source, destination, serializer, serializer, parameters);
+	}
+
+	/**
+	 * Create a copier that re-serializes tiles as it copies them.
+	 *
+	 * @param sourceSerializer The serializer with which to read source tiles
+	 * @param destinationSerializer The serializer with which to write
+	 *            destination tiles
+	 */
+	public CopyPyramid (PyramidIO source, PyramidIO destination,
+	                    TileSerializer<T> sourceSerializer, TileSerializer<T> destinationSerializer,
+	                    CopyParameters parameters) {
 		_source = source;
 		_destination = destination;
-		_serializer = serializer;
+		_serializer = sourceSerializer;
+		_destinationSerializer = destinationSerializer;
 		_parameters = parameters;
 	}
 
@@ -148,46 +201,467 @@ public class CopyPyramid<T> {
 		_destination.initializeForWrite(_parameters._destinationId);
 		String metaData = _source.readMetaData(_parameters._sourceId);
 		if (null != metaData) _destination.writeMetaData(_parameters._destinationId, metaData);
-		List<TileIndex> toCopy = new ArrayList<>();
-		for (TileIndex root: rootTiles) {
-			toCopy = copyUp(root, toCopy);
-			toCopy = copyDown(root, toCopy);
+		copyTiles(rootTiles);
+	}
+
+	/**
+	 * Copy all tiles within the configured levels that lie above or below the
+	 * given root tiles, without initializing either pyramid or copying
+	 * metadata.
+	 */
+	public void copyTiles (List<TileIndex> rootTiles) throws IOException {
+		CopyRun run = new CopyRun(new CopyCheckpoint(_parameters._checkpointFile, _parameters._blockSize));
+		try {
+			for (int level = _parameters._minLevel; level <= _parameters._maxLevel; ++level) {
+				if (run._checkpoint.isLevelComplete(level)) continue;
+
+				long copiedBefore = run._tilesCopied.get();
+				int block = run._checkpoint.getResumeBlock(level);
+				TileIndex resumeAfter = (0 == block) ? null : run._checkpoint.getBlockEnd(level, block - 1);
+				ScannablePyramidIO.TileScan tiles = getTiles(level, rootTiles, resumeAfter);
+				try {
+					while (tiles.hasNext() && !run.hasFailed()) {
+						List<TileIndex> indices = new ArrayList<>(_parameters._blockSize);
+						while (tiles.hasNext() && indices.size() < _parameters._blockSize) {
+							indices.add(tiles.next());
+						}
+						if (!run._checkpoint.isBlockComplete(level, block)) {
+							run.submit(level, block, indices);
+						}
+						++block;
+					}
+				} finally {
+					tiles.close();
+				}
+				// Let the level finish before marking it complete
+				run.drain();
+				run._checkpoint.completeLevel(level);
+				System.out.println("Copied level "+level+": "+(run._tilesCopied.get() - copiedBefore)+" tiles");
+			}
+		} catch (InterruptedException e) {
+			throw new IOException("Pyramid copy interrupted", e);
+		} finally {
+			run.close();
 		}
-		doCopy(toCopy);
 	}
 
-	private List<TileIndex> copyUp (TileIndex root, List<TileIndex> indexBuffer) throws IOException {
-		if (_parameters._minLevel <= root.getLevel()) {
-			indexBuffer.add(root);
-			indexBuffer = checkBuffer(indexBuffer);
-			indexBuffer = copyUp(TileIndex.getParent(root), indexBuffer);
+	/*
+	 * Get the tiles to try to copy on a given level, starting after the given
+	 * tile if it isn't null
+	 */
+	private ScannablePyramidIO.TileScan getTiles (int level, List<TileIndex> rootTiles, TileIndex after) throws IOException {
+		if (_source instanceof ScannablePyramidIO) {
+			ScannablePyramidIO.TileScan existing = ((ScannablePyramidIO) _source).scanTiles(_parameters._sourceId, level, after);
+			if (null != existing) {
+				return new CoveredTileScan(existing, rootTiles);
+			}
 		}
-		return indexBuffer;
+		CandidateIterator candidates = new CandidateIterator(level, rootTiles);
+		if (null != after) {
+			// Candidates are only enumerated, not read, so skipping them is cheap
+			while (candidates.hasNext()) {
+				TileIndex tile = candidates.next();
+				if (tile.getX() == after.getX() && tile.getY() == after.getY()) break;
+			}
+		}
+		return candidates;
 	}
 
-	private List<TileIndex> copyDown (TileIndex root, List<TileIndex> indexBuffer) throws IOException {
-		if (_parameters._maxLevel >= root.getLevel()) {
-			indexBuffer.add(root);
-			indexBuffer = checkBuffer(indexBuffer);
-			for (TileIndex child: TileIndex.getChildren(root)) {
-				indexBuffer = copyDown(child, indexBuffer);
+	/*
+	 * Filters a scan of the source down to the tiles above or below a set of
+	 * root tiles, sized to the copy's tile size.
+	 */
+	class CoveredTileScan implements ScannablePyramidIO.TileScan {
+		private ScannablePyramidIO.TileScan _base;
+		private List<TileIndex>             _roots;
+		private TileIndex                   _next;
+
+		CoveredTileScan (ScannablePyramidIO.TileScan base, List<TileIndex> roots) {
+			_base = base;
+			_roots = roots;
+			_next = findNext();
+		}
+
+		private TileIndex findNext () {
+			while (_base.hasNext()) {
+				TileIndex tile = _base.next();
+				if (isCovered(tile, _roots, _roots.size())) {
+					return new TileIndex(tile, _parameters._width, _parameters._height);
+				}
 			}
+			return null;
+		}
+
+		@Override
+		public boolean hasNext () {
+			return null != _next;
+		}
+
+		@Override
+		public TileIndex next () {
+			if (null == _next) throw new NoSuchElementException();
+			TileIndex result = _next;
+			_next = findNext();
+			return result;
+		}
+
+		@Override
+		public void remove () {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close () throws IOException {
+			_base.close();
 		}
-		return indexBuffer;
 	}
 
-	private List<TileIndex> checkBuffer (List<TileIndex> indexBuffer) throws IOException {
-		if (indexBuffer.size() >= _parameters._blockSize) {
-			doCopy(indexBuffer);
-			return new ArrayList<>();
-		} else {
-			return indexBuffer;
+	/*
+	 * Determine if a tile lies above or below any of the first n roots
+	 */
+	static boolean isCovered (TileIndex tile, List<TileIndex> roots, int n) {
+		for (int i=0; i<n; ++i) {
+			TileIndex root = roots.get(i);
+			int shift = tile.getLevel() - root.getLevel();
+			if (shift >= 0) {
+				if ((tile.getX() >> shift) == root.getX() && (tile.getY() >> shift) == root.getY()) return true;
+			} else {
+				if ((root.getX() >> -shift) == tile.getX() && (root.getY() >> -shift) == tile.getY()) return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Enumerates every possible tile on a level that lies above or below a set
+	 * of root tiles, in root order, without repeats. Used when the source
+	 * can't tell us which tiles it actually has.
+	 */
+	class CandidateIterator implements ScannablePyramidIO.TileScan {
+		private int             _level;
+		private List<TileIndex> _roots;
+		private int             _root;
+		private int             _minY;
+		private int             _maxX;
+		private int             _maxY;
+		private int             _x;
+		private int             _y;
+		private TileIndex       _next;
+
+		CandidateIterator (int level, List<TileIndex> roots) {
+			_level = level;
+			_roots = roots;
+			_root = -1;
+			_x = 1;
+			_maxX = 0;
+			_next = findNext();
+		}
+
+		private TileIndex findNext () {
+			while (true) {
+				if (_x > _maxX) {
+					++_root;
+					if (_root >= _roots.size()) return null;
+
+					TileIndex root = _roots.get(_root);
+					int shift = _level - root.getLevel();
+					if (shift >= 0) {
+						_x = root.getX() << shift;
+						_maxX = ((root.getX() + 1) << shift) - 1;
+						_minY = root.getY() << shift;
+						_maxY = ((root.getY() + 1) << shift) - 1;
+					} else {
+						_x = _maxX = root.getX() >> -shift;
+						_minY = _maxY = root.getY() >> -shift;
+					}
+					_y = _minY;
+				}
+
+				TileIndex tile = new TileIndex(_level, _x, _y, _parameters._width, _parameters._height);
+				if (_y < _maxY) {
+					++_y;
+				} else {
+					_y = _minY;
+					++_x;
+				}
+				if (!isCovered(tile, _roots, _root)) return tile;
+			}
+		}
+
+		@Override
+		public boolean hasNext () {
+			return null != _next;
+		}
+
+		@Override
+		public TileIndex next () {
+			if (null == _next) throw new NoSuchElementException();
+			TileIndex result = _next;
+			_next = findNext();
+			return result;
+		}
+
+		@Override
+		public void remove () {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close () {
+			_next = null;
+		}
+	}
+
+	/*
+	 * The state of one copy: reader and writer pools, and a limit on the
+	 * number of blocks read but not yet written, so memory use stays bounded
+	 * however fast the source is.
+	 */
+	private class CopyRun {
+		private CopyCheckpoint             _checkpoint;
+		private ThreadPoolExecutor         _readers;
+		private ThreadPoolExecutor         _writers;
+		private int                        _maxInFlight;
+		private Semaphore                  _inFlight;
+		private AtomicReference<Throwable> _failure;
+		private AtomicLong                 _tilesCopied;
+
+		CopyRun (CopyCheckpoint checkpoint) {
+			_checkpoint = checkpoint;
+			_readers = createPool("pyramid-copy-reader", _parameters._readThreads);
+			_writers = createPool("pyramid-copy-writer", _parameters._writeThreads);
+			_maxInFlight = 2 * (_parameters._readThreads + _parameters._writeThreads);
+			_inFlight = new Semaphore(_maxInFlight);
+			_failure = new AtomicReference<>();
+			_tilesCopied = new AtomicLong(0);
+		}
+
+		boolean hasFailed () {
+			return null != _failure.get();
 		}
+
+		void submit (final int level, final int block, final List<TileIndex> indices) throws InterruptedException {
+			_inFlight.acquire();
+			final TileIndex last = indices.get(indices.size() - 1);
+			try {
+				_readers.execute(new Runnable() {
+					@Override
+					public void run () {
+						read(level, block, last, indices);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				fail(e);
+			}
+		}
+
+		private void read (final int level, final int block, final TileIndex last, List<TileIndex> indices) {
+			final List<TileData<T>> tiles = new ArrayList<>(indices.size());
+			try {
+				List<TileData<T>> read = _source.readTiles(_parameters._sourceId, _serializer, indices);
+				// Some sources return nulls for missing tiles
+				if (null != read) {
+					for (TileData<T> tile: read) {
+						if (null != tile) tiles.add(tile);
+					}
+				}
+			} catch (Throwable t) {
+				fail(t);
+				return;
+			}
+
+			if (tiles.isEmpty()) {
+				complete(level, block, last, 0);
+			} else {
+				try {
+					_writers.execute(new Runnable() {
+						@Override
+						public void run () {
+							write(level, block, last, tiles);
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					fail(e);
+				}
+			}
+		}
+
+		private void write (int level, int block, TileIndex last, List<TileData<T>> tiles) {
+			try {
+				_destination.writeTiles(_parameters._destinationId, _destinationSerializer, tiles);
+			} catch (Throwable t) {
+				fail(t);
+				return;
+			}
+			complete(level, block, last, tiles.size());
+		}
+
+		private void complete (int level, int block, TileIndex last, int tiles) {
+			try {
+				_tilesCopied.addAndGet(tiles);
+				_checkpoint.completeBlock(level, block, last);
+			} catch (IOException e) {
+				_failure.compareAndSet(null, e);
+			} finally {
+				_inFlight.release();
+			}
+		}
+
+		private void fail (Throwable t) {
+			_failure.compareAndSet(null, t);
+			_inFlight.release();
+		}
+
+		/*
+		 * Wait for every submitted block to be written
+		 */
+		void drain () throws InterruptedException, IOException {
+			_inFlight.acquire(_maxInFlight);
+			_inFlight.release(_maxInFlight);
+			Throwable failure = _failure.get();
+			if (null != failure) {
+				if (failure instanceof IOException) throw (IOException) failure;
+				throw new IOException("Error copying tiles", failure);
+			}
+		}
+
+		void close () throws IOException {
+			_readers.shutdownNow();
+			_writers.shutdownNow();
+			_checkpoint.close();
+		}
+	}
+
+	private static ThreadPoolExecutor createPool (final String name, int threads) {
+		return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+		                              new LinkedBlockingQueue<Runnable>(),
+		                              new ThreadFactory() {
+			                              private final AtomicInteger _count = new AtomicInteger(0);
+			                              @Override
+			                              public Thread newThread (Runnable r) {
+				                              Thread thread = new Thread(r, name+"-"+_count.incrementAndGet());
+				                              thread.setDaemon(true);
+				                              return thread;
+			                              }
+		                              });
 	}
 
-	private void doCopy(List<TileIndex> toCopy) throws IOException {
-		List<TileData<T>> tiles = _source.readTiles(_parameters._sourceId, _serializer, toCopy);
-		_destination.writeTiles(_parameters._destinationId, _serializer, tiles);
+	/*
+	 * Records which blocks and levels of a copy have completed, so an
+	 * interrupted copy can be resumed. The file is an append-only log: a
+	 * header giving the block size, then one line per completed block
+	 * ("level block x y", where x and y give the block's last tile) or level
+	 * ("level done"). A resumed copy restarts its scan of a level after the
+	 * last tile of the blocks completed in order from the first; block
+	 * numbers are only meaningful if the source is unchanged between runs.
+	 */
+	static class CopyCheckpoint {
+		private static final String BLOCK_SIZE_KEY = "blockSize";
+		private static final String LEVEL_DONE     = "done";
+
+		private Writer               _writer;
+		private Set<Integer>         _completeLevels;
+		private Set<Long>            _completeBlocks;
+		private Map<Long, TileIndex> _blockEnds;
+
+		CopyCheckpoint (String fileName, int blockSize) throws IOException {
+			_completeLevels = new HashSet<>();
+			_completeBlocks = new HashSet<>();
+			_blockEnds = new HashMap<>();
+			if (null == fileName || fileName.isEmpty()) {
+				_writer = null;
+				return;
+			}
+
+			File file = new File(fileName);
+			boolean resuming = file.exists() && file.length() > 0;
+			if (resuming) {
+				BufferedReader reader = new BufferedReader(new FileReader(file));
+				try {
+					String header = reader.readLine();
+					if (!(BLOCK_SIZE_KEY+" "+blockSize).equals(header)) {
+						throw new IOException("Checkpoint "+fileName+" was not written with a block size of "+blockSize);
+					}
+					String line;
+					while (null != (line = reader.readLine())) {
+						String[] fields = line.trim().split(" ");
+						// A partially-written last line is simply ignored
+						if (2 != fields.length && 4 != fields.length) continue;
+						try {
+							int level = Integer.parseInt(fields[0]);
+							if (LEVEL_DONE.equals(fields[1])) {
+								_completeLevels.add(level);
+							} else {
+								long key = blockKey(level, Integer.parseInt(fields[1]));
+								_completeBlocks.add(key);
+								if (4 == fields.length) {
+									_blockEnds.put(key, new TileIndex(level, Integer.parseInt(fields[2]), Integer.parseInt(fields[3])));
+								}
+							}
+						} catch (NumberFormatException e) {
+							continue;
+						}
+					}
+				} finally {
+					reader.close();
+				}
+			}
+
+			_writer = new BufferedWriter(new FileWriter(file, true));
+			if (!resuming) {
+				_writer.write(BLOCK_SIZE_KEY+" "+blockSize+"\n");
+				_writer.flush();
+			}
+		}
+
+		private static long blockKey (int level, int block) {
+			return (((long) level) << 32) | (block & 0xffffffffL);
+		}
+
+		synchronized boolean isLevelComplete (int level) {
+			return _completeLevels.contains(level);
+		}
+
+		synchronized boolean isBlockComplete (int level, int block) {
+			return _completeBlocks.contains(blockKey(level, block));
+		}
+
+		/**
+		 * Get the first block of a level that isn't known to be complete,
+		 * along with all those before it; a resumed scan of the level starts
+		 * with this block.
+		 */
+		synchronized int getResumeBlock (int level) {
+			int block = 0;
+			while (_blockEnds.containsKey(blockKey(level, block))) ++block;
+			return block;
+		}
+
+		/**
+		 * Get the last tile of a completed block, or null if it isn't known
+		 */
+		synchronized TileIndex getBlockEnd (int level, int block) {
+			return _blockEnds.get(blockKey(level, block));
+		}
+
+		synchronized void completeBlock (int level, int block, TileIndex last) throws IOException {
+			if (null == _writer) return;
+			_writer.write(level+" "+block+" "+last.getX()+" "+last.getY()+"\n");
+			_writer.flush();
+		}
+
+		synchronized void completeLevel (int level) throws IOException {
+			if (null == _writer) return;
+			_writer.write(level+" "+LEVEL_DONE+"\n");
+			_writer.flush();
+		}
+
+		synchronized void close () throws IOException {
+			if (null != _writer) {
+				_writer.close();
+				_writer = null;
+			}
+		}
 	}
 
 	private static FactoryProvider<PyramidIO> getPyramidIOFactoryProvider () {
@@ -228,7 +702,10 @@ public class CopyPyramid<T> {
 		return new JSONObject(whole.toString());
 	}
 
-	static class CopyParameters {
+	/**
+	 * The parameters of a pyramid copy
+	 */
+	public static class CopyParameters {
 		String _sourceId;
 		String _destinationId;
 		List<TileIndex> _indices;
@@ -237,8 +714,35 @@ public class CopyPyramid<T> {
 		int _minLevel;
 		int _maxLevel;
 		int _blockSize;
+		int _readThreads;
+		int _writeThreads;
+		String _checkpointFile;
 		CopyParameters (String sourceId, String destinationId, List<TileIndex> indices,
 		                int width, int height, int minLevel, int maxLevel, int blockSize) {
+			this(sourceId, destinationId, indices, width, height, minLevel, maxLevel, blockSize, 1, 1, null);
+		}
+
+		/**
+		 * @param sourceId The id of the source pyramid
+		 * @param destinationId The id of the destination pyramid
+		 * @param indices Root tiles restricting the area copied; null or
+		 *            empty to copy the whole pyramid
+		 * @param width The tile width, in bins
+		 * @param height The tile height, in bins
+		 * @param minLevel The numerically minimum level to copy
+		 * @param maxLevel The numerically maximum level to copy
+		 * @param blockSize The number of tiles to read or write at a time
+		 * @param readThreads The number of threads reading from the source
+		 * @param writeThreads The number of threads writing to the destination.
+		 *            Only use more than one if the destination pyramid IO can
+		 *            take concurrent writes; some (such as JDBCPyramidIO)
+		 *            can't.
+		 * @param checkpointFile A file in which to record progress, so an
+		 *            interrupted copy may be resumed; null or empty for none
+		 */
+		public CopyParameters (String sourceId, String destinationId, List<TileIndex> indices,
+		                       int width, int height, int minLevel, int maxLevel, int blockSize,
+		                       int readThreads, int writeThreads, String checkpointFile) {
 			_sourceId = sourceId;
 			_destinationId = destinationId;
 			if (null == indices || indices.isEmpty()) {
@@ -250,8 +754,14 @@ public class CopyPyramid<T> {
 			_height = height;
 			_minLevel = minLevel;
 			_maxLevel = maxLevel;
-			_blockSize = blockSize;
+			_blockSize = Math.max(1, blockSize);
+			_readThreads = Math.max(1, readThreads);
+			_writeThreads = Math.max(1, writeThreads);
+			_checkpointFile = checkpointFile;
+		}
 
+		public List<TileIndex> getIndices () {
+			return _indices;
 		}
 	}
 	private static class CopyParametersFactory extends ConfigurableFactory<CopyParameters> {
@@ -273,6 +783,9 @@ public class CopyPyramid<T> {
 		private static IntegerProperty MIN_LEVEL = new IntegerProperty("minimum", "The numerically minimum level to copy", 0);
 		private static IntegerProperty MAX_LEVEL = new IntegerProperty("maximum", "The numerically maximum level to copy", 18);
 		private static IntegerProperty BLOCK_SIZE = new IntegerProperty("blockSize", "The number of tiles to copy at a time", 100);
+		private static IntegerProperty READ_THREADS = new IntegerProperty("readThreads", "The number of threads reading tiles from the source", 1);
+		private static IntegerProperty WRITE_THREADS = new IntegerProperty("writeThreads", "The number of threads writing tiles to the destination.  Only use more than one if the destination can take concurrent writes.", 1);
+		private static StringProperty CHECKPOINT = new StringProperty("checkpoint", "A file in which to record copy progress, so an interrupted copy can be resumed", "");
 
 		protected CopyParametersFactory(ConfigurableFactory<?> parent, List<String> path) {
 			this(null, parent, path);
@@ -288,6 +801,9 @@ public class CopyPyramid<T> {
 			addProperty(MIN_LEVEL, Arrays.asList("level"));
 			addProperty(MAX_LEVEL, Arrays.asList("level"));
 			addProperty(BLOCK_SIZE);
+			addProperty(READ_THREADS);
+			addProperty(WRITE_THREADS);
+			addProperty(CHECKPOINT);
 		}
 
 		@Override
@@ -0,0 +1,399 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.binning.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+
+/**
+ * Separable blurs of planes of floats - either image channels, or dense bins
+ * of a tile - shared by image rendering and by tiling.
+ *
+ * Planes are held as an array of rows; several channels may be interleaved
+ * along each row (as in the unpacked alpha, red, green, and blue values of an
+ * image), in which case each channel is blurred independently.
+ *
+ * Each blur is a horizontal pass followed by a vertical one.  The vertical
+ * pass works a whole row at a time - the box blur keeps a row of running sums,
+ * and the kernel convolution accumulates whole rows of weighted input - so it
+ * walks memory in order, with inner loops simple enough for the JIT to
+ * vectorize.  Edges are handled by clamping, as in the box blur image filters.
+ *
+ * Large planes are split into bands of rows, which are processed in parallel
+ * on a shared fork-join pool.
+ */
+public class SeparableBlur {
+	// Rows processed by a single task
+	private static final int          BAND_HEIGHT        = 32;
+	// Planes smaller than this are not worth splitting between threads
+	private static final int          PARALLEL_THRESHOLD = 128 * 128;
+	private static final ForkJoinPool POOL               = new ForkJoinPool();
+
+
+
+	/**
+	 * Create a normalized, one-dimensional gaussian kernel. The outer product
+	 * of this kernel with itself is the equivalent two-dimensional kernel.
+	 *
+	 * @param radius The radius of the kernel; it will have 2*radius+1 elements
+	 * @param sigma The standard deviation of the gaussian
+	 */
+	public static float[] gaussianKernel (int radius, double sigma) {
+		double[] kernel = gaussianKernelDouble(radius, sigma);
+		float[] result = new float[kernel.length];
+		for (int i = 0; i < kernel.length; ++i) {
+			result[i] = (float) kernel[i];
+		}
+		return result;
+	}
+
+	/**
+	 * Create a normalized, one-dimensional gaussian kernel, in double precision.
+	 *
+	 * @see #gaussianKernel(int, double)
+	 */
+	public static double[] gaussianKernelDouble (int radius, double sigma) {
+		double[] kernel = new double[2 * radius + 1];
+		double sum = 0.0;
+		for (int i = 0; i < kernel.length; ++i) {
+			int u = i - radius;
+			kernel[i] = Math.exp(-(u * u) / (2 * sigma * sigma));
+			sum += kernel[i];
+		}
+		for (int i = 0; i < kernel.length; ++i) {
+			kernel[i] /= sum;
+		}
+		return kernel;
+	}
+
+	/**
+	 * Box blur a plane in place.  Several iterations approximate a gaussian
+	 * blur; the cost of each is independent of the radius.
+	 *
+	 * @param rows The rows of the plane, all the same length
+	 * @param channels The number of values interleaved in each cell of a row
+	 * @param radius The radius of the box, in cells; values less than 1 are
+	 *            treated as 1
+	 * @param iterations The number of times to apply the blur
+	 */
+	public static void boxBlur (float[][] rows, int channels, int radius, int iterations) {
+		int r = Math.max(1, radius);
+		float[][] scratch = newPlane(rows);
+		for (int i = 0; i < iterations; ++i) {
+			pass(new HorizontalBoxPass(rows, scratch, channels, r));
+			pass(new VerticalBoxPass(scratch, rows, r));
+		}
+	}
+
+	/**
+	 * Blur a plane in place with a symmetric, separable kernel, such as one
+	 * produced by {@link #gaussianKernel(int, double)}.
+	 *
+	 * @param rows The rows of the plane, all the same length
+	 * @param channels The number of values interleaved in each cell of a row
+	 * @param kernel The one-dimensional kernel, of odd length
+	 */
+	public static void convolve (float[][] rows, int channels, float[] kernel) {
+		float[][] scratch = newPlane(rows);
+		pass(new HorizontalKernelPass(rows, scratch, channels, kernel));
+		pass(new VerticalKernelPass(scratch, rows, kernel));
+	}
+
+
+
+	private static float[][] newPlane (float[][] like) {
+		return new float[like.length][0 == like.length ? 0 : like[0].length];
+	}
+
+	private static void pass (Pass pass) {
+		int height = pass._src.length;
+		if (height <= BAND_HEIGHT || height * pass._src[0].length < PARALLEL_THRESHOLD) {
+			pass.run(0, height);
+		} else {
+			List<BandTask> bands = new ArrayList<>();
+			for (int start = 0; start < height; start += BAND_HEIGHT) {
+				bands.add(new BandTask(pass, start, Math.min(height, start + BAND_HEIGHT)));
+			}
+			POOL.invoke(new BandsTask(bands));
+		}
+	}
+
+	private static class BandsTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private List<BandTask> _bands;
+
+		BandsTask (List<BandTask> bands) {
+			_bands = bands;
+		}
+
+		@Override
+		protected void compute () {
+			invokeAll(_bands);
+		}
+	}
+
+	private static class BandTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private Pass _pass;
+		private int  _start;
+		private int  _end;
+
+		BandTask (Pass pass, int start, int end) {
+			_pass = pass;
+			_start = start;
+			_end = end;
+		}
+
+		@Override
+		protected void compute () {
+			_pass.run(_start, _end);
+		}
+	}
+
+	/*
+	 * One pass of a blur, from one plane to another, which can be run on any
+	 * band of output rows independently.
+	 */
+	private static abstract class Pass {
+		final float[][] _src;
+		final float[][] _dst;
+
+		Pass (float[][] src, float[][] dst) {
+			_src = src;
+			_dst = dst;
+		}
+
+		abstract void run (int startRow, int endRow);
+	}
+
+	// A running-sum box filter along each row
+	private static class HorizontalBoxPass extends Pass {
+		private final int   _channels;
+		private final int   _radius;
+		private final float _scale;
+
+		HorizontalBoxPass (float[][] src, float[][] dst, int channels, int radius) {
+			super(src, dst);
+			_channels = channels;
+			_radius = radius;
+			_scale = 1.0f / (2 * radius + 1);
+		}
+
+		@Override
+		void run (int startRow, int endRow) {
+			for (int row = startRow; row < endRow; ++row) {
+				if (4 == _channels) {
+					filterFourChannelRow(_src[row], _dst[row]);
+				} else {
+					for (int c = 0; c < _channels; ++c) {
+						filterRow(_src[row], _dst[row], c);
+					}
+				}
+			}
+		}
+
+		// Filter all channels of a row of image pixels at once; the four
+		// independent sums keep the processor busier than one sum at a time.
+		private void filterFourChannelRow (float[] src, float[] dst) {
+			final int radius = _radius;
+			final float scale = _scale;
+			final int last = src.length / 4 - 1;
+
+			float sa = (radius + 1) * src[0];
+			float sr = (radius + 1) * src[1];
+			float sg = (radius + 1) * src[2];
+			float sb = (radius + 1) * src[3];
+			for (int i = 1; i <= radius; ++i) {
+				int n = Math.min(i, last) * 4;
+				sa += src[n];
+				sr += src[n + 1];
+				sg += src[n + 2];
+				sb += src[n + 3];
+			}
+
+			for (int x = 0; x <= last; ++x) {
+				int n = x * 4;
+				dst[n]     = sa * scale;
+				dst[n + 1] = sr * scale;
+				dst[n + 2] = sg * scale;
+				dst[n + 3] = sb * scale;
+
+				int add = Math.min(x + radius + 1, last) * 4;
+				int remove = Math.max(x - radius, 0) * 4;
+				sa += src[add]     - src[remove];
+				sr += src[add + 1] - src[remove + 1];
+				sg += src[add + 2] - src[remove + 2];
+				sb += src[add + 3] - src[remove + 3];
+			}
+		}
+
+		// Filter one channel of a row
+		private void filterRow (float[] src, float[] dst, int channel) {
+			final int radius = _radius;
+			final int step = _channels;
+			final int width = src.length / step;
+			final int last = width - 1;
+
+			float sum = (radius + 1) * src[channel];
+			for (int i = 1; i <= radius; ++i) {
+				sum += src[channel + Math.min(i, last) * step];
+			}
+
+			for (int x = 0; x < width; ++x) {
+				dst[channel + x * step] = sum * _scale;
+				sum += src[channel + Math.min(x + radius + 1, last) * step];
+				sum -= src[channel + Math.max(x - radius, 0) * step];
+			}
+		}
+	}
+
+	// A running-sum box filter down each column, a whole row at a time
+	private static class VerticalBoxPass extends Pass {
+		private final int   _radius;
+		private final float _scale;
+
+		VerticalBoxPass (float[][] src, float[][] dst, int radius) {
+			super(src, dst);
+			_radius = radius;
+			_scale = 1.0f / (2 * radius + 1);
+		}
+
+		private float[] clampedRow (int row) {
+			return _src[Math.min(Math.max(row, 0), _src.length - 1)];
+		}
+
+		@Override
+		void run (int startRow, int endRow) {
+			final int width = _src[0].length;
+			final float scale = _scale;
+
+			float[] sums = new float[width];
+			for (int j = -_radius; j <= _radius; ++j) {
+				float[] input = clampedRow(startRow + j);
+				for (int x = 0; x < width; ++x) {
+					sums[x] += input[x];
+				}
+			}
+
+			for (int row = startRow; row < endRow; ++row) {
+				float[] output = _dst[row];
+				float[] add = clampedRow(row + _radius + 1);
+				float[] remove = clampedRow(row - _radius);
+				for (int x = 0; x < width; ++x) {
+					output[x] = sums[x] * scale;
+					sums[x] += add[x] - remove[x];
+				}
+			}
+		}
+	}
+
+	// A direct convolution along each row
+	private static class HorizontalKernelPass extends Pass {
+		private final int     _channels;
+		private final float[] _kernel;
+		private final int     _radius;
+
+		HorizontalKernelPass (float[][] src, float[][] dst, int channels, float[] kernel) {
+			super(src, dst);
+			_channels = channels;
+			_kernel = kernel;
+			_radius = kernel.length / 2;
+		}
+
+		@Override
+		void run (int startRow, int endRow) {
+			for (int row = startRow; row < endRow; ++row) {
+				float[] src = _src[row];
+				float[] dst = _dst[row];
+				int width = src.length / _channels;
+				// Only cells near the ends of the row need clamping
+				int interiorStart = Math.min(_radius, width);
+				int interiorEnd = Math.max(interiorStart, width - _radius);
+				for (int c = 0; c < _channels; ++c) {
+					for (int x = 0; x < interiorStart; ++x) {
+						dst[x * _channels + c] = clampedSum(src, width, x, c);
+					}
+					for (int x = interiorStart; x < interiorEnd; ++x) {
+						float sum = 0.0f;
+						int start = (x - _radius) * _channels + c;
+						for (int k = 0; k < _kernel.length; ++k) {
+							sum += _kernel[k] * src[start + k * _channels];
+						}
+						dst[x * _channels + c] = sum;
+					}
+					for (int x = interiorEnd; x < width; ++x) {
+						dst[x * _channels + c] = clampedSum(src, width, x, c);
+					}
+				}
+			}
+		}
+
+		private float clampedSum (float[] src, int width, int x, int channel) {
+			float sum = 0.0f;
+			for (int k = 0; k < _kernel.length; ++k) {
+				int index = Math.min(Math.max(x + k - _radius, 0), width - 1);
+				sum += _kernel[k] * src[index * _channels + channel];
+			}
+			return sum;
+		}
+	}
+
+	// A direct convolution down each column, accumulating whole rows at a time
+	private static class VerticalKernelPass extends Pass {
+		private final float[] _kernel;
+		private final int     _radius;
+
+		VerticalKernelPass (float[][] src, float[][] dst, float[] kernel) {
+			super(src, dst);
+			_kernel = kernel;
+			_radius = kernel.length / 2;
+		}
+
+		@Override
+		void run (int startRow, int endRow) {
+			final int last = _src.length - 1;
+			final int width = _src[0].length;
+			for (int row = startRow; row < endRow; ++row) {
+				float[] output = _dst[row];
+				for (int x = 0; x < width; ++x) {
+					output[x] = 0.0f;
+				}
+				for (int k = 0; k < _kernel.length; ++k) {
+					float weight = _kernel[k];
+					float[] input = _src[Math.min(Math.max(row + k - _radius, 0), last)];
+					for (int x = 0; x < width; ++x) {
+						output[x] += weight * input[x];
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.binning;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IndexKeysTests {
+	@Test
+	public void testTileKeyRoundTrip () {
+		Random random = new Random(17);
+		for (int level=0; level<=IndexKeys.MAX_LEVEL; ++level) {
+			int pow2 = 1 << level;
+			for (int i=0; i<100; ++i) {
+				int x = random.nextInt(pow2);
+				int y = random.nextInt(pow2);
+				long key = IndexKeys.tileKey(level, x, y);
+				Assert.assertTrue(key >= 0);
+				Assert.assertEquals(level, IndexKeys.getLevel(key));
+				Assert.assertEquals(x, IndexKeys.getX(key));
+				Assert.assertEquals(y, IndexKeys.getY(key));
+				Assert.assertEquals(new TileIndex(level, x, y, 64, 32), IndexKeys.toTileIndex(key, 64, 32));
+			}
+		}
+	}
+
+	@Test
+	public void testUnencodableTiles () {
+		Assert.assertFalse(IndexKeys.isEncodable(2, 4, 0));
+		Assert.assertFalse(IndexKeys.isEncodable(2, 0, -1));
+		Assert.assertFalse(IndexKeys.isEncodable(-1, 0, 0));
+		Assert.assertFalse(IndexKeys.isEncodable(IndexKeys.MAX_LEVEL+1, 0, 0));
+		Assert.assertTrue(IndexKeys.isEncodable(2, 3, 3));
+		try {
+			IndexKeys.tileKey(new TileIndex(3, 8, 1));
+			Assert.fail("Out-of-pyramid tile should not have been encoded");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testTileKeyArithmetic () {
+		TileIndex tile = new TileIndex(5, 13, 22);
+		long key = IndexKeys.tileKey(tile);
+
+		Assert.assertEquals(IndexKeys.tileKey(TileIndex.getParent(tile)), IndexKeys.getParent(key));
+		Assert.assertEquals(IndexKeys.tileKey(2, 1, 2), IndexKeys.getAncestor(key, 2));
+		Assert.assertEquals(key, IndexKeys.getAncestor(key, 5));
+		Assert.assertEquals(IndexKeys.NO_TILE, IndexKeys.getAncestor(key, 6));
+		Assert.assertEquals(IndexKeys.NO_TILE, IndexKeys.getParent(IndexKeys.tileKey(0, 0, 0)));
+
+		// Children come in the same order as TileIndex.getChildren
+		int quadrant = 0;
+		for (TileIndex child: TileIndex.getChildren(tile)) {
+			long childKey = IndexKeys.getChild(key, quadrant);
+			Assert.assertEquals(IndexKeys.tileKey(child), childKey);
+			Assert.assertEquals(key, IndexKeys.getParent(childKey));
+			++quadrant;
+		}
+
+		Assert.assertEquals(IndexKeys.tileKey(5, 12, 23), IndexKeys.getNeighbor(key, -1, 1));
+		Assert.assertEquals(IndexKeys.NO_TILE, IndexKeys.getNeighbor(IndexKeys.tileKey(5, 31, 0), 1, 0));
+		Assert.assertEquals(IndexKeys.NO_TILE, IndexKeys.getNeighbor(IndexKeys.tileKey(5, 3, 0), 0, -1));
+	}
+
+	@Test
+	public void testMortonOrder () {
+		// Within a level, descendants of any tile form a contiguous run of keys
+		int level = 4;
+		int pow2 = 1 << level;
+		long[] keys = new long[pow2 * pow2];
+		for (int x=0; x<pow2; ++x)
+			for (int y=0; y<pow2; ++y)
+				keys[x * pow2 + y] = IndexKeys.tileKey(level, x, y);
+		Arrays.sort(keys);
+
+		for (int ancestorLevel=0; ancestorLevel<=level; ++ancestorLevel) {
+			for (int i=1; i<keys.length; ++i) {
+				long a = IndexKeys.getAncestor(keys[i-1], ancestorLevel);
+				long b = IndexKeys.getAncestor(keys[i], ancestorLevel);
+				Assert.assertTrue(a <= b);
+			}
+		}
+
+		long parent = IndexKeys.tileKey(2, 1, 3);
+		long[] range = IndexKeys.getDescendantMortonRange(parent, level);
+		for (long key: keys) {
+			boolean inRange = range[0] <= IndexKeys.getMortonCode(key) && IndexKeys.getMortonCode(key) <= range[1];
+			Assert.assertEquals(parent == IndexKeys.getAncestor(key, 2), inRange);
+		}
+	}
+
+	@Test
+	public void testBinKeys () {
+		int[] values = {0, 1, 255, 65536, Integer.MAX_VALUE, -1, -256, Integer.MIN_VALUE};
+		for (int x: values) {
+			for (int y: values) {
+				long key = IndexKeys.binKey(x, y);
+				Assert.assertEquals(x, IndexKeys.getBinX(key));
+				Assert.assertEquals(y, IndexKeys.getBinY(key));
+				Assert.assertEquals(new BinIndex(x, y), IndexKeys.toBinIndex(key));
+			}
+		}
+
+		// Non-negative bins sort by x, then y
+		Assert.assertTrue(IndexKeys.binKey(1, 0) > IndexKeys.binKey(0, 255));
+		Assert.assertTrue(IndexKeys.binKey(3, 7) > IndexKeys.binKey(3, 6));
+	}
+
+	@Test
+	public void testUniversalBinKeys () {
+		TileIndex sample = new TileIndex(4, 0, 0, 8, 16);
+		for (int ux=0; ux<16*8; ux += 3) {
+			for (int uy=0; uy<16*16; uy += 5) {
+				BinIndex universal = new BinIndex(ux, uy);
+				TileAndBinIndices expected = TileIndex.universalBinIndexToTileBinIndex(sample, universal);
+				long universalKey = IndexKeys.binKey(universal);
+				Assert.assertEquals(IndexKeys.tileKey(expected.getTile()),
+				                    IndexKeys.universalBinKeyToTileKey(4, 8, 16, universalKey));
+				Assert.assertEquals(IndexKeys.binKey(expected.getBin()),
+				                    IndexKeys.universalBinKeyToTileBinKey(8, 16, universalKey));
+			}
+		}
+	}
+}
@@ -25,12 +25,14 @@ package com.oculusinfo.binning;
 
 
 import com.oculusinfo.binning.impl.AOITilePyramid;
+import com.oculusinfo.binning.impl.WebMercatorTilePyramid;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -173,4 +175,78 @@ public class PyramidComparatorTests {
 			}
 		}
 	}
+
+	@Test
+	public void testTileKeyRanges () {
+		// Every point must have a key within the key range of each tile containing it,
+		// and outside the key range of every other tile on the same level
+		for (int level = 0; level < 5; ++level) {
+			int tiles = 1 << level;
+			for (int tx = 0; tx < tiles; ++tx) {
+				for (int ty = 0; ty < tiles; ++ty) {
+					TileIndex tile = new TileIndex(level, tx, ty);
+					long minKey = _comparator.getMinimumComparisonKey(tile);
+					long maxKey = _comparator.getMaximumComparisonKey(tile);
+					Assert.assertTrue(minKey <= maxKey);
+
+					for (int x = 0; x < 16; ++x) {
+						for (int y = 0; y < 16; ++y) {
+							long key = _comparator.getComparisonKey(x + 0.5, y + 0.5);
+							boolean inRange = minKey <= key && key <= maxKey;
+							boolean inTile = tile.equals(_pyramid.rootToTile(x + 0.5, y + 0.5, level));
+							Assert.assertEquals("Point ["+x+", "+y+"] misidentified relative to tile "+tile,
+							                    inTile, inRange);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testPackedTileKeyRanges () {
+		// Key ranges from packed tile keys must match those from tile indices
+		for (int level = 0; level < 7; ++level) {
+			int tiles = 1 << level;
+			for (int tx = 0; tx < tiles; ++tx) {
+				for (int ty = 0; ty < tiles; ++ty) {
+					TileIndex tile = new TileIndex(level, tx, ty);
+					long tileKey = IndexKeys.tileKey(tile);
+					Assert.assertEquals(_comparator.getMinimumComparisonKey(tile),
+					                    _comparator.getMinimumComparisonKey(tileKey));
+					Assert.assertEquals(_comparator.getMaximumComparisonKey(tile),
+					                    _comparator.getMaximumComparisonKey(tileKey));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testBoundaryPointsMatchLocator () {
+		// Points on or next to Web Mercator tile boundaries must sort into the
+		// tiles in which a TileLocator bins them, at every level
+		int level = 10;
+		WebMercatorTilePyramid pyramid = new WebMercatorTilePyramid();
+		PyramidComparator comparator = new PyramidComparator(pyramid, level);
+		TileLocator locator = new TileLocator(pyramid, 256, 256, level);
+
+		for (int t = 0; t < (1 << level); ++t) {
+			Rectangle2D bounds = pyramid.getTileBounds(new TileIndex(level, t, t));
+			double[] xs = {bounds.getMinX(), Math.nextUp(bounds.getMinX()), Math.nextAfter(bounds.getMinX(), -180.0)};
+			double[] ys = {bounds.getMinY(), Math.nextUp(bounds.getMinY()), Math.nextAfter(bounds.getMinY(), -90.0)};
+			for (double x: xs) {
+				for (double y: ys) {
+					long key = comparator.getComparisonKey(x, y);
+					long universalX = locator.rootToUniversalX(x);
+					long universalY = locator.rootToUniversalY(y);
+					for (int l = 0; l <= level; ++l) {
+						TileIndex tile = locator.getTile(universalX, universalY, l);
+						Assert.assertTrue("Point ["+x+", "+y+"] sorted outside of its tile "+tile,
+						                  comparator.getMinimumComparisonKey(tile) <= key
+						                  && key <= comparator.getMaximumComparisonKey(tile));
+					}
+				}
+			}
+		}
+	}
 }
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.binning;
+
+import com.oculusinfo.binning.impl.AOITilePyramid;
+import com.oculusinfo.binning.impl.WebMercatorTilePyramid;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class TileLocatorTests {
+	private static final int MAX_LEVEL = 12;
+
+	private void checkAgainstPyramid (NormalizingTilePyramid pyramid, int xBins, int yBins,
+	                                  double minX, double minY, double maxX, double maxY) {
+		TileLocator locator = new TileLocator(pyramid, xBins, yBins, MAX_LEVEL);
+		Random random = new Random(1243);
+		for (int i=0; i<2000; ++i) {
+			double x = minX + random.nextDouble()*(maxX-minX);
+			double y = minY + random.nextDouble()*(maxY-minY);
+			long ux = locator.rootToUniversalX(x);
+			long uy = locator.rootToUniversalY(y);
+			for (int level=0; level<=MAX_LEVEL; ++level) {
+				TileIndex tile = pyramid.rootToTile(x, y, level, xBins, yBins);
+				Assert.assertEquals(tile, locator.getTile(ux, uy, level));
+				Assert.assertEquals(pyramid.rootToBin(x, y, tile), locator.getBin(ux, uy, level));
+			}
+		}
+	}
+
+	@Test
+	public void testMercatorLocation () {
+		checkAgainstPyramid(new WebMercatorTilePyramid(), 256, 256, -180, -85, 180, 85);
+	}
+
+	@Test
+	public void testAOILocation () {
+		checkAgainstPyramid(new AOITilePyramid(-10, 5, 30, 25), 100, 100, -10, 5, 30, 25);
+	}
+
+	@Test
+	public void testOutOfBoundsLocation () {
+		AOITilePyramid pyramid = new AOITilePyramid(0, 0, 16, 16);
+		TileLocator locator = new TileLocator(pyramid, 4, 4, 3);
+		long ux = locator.rootToUniversalX(-0.5);
+		long uy = locator.rootToUniversalY(16.5);
+		for (int level=0; level<=3; ++level) {
+			TileIndex tile = pyramid.rootToTile(-0.5, 16.5, level, 4, 4);
+			Assert.assertEquals(tile, locator.getTile(ux, uy, level));
+			Assert.assertEquals(pyramid.rootToBin(-0.5, 16.5, tile), locator.getBin(ux, uy, level));
+		}
+	}
+
+	@Test
+	public void testBatchLocation () {
+		WebMercatorTilePyramid pyramid = new WebMercatorTilePyramid();
+		TileLocator locator = new TileLocator(pyramid, 256, 256, 8);
+		double[] lon = {-179.5, -73.98, 0.0, 2.35, 151.2};
+		double[] lat = {-84.0, 40.75, 0.0, 48.86, -33.87};
+		int n = lon.length;
+		long[] ux = new long[n];
+		long[] uy = new long[n];
+		int[] tileX = new int[n];
+		int[] tileY = new int[n];
+		int[] binX = new int[n];
+		int[] binY = new int[n];
+		locator.rootToUniversal(lon, lat, n, ux, uy);
+		for (int level=0; level<=8; ++level) {
+			locator.universalToTileAndBin(ux, uy, n, level, tileX, tileY, binX, binY);
+			for (int i=0; i<n; ++i) {
+				TileIndex tile = pyramid.rootToTile(lon[i], lat[i], level);
+				BinIndex bin = pyramid.rootToBin(lon[i], lat[i], tile);
+				Assert.assertEquals(tile.getX(), tileX[i]);
+				Assert.assertEquals(tile.getY(), tileY[i]);
+				Assert.assertEquals(bin.getX(), binX[i]);
+				Assert.assertEquals(bin.getY(), binY[i]);
+			}
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testLevelOutOfRange () {
+		TileLocator locator = new TileLocator(new WebMercatorTilePyramid(), 256, 256, 4);
+		locator.getTile(0, 0, 5);
+	}
+}
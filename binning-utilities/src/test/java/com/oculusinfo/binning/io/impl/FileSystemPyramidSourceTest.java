@@ -28,6 +28,7 @@ import com.oculusinfo.binning.TileData;
 import com.oculusinfo.binning.TileIndex;
 import com.oculusinfo.binning.impl.DenseTileData;
 import com.oculusinfo.binning.io.PyramidIO;
+import com.oculusinfo.binning.io.ScannablePyramidIO;
 import com.oculusinfo.binning.io.serialization.TileSerializer;
 import com.oculusinfo.binning.io.serialization.impl.PrimitiveAvroSerializer;
 
@@ -89,6 +90,43 @@ public class FileSystemPyramidSourceTest {
 		}
 	}
 
+	@Test
+	public void scanTilesTest () throws IOException {
+		FileBasedPyramidIO io = new FileBasedPyramidIO(new FileSystemPyramidSource(SOURCE_DIR, SOURCE_EXT));
+		TileSerializer<Integer> serializer = new PrimitiveAvroSerializer<>(Integer.class, CodecFactory.nullCodec());
+
+		ArrayList<TileData<Integer>> writeTiles = new ArrayList<>();
+		writeTiles.add(new DenseTileData<Integer>(new TileIndex(LEVEL, 10, 2), 0));
+		writeTiles.add(new DenseTileData<Integer>(new TileIndex(LEVEL, X_INDEX, Y_INDEX), 0));
+		writeTiles.add(new DenseTileData<Integer>(new TileIndex(LEVEL, X_INDEX, 11), 0));
+		writeTiles.add(new DenseTileData<Integer>(new TileIndex(LEVEL+1, 0, 0), 0));
+		writeAvroTiles(io, serializer, SOURCE_LAYER, writeTiles);
+
+		List<TileIndex> scanned = scanAll(io, LEVEL, null);
+		Assert.assertEquals(3, scanned.size());
+		Assert.assertEquals(new TileIndex(LEVEL, X_INDEX, Y_INDEX), scanned.get(0));
+		Assert.assertEquals(new TileIndex(LEVEL, X_INDEX, 11), scanned.get(1));
+		Assert.assertEquals(new TileIndex(LEVEL, 10, 2), scanned.get(2));
+
+		// Resuming a scan starts right after the given tile
+		Assert.assertEquals(scanned.subList(1, 3), scanAll(io, LEVEL, scanned.get(0)));
+		Assert.assertEquals(scanned.subList(2, 3), scanAll(io, LEVEL, scanned.get(1)));
+		Assert.assertTrue(scanAll(io, LEVEL, scanned.get(2)).isEmpty());
+
+		Assert.assertTrue(scanAll(io, LEVEL+2, null).isEmpty());
+	}
+
+	private static List<TileIndex> scanAll (ScannablePyramidIO io, int level, TileIndex after) throws IOException {
+		List<TileIndex> tiles = new ArrayList<>();
+		ScannablePyramidIO.TileScan scan = io.scanTiles(SOURCE_LAYER, level, after);
+		try {
+			while (scan.hasNext()) tiles.add(scan.next());
+		} finally {
+			scan.close();
+		}
+		return tiles;
+	}
+
 	@After
 	public void removeWrittenFile() {
 		try {
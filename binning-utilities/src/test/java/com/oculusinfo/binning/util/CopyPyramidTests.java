@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.binning.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.oculusinfo.binning.TileData;
+import com.oculusinfo.binning.TileIndex;
+import com.oculusinfo.binning.impl.DenseTileData;
+import com.oculusinfo.binning.io.ScannablePyramidIO;
+import com.oculusinfo.binning.io.TestPyramidIO;
+import com.oculusinfo.binning.io.serialization.TileSerializer;
+
+
+
+public class CopyPyramidTests {
+	private static final int BINS = 4;
+
+	private File _checkpoint;
+
+	@Before
+	public void setup () throws IOException {
+		_checkpoint = File.createTempFile("copy-pyramid", ".checkpoint");
+		_checkpoint.delete();
+	}
+
+	@After
+	public void teardown () {
+		_checkpoint.delete();
+	}
+
+	// A thread-safe in-memory pyramid that can list its tiles, and counts reads
+	private static class ScanningPyramidIO extends TestPyramidIO implements ScannablePyramidIO {
+		private Set<TileIndex>  _tiles = new TreeSet<>();
+		private boolean         _scannable;
+		private int             _tilesRequested = 0;
+		private List<TileIndex> _scanStarts = new ArrayList<>();
+
+		ScanningPyramidIO (boolean scannable) {
+			_scannable = scannable;
+		}
+
+		@Override
+		public synchronized <T> void writeTiles (String pyramidId, TileSerializer<T> serializer,
+		                                         Iterable<TileData<T>> data) throws IOException {
+			for (TileData<T> tile: data) _tiles.add(tile.getDefinition());
+			super.writeTiles(pyramidId, serializer, data);
+		}
+
+		@Override
+		public synchronized <T> List<TileData<T>> readTiles (String pyramidId, TileSerializer<T> serializer,
+		                                                     Iterable<TileIndex> tiles) throws IOException {
+			for (TileIndex tile: tiles) ++_tilesRequested;
+			return super.readTiles(pyramidId, serializer, tiles);
+		}
+
+		@Override
+		public synchronized TileScan scanTiles (String pyramidId, int level, TileIndex after) {
+			if (!_scannable) return null;
+			_scanStarts.add(after);
+			final List<TileIndex> result = new ArrayList<>();
+			for (TileIndex tile: _tiles) {
+				if (tile.getLevel() != level) continue;
+				if (null != after && (tile.getY() < after.getY() || (tile.getY() == after.getY() && tile.getX() <= after.getX()))) continue;
+				result.add(new TileIndex(level, tile.getX(), tile.getY()));
+			}
+			return new TileScan() {
+				private Iterator<TileIndex> _iterator = result.iterator();
+				@Override
+				public boolean hasNext () {
+					return _iterator.hasNext();
+				}
+				@Override
+				public TileIndex next () {
+					return _iterator.next();
+				}
+				@Override
+				public void remove () {
+					throw new UnsupportedOperationException();
+				}
+				@Override
+				public void close () {
+				}
+			};
+		}
+
+		synchronized Set<TileIndex> getTiles () {
+			return new TreeSet<>(_tiles);
+		}
+	}
+
+	// Writes a tag, then the bins, so tiles written by one serializer can't be read by another
+	private static class TaggedSerializer implements TileSerializer<Integer> {
+		private static final long serialVersionUID = 1L;
+		private int _tag;
+
+		TaggedSerializer (int tag) {
+			_tag = tag;
+		}
+
+		@Override
+		public TypeDescriptor getBinTypeDescription () {
+			return new TypeDescriptor(Integer.class);
+		}
+
+		@Override
+		public TileData<Integer> deserialize (TileIndex index, InputStream rawData) throws IOException {
+			DataInputStream input = new DataInputStream(rawData);
+			if (_tag != input.readInt()) throw new IOException("Wrong tag");
+			TileData<Integer> tile = new DenseTileData<>(index);
+			for (int x=0; x<index.getXBins(); ++x)
+				for (int y=0; y<index.getYBins(); ++y)
+					tile.setBin(x, y, input.readInt());
+			return tile;
+		}
+
+		@Override
+		public void serialize (TileData<Integer> data, OutputStream output) throws IOException {
+			DataOutputStream stream = new DataOutputStream(output);
+			stream.writeInt(_tag);
+			for (int x=0; x<data.getDefinition().getXBins(); ++x)
+				for (int y=0; y<data.getDefinition().getYBins(); ++y)
+					stream.writeInt(data.getBin(x, y));
+			stream.flush();
+		}
+	}
+
+	private static TileIndex index (int level, int x, int y) {
+		return new TileIndex(level, x, y, BINS, BINS);
+	}
+
+	private static ScanningPyramidIO createSource (boolean scannable, TileIndex... indices) throws IOException {
+		ScanningPyramidIO source = new ScanningPyramidIO(scannable);
+		List<TileData<Integer>> tiles = new ArrayList<>();
+		for (TileIndex index: indices) {
+			TileData<Integer> tile = new DenseTileData<>(index);
+			for (int x=0; x<BINS; ++x)
+				for (int y=0; y<BINS; ++y)
+					tile.setBin(x, y, index.getLevel()*1000 + index.getX()*100 + index.getY()*10 + x + y);
+			tiles.add(tile);
+		}
+		source.writeTiles("source", new TaggedSerializer(1), tiles);
+		source.writeMetaData("source", "{}");
+		return source;
+	}
+
+	private static CopyPyramid.CopyParameters parameters (int minLevel, int maxLevel, String checkpoint, TileIndex... roots) {
+		return new CopyPyramid.CopyParameters("source", "destination", Arrays.asList(roots), BINS, BINS,
+		                                      minLevel, maxLevel, 2, 3, 2, checkpoint);
+	}
+
+	private static Set<TileIndex> set (TileIndex... indices) {
+		return new TreeSet<>(Arrays.asList(indices));
+	}
+
+	@Test
+	public void testCopyUnscannableSource () throws IOException {
+		TileIndex[] indices = {index(0, 0, 0), index(1, 1, 0), index(2, 3, 1), index(3, 7, 7), index(5, 0, 0)};
+		ScanningPyramidIO source = createSource(false, indices);
+		ScanningPyramidIO destination = new ScanningPyramidIO(false);
+		CopyPyramid.CopyParameters parameters = parameters(0, 3, null);
+		new CopyPyramid<Integer>(source, destination, new TaggedSerializer(1), parameters).copy(parameters.getIndices());
+
+		Assert.assertEquals(set(index(0, 0, 0), index(1, 1, 0), index(2, 3, 1), index(3, 7, 7)), destination.getTiles());
+		Assert.assertEquals("{}", destination.readMetaData("destination"));
+		// Every possible tile on levels 0 through 3 was tried
+		Assert.assertEquals(1 + 4 + 16 + 64, source._tilesRequested);
+	}
+
+	@Test
+	public void testCopyScannableSourceReadsOnlyExistingTiles () throws IOException {
+		TileIndex[] indices = {index(0, 0, 0), index(2, 3, 1), index(3, 7, 7), index(3, 0, 1)};
+		ScanningPyramidIO source = createSource(true, indices);
+		ScanningPyramidIO destination = new ScanningPyramidIO(false);
+		CopyPyramid.CopyParameters parameters = parameters(0, 3, null);
+		new CopyPyramid<Integer>(source, destination, new TaggedSerializer(1), parameters).copy(parameters.getIndices());
+
+		Assert.assertEquals(set(indices), destination.getTiles());
+		Assert.assertEquals(indices.length, source._tilesRequested);
+
+		TileIndex copied = index(2, 3, 1);
+		TileData<Integer> tile = destination.readTiles("destination", new TaggedSerializer(1),
+		                                               Collections.singletonList(copied)).get(0);
+		Assert.assertEquals(2000 + 300 + 10 + 3 + 2, tile.getBin(3, 2).intValue());
+	}
+
+	@Test
+	public void testRootsRestrictCopy () throws IOException {
+		for (boolean scannable: new boolean[] {false, true}) {
+			TileIndex[] indices = {index(0, 0, 0), index(1, 0, 0), index(1, 1, 1), index(2, 1, 1), index(2, 2, 2), index(3, 0, 3)};
+			ScanningPyramidIO source = createSource(scannable, indices);
+			ScanningPyramidIO destination = new ScanningPyramidIO(false);
+			// Two overlapping roots; nothing should be copied twice, and everything above them should be.
+			CopyPyramid.CopyParameters parameters = parameters(0, 3, null, index(1, 0, 0), index(2, 1, 1));
+			new CopyPyramid<Integer>(source, destination, new TaggedSerializer(1), parameters).copy(parameters.getIndices());
+
+			Assert.assertEquals(set(index(0, 0, 0), index(1, 0, 0), index(2, 1, 1), index(3, 0, 3)), destination.getTiles());
+			if (!scannable) {
+				// 1 ancestor, 1 tile on level 1, 4 on level 2, 16 on level 3
+				Assert.assertEquals(1 + 1 + 4 + 16, source._tilesRequested);
+			}
+		}
+	}
+
+	@Test
+	public void testReserialization () throws IOException {
+		ScanningPyramidIO source = createSource(true, index(1, 0, 1), index(1, 1, 1));
+		ScanningPyramidIO destination = new ScanningPyramidIO(false);
+		CopyPyramid.CopyParameters parameters = parameters(0, 2, null);
+		new CopyPyramid<Integer>(source, destination, new TaggedSerializer(1), new TaggedSerializer(2), parameters)
+			.copy(parameters.getIndices());
+
+		List<TileData<Integer>> tiles = destination.readTiles("destination", new TaggedSerializer(2),
+		                                                      Arrays.asList(index(1, 0, 1), index(1, 1, 1)));
+		Assert.assertEquals(2, tiles.size());
+		Assert.assertEquals(1000 + 100 + 10, tiles.get(1).getBin(0, 0).intValue());
+		try {
+			destination.readTiles("destination", new TaggedSerializer(1), Arrays.asList(index(1, 0, 1)));
+			Assert.fail("Destination tiles should have been re-serialized");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testCheckpointResume () throws IOException {
+		TileIndex[] indices = {index(0, 0, 0), index(1, 0, 0), index(1, 1, 0), index(1, 0, 1), index(2, 0, 0), index(2, 3, 3)};
+
+		// Pretend level 0 and the first block of level 1 were already copied
+		FileWriter writer = new FileWriter(_checkpoint);
+		writer.write("blockSize 2\n0 done\n1 0\n");
+		writer.close();
+
+		ScanningPyramidIO source = createSource(true, indices);
+		ScanningPyramidIO destination = new ScanningPyramidIO(false);
+		CopyPyramid.CopyParameters parameters = parameters(0, 2, _checkpoint.getPath());
+		new CopyPyramid<Integer>(source, destination, new TaggedSerializer(1), parameters).copy(parameters.getIndices());
+
+		// Level 1 scans as (0, 0), (1, 0), (0, 1); the first block is (0, 0), (1, 0)
+		Assert.assertEquals(set(index(1, 0, 1), index(2, 0, 0), index(2, 3, 3)), destination.getTiles());
+
+		// A second run finds everything complete
+		ScanningPyramidIO secondDestination = new ScanningPyramidIO(false);
+		new CopyPyramid<Integer>(source, secondDestination, new TaggedSerializer(1), parameters).copy(parameters.getIndices());
+		Assert.assertTrue(secondDestination.getTiles().isEmpty());
+	}
+
+	@Test
+	public void testCheckpointResumesScan () throws IOException {
+		TileIndex[] indices = {index(1, 0, 0), index(1, 1, 0), index(1, 0, 1), index(1, 1, 1), index(1, 0, 2)};
+
+		// Blocks 0 and 2 of level 1 were copied, but not block 1
+		FileWriter writer = new FileWriter(_checkpoint);
+		writer.write("blockSize 2\n1 0 1 0\n1 2 0 2\n");
+		writer.close();
+
+		for (boolean scannable: new boolean[] {true, false}) {
+			ScanningPyramidIO source = createSource(scannable, indices);
+			ScanningPyramidIO destination = new ScanningPyramidIO(false);
+			CopyPyramid.CopyParameters parameters = parameters(1, 1, _checkpoint.getPath());
+			new CopyPyramid<Integer>(source, destination, new TaggedSerializer(1), parameters).copy(parameters.getIndices());
+
+			if (scannable) {
+				// The scan restarts after the last tile of block 0, rather than from the start of the level
+				Assert.assertEquals(Arrays.asList(new TileIndex(1, 1, 0)), source._scanStarts);
+				Assert.assertEquals(set(index(1, 0, 1), index(1, 1, 1)), destination.getTiles());
+				Assert.assertEquals(2, source._tilesRequested);
+			} else {
+				// Level 1 candidates run (0, 0), (0, 1), (1, 0), (1, 1), so resuming after (1, 0) leaves only (1, 1)
+				Assert.assertEquals(set(index(1, 1, 1)), destination.getTiles());
+				Assert.assertEquals(1, source._tilesRequested);
+			}
+
+			// Start over for the unscannable pass
+			_checkpoint.delete();
+			writer = new FileWriter(_checkpoint);
+			writer.write("blockSize 2\n1 0 1 0\n1 2 0 2\n");
+			writer.close();
+		}
+	}
+
+	@Test(expected=IOException.class)
+	public void testCheckpointBlockSizeMismatch () throws IOException {
+		FileWriter writer = new FileWriter(_checkpoint);
+		writer.write("blockSize 100\n");
+		writer.close();
+
+		ScanningPyramidIO source = createSource(true, index(0, 0, 0));
+		CopyPyramid.CopyParameters parameters = parameters(0, 0, _checkpoint.getPath());
+		new CopyPyramid<Integer>(source, new ScanningPyramidIO(false), new TaggedSerializer(1), parameters)
+			.copy(parameters.getIndices());
+	}
+}
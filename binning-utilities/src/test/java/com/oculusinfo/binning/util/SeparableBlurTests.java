@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.binning.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+
+public class SeparableBlurTests {
+	private static final float EPSILON = 1E-4f;
+
+	private static float[] randomPlane (int width, int height) {
+		Random random = new Random(width * 31 + height);
+		float[] plane = new float[width * height];
+		for (int i = 0; i < plane.length; ++i) {
+			plane[i] = random.nextFloat() * 255.0f;
+		}
+		return plane;
+	}
+
+	private static float[][] toRows (float[] plane, int width, int height) {
+		float[][] rows = new float[height][];
+		for (int y = 0; y < height; ++y) {
+			rows[y] = Arrays.copyOfRange(plane, y * width, (y + 1) * width);
+		}
+		return rows;
+	}
+
+	private static float[] fromRows (float[][] rows) {
+		int width = rows[0].length;
+		float[] plane = new float[rows.length * width];
+		for (int y = 0; y < rows.length; ++y) {
+			System.arraycopy(rows[y], 0, plane, y * width, width);
+		}
+		return plane;
+	}
+
+	private static float[] convolve (float[] plane, int width, int height, float[] kernel) {
+		float[][] rows = toRows(plane, width, height);
+		SeparableBlur.convolve(rows, 1, kernel);
+		return fromRows(rows);
+	}
+
+	private static float[] boxBlur (float[] plane, int width, int height, int radius, int iterations) {
+		float[][] rows = toRows(plane, width, height);
+		SeparableBlur.boxBlur(rows, 1, radius, iterations);
+		return fromRows(rows);
+	}
+
+	private static float clamped (float[] plane, int width, int height, int x, int y) {
+		x = Math.min(Math.max(x, 0), width - 1);
+		y = Math.min(Math.max(y, 0), height - 1);
+		return plane[y * width + x];
+	}
+
+	// Straightforward two-dimensional convolution, with clamped edges
+	private static float[] naiveConvolve (float[] plane, int width, int height, float[] kernel) {
+		int radius = kernel.length / 2;
+		float[] result = new float[plane.length];
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				double sum = 0.0;
+				for (int j = -radius; j <= radius; ++j) {
+					for (int i = -radius; i <= radius; ++i) {
+						sum += kernel[i + radius] * kernel[j + radius] * clamped(plane, width, height, x + i, y + j);
+					}
+				}
+				result[y * width + x] = (float) sum;
+			}
+		}
+		return result;
+	}
+
+	private static float[] boxKernel (int radius) {
+		float[] kernel = new float[2 * radius + 1];
+		for (int i = 0; i < kernel.length; ++i) {
+			kernel[i] = 1.0f / kernel.length;
+		}
+		return kernel;
+	}
+
+	private static void assertPlanesEqual (float[] expected, float[] actual, float epsilon) {
+		Assert.assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; ++i) {
+			Assert.assertEquals("Index " + i, expected[i], actual[i], epsilon);
+		}
+	}
+
+	@Test
+	public void testGaussianKernel () {
+		float[] kernel = SeparableBlur.gaussianKernel(3, 1.5);
+		Assert.assertEquals(7, kernel.length);
+		float sum = 0.0f;
+		for (int i = 0; i < kernel.length; ++i) {
+			sum += kernel[i];
+			Assert.assertEquals(kernel[i], kernel[kernel.length - 1 - i], 0.0f);
+		}
+		Assert.assertEquals(1.0f, sum, EPSILON);
+		Assert.assertTrue(kernel[3] > kernel[2]);
+	}
+
+	@Test
+	public void testConvolveMatchesNaive () {
+		int width = 37, height = 23;
+		float[] plane = randomPlane(width, height);
+		float[] kernel = SeparableBlur.gaussianKernel(4, 2.0);
+		float[] expected = naiveConvolve(plane, width, height, kernel);
+
+		assertPlanesEqual(expected, convolve(plane, width, height, kernel), 1E-2f);
+	}
+
+	@Test
+	public void testWideKernelOnNarrowPlane () {
+		int width = 3, height = 5;
+		float[] plane = randomPlane(width, height);
+		float[] kernel = SeparableBlur.gaussianKernel(4, 3.0);
+		float[] expected = naiveConvolve(plane, width, height, kernel);
+
+		assertPlanesEqual(expected, convolve(plane, width, height, kernel), 1E-2f);
+	}
+
+	@Test
+	public void testBoxBlurMatchesNaive () {
+		int width = 41, height = 19;
+		float[] plane = randomPlane(width, height);
+		float[] expected = naiveConvolve(plane, width, height, boxKernel(3));
+
+		assertPlanesEqual(expected, boxBlur(plane, width, height, 3, 1), 1E-2f);
+	}
+
+	@Test
+	public void testBoxBlurIterations () {
+		int width = 20, height = 20;
+		float[] plane = randomPlane(width, height);
+		float[] expected = boxBlur(boxBlur(plane, width, height, 2, 1), width, height, 2, 1);
+
+		assertPlanesEqual(expected, boxBlur(plane, width, height, 2, 2), EPSILON);
+	}
+
+	@Test
+	public void testLargePlane () {
+		// Large enough to be split into bands and blurred in parallel
+		int width = 300, height = 257;
+		float[] plane = randomPlane(width, height);
+		float[] kernel = boxKernel(2);
+		float[] expected = naiveConvolve(plane, width, height, kernel);
+
+		assertPlanesEqual(expected, boxBlur(plane, width, height, 2, 1), 1E-2f);
+	}
+
+	@Test
+	public void testInterleavedChannelsBlurredIndependently () {
+		int width = 29, height = 17;
+		float[] first = randomPlane(width, height);
+		float[] second = randomPlane(height, width);
+		float[][] rows = new float[height][2 * width];
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				rows[y][2 * x] = first[y * width + x];
+				rows[y][2 * x + 1] = second[y * width + x];
+			}
+		}
+		SeparableBlur.boxBlur(rows, 2, 2, 2);
+
+		float[] expectedFirst = boxBlur(first, width, height, 2, 2);
+		float[] expectedSecond = boxBlur(second, width, height, 2, 2);
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				Assert.assertEquals(expectedFirst[y * width + x], rows[y][2 * x], EPSILON);
+				Assert.assertEquals(expectedSecond[y * width + x], rows[y][2 * x + 1], EPSILON);
+			}
+		}
+	}
+
+	@Test
+	public void testConstantPlaneUnchanged () {
+		int width = 16, height = 16;
+		float[] plane = new float[width * height];
+		Arrays.fill(plane, 42.0f);
+		for (float value: boxBlur(plane, width, height, 5, 3)) {
+			Assert.assertEquals(42.0f, value, EPSILON);
+		}
+	}
+}
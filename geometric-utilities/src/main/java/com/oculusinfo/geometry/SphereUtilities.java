@@ -225,7 +225,7 @@ public class SphereUtilities {
 
         Vector A = toUnitVector(thetaA, phiA);
         Vector B = toUnitVector(thetaB, phiB);
-        Vector result = A.scale(coeffA).add(B.scale(coeffB));
+        Vector result = A.scale(coeffA).axpy(coeffB, B);
         return new Vector(thetaFromUnitVector(result), phiFromUnitVector(result));
     }
     public static Position interpolate (Position a, Position b, double t) {
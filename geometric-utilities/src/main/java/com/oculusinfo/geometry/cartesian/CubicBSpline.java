@@ -78,45 +78,38 @@ public class CubicBSpline {
         matrixEntries[3*n-3] = 7;
         TriDiagonalMatrix M = new TriDiagonalMatrix(matrixEntries);
 
-        // Create our target vectors
-        List<Vector> Ys = new ArrayList<Vector>();
-        Vector K0 = Ks.get(0);
-        Vector K1 = Ks.get(1);
-        Ys.add(K0.add(K1.scale(2)));
-        for (int i=1; i<n-1; ++i) {
-            Vector Ki = Ks.get(i);
-            Vector Ki1 = Ks.get(i+1);
-            Ys.add(Ki.scale(4).add(Ki1.scale(2)));
-        }
-        Vector Knm1 = Ks.get(n-1);
-        Vector Kn = Ks.get(n);
-        Ys.add(Knm1.scale(8).add(Kn));
-        
-        
-        List<Vector> P1coords = new ArrayList<Vector>();
-        List<Vector> P2coords = new ArrayList<Vector>();
-        for (int i=0; i<d; ++i) {
-            Vector Y = getCoordinateVector(Ys, i);
-            Vector K = getCoordinateVector(Ks, i);
-            Vector P1i = M.solve(Y);
-
-            // last p2 entry is special
-            double[] p2Data = new double[n];
-            for (int j=0; j<n-1; ++j)
-                p2Data[j] = 2*K.coord(j+1) - P1i.coord(j+1);
-            p2Data[n-1] = 0.5*(K.coord(n) + P1i.coord(n-1));
-            Vector P2i = new Vector(p2Data);
-            
-            P1coords.add(P1i);
-            P2coords.add(P2i);
+        // Create our target vectors, one per coordinate, stored contiguously
+        // so that all coordinates can be solved against a single
+        // factorization of M.
+        double[] Ys = new double[d*n];
+        for (int c=0; c<d; ++c) {
+            int base = c*n;
+            Ys[base] = Ks.get(0).coord(c) + 2*Ks.get(1).coord(c);
+            for (int i=1; i<n-1; ++i)
+                Ys[base+i] = 4*Ks.get(i).coord(c) + 2*Ks.get(i+1).coord(c);
+            Ys[base+n-1] = 8*Ks.get(n-1).coord(c) + Ks.get(n).coord(c);
         }
 
+        double[] P1s = new double[d*n];
+        M.solve(d, Ys, P1s, new double[M.getWorkspaceSize()]);
+
         // These are coordinate vectors; revert to points
         List<Vector> splinePoints = new ArrayList<Vector>();
         for (int i=0; i<n; ++i) {
+            double[] p1Data = new double[d];
+            double[] p2Data = new double[d];
+            for (int c=0; c<d; ++c) {
+                int base = c*n;
+                p1Data[c] = P1s[base+i];
+                // last p2 entry is special
+                if (i < n-1)
+                    p2Data[c] = 2*Ks.get(i+1).coord(c) - P1s[base+i+1];
+                else
+                    p2Data[c] = 0.5*(Ks.get(n).coord(c) + P1s[base+n-1]);
+            }
             splinePoints.add(Ks.get(i));
-            splinePoints.add(getCoordinateVector(P1coords, i));
-            splinePoints.add(getCoordinateVector(P2coords, i));
+            splinePoints.add(new Vector(p1Data));
+            splinePoints.add(new Vector(p2Data));
         }
         splinePoints.add(Ks.get(n));
 
@@ -137,16 +130,6 @@ public class CubicBSpline {
         return spline;
     }
 
-    static private Vector getCoordinateVector(List<Vector> Vs, int coordinate) {
-        int n = Vs.size();
-        double[] data = new double[n];
-        for (int i=0; i<n; ++i) {
-            data[i] = Vs.get(i).coord(coordinate);
-        }
-        return new Vector(data);
-    }
-
-
     /**
      * Add a new control point into the spline, in the proper order.
      * 
@@ -196,9 +179,9 @@ public class CubicBSpline {
                 double t = (relTime-t0)/(t1-t0);
                 double nt = (1-t);
                 return P0.scale(nt*nt*nt)
-                        .add(P1.scale(3*nt*nt*t))
-                        .add(P2.scale(3*nt*t*t))
-                        .add(P3.scale(t*t*t));
+                        .axpy(3*nt*nt*t, P1)
+                        .axpy(3*nt*t*t, P2)
+                        .axpy(t*t*t, P3);
             }
         }
         return null;
@@ -0,0 +1,583 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.geometry.geodesic;
+
+import com.oculusinfo.geometry.geodesic.tracks.Cartesian3DTrack;
+import com.oculusinfo.math.linearalgebra.Vector;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A track stored as parallel primitive arrays - longitude, latitude,
+ * cartesian coordinates and length parameterization - rather than as lists of
+ * {@link Position}s, for comparing large numbers of tracks.
+ *
+ * All calculations are done in 3D cartesian space, exactly as a
+ * {@link Cartesian3DTrack} does them: points are interpolated linearly between
+ * their cartesian coordinates, and the distance between points is the
+ * straight-line distance between them.  Tracks of other calculation types are
+ * converted to cartesian tracks when packed.
+ *
+ * Distances are calculated in a single merge pass over the two
+ * parameterizations, without creating any intermediate positions.
+ *
+ * Packed tracks are immutable, and so may be shared between threads; the
+ * values they calculate lazily are only published once fully built.
+ *
+ * @see TrackSimilarity
+ */
+public class PackedTrack implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final PositionCalculationParameters _parameters;
+    // Longitude and latitude, in degrees; calculated lazily for tracks created
+    // from cartesian coordinates.  Latitudes are always set before longitudes,
+    // so once longitudes are seen, so are latitudes.
+    private volatile double[]                   _longitudes;
+    private volatile double[]                   _latitudes;
+    private final double[]                      _x;
+    private final double[]                      _y;
+    private final double[]                      _z;
+    private final double[]                      _parameterization;
+    private final double                        _length;
+    // minimum x, y, z, then maximum x, y, z
+    private final double[]                      _bounds;
+    private transient volatile PackedTrack      _reverse;
+
+    /**
+     * Pack an existing track.
+     *
+     * @param track The track to pack.  If it is not a cartesian track, it is
+     *            converted to one first, with the same allowed error,
+     *            precision, and direction handling.
+     */
+    public PackedTrack (Track track) {
+        Track cartesian = track;
+        if (!PositionCalculationType.Cartesian3D.equals(track.getParameters().getCalculationType()))
+            cartesian = new Cartesian3DTrack(track);
+
+        List<Position> points = cartesian.getPoints();
+        List<Double> parameterization = cartesian.getParameterization();
+        int n = points.size();
+
+        _parameters = cartesian.getParameters();
+        _longitudes = new double[n];
+        _latitudes = new double[n];
+        _x = new double[n];
+        _y = new double[n];
+        _z = new double[n];
+        _parameterization = new double[n];
+        for (int i=0; i<n; ++i) {
+            Position p = points.get(i);
+            Vector v = p.getAsCartesian();
+            _longitudes[i] = p.getLongitude();
+            _latitudes[i] = p.getLatitude();
+            _x[i] = v.coord(0);
+            _y[i] = v.coord(1);
+            _z[i] = v.coord(2);
+            _parameterization[i] = parameterization.get(i);
+        }
+        _length = cartesian.getLength();
+        _bounds = calculateBounds(_x, _y, _z);
+    }
+
+    /**
+     * Create a track directly from arrays of longitudes and latitudes, at sea
+     * level.  The points are used as given; unlike a {@link Track}, they are
+     * not reduced, nor filled in.
+     *
+     * @param parameters The parameters governing calculations on this track.
+     * @param longitudes The longitudes of the points of the track, in degrees
+     * @param latitudes The latitudes of the points of the track, in degrees
+     */
+    public PackedTrack (PositionCalculationParameters parameters, double[] longitudes, double[] latitudes) {
+        if (longitudes.length != latitudes.length)
+            throw new IllegalArgumentException("Longitude and latitude arrays must be the same length");
+        if (0 == longitudes.length)
+            throw new IllegalArgumentException("Attempt to create an empty track");
+
+        int n = longitudes.length;
+        _parameters = parameters;
+        _longitudes = longitudes.clone();
+        _latitudes = latitudes.clone();
+        _x = new double[n];
+        _y = new double[n];
+        _z = new double[n];
+        toCartesian(_longitudes, _latitudes, _x, _y, _z);
+        _parameterization = new double[n];
+        _length = calculateLengthParameterization(_x, _y, _z, _parameterization);
+        _bounds = calculateBounds(_x, _y, _z);
+    }
+
+    private PackedTrack (PositionCalculationParameters parameters,
+                         double[] longitudes, double[] latitudes,
+                         double[] x, double[] y, double[] z,
+                         double[] parameterization, double length) {
+        _parameters = parameters;
+        _longitudes = longitudes;
+        _latitudes = latitudes;
+        _x = x;
+        _y = y;
+        _z = z;
+        _parameterization = parameterization;
+        _length = length;
+        _bounds = calculateBounds(_x, _y, _z);
+    }
+
+
+
+    // ////////////////////////////////////////////////////////////////////////
+    // Section: Batch kernels
+    //
+    /**
+     * Convert arrays of longitudes and latitudes (at sea level) into WGS84
+     * cartesian coordinates, exactly as {@link Position#getAsCartesian()}
+     * does, but without creating any intermediate objects.
+     *
+     * @param longitudes The longitudes to convert, in degrees
+     * @param latitudes The latitudes to convert, in degrees
+     * @param x The array into which to write the coordinates in the direction
+     *            of (0 deg N, 90 deg E)
+     * @param y The array into which to write the coordinates in the direction
+     *            of the north pole
+     * @param z The array into which to write the coordinates in the direction
+     *            of (0 deg N, 0 deg E)
+     */
+    public static void toCartesian (double[] longitudes, double[] latitudes,
+                                    double[] x, double[] y, double[] z) {
+        double a = Position.WGS84_EQUATORIAL_RADIUS;
+        double es = Position.WGS84_ES;
+        for (int i=0; i<longitudes.length; ++i) {
+            double latitude = Math.toRadians(latitudes[i]);
+            double longitude = Math.toRadians(longitudes[i]);
+            double cosLat = Math.cos(latitude);
+            double sinLat = Math.sin(latitude);
+
+            double rpm = a / Math.sqrt(1.0 - es * sinLat * sinLat);
+            x[i] = rpm * cosLat * Math.sin(longitude);
+            y[i] = rpm * (1.0 - es) * sinLat;
+            z[i] = rpm * cosLat * Math.cos(longitude);
+        }
+    }
+
+    /**
+     * Calculate the angular distances between corresponding pairs of points,
+     * using the haversine formula, as {@link Position#getAngularDistance} does.
+     *
+     * @param lonA The longitudes of the first point of each pair, in degrees
+     * @param latA The latitudes of the first point of each pair, in degrees
+     * @param lonB The longitudes of the second point of each pair, in degrees
+     * @param latB The latitudes of the second point of each pair, in degrees
+     * @param result The array into which to write the distance, in degrees,
+     *            between each pair of points
+     */
+    public static void angularDistances (double[] lonA, double[] latA,
+                                         double[] lonB, double[] latB,
+                                         double[] result) {
+        for (int i=0; i<result.length; ++i) {
+            double lat1 = Math.toRadians(latA[i]);
+            double lat2 = Math.toRadians(latB[i]);
+            double sinDLat = Math.sin((lat2 - lat1) / 2.0);
+            double sinDLon = Math.sin(Math.toRadians(lonB[i] - lonA[i]) / 2.0);
+            double a = sinDLat * sinDLat + Math.cos(lat1) * Math.cos(lat2) * sinDLon * sinDLon;
+            double distanceRadians = 2.0 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+            result[i] = Double.isNaN(distanceRadians) ? 0.0 : Math.toDegrees(distanceRadians);
+        }
+    }
+
+
+
+    // ////////////////////////////////////////////////////////////////////////
+    // Section: Accessors
+    //
+    public PositionCalculationParameters getParameters () {
+        return _parameters;
+    }
+
+    /** The number of points in this track */
+    public int size () {
+        return _x.length;
+    }
+
+    public double getLength () {
+        return _length;
+    }
+
+    /** The longitudes of the points of this track, in degrees.  This array must not be modified. */
+    public double[] getLongitudes () {
+        calculatePolar();
+        return _longitudes;
+    }
+
+    /** The latitudes of the points of this track, in degrees.  This array must not be modified. */
+    public double[] getLatitudes () {
+        calculatePolar();
+        return _latitudes;
+    }
+
+    /** The length parameterization of this track.  This array must not be modified. */
+    public double[] getParameterization () {
+        return _parameterization;
+    }
+
+    /**
+     * Convert this back into a normal, object-based track.
+     */
+    public Track toTrack () {
+        List<Position> points = new ArrayList<Position>(size());
+        List<Double> parameterization = new ArrayList<Double>(size());
+        for (int i=0; i<size(); ++i) {
+            Position p = new Position(_x[i], _y[i], _z[i], true);
+            p.setPrecision(_parameters.getPrecision());
+            points.add(p);
+            parameterization.add(_parameterization[i]);
+        }
+        return new Cartesian3DTrack(_parameters, points, parameterization);
+    }
+
+    /**
+     * Get this track, running the other way.  Unlike {@link Track#reverse()},
+     * the reversed track is not reduced again; its points are exactly those
+     * of this track.
+     */
+    public PackedTrack reverse () {
+        PackedTrack reverse = _reverse;
+        if (null == reverse) {
+            int n = size();
+            double[] ourLongitudes = _longitudes;
+            double[] ourLatitudes = _latitudes;
+            double[] longitudes = null;
+            double[] latitudes = null;
+            if (null != ourLongitudes) {
+                longitudes = new double[n];
+                latitudes = new double[n];
+            }
+            double[] x = new double[n];
+            double[] y = new double[n];
+            double[] z = new double[n];
+            double[] parameterization = new double[n];
+            for (int i=0; i<n; ++i) {
+                int j = n-1-i;
+                if (null != longitudes) {
+                    longitudes[i] = ourLongitudes[j];
+                    latitudes[i] = ourLatitudes[j];
+                }
+                x[i] = _x[j];
+                y[i] = _y[j];
+                z[i] = _z[j];
+                parameterization[i] = 1.0 - _parameterization[j];
+            }
+            // Link the reverse back to us before publishing it, so no other
+            // thread can see it half-built.  Racing threads may each build a
+            // reverse; any of them will do.
+            reverse = new PackedTrack(_parameters, longitudes, latitudes, x, y, z, parameterization, _length);
+            reverse._reverse = this;
+            _reverse = reverse;
+        }
+        return reverse;
+    }
+
+
+
+    // ////////////////////////////////////////////////////////////////////////
+    // Section: Calculations
+    //
+    /**
+     * Get the distance between this track and another, as
+     * {@link Track#getDistance(Track)} calculates it for cartesian tracks.
+     *
+     * When direction is ignored and the other track is closer to running the
+     * other way, the result can differ slightly from that of Track, which
+     * reduces the reversed track again before comparing it; see
+     * {@link #reverse()}.
+     */
+    public double getDistance (PackedTrack them) {
+        if (_parameters.ignoreDirection() && closerToReverse(them))
+            return getDistanceWithDirection(them.reverse());
+        else
+            return getDistanceWithDirection(them);
+    }
+
+    /**
+     * Get a lower bound on the distance between this track and another, from
+     * their bounding boxes alone.  Every point on either track lies within its
+     * bounding box, so the track distance can be no smaller than the gap
+     * between the boxes, normalized the same way.
+     */
+    public double getDistanceLowerBound (PackedTrack them) {
+        double meanLength = (_length + them._length) / 2.0;
+        if (!(meanLength > 0.0))
+            return 0.0;
+
+        double gap2 = 0.0;
+        for (int i=0; i<3; ++i) {
+            double gap = Math.max(0.0, Math.max(_bounds[i] - them._bounds[i+3], them._bounds[i] - _bounds[i+3]));
+            gap2 += gap * gap;
+        }
+
+        // The span of parameter values over which the distance is integrated
+        int nUs = size() - 1;
+        int nThem = them.size() - 1;
+        double span = Math.min(_parameterization[nUs], them._parameterization[nThem])
+            - Math.max(_parameterization[0], them._parameterization[0]);
+
+        return Math.sqrt(gap2) * Math.max(0.0, span) / meanLength;
+    }
+
+    private boolean closerToReverse (PackedTrack them) {
+        int ourEnd = size() - 1;
+        int theirEnd = them.size() - 1;
+
+        double dss = pointDistance(them, 0, 0);
+        double dse = pointDistance(them, 0, theirEnd);
+        double des = pointDistance(them, ourEnd, 0);
+        double dee = pointDistance(them, ourEnd, theirEnd);
+
+        double requiredConfidence = 0.5;
+        return (dse/dee < requiredConfidence && des / dss < requiredConfidence);
+    }
+
+    private double pointDistance (PackedTrack them, int ourIndex, int theirIndex) {
+        double dx = _x[ourIndex] - them._x[theirIndex];
+        double dy = _y[ourIndex] - them._y[theirIndex];
+        double dz = _z[ourIndex] - them._z[theirIndex];
+        return Math.sqrt(dx*dx + dy*dy + dz*dz);
+    }
+
+    private double getDistanceWithDirection (PackedTrack them) {
+        final double epsilon = _parameters.getPrecision();
+        final double[] A = _parameterization;
+        final double[] B = them._parameterization;
+        final int NA = A.length;
+        final int NB = B.length;
+
+        double[] pA = new double[3];
+        double[] pB = new double[3];
+        int segmentA = 0;
+        int segmentB = 0;
+
+        int nA = 0;
+        int nB = 0;
+        double a = A[0];
+        double b = B[0];
+
+        boolean first = true;
+        double dLast = 0.0;
+        double distanceLast = 0.0;
+        double totalDistance = 0.0;
+        // Merge the two parameterizations, as ListUtilities.joinLists does,
+        // evaluating each track at each merged parameter value as we go.
+        while (nA < NA || nB < NB) {
+            double d;
+            if (Math.abs(a - b) < epsilon) {
+                d = (a + b) / 2;
+                while (nA < NA && Math.abs(a - A[nA]) < epsilon) ++nA;
+                a = (nA < NA ? A[nA] : Double.MAX_VALUE);
+                while (nB < NB && Math.abs(b - B[nB]) < epsilon) ++nB;
+                b = (nB < NB ? B[nB] : Double.MAX_VALUE);
+            } else if (a < b) {
+                d = a;
+                ++nA;
+                a = (nA < NA ? A[nA] : Double.MAX_VALUE);
+            } else {
+                d = b;
+                ++nB;
+                b = (nB < NB ? B[nB] : Double.MAX_VALUE);
+            }
+
+            segmentA = getLengthParameterizedPoint(d, segmentA, pA);
+            segmentB = them.getLengthParameterizedPoint(d, segmentB, pB);
+            double dx = pA[0] - pB[0];
+            double dy = pA[1] - pB[1];
+            double dz = pA[2] - pB[2];
+            double distance = Math.sqrt(dx*dx + dy*dy + dz*dz);
+
+            if (!first) {
+                totalDistance += (distanceLast + distance) / 2 * (d - dLast);
+            }
+            first = false;
+            dLast = d;
+            distanceLast = distance;
+        }
+
+        return totalDistance / ((_length + them._length) / 2.0);
+    }
+
+    /**
+     * Get a weighted average of this track and another, as
+     * {@link Track#weightedAverage(Track, double, double)} calculates it for
+     * cartesian tracks, except that the resultant track is not reduced.
+     */
+    public PackedTrack weightedAverage (PackedTrack them, double ourWeight, double theirWeight) {
+        if (_parameters.ignoreDirection() && closerToReverse(them))
+            return weightedAverageWithDirection(them.reverse(), ourWeight, theirWeight);
+        else
+            return weightedAverageWithDirection(them, ourWeight, theirWeight);
+    }
+
+    private PackedTrack weightedAverageWithDirection (PackedTrack them, double ourWeight, double theirWeight) {
+        final double theirRelWeight = theirWeight/(ourWeight+theirWeight);
+        final double epsilon = _parameters.getPrecision();
+        final double[] A = _parameterization;
+        final double[] B = them._parameterization;
+        final int NA = A.length;
+        final int NB = B.length;
+
+        // The joined parameterization can be no longer than both together
+        double[] x = new double[NA + NB];
+        double[] y = new double[NA + NB];
+        double[] z = new double[NA + NB];
+        int n = 0;
+
+        double[] pA = new double[3];
+        double[] pB = new double[3];
+        int segmentA = 0;
+        int segmentB = 0;
+
+        int nA = 0;
+        int nB = 0;
+        double a = A[0];
+        double b = B[0];
+        while (nA < NA || nB < NB) {
+            double d;
+            if (Math.abs(a - b) < epsilon) {
+                d = (a + b) / 2;
+                while (nA < NA && Math.abs(a - A[nA]) < epsilon) ++nA;
+                a = (nA < NA ? A[nA] : Double.MAX_VALUE);
+                while (nB < NB && Math.abs(b - B[nB]) < epsilon) ++nB;
+                b = (nB < NB ? B[nB] : Double.MAX_VALUE);
+            } else if (a < b) {
+                d = a;
+                ++nA;
+                a = (nA < NA ? A[nA] : Double.MAX_VALUE);
+            } else {
+                d = b;
+                ++nB;
+                b = (nB < NB ? B[nB] : Double.MAX_VALUE);
+            }
+
+            segmentA = getLengthParameterizedPoint(d, segmentA, pA);
+            segmentB = them.getLengthParameterizedPoint(d, segmentB, pB);
+            x[n] = pA[0] * (1 - theirRelWeight) + pB[0] * theirRelWeight;
+            y[n] = pA[1] * (1 - theirRelWeight) + pB[1] * theirRelWeight;
+            z[n] = pA[2] * (1 - theirRelWeight) + pB[2] * theirRelWeight;
+            ++n;
+        }
+
+        x = Arrays.copyOf(x, n);
+        y = Arrays.copyOf(y, n);
+        z = Arrays.copyOf(z, n);
+        double[] parameterization = new double[n];
+        double length = calculateLengthParameterization(x, y, z, parameterization);
+        return new PackedTrack(_parameters, null, null, x, y, z, parameterization, length);
+    }
+
+    /*
+     * Find the point at the given length parameter, as
+     * Track.getLengthParamterizedPoint does, writing its cartesian coordinates
+     * into result.  Since we always walk along a track in increasing parameter
+     * order, the search for the containing segment starts from the last one
+     * found, which is returned for the next call.
+     */
+    private int getLengthParameterizedPoint (double parameter, int segment, double[] result) {
+        final int N = _parameterization.length;
+        int n = segment;
+        while (n < N - 1 && _parameterization[n + 1] <= parameter) ++n;
+
+        double epsilon = _parameters.getPrecision();
+        if (n == N - 1 || Math.abs(parameter - _parameterization[n]) < epsilon) {
+            setPoint(n, result);
+        } else if (Math.abs(parameter - _parameterization[n + 1]) < epsilon) {
+            setPoint(n + 1, result);
+        } else {
+            double t = (parameter - _parameterization[n]) / (_parameterization[n + 1] - _parameterization[n]);
+            result[0] = _x[n] * (1 - t) + _x[n + 1] * t;
+            result[1] = _y[n] * (1 - t) + _y[n + 1] * t;
+            result[2] = _z[n] * (1 - t) + _z[n + 1] * t;
+        }
+        return n;
+    }
+
+    private void setPoint (int n, double[] result) {
+        result[0] = _x[n];
+        result[1] = _y[n];
+        result[2] = _z[n];
+    }
+
+    /*
+     * Fill in the length parameterization of the given points, returning
+     * their total length.
+     */
+    private static double calculateLengthParameterization (double[] x, double[] y, double[] z,
+                                                           double[] parameterization) {
+        int n = x.length;
+        double cumulativeLength = 0.0;
+        for (int i=1; i<n; ++i) {
+            double dx = x[i] - x[i-1];
+            double dy = y[i] - y[i-1];
+            double dz = z[i] - z[i-1];
+            cumulativeLength += Math.sqrt(dx*dx + dy*dy + dz*dz);
+            parameterization[i] = cumulativeLength;
+        }
+        for (int i=0; i<n; ++i) {
+            parameterization[i] = (0 == cumulativeLength ? 0.0 : parameterization[i] / cumulativeLength);
+        }
+        return cumulativeLength;
+    }
+
+    private void calculatePolar () {
+        if (null != _longitudes) return;
+
+        int n = _x.length;
+        double[] longitudes = new double[n];
+        double[] latitudes = new double[n];
+        for (int i=0; i<n; ++i) {
+            Position p = new Position(_x[i], _y[i], _z[i], true);
+            longitudes[i] = p.getLongitude();
+            latitudes[i] = p.getLatitude();
+        }
+        _latitudes = latitudes;
+        _longitudes = longitudes;
+    }
+
+    private static double[] calculateBounds (double[] x, double[] y, double[] z) {
+        double[] bounds = new double[] {
+            Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE,
+            -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE
+        };
+        for (int i=0; i<x.length; ++i) {
+            bounds[0] = Math.min(bounds[0], x[i]);
+            bounds[1] = Math.min(bounds[1], y[i]);
+            bounds[2] = Math.min(bounds[2], z[i]);
+            bounds[3] = Math.max(bounds[3], x[i]);
+            bounds[4] = Math.max(bounds[4], y[i]);
+            bounds[5] = Math.max(bounds[5], z[i]);
+        }
+        return bounds;
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.geometry.geodesic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Batched similarity queries over a set of packed tracks - all pairs within a
+ * given distance, or the nearest few neighbours of each track.
+ *
+ * Before the exact distance between two tracks is calculated, pairs are
+ * filtered by length (if a maximum length ratio is given), and by the lower
+ * bound on their distance given by their bounding boxes.  Large sets of tracks
+ * are split into bands, which are compared in parallel on a shared fork-join
+ * pool.
+ */
+public class TrackSimilarity {
+    // Tracks compared by a single task
+    private static final int          BAND_SIZE          = 16;
+    // Sets of tracks smaller than this are not worth splitting between threads
+    private static final int          PARALLEL_THRESHOLD = 64;
+    private static final ForkJoinPool POOL               = new ForkJoinPool();
+
+
+
+    /**
+     * A pair of tracks, by index into the compared set, and the distance
+     * between them.
+     */
+    public static class Match {
+        private int    _first;
+        private int    _second;
+        private double _distance;
+
+        public Match (int first, int second, double distance) {
+            _first = first;
+            _second = second;
+            _distance = distance;
+        }
+
+        public int getFirst () {
+            return _first;
+        }
+
+        public int getSecond () {
+            return _second;
+        }
+
+        public double getDistance () {
+            return _distance;
+        }
+
+        @Override
+        public String toString () {
+            return "Match[" + _first + ", " + _second + ": " + _distance + "]";
+        }
+    }
+
+    private static final Comparator<Match> BY_DISTANCE = new Comparator<Match>() {
+        @Override
+        public int compare (Match a, Match b) {
+            return Double.compare(a._distance, b._distance);
+        }
+    };
+
+
+
+    private PackedTrack[] _tracks;
+    private double        _maxLengthRatio;
+
+    /**
+     * @param tracks The tracks to compare
+     */
+    public TrackSimilarity (List<PackedTrack> tracks) {
+        this(tracks, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * @param tracks The tracks to compare
+     * @param maxLengthRatio The largest ratio between the lengths of two tracks
+     *            for them to be considered similar at all; pairs of tracks
+     *            whose lengths differ by more than this are never compared.
+     */
+    public TrackSimilarity (List<PackedTrack> tracks, double maxLengthRatio) {
+        _tracks = tracks.toArray(new PackedTrack[tracks.size()]);
+        _maxLengthRatio = maxLengthRatio;
+    }
+
+    /**
+     * Find all pairs of tracks within a given distance of each other.
+     *
+     * @param maxDistance The maximum distance, as calculated by
+     *            {@link PackedTrack#getDistance(PackedTrack)}, between two
+     *            tracks for them to be returned
+     * @return Each pair of tracks within the given distance, first index less
+     *         than second, ordered by first index then second
+     */
+    public List<Match> getPairsWithin (final double maxDistance) {
+        final int n = _tracks.length;
+        @SuppressWarnings("unchecked")
+        final List<Match>[] bandResults = new List[(n + BAND_SIZE - 1) / BAND_SIZE];
+
+        run(new Band() {
+            @Override
+            void compare (int start, int end) {
+                List<Match> matches = new ArrayList<Match>();
+                for (int i=start; i<end; ++i) {
+                    PackedTrack a = _tracks[i];
+                    for (int j=i+1; j<n; ++j) {
+                        PackedTrack b = _tracks[j];
+                        if (!lengthsComparable(a, b)) continue;
+                        if (a.getDistanceLowerBound(b) > maxDistance) continue;
+                        double distance = a.getDistance(b);
+                        if (distance <= maxDistance)
+                            matches.add(new Match(i, j, distance));
+                    }
+                }
+                bandResults[start / BAND_SIZE] = matches;
+            }
+        });
+
+        List<Match> result = new ArrayList<Match>();
+        for (List<Match> matches: bandResults)
+            if (null != matches) result.addAll(matches);
+        return result;
+    }
+
+    /**
+     * Find the nearest neighbours of each track.
+     *
+     * @param k The number of neighbours to find for each track
+     * @return For each track, in order, its nearest (up to) k other tracks,
+     *         nearest first
+     */
+    public List<List<Match>> getNearest (final int k) {
+        final int n = _tracks.length;
+        @SuppressWarnings("unchecked")
+        final List<Match>[] results = new List[n];
+
+        run(new Band() {
+            @Override
+            void compare (int start, int end) {
+                Integer[] candidates = new Integer[n];
+                final double[] bounds = new double[n];
+                for (int i=start; i<end; ++i) {
+                    PackedTrack a = _tracks[i];
+
+                    // Check candidates in order of their lower bounds, so we
+                    // can stop as soon as no remaining candidate can beat the
+                    // current k nearest.
+                    int numCandidates = 0;
+                    for (int j=0; j<n; ++j) {
+                        if (j == i || !lengthsComparable(a, _tracks[j])) continue;
+                        bounds[j] = a.getDistanceLowerBound(_tracks[j]);
+                        candidates[numCandidates++] = j;
+                    }
+                    Arrays.sort(candidates, 0, numCandidates, new Comparator<Integer>() {
+                        @Override
+                        public int compare (Integer x, Integer y) {
+                            return Double.compare(bounds[x], bounds[y]);
+                        }
+                    });
+
+                    // Max-heap of the best k found so far
+                    PriorityQueue<Match> nearest = new PriorityQueue<Match>(Math.max(1, k), Collections.reverseOrder(BY_DISTANCE));
+                    for (int c=0; c<numCandidates; ++c) {
+                        int j = candidates[c];
+                        if (nearest.size() >= k && (0 == k || bounds[j] >= nearest.peek().getDistance())) break;
+
+                        double distance = a.getDistance(_tracks[j]);
+                        if (nearest.size() < k) {
+                            nearest.add(new Match(i, j, distance));
+                        } else if (distance < nearest.peek().getDistance()) {
+                            nearest.poll();
+                            nearest.add(new Match(i, j, distance));
+                        }
+                    }
+
+                    List<Match> matches = new ArrayList<Match>(nearest);
+                    Collections.sort(matches, BY_DISTANCE);
+                    results[i] = matches;
+                }
+            }
+        });
+
+        return Arrays.asList(results);
+    }
+
+
+
+    private boolean lengthsComparable (PackedTrack a, PackedTrack b) {
+        if (Double.isInfinite(_maxLengthRatio)) return true;
+        double shorter = Math.min(a.getLength(), b.getLength());
+        double longer = Math.max(a.getLength(), b.getLength());
+        return longer <= shorter * _maxLengthRatio;
+    }
+
+    private void run (Band band) {
+        int n = _tracks.length;
+        if (n < PARALLEL_THRESHOLD) {
+            for (int start = 0; start < n; start += BAND_SIZE)
+                band.compare(start, Math.min(n, start + BAND_SIZE));
+        } else {
+            List<BandTask> tasks = new ArrayList<BandTask>();
+            for (int start = 0; start < n; start += BAND_SIZE)
+                tasks.add(new BandTask(band, start, Math.min(n, start + BAND_SIZE)));
+            POOL.invoke(new BandsTask(tasks));
+        }
+    }
+
+    /*
+     * A comparison of one band of tracks against the whole set, which can be
+     * run on any band independently.
+     */
+    private static abstract class Band {
+        abstract void compare (int start, int end);
+    }
+
+    private static class BandsTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private List<BandTask> _bands;
+
+        BandsTask (List<BandTask> bands) {
+            _bands = bands;
+        }
+
+        @Override
+        protected void compute () {
+            invokeAll(_bands);
+        }
+    }
+
+    private static class BandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private Band _band;
+        private int  _start;
+        private int  _end;
+
+        BandTask (Band band, int start, int end) {
+            _band = band;
+            _start = start;
+            _end = end;
+        }
+
+        @Override
+        protected void compute () {
+            _band.compare(_start, _end);
+        }
+    }
+}
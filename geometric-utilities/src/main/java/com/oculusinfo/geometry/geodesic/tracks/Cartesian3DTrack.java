@@ -154,7 +154,7 @@ public class Cartesian3DTrack extends Track {
     protected Position interpolate (Position start, Position end, double t) {
         Vector sV = start.getAsCartesian();
         Vector eV = end.getAsCartesian();
-        Vector cartesianResult = sV.scale(1 - t).add(eV.scale(t));
+        Vector cartesianResult = sV.scale(1 - t).axpy(t, eV);
         Position p = new Position(cartesianResult.coord(0), cartesianResult.coord(1),
                                   cartesianResult.coord(2), !start.hasElevation());
         p.setPrecision(start.getPrecision());
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.geometry.quadtree
+
+
+
+import java.util.Arrays
+
+
+
+/**
+ * A QuadTree for Barnes-Hut approximation, stored in flat primitive arrays so that it can be
+ * rebuilt cheaply, in place, over and over again as points move.
+ *
+ * Cells are numbered in creation order, starting with the root (cell 0); the four children of an
+ * internal cell are stored consecutively, starting at getFirstChild (NW, NE, SW, SE), and leaves
+ * have no first child (-1).  Points themselves are never copied - instead, building the tree
+ * permutes an array of point indices in place so that the points of each cell are contiguous
+ * (getPoint(getStart(cell)) until getPoint(getEnd(cell) - 1)).  Rebuilding reuses all arrays, so
+ * once the tree has grown to size, it allocates nothing.
+ *
+ * Like QuadTree, each cell records the centre of mass and average size (node radius) of its
+ * points.  Unlike QuadTree, points at identical locations are all kept, in a single leaf, and
+ * cells stop subdividing at MAX_DEPTH.
+ */
+class FlatQuadTree (initialCapacity: Int = 16) {
+	import FlatQuadTree._
+
+	private var _points = new Array[Int](initialCapacity max 1)
+	private var _numCells = 0
+	private var _capacity = 0
+
+	// cell bounds (x,y of lower left corner, width, height)
+	private var _minX: Array[Double] = null
+	private var _minY: Array[Double] = null
+	private var _width: Array[Double] = null
+	private var _height: Array[Double] = null
+	// cell centre of mass, and average point size
+	private var _centerX: Array[Double] = null
+	private var _centerY: Array[Double] = null
+	private var _size: Array[Double] = null
+	// cell contents
+	private var _start: Array[Int] = null
+	private var _end: Array[Int] = null
+	private var _firstChild: Array[Int] = null
+
+	growCells(4 * (initialCapacity max 1))
+
+
+
+	/**
+	 * Rebuild the tree over the first numPoints points of the given arrays
+	 */
+	def build (x: Array[Double], y: Array[Double], size: Array[Double], numPoints: Int): Unit = {
+		if (_points.length < numPoints) _points = new Array[Int](numPoints)
+
+		var minX = Double.MaxValue
+		var maxX = Double.MinValue
+		var minY = Double.MaxValue
+		var maxY = Double.MinValue
+		var i = 0
+		while (i < numPoints) {
+			_points(i) = i
+			minX = Math.min(x(i), minX)
+			maxX = Math.max(x(i), maxX)
+			minY = Math.min(y(i), minY)
+			maxY = Math.max(y(i), maxY)
+			i += 1
+		}
+
+		_numCells = 0
+		val root = allocateCells(1)
+		if (0 == numPoints) {
+			setCell(root, 0.0, 0.0, 0.0, 0.0, 0, 0)
+			_firstChild(root) = -1
+		} else {
+			setCell(root, minX, minY, maxX - minX, maxY - minY, 0, numPoints)
+			subdivide(root, x, y, size, 0)
+		}
+	}
+
+	def getNumCells: Int = _numCells
+	def getRoot: Int = 0
+
+	def getMinX (cell: Int): Double = _minX(cell)
+	def getMinY (cell: Int): Double = _minY(cell)
+	def getWidth (cell: Int): Double = _width(cell)
+	def getHeight (cell: Int): Double = _height(cell)
+
+	def getCenterX (cell: Int): Double = _centerX(cell)
+	def getCenterY (cell: Int): Double = _centerY(cell)
+	def getSize (cell: Int): Double = _size(cell)
+
+	def getNumPoints (cell: Int): Int = _end(cell) - _start(cell)
+	def getStart (cell: Int): Int = _start(cell)
+	def getEnd (cell: Int): Int = _end(cell)
+	def getPoint (position: Int): Int = _points(position)
+
+	/** The first of the four children of a cell, or -1 if the cell is a leaf */
+	def getFirstChild (cell: Int): Int = _firstChild(cell)
+	def isLeaf (cell: Int): Boolean = _firstChild(cell) < 0
+
+
+
+	private def subdivide (cell: Int, x: Array[Double], y: Array[Double], size: Array[Double], depth: Int): Unit = {
+		val start = _start(cell)
+		val end = _end(cell)
+		val count = end - start
+		_firstChild(cell) = -1
+		if (0 == count) return
+
+		// Centre of mass and average size, noting whether all points coincide
+		val first = _points(start)
+		var sumX = 0.0
+		var sumY = 0.0
+		var sumSize = 0.0
+		var coincident = true
+		var p = start
+		while (p < end) {
+			val i = _points(p)
+			sumX += x(i)
+			sumY += y(i)
+			sumSize += size(i)
+			if (x(i) != x(first) || y(i) != y(first)) coincident = false
+			p += 1
+		}
+		_centerX(cell) = sumX / count
+		_centerY(cell) = sumY / count
+		_size(cell) = sumSize / count
+
+		if (count > 1 && !coincident && depth < MAX_DEPTH) {
+			val minX = _minX(cell)
+			val minY = _minY(cell)
+			val halfWidth = _width(cell) / 2
+			val halfHeight = _height(cell) / 2
+			val midX = minX + halfWidth
+			val midY = minY + halfHeight
+
+			// Split into lower and upper halves, then each of those into west and east
+			val splitY = partition(start, end, y, midY)
+			val splitLowerX = partition(start, splitY, x, midX)
+			val splitUpperX = partition(splitY, end, x, midX)
+
+			val firstChild = allocateCells(4)
+			_firstChild(cell) = firstChild
+			setCell(firstChild,     minX, midY, halfWidth, halfHeight, splitY, splitUpperX)
+			setCell(firstChild + 1, midX, midY, halfWidth, halfHeight, splitUpperX, end)
+			setCell(firstChild + 2, minX, minY, halfWidth, halfHeight, start, splitLowerX)
+			setCell(firstChild + 3, midX, minY, halfWidth, halfHeight, splitLowerX, splitY)
+
+			var child = firstChild
+			while (child < firstChild + 4) {
+				subdivide(child, x, y, size, depth + 1)
+				child += 1
+			}
+		}
+	}
+
+	// Reorder points from..until so those with coordinate < mid come first; returns the first
+	// point with coordinate >= mid
+	private def partition (from: Int, until: Int, coordinate: Array[Double], mid: Double): Int = {
+		var low = from
+		var high = until - 1
+		while (low <= high) {
+			if (coordinate(_points(low)) < mid) {
+				low += 1
+			} else {
+				val swap = _points(low)
+				_points(low) = _points(high)
+				_points(high) = swap
+				high -= 1
+			}
+		}
+		low
+	}
+
+	private def setCell (cell: Int, minX: Double, minY: Double, width: Double, height: Double,
+	                     start: Int, end: Int): Unit = {
+		_minX(cell) = minX
+		_minY(cell) = minY
+		_width(cell) = width
+		_height(cell) = height
+		_start(cell) = start
+		_end(cell) = end
+	}
+
+	private def allocateCells (n: Int): Int = {
+		if (_numCells + n > _capacity) growCells((2 * _capacity) max (_numCells + n))
+		val first = _numCells
+		_numCells += n
+		first
+	}
+
+	private def growCells (capacity: Int): Unit = {
+		if (null == _minX) {
+			_minX = new Array[Double](capacity)
+			_minY = new Array[Double](capacity)
+			_width = new Array[Double](capacity)
+			_height = new Array[Double](capacity)
+			_centerX = new Array[Double](capacity)
+			_centerY = new Array[Double](capacity)
+			_size = new Array[Double](capacity)
+			_start = new Array[Int](capacity)
+			_end = new Array[Int](capacity)
+			_firstChild = new Array[Int](capacity)
+		} else {
+			_minX = Arrays.copyOf(_minX, capacity)
+			_minY = Arrays.copyOf(_minY, capacity)
+			_width = Arrays.copyOf(_width, capacity)
+			_height = Arrays.copyOf(_height, capacity)
+			_centerX = Arrays.copyOf(_centerX, capacity)
+			_centerY = Arrays.copyOf(_centerY, capacity)
+			_size = Arrays.copyOf(_size, capacity)
+			_start = Arrays.copyOf(_start, capacity)
+			_end = Arrays.copyOf(_end, capacity)
+			_firstChild = Arrays.copyOf(_firstChild, capacity)
+		}
+		_capacity = capacity
+	}
+}
+
+object FlatQuadTree {
+	/** The maximum depth to which cells are subdivided */
+	val MAX_DEPTH = 32
+}
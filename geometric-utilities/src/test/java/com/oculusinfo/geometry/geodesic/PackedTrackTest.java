@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.geometry.geodesic;
+
+import com.oculusinfo.geometry.geodesic.tracks.Cartesian3DTrack;
+import com.oculusinfo.math.linearalgebra.Vector;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class PackedTrackTest {
+    private static final double EPSILON = 1E-9;
+    private static final PositionCalculationParameters CARTESIAN_PARAMETERS =
+            new PositionCalculationParameters(PositionCalculationType.Cartesian3D, 0.0001, 1E-12, false);
+
+    private Cartesian3DTrack randomTrack (Random random) {
+        double lon = random.nextDouble() * 20.0 - 10.0;
+        double lat = random.nextDouble() * 20.0 - 10.0;
+        int n = 2 + random.nextInt(4);
+        List<Position> points = new ArrayList<Position>();
+        for (int i=0; i<n; ++i) {
+            points.add(new Position(lon, lat));
+            lon += random.nextDouble() * 2.0 - 0.5;
+            lat += random.nextDouble() * 2.0 - 1.0;
+        }
+        return new Cartesian3DTrack(CARTESIAN_PARAMETERS, points);
+    }
+
+    @Test
+    public void testBatchKernels () {
+        double[] lons = {0.0, 45.0, -120.0, 179.5};
+        double[] lats = {0.0, 30.0, -60.0, 89.0};
+        double[] x = new double[4];
+        double[] y = new double[4];
+        double[] z = new double[4];
+        PackedTrack.toCartesian(lons, lats, x, y, z);
+        for (int i=0; i<4; ++i) {
+            Vector v = new Position(lons[i], lats[i]).getAsCartesian();
+            Assert.assertEquals(v.coord(0), x[i], 1E-6);
+            Assert.assertEquals(v.coord(1), y[i], 1E-6);
+            Assert.assertEquals(v.coord(2), z[i], 1E-6);
+        }
+
+        double[] lonsB = {1.0, 44.0, -119.0, 179.0};
+        double[] latsB = {1.0, 31.5, -61.0, 88.0};
+        double[] distances = new double[4];
+        PackedTrack.angularDistances(lons, lats, lonsB, latsB, distances);
+        for (int i=0; i<4; ++i) {
+            double expected = new Position(lons[i], lats[i]).getAngularDistance(new Position(lonsB[i], latsB[i]));
+            Assert.assertEquals(expected, distances[i], EPSILON);
+        }
+    }
+
+    @Test
+    public void testDistanceMatchesTrack () {
+        Random random = new Random(3);
+        for (int i=0; i<20; ++i) {
+            Cartesian3DTrack a = randomTrack(random);
+            Cartesian3DTrack b = randomTrack(random);
+            PackedTrack pa = new PackedTrack(a);
+            PackedTrack pb = new PackedTrack(b);
+
+            double expected = a.getDistance(b);
+            Assert.assertEquals(expected, pa.getDistance(pb), expected * EPSILON);
+            Assert.assertEquals(b.getDistance(a), pb.getDistance(pa), expected * EPSILON);
+            Assert.assertTrue(pa.getDistanceLowerBound(pb) <= pa.getDistance(pb));
+            Assert.assertEquals(0.0, pa.getDistance(pa), EPSILON);
+        }
+    }
+
+    @Test
+    public void testDistanceIgnoringDirection () {
+        PositionCalculationParameters ignoreDirection =
+                new PositionCalculationParameters(PositionCalculationType.Cartesian3D, 0.0001, 1E-12, true);
+        double[] lons = {0.0, 1.0, 2.0, 3.0};
+        double[] lats = {0.0, 0.2, 0.0, 0.2};
+        double[] otherLons = {0.0, 1.0, 2.0, 3.0};
+        double[] otherLats = {0.3, 0.5, 0.3, 0.5};
+        double[] reversedLons = {3.0, 2.0, 1.0, 0.0};
+        double[] reversedLats = {0.5, 0.3, 0.5, 0.3};
+
+        PackedTrack a = new PackedTrack(ignoreDirection, lons, lats);
+        PackedTrack forward = new PackedTrack(ignoreDirection, otherLons, otherLats);
+        PackedTrack backward = new PackedTrack(ignoreDirection, reversedLons, reversedLats);
+
+        // A track running the other way is compared as if it ran our way
+        double expected = a.getDistance(forward);
+        Assert.assertEquals(expected, a.getDistance(backward), expected * EPSILON);
+        Assert.assertTrue(expected < new PackedTrack(CARTESIAN_PARAMETERS, lons, lats)
+                .getDistance(new PackedTrack(CARTESIAN_PARAMETERS, reversedLons, reversedLats)));
+        Assert.assertSame(backward, backward.reverse().reverse());
+
+        // Track reduces the reversed track again, so only agrees approximately
+        List<Position> points = new ArrayList<Position>();
+        List<Position> reversedPoints = new ArrayList<Position>();
+        for (int i=0; i<lons.length; ++i) {
+            points.add(new Position(lons[i], lats[i]));
+            reversedPoints.add(new Position(reversedLons[i], reversedLats[i]));
+        }
+        double trackDistance = new Cartesian3DTrack(ignoreDirection, points)
+                .getDistance(new Cartesian3DTrack(ignoreDirection, reversedPoints));
+        Assert.assertEquals(trackDistance, a.getDistance(backward), trackDistance * 1E-2);
+    }
+
+    @Test
+    public void testWeightedAverage () {
+        PackedTrack base = new PackedTrack(CARTESIAN_PARAMETERS, new double[] {0, 1, 2}, new double[] {0, 0, 0});
+        PackedTrack offset = new PackedTrack(CARTESIAN_PARAMETERS, new double[] {0, 1, 2}, new double[] {1, 1, 1});
+
+        PackedTrack average = base.weightedAverage(offset, 1.0, 1.0);
+        double half = base.getDistance(offset) / 2.0;
+        Assert.assertEquals(half, average.getDistance(base), half * 1E-3);
+        Assert.assertEquals(half, average.getDistance(offset), half * 1E-3);
+        Assert.assertEquals(0.0, base.weightedAverage(base, 1.0, 3.0).getDistance(base), EPSILON);
+
+        double[] latitudes = average.getLatitudes();
+        Assert.assertEquals(3, latitudes.length);
+        Assert.assertEquals(0.5, latitudes[1], 1E-3);
+    }
+
+    @Test
+    public void testSimilarityQueries () {
+        // Enough tracks to be split between threads
+        Random random = new Random(7);
+        List<PackedTrack> tracks = new ArrayList<PackedTrack>();
+        for (int i=0; i<100; ++i) {
+            tracks.add(new PackedTrack(randomTrack(random)));
+        }
+        TrackSimilarity similarity = new TrackSimilarity(tracks);
+
+        // Pairs within a distance
+        double maxDistance = 2.0;
+        List<TrackSimilarity.Match> pairs = similarity.getPairsWithin(maxDistance);
+        int p = 0;
+        for (int i=0; i<tracks.size(); ++i) {
+            for (int j=i+1; j<tracks.size(); ++j) {
+                double distance = tracks.get(i).getDistance(tracks.get(j));
+                if (distance <= maxDistance) {
+                    TrackSimilarity.Match match = pairs.get(p++);
+                    Assert.assertEquals(i, match.getFirst());
+                    Assert.assertEquals(j, match.getSecond());
+                    Assert.assertEquals(distance, match.getDistance(), EPSILON);
+                }
+            }
+        }
+        Assert.assertEquals(p, pairs.size());
+        Assert.assertTrue(p > 0);
+
+        // Nearest neighbours
+        int k = 3;
+        List<List<TrackSimilarity.Match>> nearest = similarity.getNearest(k);
+        Assert.assertEquals(tracks.size(), nearest.size());
+        for (int i=0; i<tracks.size(); ++i) {
+            List<Double> distances = new ArrayList<Double>();
+            for (int j=0; j<tracks.size(); ++j) {
+                if (i != j) distances.add(tracks.get(i).getDistance(tracks.get(j)));
+            }
+            Collections.sort(distances);
+
+            List<TrackSimilarity.Match> matches = nearest.get(i);
+            Assert.assertEquals(k, matches.size());
+            for (int m=0; m<k; ++m) {
+                Assert.assertEquals(i, matches.get(m).getFirst());
+                Assert.assertEquals(distances.get(m), matches.get(m).getDistance(), EPSILON);
+            }
+        }
+    }
+
+    @Test
+    public void testLengthFilter () {
+        PackedTrack shortTrack = new PackedTrack(CARTESIAN_PARAMETERS, new double[] {0, 1}, new double[] {0, 0});
+        PackedTrack longTrack = new PackedTrack(CARTESIAN_PARAMETERS, new double[] {0, 4}, new double[] {0, 0});
+        List<PackedTrack> tracks = new ArrayList<PackedTrack>();
+        tracks.add(shortTrack);
+        tracks.add(longTrack);
+
+        Assert.assertEquals(1, new TrackSimilarity(tracks).getPairsWithin(Double.MAX_VALUE).size());
+        Assert.assertEquals(0, new TrackSimilarity(tracks, 2.0).getPairsWithin(Double.MAX_VALUE).size());
+    }
+}
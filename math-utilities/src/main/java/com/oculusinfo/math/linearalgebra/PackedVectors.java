@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.math.linearalgebra;
+
+
+
+/**
+ * Batch operations on many vectors of the same dimension, stored contiguously
+ * in a single array (vector i occupying entries [i*dimension,
+ * (i+1)*dimension)).
+ * 
+ * None of these operations allocate; results are written into arrays supplied
+ * by the caller, which may be the same as one of the inputs.
+ */
+public class PackedVectors {
+    private PackedVectors () {
+    }
+
+
+
+    /**
+     * Pack a set of vectors, all of the same dimension, into a single array.
+     */
+    public static double[] pack (Vector... vectors) {
+        if (0 == vectors.length)
+            return new double[0];
+
+        int dimension = vectors[0].size();
+        double[] packed = new double[vectors.length * dimension];
+        for (int i=0; i<vectors.length; ++i) {
+            if (vectors[i].size() != dimension)
+                throw new IllegalArgumentException("Attempt to pack vectors of different lengths");
+            vectors[i].copyInto(packed, i * dimension);
+        }
+        return packed;
+    }
+
+    /**
+     * Extract a single vector from a packed array.
+     */
+    public static Vector unpack (double[] packed, int dimension, int index) {
+        double[] coords = new double[dimension];
+        System.arraycopy(packed, index * dimension, coords, 0, dimension);
+        return new Vector(coords);
+    }
+
+    /**
+     * Calculate y = y + a * x over the first n entries of x and y.
+     */
+    public static void axpy (int n, double a, double[] x, double[] y) {
+        axpy(n, a, x, 0, y, 0);
+    }
+
+    /**
+     * Calculate y = y + a * x over n entries, starting at the given offsets
+     * into x and y respectively.
+     */
+    public static void axpy (int n, double a, double[] x, int xOffset, double[] y, int yOffset) {
+        for (int i=0; i<n; ++i)
+            y[yOffset + i] += a * x[xOffset + i];
+    }
+
+    /**
+     * Scale the first n entries of x in place.
+     */
+    public static void scale (int n, double a, double[] x) {
+        for (int i=0; i<n; ++i)
+            x[i] *= a;
+    }
+
+    /**
+     * Calculate result = a * x + b * y over the first n entries of each array.
+     * The result array may be either of the inputs.
+     */
+    public static void linearCombination (int n, double a, double[] x, double b, double[] y, double[] result) {
+        for (int i=0; i<n; ++i)
+            result[i] = a * x[i] + b * y[i];
+    }
+
+    /**
+     * Calculate the square of the distance between corresponding vectors of
+     * two packed arrays.
+     * 
+     * @param dimension The dimension of each packed vector
+     * @param count The number of vectors to compare
+     * @param x The first set of packed vectors
+     * @param y The second set of packed vectors
+     * @param result An array of at least count entries into which to write the
+     *            squared distance between x[i] and y[i]
+     */
+    public static void distancesSquared (int dimension, int count, double[] x, double[] y, double[] result) {
+        for (int i=0; i<count; ++i) {
+            int base = i * dimension;
+            double total = 0.0;
+            for (int j=0; j<dimension; ++j) {
+                double delta = x[base + j] - y[base + j];
+                total += delta * delta;
+            }
+            result[i] = total;
+        }
+    }
+
+    /**
+     * Calculate the coordinate-wise mean of a set of packed vectors.
+     * 
+     * @param dimension The dimension of each packed vector
+     * @param count The number of packed vectors to average
+     * @param packed The packed vectors
+     * @param result An array of at least dimension entries into which to write
+     *            the mean
+     */
+    public static void mean (int dimension, int count, double[] packed, double[] result) {
+        if (0 == count)
+            throw new IllegalArgumentException("Attempt to take the mean of 0 vectors");
+
+        for (int j=0; j<dimension; ++j)
+            result[j] = 0.0;
+        for (int i=0; i<count; ++i)
+            axpy(dimension, 1.0, packed, i * dimension, result, 0);
+        scale(dimension, 1.0 / count, result);
+    }
+}
@@ -105,6 +105,100 @@ public class TriDiagonalMatrix {
         return new Vector(x);
     }
 
+    /**
+     * Get the number of entries a workspace passed into
+     * {@link #solve(double[], double[], double[])} or
+     * {@link #solve(int, double[], double[], double[])} must have.
+     */
+    public int getWorkspaceSize () {
+        return 2 * _n;
+    }
+
+    /**
+     * Find the X for which this*X=d, without allocating.
+     * 
+     * This uses the standard (iterative) tridiagonal matrix algorithm, falling
+     * back on the degenerate-aware solver used by {@link #solve(Vector)} only if
+     * a pivot vanishes.
+     * 
+     * @param d The result (<code>d</code>) in the above equation, of length n
+     * @param x An array of length at least n into which to write the solution.
+     *            This may be the same array as d.
+     * @param workspace Scratch space of at least {@link #getWorkspaceSize()}
+     *            entries, which may be reused between calls
+     */
+    public void solve (double[] d, double[] x, double[] workspace) {
+        solve(1, d, x, workspace);
+    }
+
+    /**
+     * Find the X for which this*X=d, for many right-hand sides at once. The
+     * matrix is factored only once, and the factorization shared between all
+     * right-hand sides.
+     * 
+     * @param count The number of right-hand sides to solve
+     * @param d The right-hand sides, stored contiguously (the ith occupying
+     *            entries [i*n, (i+1)*n))
+     * @param x An array of at least count*n entries into which to write the
+     *            solutions, in the same layout as d. This may be the same array
+     *            as d.
+     * @param workspace Scratch space of at least {@link #getWorkspaceSize()}
+     *            entries, which may be reused between calls
+     */
+    public void solve (int count, double[] d, double[] x, double[] workspace) {
+        if (d.length < count * _n || x.length < count * _n)
+            throw new IllegalArgumentException("Attempt to find tri-diagonal solution with improper-sized vector");
+        if (workspace.length < 2 * _n)
+            throw new IllegalArgumentException("Tri-diagonal solution workspace too small");
+
+        boolean factored = factor(workspace);
+        for (int k = 0; k < count; ++k) {
+            int offset = k * _n;
+            if (factored) {
+                substitute(d, x, offset, workspace);
+            } else {
+                double[] dk = new double[_n];
+                System.arraycopy(d, offset, dk, 0, _n);
+                Vector xk = solve(new Vector(dk));
+                xk.copyInto(x, offset);
+            }
+        }
+    }
+
+    // Fill the workspace with the modified super-diagonal (c'), in [0, n), and
+    // the inverse pivots, in [n, 2n). Returns false if any pivot is too small
+    // for the iterative algorithm to be used.
+    private boolean factor (double[] workspace) {
+        double lastC = 0.0;
+        for (int i = 0; i < _n; ++i) {
+            double pivot = _b[i];
+            if (i > 0)
+                pivot -= _a[i] * lastC;
+            if (Math.abs(pivot) < EPSILON)
+                return false;
+            double inversePivot = 1.0 / pivot;
+            lastC = (i < _n - 1 ? _c[i] * inversePivot : 0.0);
+            workspace[i] = lastC;
+            workspace[_n + i] = inversePivot;
+        }
+        return true;
+    }
+
+    private void substitute (double[] d, double[] x, int offset, double[] workspace) {
+        // Forward sweep, storing d' in x
+        double last = 0.0;
+        for (int i = 0; i < _n; ++i) {
+            double di = d[offset + i];
+            if (i > 0)
+                di -= _a[i] * last;
+            last = di * workspace[_n + i];
+            x[offset + i] = last;
+        }
+        // Back substitution
+        for (int i = _n - 2; i >= 0; --i)
+            x[offset + i] -= workspace[i] * x[offset + i + 1];
+    }
+
     private void solve (Vector d, double[] x, int currentColumn, double b0, double c0, double d0) {
         // Solve the case M x = d for x, where we (the tri-diagonal matrix) is m
         //
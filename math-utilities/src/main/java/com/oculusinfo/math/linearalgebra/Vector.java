@@ -105,7 +105,16 @@ public class Vector implements Serializable {
      * vector.
      */
     public double getDistanceSquared (Vector other) {
-        return subtract(other).vectorLengthSquared();
+        int len = size();
+        if (other.size() != len)
+            throw new IllegalArgumentException("Attempt to subtract vectors of different lengths");
+
+        double res = 0.0;
+        for (int i=0; i<len; ++i) {
+            double delta = _data[i] - other._data[i];
+            res += delta*delta;
+        }
+        return res;
     }
 
     /**
@@ -131,10 +140,9 @@ public class Vector implements Serializable {
 
         Vector mean = zeroVector(data.get(0).size());
         for (Vector datum: data) {
-            mean = mean.add(datum);
+            mean.addInPlace(datum);
         }
-        mean = mean.scale(1.0/data.size());
-        return mean;
+        return mean.scaleInPlace(1.0/data.size());
     }
 
 
@@ -215,6 +223,101 @@ public class Vector implements Serializable {
         return new Vector(coords);
     }
 
+    /**
+     * Add another vector to this one, in place. Both vectors must have the same
+     * number of dimensions. Only this vector is altered.
+     * 
+     * @param that The other vector
+     * @return This vector, now holding the sum of the two vectors
+     */
+    public Vector addInPlace (Vector that) {
+        int len = size();
+        if (that.size() != len)
+            throw new IllegalArgumentException("Attempt to add vectors of different lengths");
+
+        for (int i=0; i<len; ++i)
+            _data[i] += that._data[i];
+        return this;
+    }
+
+    /**
+     * Subtract another vector from this one, in place. Both vectors must have
+     * the same number of dimensions. Only this vector is altered.
+     * 
+     * @param that The other vector
+     * @return This vector, now holding the difference (this - that)
+     */
+    public Vector subtractInPlace (Vector that) {
+        int len = size();
+        if (that.size() != len)
+            throw new IllegalArgumentException("Attempt to subtract vectors of different lengths");
+
+        for (int i=0; i<len; ++i)
+            _data[i] -= that._data[i];
+        return this;
+    }
+
+    /**
+     * Scale this vector in place.
+     * 
+     * @param scale The scale to apply.
+     * @return This vector, now scaled
+     */
+    public Vector scaleInPlace (double scale) {
+        int len = size();
+        for (int i=0; i<len; ++i)
+            _data[i] *= scale;
+        return this;
+    }
+
+    /**
+     * Add a scaled version of another vector to this one, in place (i.e., this
+     * = this + a * x). Both vectors must have the same number of dimensions.
+     * Only this vector is altered.
+     * 
+     * @param a The scale to apply to the other vector
+     * @param x The other vector
+     * @return This vector, now holding the scaled sum
+     */
+    public Vector axpy (double a, Vector x) {
+        int len = size();
+        if (x.size() != len)
+            throw new IllegalArgumentException("Attempt to add vectors of different lengths");
+
+        for (int i=0; i<len; ++i)
+            _data[i] += a * x._data[i];
+        return this;
+    }
+
+    /**
+     * Scale this vector and add another to it, in place (i.e., this = this *
+     * scale + that). Both vectors must have the same number of dimensions. Only
+     * this vector is altered.
+     * 
+     * @param scale The scale to apply to this vector
+     * @param that The vector to add after scaling
+     * @return This vector, now holding the scaled sum
+     */
+    public Vector multiplyAdd (double scale, Vector that) {
+        int len = size();
+        if (that.size() != len)
+            throw new IllegalArgumentException("Attempt to add vectors of different lengths");
+
+        for (int i=0; i<len; ++i)
+            _data[i] = _data[i] * scale + that._data[i];
+        return this;
+    }
+
+    /**
+     * Copy the coordinates of this vector into an array.
+     * 
+     * @param target The array into which to copy our coordinates
+     * @param offset The position in the target array of our first coordinate
+     */
+    public void copyInto (double[] target, int offset) {
+        System.arraycopy(_data, 0, target, offset, _data.length);
+    }
+
     /**
      * Calculate the dot product of two vectors. Both vectors must have the same
      * number of dimensions. Neither input vector is altered.
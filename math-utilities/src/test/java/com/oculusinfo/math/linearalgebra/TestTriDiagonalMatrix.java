@@ -262,4 +262,58 @@ public class TestTriDiagonalMatrix {
         X1 = M.solve(D);
         Assert.assertEquals(X0, X1);
     }
+
+
+    @Test
+    public void testArraySolving () {
+        TriDiagonalMatrix M = new TriDiagonalMatrix(2, 1,
+                                                    1, 4, 1,
+                                                       1, 4, 1,
+                                                          1, 4, 1,
+                                                             2, 7);
+        double[] workspace = new double[M.getWorkspaceSize()];
+        Vector X0 = new Vector(1, -2, 3, 0.5, 7);
+        Vector D = M.times(X0);
+
+        double[] d = new double[5];
+        D.copyInto(d, 0);
+        double[] x = new double[5];
+        M.solve(d, x, workspace);
+        Assert.assertEquals(X0, new Vector(x));
+
+        // Solving in place should work too
+        M.solve(d, d, workspace);
+        Assert.assertEquals(X0, new Vector(d));
+    }
+
+    @Test
+    public void testBatchSolving () {
+        TriDiagonalMatrix M = new TriDiagonalMatrix(1, 2,
+                                                    3, 4, 5,
+                                                       6, 7, 8,
+                                                          9, 8);
+        Vector X0 = new Vector(1, 2, 3, 4);
+        Vector X1 = new Vector(-1, 0.5, 0, 2);
+        Vector X2 = new Vector(0, 0, 0, 0);
+        double[] d = PackedVectors.pack(M.times(X0), M.times(X1), M.times(X2));
+        double[] x = new double[d.length];
+        M.solve(3, d, x, new double[M.getWorkspaceSize()]);
+        Assert.assertEquals(X0, PackedVectors.unpack(x, 4, 0));
+        Assert.assertEquals(X1, PackedVectors.unpack(x, 4, 1));
+        Assert.assertEquals(X2, PackedVectors.unpack(x, 4, 2));
+    }
+
+    @Test
+    public void testDegenerateArraySolving () {
+        // A zero leading pivot must fall back on the degenerate-aware solver
+        TriDiagonalMatrix M = new TriDiagonalMatrix(0, 1,
+                                                    2, 3, 4,
+                                                       5, 6);
+        Vector X0 = new Vector(1, 2, 3);
+        double[] d = PackedVectors.pack(M.times(X0), M.times(X0));
+        double[] x = new double[d.length];
+        M.solve(2, d, x, new double[M.getWorkspaceSize()]);
+        Assert.assertEquals(X0, PackedVectors.unpack(x, 3, 0));
+        Assert.assertEquals(X0, PackedVectors.unpack(x, 3, 1));
+    }
 }
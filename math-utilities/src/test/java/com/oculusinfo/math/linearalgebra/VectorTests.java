@@ -24,6 +24,8 @@
  */
 package com.oculusinfo.math.linearalgebra;
 
+import java.util.Arrays;
+
 import junit.framework.Assert;
 import org.junit.Test;
 
@@ -48,4 +50,49 @@ public class VectorTests {
         Assert.assertEquals(Y.scale(-1.0), X.cross(Z));
         Assert.assertEquals(X.scale(-1.0),  Z.cross(Y));
     }
+
+    @Test
+    public void testInPlaceOperations () {
+        Vector A = new Vector(1, 2, 3);
+        Vector B = new Vector(4, 5, 6);
+
+        Assert.assertEquals(A.add(B), new Vector(A).addInPlace(B));
+        Assert.assertEquals(A.subtract(B), new Vector(A).subtractInPlace(B));
+        Assert.assertEquals(A.scale(2.5), new Vector(A).scaleInPlace(2.5));
+        Assert.assertEquals(A.add(B.scale(3)), new Vector(A).axpy(3, B));
+        Assert.assertEquals(A.scale(3).add(B), new Vector(A).multiplyAdd(3, B));
+
+        // In-place operations alter only their target
+        Vector C = new Vector(A);
+        Assert.assertSame(C, C.axpy(-1, B));
+        Assert.assertEquals(new Vector(1, 2, 3), A);
+        Assert.assertEquals(new Vector(4, 5, 6), B);
+        Assert.assertEquals(A.getDistanceSquared(B), B.subtract(A).vectorLengthSquared(), 1E-12);
+    }
+
+    @Test
+    public void testPackedVectors () {
+        Vector A = new Vector(1, 2);
+        Vector B = new Vector(3, -4);
+        Vector C = new Vector(-1, 5);
+        double[] packed = PackedVectors.pack(A, B, C);
+        Assert.assertEquals(6, packed.length);
+        Assert.assertEquals(B, PackedVectors.unpack(packed, 2, 1));
+
+        double[] mean = new double[2];
+        PackedVectors.mean(2, 3, packed, mean);
+        Assert.assertEquals(Vector.mean(Arrays.asList(A, B, C)), new Vector(mean));
+
+        double[] others = PackedVectors.pack(B, C, A);
+        double[] distances = new double[3];
+        PackedVectors.distancesSquared(2, 3, packed, others, distances);
+        Assert.assertEquals(A.getDistanceSquared(B), distances[0], 1E-12);
+        Assert.assertEquals(B.getDistanceSquared(C), distances[1], 1E-12);
+        Assert.assertEquals(C.getDistanceSquared(A), distances[2], 1E-12);
+
+        double[] combination = new double[6];
+        PackedVectors.linearCombination(6, 2, packed, -1, others, combination);
+        Assert.assertEquals(A.scale(2).subtract(B), PackedVectors.unpack(combination, 2, 0));
+        Assert.assertEquals(C.scale(2).subtract(A), PackedVectors.unpack(combination, 2, 2));
+    }
 }
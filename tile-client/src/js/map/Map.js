@@ -34,11 +34,14 @@
         Carousel = require('../layer/Carousel'),
         BaseLayer = require('../layer/BaseLayer'),
         PubSub = require('../util/PubSub'),
+        Util = require('../util/Util'),
         AreaOfInterestTilePyramid = require('../binning/AreaOfInterestTilePyramid'),
         WebMercatorTilePyramid = require('../binning/WebMercatorTilePyramid'),
         TileIterator = require('../binning/TileIterator'),
         TILESIZE = 256,
         MARKER_Z_INDEX = 5000,
+        TILE_SESSION_COOKIE = 'tileSession',
+        identifyTileSession,
         setMapCallbacks,
         activateComponent,
         deactivateComponent,
@@ -53,6 +56,18 @@
         removeAxis,
         resetLayerZIndices;
 
+    /**
+     * Give this browser a random session id, sent with every tile request as a
+     * cookie, so the server can tell its requests apart from those of others
+     * sharing its address, and drop those it has zoomed away from.
+     * @private
+     */
+    identifyTileSession = function() {
+        if ( document.cookie.indexOf( TILE_SESSION_COOKIE + '=' ) === -1 ) {
+            document.cookie = TILE_SESSION_COOKIE + '=' + Util.generateUuid() + '; path=/';
+        }
+    };
+
     /**
      * Set callbacks to update the maps tile focus, identifying which tile
      * the user is currently hovering over.
@@ -415,6 +430,8 @@
         spec.theme = spec.theme || 'dark';
         // element id
         this.id = id;
+        // identify this browser to the tile server
+        identifyTileSession();
         // set map tile pyramid
         this.setPyramid( spec.pyramid );
         // initialize base layer index to -1 for no baselayer
@@ -26,19 +26,17 @@
 package com.oculusinfo.tilegen.export;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 
 import org.apache.avro.file.CodecFactory;
 
-import com.oculusinfo.binning.TileIndex;
 import com.oculusinfo.binning.io.serialization.impl.PrimitiveAvroSerializer;
 import com.oculusinfo.binning.io.PyramidIO;
 import com.oculusinfo.binning.io.impl.FileBasedPyramidIO;
 import com.oculusinfo.binning.io.impl.FileSystemPyramidSource;
 import com.oculusinfo.binning.io.impl.HBasePyramidIO;
 import com.oculusinfo.binning.io.serialization.TileSerializer;
+import com.oculusinfo.binning.util.CopyPyramid;
 
 /**
 * TileExporter is an application for the exporting aperture-tiles' data from HBase to a local filesystem.
@@ -59,6 +57,13 @@ import com.oculusinfo.binning.io.serialization.TileSerializer;
 * 
 * -maxlevel -- Max aperture-tiles zoom level to export from hbase table.
 *
+* -threads -- Number of threads each reading from hbase and writing to disk.  Default = 4
+*
+* -checkpoint -- File in which to record progress; rerunning with the same file resumes an
+*                interrupted export.  Default is no checkpointing.
+*
+* Only tiles actually present in the table are exported; each level's row keys are scanned
+* rather than every possible tile index being requested.
 *
 **/
 
@@ -77,36 +82,21 @@ public class TileExporter {
     }
 
     public <T> void copyPyramid (String pyramidId, int minLevel, int maxLevel, TileSerializer<T> serializer, int blockSize) throws IOException {
-        // Parameters 2-4 aren't used except in live tiling, so dummy parameters are fine.
-        _from.initializeForRead(pyramidId, 256, 256, null);
-        _to.initializeForWrite(pyramidId);
-
-        System.out.println("Writing metadata");
-        _to.writeMetaData(pyramidId, _from.readMetaData(pyramidId));
-        for (int level = minLevel; level <= maxLevel; ++level) {
-        	System.out.println("Copying level " + level);
-            copyLevel(pyramidId, level, serializer, blockSize);
-        }
+        copyPyramid(pyramidId, minLevel, maxLevel, serializer, blockSize, 1, null);
     }
-    public <T> void copyLevel (String pyramidId, int level, TileSerializer<T> serializer, int blockSize) throws IOException {
 
-        int N = 1 << level;
-
-        List<TileIndex> indices = new ArrayList<>(blockSize);
-        for (int x=0; x<N; ++x) {
-            for (int y=0; y<N; ++y) {
-                boolean last = (x == N-1 && y == N-1);
-                indices.add(new TileIndex(level, x, y));
-                if (indices.size() >= blockSize || last) {
-                    retrieveAndCopy(pyramidId, serializer, indices);
-                    indices.clear();
-                }
-            }
-        }
+    public <T> void copyPyramid (String pyramidId, int minLevel, int maxLevel, TileSerializer<T> serializer, int blockSize,
+                                 int threads, String checkpointFile) throws IOException {
+        CopyPyramid.CopyParameters parameters = new CopyPyramid.CopyParameters(pyramidId, pyramidId, null, 256, 256,
+                                                                               minLevel, maxLevel, blockSize,
+                                                                               threads, threads, checkpointFile);
+        new CopyPyramid<T>(_from, _to, serializer, parameters).copy(parameters.getIndices());
     }
 
-    private <T> void retrieveAndCopy (String pyramidId, TileSerializer<T> serializer, Iterable<TileIndex> indices) throws IOException {
-        _to.writeTiles(pyramidId, serializer, _from.readTiles(pyramidId, serializer, indices));
+    public <T> void copyLevel (String pyramidId, int level, TileSerializer<T> serializer, int blockSize) throws IOException {
+        CopyPyramid.CopyParameters parameters = new CopyPyramid.CopyParameters(pyramidId, pyramidId, null, 256, 256,
+                                                                               level, level, blockSize, 1, 1, null);
+        new CopyPyramid<T>(_from, _to, serializer, parameters).copyTiles(parameters.getIndices());
     }
 
     public static void main(String [] args) {
@@ -119,6 +109,8 @@ public class TileExporter {
         String pyramidId = "";
         int minLevel = 0;
         int maxLevel = 0;
+        int threads = 4;
+        String checkpointFile = null;
         
         String extension = "avro";
         //------
@@ -188,6 +180,12 @@ public class TileExporter {
             else {
             	throw new IOException("-maxlevel command line parameter not found!");
             }                      
+            if (argMap.containsKey("threads")) {
+            	threads = Integer.parseInt(argMap.get("threads"));
+            }
+            if (argMap.containsKey("checkpoint")) {
+            	checkpointFile = argMap.get("checkpoint");
+            }
             if ((minLevel < 0) || (maxLevel < 0) || (minLevel > maxLevel)) {
             	throw new IOException("minlevel and maxlevel parameters must be >=0 and minlevel <= maxlevel!");
             }
@@ -204,7 +202,7 @@ public class TileExporter {
             int blockSize = 100;
             TileSerializer<Double> serializer = new PrimitiveAvroSerializer<Double>(Double.class, CodecFactory.bzip2Codec());
             TileExporter extractor = new TileExporter(zookeeperQuorum, zookeeperPort, hbaseMaster, rootPath, extension);
-            extractor.copyPyramid(pyramidId, minLevel, maxLevel, serializer, blockSize);
+            extractor.copyPyramid(pyramidId, minLevel, maxLevel, serializer, blockSize, threads, checkpointFile);
             
             System.out.println("Done!");
             System.out.println("------------------------");
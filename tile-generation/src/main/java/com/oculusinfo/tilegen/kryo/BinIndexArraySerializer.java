@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tilegen.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.oculusinfo.binning.BinIndex;
+
+
+
+/**
+ * A compact Kryo serializer for arrays of bin indices, as produced by the
+ * binner's index location functions. Each bin is written as a pair of
+ * zig-zag varints, with no per-element class or reference information; the
+ * arrays are therefore expected not to contain nulls.
+ */
+public class BinIndexArraySerializer extends Serializer<BinIndex[]> {
+	@Override
+	public void write (Kryo kryo, Output output, BinIndex[] bins) {
+		output.writeInt(bins.length, true);
+		for (BinIndex bin: bins) {
+			output.writeInt(bin.getX(), false);
+			output.writeInt(bin.getY(), false);
+		}
+	}
+
+	@Override
+	public BinIndex[] read (Kryo kryo, Input input, Class<BinIndex[]> type) {
+		int length = input.readInt(true);
+		BinIndex[] bins = new BinIndex[length];
+		for (int i=0; i<length; ++i) {
+			int x = input.readInt(false);
+			int y = input.readInt(false);
+			bins[i] = new BinIndex(x, y);
+		}
+		return bins;
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tilegen.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.oculusinfo.binning.IndexKeys;
+import com.oculusinfo.binning.TileIndex;
+
+
+
+/**
+ * A compact Kryo serializer for tile indices.
+ *
+ * Tiles within the pyramid are written as their packed tile key (see
+ * {@link IndexKeys}) - a few bytes for any reasonable level - followed by
+ * their bin counts. Tiles outside the pyramid, which have no key, are marked
+ * as such and written field by field.
+ */
+public class TileIndexSerializer extends Serializer<TileIndex> {
+	// Tile keys are never negative, so this can't be confused with one
+	private static final long UNENCODED = -1L;
+
+	public TileIndexSerializer () {
+		setImmutable(true);
+	}
+
+	@Override
+	public void write (Kryo kryo, Output output, TileIndex tile) {
+		if (IndexKeys.isEncodable(tile)) {
+			output.writeLong(IndexKeys.tileKey(tile), true);
+		} else {
+			output.writeLong(UNENCODED, true);
+			output.writeInt(tile.getLevel(), true);
+			output.writeInt(tile.getX(), false);
+			output.writeInt(tile.getY(), false);
+		}
+		output.writeInt(tile.getXBins(), true);
+		output.writeInt(tile.getYBins(), true);
+	}
+
+	@Override
+	public TileIndex read (Kryo kryo, Input input, Class<TileIndex> type) {
+		long key = input.readLong(true);
+		int level, x, y;
+		if (UNENCODED == key) {
+			level = input.readInt(true);
+			x = input.readInt(false);
+			y = input.readInt(false);
+		} else {
+			level = IndexKeys.getLevel(key);
+			x = IndexKeys.getX(key);
+			y = IndexKeys.getY(key);
+		}
+		int xBins = input.readInt(true);
+		int yBins = input.readInt(true);
+		return new TileIndex(level, x, y, xBins, yBins);
+	}
+}
@@ -34,6 +34,7 @@ import com.oculusinfo.tilegen.spark.DoubleMinAccumulatorParam;
 import com.oculusinfo.tilegen.spark.IntMinAccumulatorParam;
 import com.oculusinfo.tilegen.spark.IntMaxAccumulatorParam;
 import com.oculusinfo.tilegen.spark.MinMaxAccumulableParam;
+import com.oculusinfo.tilegen.tiling.BinValueMap;
 import com.oculusinfo.tilegen.tiling.HBaseTileIO;
 import com.oculusinfo.tilegen.tiling.SequenceFileTileIO;
 import com.oculusinfo.tilegen.tiling.TileIO;
@@ -126,6 +127,7 @@ public class TileRegistrator implements KryoRegistrator {
 		kryo.register(TileIO.class);
 		kryo.register(HBaseTileIO.class);
 		kryo.register(SequenceFileTileIO.class);
+		kryo.register(BinValueMap.class, new BinValueMapSerializer());
 		kryo.register(Analytic.class);
 		kryo.register(AnalysisDescription.class);
 		kryo.register(ArrayAnalytic.class);
@@ -154,13 +156,15 @@ public class TileRegistrator implements KryoRegistrator {
 		kryo.register(EndPointsToLine.class);
 
 		// com.oculusinfo.binning
-		kryo.register(BinIndex.class);
+		kryo.register(BinIndex.class, new BinIndexSerializer());
+		kryo.register(BinIndex[].class, new BinIndexArraySerializer());
 		kryo.register(TileAndBinIndices.class);
 		kryo.register(PyramidComparator.class);
 		kryo.register(TileData.class);
 		kryo.register(TileData[].class);
 		kryo.register(TilePyramid.class);
-		kryo.register(TileIndex.class);
+		kryo.register(TileIndex.class, new TileIndexSerializer());
+		kryo.register(TileIndex[].class);
 
 		// com.oculusinfo.binning.impl
 		kryo.register(AOITilePyramid.class);
@@ -30,13 +30,15 @@ import java.util.TimeZone
 import java.util.regex.Pattern
 
 import com.oculusinfo.tilegen.datasets.ErrorAccumulator.{ErrorCollector, ErrorCollectorAccumulable}
-import com.oculusinfo.tilegen.util.{StringUtilities, KeyValueArgumentSource}
+import com.oculusinfo.tilegen.util.{FieldScanner, StringUtilities, KeyValueArgumentSource}
+import org.apache.hadoop.fs.Path
 import org.apache.spark.rdd.RDD
 import org.apache.spark.sql._
 import org.apache.spark.sql.types._
+import org.apache.spark.storage.StorageLevel
 
 import scala.collection.mutable.ListBuffer
-import scala.util.Try
+import scala.util.{Failure, Success, Try}
 
 
 
@@ -50,6 +52,10 @@ import scala.util.Try
  * <dl>
  *	 <dt> oculus.binning.parsing.separator </dt>
  *	 <dd> The character or string to use as a separator between columns. Default is a tab </dd>
+ *	 <dt> oculus.binning.parsing.parquetCache </dt>
+ *	 <dd> An optional path at which to cache the parsed data as a Parquet file.  If the cache already exists, the
+ *				CSV data is not parsed at all, and the cached data is used instead.  This allows several tiling jobs on
+ *				the same data to share a single parse.  Note that read errors still require parsing the CSV data. </dd>
  *	 <dt> oculus.binning.parsing.&lt;field&gt;.index </dt>
  *	 <dd> The column number of the described field. This field is mandatory for every field type to be used. </dd>
  *	 <dt> oculus.binning.parsing.&lt;field&gt;.fieldType </dt>
@@ -140,31 +146,87 @@ class CSVReader (val sqlc: SQLContext, data: RDD[String], configuration: KeyValu
 																										"The character to use for quoted fields in the input data",
 																										Some(""))
 
+	private val _parquetCache = configuration.getStringOption("oculus.binning.parsing.parquetCache",
+																														 "A path at which to cache parsed data as a Parquet file",
+																														 None)
+
+	/**
+	 * Keep the results of parsing our data in memory (or on disk, as necessary), so that the parsed data and any read
+	 * errors can both be retrieved with a single pass of parsing.
+	 */
+	def persistParse (storageLevel: StorageLevel = StorageLevel.MEMORY_AND_DISK_SER): CSVReader = {
+		_parseResults.persist(storageLevel)
+		this
+	}
+
 	private lazy val _parseUnfiltered: RDD[(String, Try[Row])] = {
 		val separator = _separator
 		val quoter = if (null == _quotechar || _quotechar.isEmpty) None else Some(_quotechar)
 		val parsers = _parsers
+		val rangeParsers = _rangeParsers
 		val indices = _indices
 		val N = _fields
-		val rowRDD:RDD[(String, Try[Row])] = data.map(record =>
-			(record, Try{
-				def getFields (line: String): Array[String] = {
-					StringUtilities.separateString(line, separator, quoter, None)
-				}
 
-				val fields = getFields(record)
-				val values = (0 until N).map(n => parsers(n)(fields(indices(n))))
-				row(values:_*)
-			})
-		)
-		rowRDD
+		if (quoter.isEmpty && FieldScanner.isLiteral(separator)) {
+			// Simple case - no quotes, and a plain separator.  We can find fields directly, and parse numeric values
+			// straight out of the record, without splitting it into separate strings first.
+			data.mapPartitions{records =>
+				var starts = new Array[Int](N max 1)
+				var ends = new Array[Int](N max 1)
+				records.map(record =>
+					(record, Try{
+						val (numFields, fieldStarts, fieldEnds) = FieldScanner.findFields(record, separator, starts, ends)
+						starts = fieldStarts
+						ends = fieldEnds
+						val values = new Array[Any](N)
+						var n = 0
+						while (n < N) {
+							val index = indices(n)
+							if (index >= numFields) throw new ArrayIndexOutOfBoundsException(index)
+							values(n) = rangeParsers(n)(record, fieldStarts(index), fieldEnds(index))
+							n += 1
+						}
+						row(values:_*)
+					})
+				)
+			}
+		} else {
+			data.map(record =>
+				(record, Try{
+					def getFields (line: String): Array[String] = {
+						StringUtilities.separateString(line, separator, quoter, None)
+					}
+
+					val fields = getFields(record)
+					val values = (0 until N).map(n => parsers(n)(fields(indices(n))))
+					row(values:_*)
+				})
+			)
+		}
 	}
 
-	private lazy val _parseErrors: RDD[(String, Throwable)] = _parseUnfiltered.filter(_._2.isFailure).map(r => (r._1, r._2.failed.get))
+	// Parse results, holding onto the original record only for failed parses
+	private lazy val _parseResults: RDD[Either[(String, Throwable), Row]] =
+		_parseUnfiltered.map{
+			case (record, Success(parsedRow)) => Right(parsedRow)
+			case (record, Failure(error)) => Left((record, error))
+		}
+
+	private lazy val _parseErrors: RDD[(String, Throwable)] = _parseResults.flatMap(_.left.toOption)
 
 	private lazy val _parsed: DataFrame = {
-		val r = _parseUnfiltered.filter(_._2.isSuccess).map(_._2.get)
-		sqlc.createDataFrame(r, _schema)
+		def parseCSV = sqlc.createDataFrame(_parseResults.flatMap(_.right.toOption), _schema)
+
+		_parquetCache match {
+			case Some(cachePath) =>
+				val path = new Path(cachePath)
+				if (!path.getFileSystem(sqlc.sparkContext.hadoopConfiguration).exists(path)) {
+					parseCSV.saveAsParquetFile(cachePath)
+				}
+				sqlc.parquetFile(cachePath)
+			case None =>
+				parseCSV
+		}
 	}
 
 	// _schema: the schema of our CSV file, as specified by our configuration
@@ -172,7 +234,8 @@ class CSVReader (val sqlc: SQLContext, data: RDD[String], configuration: KeyValu
 	// _parsers: A parser of each field in the schema, in order, from a string to the desired type.
 	// _fields: the number of parsed fields
 	// Do not calculate these lazily - we want errors as soon as the reader is made, for ease of debugging.
-	private val (_schema, _indices, _parsers, _fields) = {
+	// _rangeParsers: A parser of each field in the schema, in order, from a portion of a record to the desired type.
+	private val (_schema, _indices, _parsers, _rangeParsers, _fields) = {
 		// A quick internal function to get a field or field property type.
 		def getFieldType(field: String, suffix: String = "fieldType"): String = {
 			configuration.getString("oculus.binning.parsing." + field + "." + suffix, "You should never see this.",
@@ -230,6 +293,18 @@ class CSVReader (val sqlc: SQLContext, data: RDD[String], configuration: KeyValu
 				}
 			}
 
+		// A quick internal function to get a function to parse a portion of a string into a data type.	Numeric types
+		// are parsed in place; everything else is extracted into its own string, and handed to the normal parser.
+		def getRangeParseFunction (stringType: String, parser: String => Any): (String, Int, Int) => Any =
+			stringType.toLowerCase.trim match {
+				case "byte" => (s, start, end) => FieldScanner.parseShort(s, start, end).toByte
+				case "short" => (s, start, end) => FieldScanner.parseShort(s, start, end)
+				case "int" => (s, start, end) => FieldScanner.parseInt(s, start, end)
+				case "long" => (s, start, end) => FieldScanner.parseLong(s, start, end)
+				case "double" => (s, start, end) => FieldScanner.parseDouble(s, start, end)
+				case _ => (s, start, end) => parser(s.substring(start, end))
+			}
+
 		// Finally done helper functions.
 		// Get our field-by-field information
 		val fieldByField = configuration.properties.keys
@@ -243,10 +318,11 @@ class CSVReader (val sqlc: SQLContext, data: RDD[String], configuration: KeyValu
 				val fieldType = getFieldType(fieldName)
 				val (dataType, parser) = getParseFunction(fieldName, fieldType)
 
-				(schemaField(fieldName, dataType), fieldIndex, parser)
+				(schemaField(fieldName, dataType), fieldIndex, parser, getRangeParseFunction(fieldType, parser))
 			}
 		).toSeq.sortBy(_._2)
 
-		(structSchema(fieldByField.map(_._1):_*), fieldByField.map(_._2), fieldByField.map(_._3), fieldByField.size)
+		(structSchema(fieldByField.map(_._1):_*), fieldByField.map(_._2), fieldByField.map(_._3), fieldByField.map(_._4),
+		 fieldByField.size)
 	}
 }
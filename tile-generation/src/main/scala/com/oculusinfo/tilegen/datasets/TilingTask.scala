@@ -37,11 +37,12 @@ import com.oculusinfo.factory.ConfigurableFactory
 import com.oculusinfo.factory.providers.FactoryProvider
 import com.oculusinfo.factory.util.Pair
 import com.oculusinfo.binning.util.JsonUtilities
-import com.oculusinfo.binning.{BinIndex, TileData, TileIndex}
-import com.oculusinfo.tilegen.tiling.analytics.AnalysisDescription
+import com.oculusinfo.binning.{BinIndex, PyramidComparator, TileData, TileIndex}
+import com.oculusinfo.tilegen.tiling.analytics.{Analytic, AnalysisDescription}
 import com.oculusinfo.tilegen.tiling.{BinningParameters, StandardBinningFunctions, TileIO, UniversalBinner}
 import org.apache.spark.rdd.RDD
 import org.apache.spark.sql.SQLContext
+import org.apache.spark.storage.StorageLevel
 import org.apache.spark.streaming.dstream.DStream
 
 import scala.reflect.ClassTag
@@ -239,6 +240,9 @@ abstract class TilingTask[PT: ClassTag, DT: ClassTag, AT: ClassTag, BT]
 	/** Get the type of tile storage to create when this task creates tiles */
 	def getTileType = config.tileType
 
+	/** Get the fraction of data to sample when looking for hot tiles, if skewed tiles are to be split */
+	def getSkewSampleFraction = config.skewSampleFraction
+
 	/** Get the scheme used to determine axis values for our tiles */
 	def getIndexScheme = indexer.indexScheme
 
@@ -278,11 +282,64 @@ abstract class TilingTask[PT: ClassTag, DT: ClassTag, AT: ClassTag, BT]
 	 * @param tileIO An object that knows how to save tiles.
 	 */
 	def doTiling (tileIO: TileIO): Unit = {
-		doParameterizedTiling(
-			tileIO,
-			StandardBinningFunctions.locateIndexOverLevels(getIndexScheme, getTilePyramid, getNumXBins, getNumYBins),
-			StandardBinningFunctions.populateTileIdentity
-		)
+		if (config.zOrderPartitioning) {
+			doZOrderTiling(tileIO)
+		} else {
+			doParameterizedTiling(
+				tileIO,
+				StandardBinningFunctions.locateIndexOverLevels(getIndexScheme, getTilePyramid, getNumXBins, getNumYBins),
+				StandardBinningFunctions.populateTileIdentity
+			)
+		}
+	}
+
+	/**
+	 * Perform tiling by range-partitioning the data by Z-order key at the deepest requested level
+	 * once, and then tiling each level set from that partitioned data without further shuffling
+	 * of the raw data.  Only tiles straddling partition boundaries need to be merged across
+	 * partitions.
+	 *
+	 * @param tileIO An object that knows how to save tiles.
+	 */
+	def doZOrderTiling (tileIO: TileIO): Unit = {
+		val locFcn = StandardBinningFunctions.locateIndexOverLevels(getIndexScheme, getTilePyramid, getNumXBins, getNumYBins)
+		val popFcn = StandardBinningFunctions.populateTileIdentity[PT]
+		val binner = new UniversalBinner
+		val sc = sqlc.sparkContext
+		val indexScheme = getIndexScheme
+		val comparator = new PyramidComparator(getTilePyramid, getLevels.flatten.max)
+		val keyFcn: Seq[Any] => Long = index => {
+			val (x, y) = indexScheme.toCartesian(index)
+			comparator.getComparisonKey(x, y)
+		}
+		val parameters = BinningParameters(true, getNumXBins, getNumYBins, getConsolidationPartitions, getConsolidationPartitions, None)
+
+		tileAnalytics.map(_.addGlobalAccumulator(sc))
+		dataAnalytics.map(_.addGlobalAccumulator(sc))
+		getLevels.map{levels =>
+			tileAnalytics.map(analytic => levels.map(level => analytic.addLevelAccumulator(sc, level)))
+			dataAnalytics.map(analytic => levels.map(level => analytic.addLevelAccumulator(sc, level)))
+		}
+
+		val procFcn: RDD[(Seq[Any], PT, Option[DT])] => Unit =
+			rdd => {
+				val partitionedData = binner.zOrderPartition(rdd, keyFcn, parameters)
+				// Cache this, we'll use it once for each level set
+				partitionedData.persist(StorageLevel.MEMORY_AND_DISK)
+
+				getLevels.foreach{levels =>
+					val tiles = binner.processZOrderedData[Seq[Any], PT, AT, DT, BT](partitionedData, comparator, getBinningAnalytic,
+						tileAnalytics, dataAnalytics, locFcn(levels), popFcn, parameters)
+
+					tileIO.writeTileSet(getTilePyramid, getName, tiles, getTileSerializer,
+						tileAnalytics, dataAnalytics, getName, getDescription)
+					binner.releaseIntermediates()
+				}
+
+				partitionedData.unpersist(false)
+			}
+
+		process(procFcn, None)
 	}
 
 	def doParameterizedTiling (tileIO: TileIO,
@@ -302,16 +359,66 @@ abstract class TilingTask[PT: ClassTag, DT: ClassTag, AT: ClassTag, BT]
 				rdd => {
 					val tiles = binner.processData[Seq[Any], PT, AT, DT, BT](rdd, getBinningAnalytic, tileAnalytics, dataAnalytics,
 																																	 locFcn(levels), popFcn,
-						BinningParameters(true, getNumXBins, getNumYBins, getConsolidationPartitions, getConsolidationPartitions, None))
+						BinningParameters(true, getNumXBins, getNumYBins, getConsolidationPartitions, getConsolidationPartitions, None,
+							getSkewSampleFraction))
 
 					tileIO.writeTileSet(getTilePyramid, getName, tiles, getTileSerializer,
 						tileAnalytics, dataAnalytics, getName, getDescription)
+					binner.releaseIntermediates()
 				}
 
 			process(procFcn, None)
 		}
 	}
 
+	/**
+	 * Perform tiling, merging the resultant tiles into any tiles that already exist in the
+	 * target pyramid, rather than replacing them.
+	 *
+	 * When this task is backed by a stream, each micro-batch is binned and merged separately,
+	 * using the batch time as the batch ID, so that each batch is merged exactly once even if
+	 * it is re-run.  Otherwise, the whole data set is merged as a single batch.
+	 *
+	 * @param tileIO An object that knows how to read and save tiles.
+	 * @param mergeAnalytic An analytic that can combine final bin values of existing and new
+	 *                      tiles.
+	 */
+	def doIncrementalTiling (tileIO: TileIO, mergeAnalytic: Analytic[BT]): Unit = {
+		val locFcn = StandardBinningFunctions.locateIndexOverLevels(getIndexScheme, getTilePyramid, getNumXBins, getNumYBins)
+		val popFcn = StandardBinningFunctions.populateTileIdentity[PT]
+		val binner = new UniversalBinner
+		val sc = sqlc.sparkContext
+
+		tileAnalytics.map(_.addGlobalAccumulator(sc))
+		dataAnalytics.map(_.addGlobalAccumulator(sc))
+
+		getLevels.map{levels =>
+			tileAnalytics.map(analytic => levels.map(level => analytic.addLevelAccumulator(sc, level)))
+			dataAnalytics.map(analytic => levels.map(level => analytic.addLevelAccumulator(sc, level)))
+
+			// Tile analytics are left until merging, so they are calculated on the merged tiles
+			val noTileAnalytics: Option[AnalysisDescription[TileData[BT], AT]] = None
+			val procFcn: Long => RDD[(Seq[Any], PT, Option[DT])] => Unit =
+				batch => rdd => {
+					val tiles = binner.processData[Seq[Any], PT, AT, DT, BT](rdd, getBinningAnalytic, noTileAnalytics, dataAnalytics,
+						locFcn(levels), popFcn,
+						BinningParameters(true, getNumXBins, getNumYBins, getConsolidationPartitions, getConsolidationPartitions, None,
+							getSkewSampleFraction))
+
+					tileIO.mergeTileSet(getTilePyramid, getName, tiles, getTileSerializer, mergeAnalytic, batch,
+						tileAnalytics, dataAnalytics, getName, getDescription)
+					binner.releaseIntermediates()
+				}
+
+			strategy match {
+				case streaming: StreamingProcessingStrategy[Seq[Any], PT, DT] @unchecked =>
+					streaming.processWithTime[Unit](time => procFcn(time.milliseconds), None)
+				case _ =>
+					process(procFcn(System.currentTimeMillis()), None)
+			}
+		}
+	}
+
 	// Axis-related methods and fields
 	private lazy val axisBounds = getAxisBounds()
 
@@ -50,6 +50,13 @@ import com.oculusinfo.tilegen.util.OptionsFactoryMixin
  * @param consolidationPartitions The number of partitions into which to consolidate data when performign reduce operations
  * @param tileType The type of tile in which to store our data (dense or sparse).	Unspecified for automatic,
  *								 tile-by-tile heuristic choice
+ * @param filterToRegion Whether to filter out data outside of the valid level 0 tile
+ * @param zOrderPartitioning Whether to range-partition data by Z-order key once, and then tile each level
+ *                           without further shuffling.  Only suitable for point data.
+ * @param skewSampleFraction If set, the fraction of data to sample to find hot tiles, which are then split across
+ *                           several reducers.  Unspecified to combine each tile on a single reducer.
+ * @param incremental Whether to merge newly tiled data into any tiles that already exist in the pyramid, rather
+ *                    than replacing them.
  */
 case class TilingTaskParameters (name: String,
 																 description: String,
@@ -59,7 +66,10 @@ case class TilingTaskParameters (name: String,
 																 tileHeight: Int,
 																 consolidationPartitions: Option[Int],
 																 tileType: Option[StorageType],
-																 filterToRegion: Boolean = false)
+																 filterToRegion: Boolean = false,
+																 zOrderPartitioning: Boolean = false,
+																 skewSampleFraction: Option[Double] = None,
+																 incremental: Boolean = false)
 {
 }
 
@@ -75,6 +85,9 @@ object TilingTaskParametersFactory {
 	val PARTITIONS_PROPERTY = new IntegerProperty("consolidationPartitions", "The number of partitions into which to consolidate data when performing reduce operations", 0)
 	val TILE_TYPE_PROPERTY = new StringProperty("tileType", "The type of tile storage to use when creating tiles.	If unspecified, a heuristic will be used that is ideal for tiles whose bin values are the size of doubles.	If tiles have bins significantly larger than doubles, sparse is recommended.", "unspecified", Array("unspecified", "dense", "sparse"))
 	val FILTER_TO_REGION = new BooleanProperty("filterToRegion", "Filters out data outside of valid level 0 tile", false)
+	val Z_ORDER_PARTITIONING = new BooleanProperty("zOrderPartitioning", "Range-partitions point data by Z-order key once, and then tiles all levels without further shuffling of the raw data.  Recommended for very large point data sets.", false)
+	val INCREMENTAL = new BooleanProperty("incremental", "Merges newly tiled data into any tiles that already exist in the pyramid, rather than replacing them.  Only aggregations whose final values can be combined (counts, sums, minima, and maxima) can be tiled incrementally.", false)
+	val SKEW_SAMPLE_FRACTION = new DoubleProperty("skewSampleFraction", "The fraction of data to sample to find hot tiles, which are then split across several reducers and merged afterwards.  Useful for heavily skewed data, such as geographic data concentrated in cities.  Unspecified to combine each tile on a single reducer.", 0.0)
 }
 class TilingTaskParametersFactory (parent: ConfigurableFactory[_], path: JavaList[String])
 		extends ConfigurableFactory[TilingTaskParameters](classOf[TilingTaskParameters], parent, path, true)
@@ -90,6 +103,9 @@ class TilingTaskParametersFactory (parent: ConfigurableFactory[_], path: JavaLis
 	addProperty(PARTITIONS_PROPERTY)
 	addProperty(TILE_TYPE_PROPERTY)
 	addProperty(FILTER_TO_REGION)
+	addProperty(Z_ORDER_PARTITIONING)
+	addProperty(SKEW_SAMPLE_FRACTION)
+	addProperty(INCREMENTAL)
 
 	private def parseLevels (levelsDescriptions: Seq[String]): Seq[Seq[Int]] = {
 		levelsDescriptions.map(levelSet =>
@@ -119,7 +135,10 @@ class TilingTaskParametersFactory (parent: ConfigurableFactory[_], path: JavaLis
 														 getPropertyValue(TILE_HEIGHT_PROPERTY),
 														 optionalGet(PARTITIONS_PROPERTY).map(_.intValue()),
 														 tileType,
-														 getPropertyValue(FILTER_TO_REGION)
+														 getPropertyValue(FILTER_TO_REGION),
+														 getPropertyValue(Z_ORDER_PARTITIONING),
+														 optionalGet(SKEW_SAMPLE_FRACTION).map(_.doubleValue()).filter(_ > 0.0),
+														 getPropertyValue(INCREMENTAL)
 		)
 	}
 }
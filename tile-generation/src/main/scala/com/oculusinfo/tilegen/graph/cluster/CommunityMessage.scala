@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tilegen.graph.cluster
+
+import java.util.Arrays
+
+/**
+ * Neighbourhood community information sent to a vertex during louvain community detection: for each
+ * distinct (community, community sigma total) pair among the vertex's neighbours, the total weight of
+ * the vertex's edges into that community.
+ *
+ * Entries are stored in parallel primitive columns, sorted by community and then sigma total, rather
+ * than as a map keyed by boxed tuples, to keep the messages shuffled on every louvain pass small.
+ */
+class CommunityMessage(val communities: Array[Long], val sigmaTots: Array[Long], val weights: Array[Long]) extends Serializable {
+
+	def size: Int = communities.length
+
+	def foreach(fcn: (Long, Long, Long) => Unit): Unit = {
+		var i = 0
+		while (i < communities.length) {
+			fcn(communities(i), sigmaTots(i), weights(i))
+			i += 1
+		}
+	}
+
+	/**
+	 * Combine this message with another, summing the edge weights of matching entries
+	 */
+	def merge(that: CommunityMessage): CommunityMessage = {
+		val maxSize = this.size + that.size
+		val newCommunities = new Array[Long](maxSize)
+		val newSigmaTots = new Array[Long](maxSize)
+		val newWeights = new Array[Long](maxSize)
+		var (i, j, n) = (0, 0, 0)
+		while (i < this.size || j < that.size) {
+			val order = if (i >= this.size) 1
+			else if (j >= that.size) -1
+			else compare(this.communities(i), this.sigmaTots(i), that.communities(j), that.sigmaTots(j))
+
+			if (order <= 0) {
+				newCommunities(n) = this.communities(i)
+				newSigmaTots(n) = this.sigmaTots(i)
+				newWeights(n) = this.weights(i)
+				if (0 == order) {
+					newWeights(n) += that.weights(j)
+					j += 1
+				}
+				i += 1
+			} else {
+				newCommunities(n) = that.communities(j)
+				newSigmaTots(n) = that.sigmaTots(j)
+				newWeights(n) = that.weights(j)
+				j += 1
+			}
+			n += 1
+		}
+
+		if (n == maxSize) new CommunityMessage(newCommunities, newSigmaTots, newWeights)
+		else new CommunityMessage(Arrays.copyOf(newCommunities, n), Arrays.copyOf(newSigmaTots, n), Arrays.copyOf(newWeights, n))
+	}
+
+	private def compare(community1: Long, sigmaTot1: Long, community2: Long, sigmaTot2: Long): Int =
+		if (community1 != community2) java.lang.Long.compare(community1, community2)
+		else java.lang.Long.compare(sigmaTot1, sigmaTot2)
+
+	override def toString(): String =
+		communities.indices.map(i => "("+communities(i)+","+sigmaTots(i)+")->"+weights(i)).mkString("CommunityMessage(", ", ", ")")
+}
+
+object CommunityMessage {
+	/**
+	 * A message describing a single neighbouring community
+	 */
+	def apply(community: Long, sigmaTot: Long, weight: Long): CommunityMessage =
+		new CommunityMessage(Array(community), Array(sigmaTot), Array(weight))
+}
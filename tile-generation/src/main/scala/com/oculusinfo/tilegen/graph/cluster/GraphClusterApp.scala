@@ -59,6 +59,9 @@ import org.apache.spark.graphx._
  * -eSrcID -- The column number of an edge's source ID.  ID's must be type Long [required].
  * -eDstID -- The column number of an edge's destination ID.  ID's must be type Long [required].
  * -eWeight -- The column number of an edge's weight.  Default = -1, meaning no edge weighting is used.
+ * -previous -- The output location of a previous run on an earlier version of this graph [optional].  If given,
+ * 				communities are detected incrementally: the first level is seeded with the previous run's results,
+ * 				and only nodes near changed edges are re-evaluated.
  * 
  * Results for each hierarchical level are stored in a "level_#" sub-directory, with the following data format,
  * For nodes:
@@ -91,6 +94,7 @@ object GraphClusterApp {
 		val nodeAttrIndices = argParser.getString("nAttr",
 		                                          "Column numbers of additional node metadata to parse and save with cluster results (attribute ID tags separated by commas)",
 		                                          Some("-1")).split(",").map(_.trim().toInt)
+		val previousDir = argParser.getStringOption("previous", "The output location of a previous run on an earlier version of this graph, from which to detect communities incrementally", None)
 		
 		// read the input data
 		val rawData = if (0 == partitions) {
@@ -145,7 +149,10 @@ object GraphClusterApp {
 			
 			// use a helper class to execute the louvain algorithm and save the output.
 			val runner = new HDFSLouvainRunner(minProgress,progressCounter,outputDir)
-			runner.run(sc, graph)
+			previousDir match {
+				case Some(dir) => runner.runFromPrevious(sc, graph, dir)
+				case None => runner.run(sc, graph)
+			}
 		}
 		else {
 			
@@ -188,7 +195,10 @@ object GraphClusterApp {
 			
 			// use a helper class to execute the louvain algorithm and save the output.
 			val runner = new HDFSLouvainRunner(minProgress,progressCounter,outputDir)
-			runner.run(sc, graph)
+			previousDir match {
+				case Some(dir) => runner.runFromPrevious(sc, graph, dir)
+				case None => runner.run(sc, graph)
+			}
 		}
 		
 		println("DONE!!")
@@ -28,6 +28,7 @@ package com.oculusinfo.tilegen.graph.cluster
 import org.apache.spark.SparkContext
 import org.apache.spark.graphx._
 import scala.Array.canBuildFrom
+import scala.reflect.ClassTag
 
 /**
  * Execute the louvain algorithim and save the vertices and edges in hdfs at each level.
@@ -42,6 +43,17 @@ class HDFSLouvainRunner(minProgressFactor:Double,progressCounter:Int,outputdir:S
 
 	var qValues = Array[(Int,Double)]()
 	
+	/**
+	 * Run community detection incrementally (see LouvainHarness.runIncremental), seeded from the level 0
+	 * results saved by a previous run of this runner on an earlier version of the graph.
+	 */
+	def runFromPrevious[VD: ClassTag](sc:SparkContext,graph:Graph[VD,Long],previousOutputDir:String) = {
+		val previousLevel = sc.textFile(previousOutputDir+"/level_0").map(_.split("\t"))
+		val previousCommunities = previousLevel.filter(_(0) == "node").map(tokens => (tokens(1).toLong, tokens(2).toLong))
+		val previousEdges = previousLevel.filter(_(0) == "edge").map(tokens => new Edge(tokens(1).toLong, tokens(2).toLong, tokens(3).toLong))
+		runIncremental(sc, graph, previousCommunities, previousEdges)
+	}
+	
 	override def saveLevel(sc:SparkContext,level:Int,q:Double,graph:Graph[VertexState,Long]) = {
 		//graph.vertices.saveAsTextFile(outputdir+"/level_"+level+"_vertices")
 		//graph.edges.saveAsTextFile(outputdir+"/level_"+level+"_edges")
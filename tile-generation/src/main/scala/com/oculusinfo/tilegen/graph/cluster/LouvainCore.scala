@@ -93,6 +93,88 @@ object LouvainCore {
 	
 	
 	
+	/**
+	 * Seed a louvain graph (see createLouvainGraph) with the communities found by a previous run, so that
+	 * communities can be detected incrementally after the graph has changed slightly.
+	 * 
+	 * Each vertex starts in its previous community (or, if it is new, in its own community).  Only new vertices,
+	 * vertices touched by changed edges, and their neighbours start out active - free to change community;
+	 * thereafter, the neighbours of any vertex that changes community become active in turn (see louvain,
+	 * which must be run with incremental = true on the seeded graph).
+	 * 
+	 * previousCommunities = the (level 0) community of each vertex in the previous run
+	 * changedVertices = vertices at either end of edges added, removed or re-weighted since the previous run (see changedVertices)
+	 */
+	def seedLouvainGraph(graph:Graph[VertexState,Long], previousCommunities:RDD[(VertexId,Long)], changedVertices:RDD[VertexId]) : Graph[VertexState,Long] = {
+		val touched = changedVertices.map(vid => (vid, true))
+		val seededGraph = graph.outerJoinVertices(previousCommunities)((vid,vdata,communityOption)=>
+			{
+				vdata.community = communityOption.getOrElse(vid)
+				vdata.active = communityOption.isEmpty	// new vertices start out active
+				vdata.changed = false
+				vdata
+			}
+		).outerJoinVertices(touched)((vid,vdata,touchedOption)=>
+			{
+				if (touchedOption.isDefined) vdata.active = true
+				vdata
+			}
+		).cache()
+		
+		// activate the neighbours of all active vertices too
+		val neighbours = seededGraph.mapReduceTriplets[Boolean](
+			et => {
+				if (et.srcAttr.active && !et.dstAttr.active) Iterator((et.dstId, true))
+				else if (et.dstAttr.active && !et.srcAttr.active) Iterator((et.srcId, true))
+				else Iterator.empty
+			},
+			(a, b) => a,
+			Some((seededGraph.vertices.filter(_._2.active), EdgeDirection.Either)))
+		val activeGraph = seededGraph.outerJoinVertices(neighbours)((vid,vdata,neighbourOption)=>
+			{
+				if (neighbourOption.isDefined) vdata.active = true
+				vdata
+			}
+		)
+		
+		// calculate the sigma total of each seeded community
+		val communitySigmaTots = activeGraph.vertices.values
+			.map(vdata => (vdata.community, vdata.nodeWeight+vdata.internalWeight))
+			.reduceByKey(_+_)
+		val vertexSigmaTots = activeGraph.vertices
+			.map({case (vid,vdata) => (vdata.community,vid)})
+			.join(communitySigmaTots)
+			.map({case (community,(vid,sigmaTot)) => (vid,sigmaTot)})
+		val louvainGraph = activeGraph.outerJoinVertices(vertexSigmaTots)((vid,vdata,sigmaTotOption)=>
+			{
+				vdata.communitySigmaTot = sigmaTotOption.getOrElse(vdata.nodeWeight+vdata.internalWeight)
+				vdata
+			}
+		).cache()
+		println("Seeded louvain graph with "+louvainGraph.vertices.filter(_._2.active).count+" active vertices")
+		seededGraph.unpersistVertices(blocking=false)
+		
+		return louvainGraph
+	}
+	
+	
+	
+	/**
+	 * Find the vertices at either end of edges that differ between two versions of a graph - edges that were added,
+	 * removed, or re-weighted.  Edges are treated as undirected, and the weights of duplicate edges summed.
+	 */
+	def changedVertices(previousEdges:RDD[Edge[Long]], currentEdges:RDD[Edge[Long]]) : RDD[VertexId] = {
+		def undirected(edges:RDD[Edge[Long]]) =
+			edges.map(e => ((math.min(e.srcId,e.dstId), math.max(e.srcId,e.dstId)), e.attr)).reduceByKey(_+_)
+		
+		undirected(previousEdges).fullOuterJoin(undirected(currentEdges)).flatMap({case ((src,dst),(before,after)) =>
+			if (before == after) Iterator.empty
+			else Iterator(src, dst)
+		}).distinct()
+	}
+	
+	
+	
 	/**
 	 * Transform a graph from [VD,Long] to a a [VertexState,Long] graph and label each vertex with a community
 	 * to maximize global modularity (without compressing the graph)
@@ -107,15 +189,21 @@ object LouvainCore {
 	/**
 	 * For a graph of type Graph[VertexState,Long] label each vertex with a community to maximize global modularity. 
 	 * (without compressing the graph)
+	 * 
+	 * If incremental is true, only active vertices (see seedLouvainGraph) are considered for a change of community
+	 * on each pass, and only their edges are scanned; the neighbours of vertices that change community are activated
+	 * for the following pass.
 	 */
-	def louvain(sc:SparkContext, graph:Graph[VertexState,Long], minProgress:Int=1,progressCounter:Int=1) : (Double,Graph[VertexState,Long],Int)= {
-		var louvainGraph = graph.cache()
+	def louvain(sc:SparkContext, graph:Graph[VertexState,Long], minProgress:Int=1,progressCounter:Int=1,incremental:Boolean=false) : (Double,Graph[VertexState,Long],Int)= {
+		// carry only the primitive vertex state through each pass; extra attributes are re-attached at the end
+		val extraAttributes = graph.vertices.mapValues(_.extraAttributes).cache()
+		var louvainGraph = graph.mapVertices((vid,vdata) => vdata.withoutAttributes()).cache()
 		val graphWeight = louvainGraph.vertices.values.map(vdata=> vdata.internalWeight+vdata.nodeWeight).reduce(_+_)
 		var totalGraphWeight = sc.broadcast(graphWeight)
 		println("totalEdgeWeight: "+totalGraphWeight.value)
 		
 		// gather community information from each vertex's local neighborhood
-		var msgRDD = louvainGraph.mapReduceTriplets(sendMsg,mergeMsg)
+		var msgRDD = neighbourhoodMessages(louvainGraph, incremental).cache()
 		var activeMessages = msgRDD.count() //materializes the msgRDD and caches it in memory
 		
 		var updated = 0L - minProgress
@@ -129,7 +217,20 @@ object LouvainCore {
 			even = ! even
 			
 			// label each vertex with its best community based on neighboring community information
-			val labeledVerts = louvainVertJoin(louvainGraph,msgRDD,totalGraphWeight,even).cache()
+			val labeledVerts = if (incremental) {
+				// inactive vertices keep their community, but still count towards its sigma total
+				val activeVerts = louvainVertJoin(louvainGraph,msgRDD,totalGraphWeight,even)
+				louvainGraph.vertices.leftJoin(activeVerts)((vid, old, newOpt) =>
+					newOpt match {
+						case Some(vdata) => vdata
+						case None =>
+							old.changed = false
+							old
+					}
+				).cache()
+			} else {
+				louvainVertJoin(louvainGraph,msgRDD,totalGraphWeight,even).cache()
+			}
 			
 			// calculate new sigma total value for each community (total weight of each community)
 			val communtiyUpdate = labeledVerts
@@ -156,11 +257,12 @@ object LouvainCore {
 			
 			val prevG = louvainGraph
 			louvainGraph = louvainGraph.outerJoinVertices(updatedVerts)((vid, old, newOpt) => newOpt.getOrElse(old))
+			if (incremental) louvainGraph = activateNeighbours(louvainGraph, even)
 			louvainGraph.cache()
 			
 			// gather community information from each vertex's local neighborhood
 			val oldMsgs = msgRDD
-			msgRDD = louvainGraph.mapReduceTriplets(sendMsg, mergeMsg).cache()
+			msgRDD = neighbourhoodMessages(louvainGraph, incremental).cache()
 			activeMessages = msgRDD.count()  // materializes the graph by forcing computation
 			
 			oldMsgs.unpersist(blocking=false)
@@ -179,9 +281,15 @@ object LouvainCore {
 			}
 
 			
-		} while ( stop <= progressCounter && (even ||   (updated > 0 && count < maxIter)))
+		} while ( stop <= progressCounter && (even ||   (updated > 0 && count < maxIter)) && (!incremental || activeMessages > 0))
 			println("\nCompleted in "+count+" cycles")
 		
+		// in incremental mode, messages only went to active vertices, so gather them for all vertices
+		if (incremental) {
+			val oldMsgs = msgRDD
+			msgRDD = neighbourhoodMessages(louvainGraph, false).cache()
+			oldMsgs.unpersist(blocking=false)
+		}
 		
 		// Use each vertex's neighboring community data to calculate the global modularity of the graph
 		val newVerts = louvainGraph.vertices.innerJoin(msgRDD)((vid,vdata,msgs)=>
@@ -190,8 +298,8 @@ object LouvainCore {
 				val community = vdata.community
 				var k_i_in = vdata.internalWeight
 				var sigmaTot = vdata.communitySigmaTot.toDouble
-				msgs.foreach({ case( (communityId,sigmaTotal),communityEdgeWeight ) =>
-					             if (vdata.community == communityId) k_i_in += communityEdgeWeight})
+				msgs.foreach((communityId,sigmaTotal,communityEdgeWeight) =>
+					             if (vdata.community == communityId) k_i_in += communityEdgeWeight)
 				val M = totalGraphWeight.value
 				val k_i = vdata.nodeWeight + vdata.internalWeight
 				var q = (k_i_in.toDouble / M) -  ( ( sigmaTot *k_i) / math.pow(M, 2) )
@@ -229,6 +337,12 @@ object LouvainCore {
 		)
 
 		val finalLouvainGraph = Graph(finalNodes,louvainGraph.edges)	//re-create graph for this hierarchy using new community IDs
+			.outerJoinVertices(extraAttributes)((vid,vdata,attributesOption)=>
+			{	// and re-attach extra attributes
+				vdata.extraAttributes = attributesOption.getOrElse("")
+				vdata
+			}
+		)
 		
 		// return the modularity value of the graph along with the
 		// graph. vertices are labeled with their community
@@ -236,31 +350,71 @@ object LouvainCore {
 	}
 	
 
+	/**
+	 * Gather community data from each vertex's neighborhood.  If incremental, only active vertices are sent data, and
+	 * only the edges of active vertices are scanned.
+	 */
+	private def neighbourhoodMessages(graph:Graph[VertexState,Long], incremental:Boolean) : VertexRDD[CommunityMessage] = {
+		if (incremental) {
+			graph.mapReduceTriplets(sendActiveMsg, mergeMsg, Some((graph.vertices.filter(_._2.active), EdgeDirection.Either)))
+		} else {
+			graph.mapReduceTriplets(sendMsg, mergeMsg)
+		}
+	}
+	
+	
+	
 	/**
 	 * Creates the messages passed between each vertex to convey neighborhood community data.
 	 */
 	private def sendMsg(et:EdgeTriplet[VertexState,Long]) = {
-		val m1 = (et.dstId,Map((et.srcAttr.community,et.srcAttr.communitySigmaTot)->et.attr))
-		val m2 = (et.srcId,Map((et.dstAttr.community,et.dstAttr.communitySigmaTot)->et.attr))
+		val m1 = (et.dstId,CommunityMessage(et.srcAttr.community,et.srcAttr.communitySigmaTot,et.attr))
+		val m2 = (et.srcId,CommunityMessage(et.dstAttr.community,et.dstAttr.communitySigmaTot,et.attr))
 		Iterator(m1, m2)
 	}
 	
 	
 	
+	/**
+	 * Creates neighborhood community data messages for active vertices only.
+	 */
+	private def sendActiveMsg(et:EdgeTriplet[VertexState,Long]) = {
+		val m1 = if (et.dstAttr.active) Iterator((et.dstId,CommunityMessage(et.srcAttr.community,et.srcAttr.communitySigmaTot,et.attr)))
+		else Iterator.empty
+		val m2 = if (et.srcAttr.active) Iterator((et.srcId,CommunityMessage(et.dstAttr.community,et.dstAttr.communitySigmaTot,et.attr)))
+		else Iterator.empty
+		m1 ++ m2
+	}
+	
+	
+	
 	/**
 	 *  Merge neighborhood community data into a single message for each vertex
 	 */
-	private def mergeMsg(m1:Map[(Long,Long),Long],m2:Map[(Long,Long),Long]) ={
-		val newMap = scala.collection.mutable.HashMap[(Long,Long),Long]()
-		m1.foreach{case (k,v)=>
-			if (newMap.contains(k)) newMap(k) = newMap(k) + v
-			else newMap(k) = v
-		}
-		m2.foreach{case (k,v)=>
-			if (newMap.contains(k)) newMap(k) = newMap(k) + v
-			else newMap(k) = v
-		}
-		newMap.toMap
+	private def mergeMsg(m1:CommunityMessage,m2:CommunityMessage) = m1.merge(m2)
+	
+	
+	
+	/**
+	 * Activate vertices for the next incremental pass: those that just changed community, and their neighbours.
+	 * Vertices active on an even pass stay active for the following odd pass, so they get a chance to move in
+	 * either direction.
+	 */
+	private def activateNeighbours(graph:Graph[VertexState,Long], even:Boolean) : Graph[VertexState,Long] = {
+		val neighbours = graph.mapReduceTriplets[Boolean](
+			et => {
+				if (et.srcAttr.changed && !et.dstAttr.changed) Iterator((et.dstId, true))
+				else if (et.dstAttr.changed && !et.srcAttr.changed) Iterator((et.srcId, true))
+				else Iterator.empty
+			},
+			(a, b) => a,
+			Some((graph.vertices.filter(_._2.changed), EdgeDirection.Either)))
+		graph.outerJoinVertices(neighbours)((vid,vdata,neighbourOption)=>
+			{
+				vdata.active = vdata.changed || neighbourOption.isDefined || (even && vdata.active)
+				vdata
+			}
+		)
 	}
 	
 	
@@ -269,14 +423,14 @@ object LouvainCore {
 	 * Join vertices with community data form their neighborhood and select the best community for each vertex to maximize change in modularity.
 	 * Returns a new set of vertices with the updated vertex state.
 	 */
-	private def louvainVertJoin(louvainGraph:Graph[VertexState,Long], msgRDD:VertexRDD[Map[(Long,Long),Long]], totalEdgeWeight:Broadcast[Long], even:Boolean) = {
+	private def louvainVertJoin(louvainGraph:Graph[VertexState,Long], msgRDD:VertexRDD[CommunityMessage], totalEdgeWeight:Broadcast[Long], even:Boolean) = {
 		louvainGraph.vertices.innerJoin(msgRDD)( (vid, vdata, msgs)=>
 			{
 				var bestCommunity = vdata.community
 				var startingCommunityId = bestCommunity
 				var maxDeltaQ = BigDecimal(0.0);
 				var bestSigmaTot = 0L
-				msgs.foreach{case( (communityId,sigmaTotal),communityEdgeWeight ) =>
+				if (vdata.active) msgs.foreach{(communityId,sigmaTotal,communityEdgeWeight) =>
 					val deltaQ = q(startingCommunityId, communityId, sigmaTotal, communityEdgeWeight, vdata.nodeWeight, vdata.internalWeight,totalEdgeWeight.value)
 					//println("   communtiy: "+communityId+" sigma:"+sigmaTotal+" edgeweight:"+communityEdgeWeight+"  q:"+deltaQ)
 					if (deltaQ > maxDeltaQ || (deltaQ > 0 && (deltaQ == maxDeltaQ && communityId > bestCommunity))){
@@ -28,6 +28,7 @@ package com.oculusinfo.tilegen.graph.cluster
 import org.apache.spark.SparkContext
 import org.apache.spark.SparkContext._
 import org.apache.spark.graphx._
+import org.apache.spark.rdd.RDD
 import scala.reflect.ClassTag
 import org.apache.spark.Logging
 
@@ -55,6 +56,9 @@ import org.apache.spark.Logging
  *  5. repeat steps 1-4 on the compressed graph.
  *  6. repeat until modularity is no longer improved
  *  
+ *  If the graph has changed only slightly since a previous run, runIncremental seeds step 1 with the previous
+ *  run's communities, and only re-evaluates vertices near the changes.
+ *  
  *  For details see:  Fast unfolding of communities in large networks, Blondel 2008
  *  
  *  Code adapted from Sotera's graphX implementation of the distributed Louvain modularity algorithm
@@ -64,12 +68,34 @@ class  LouvainHarness(minProgressFactor:Double,progressCounter:Int) {
 
 	
 	def run[VD: ClassTag](sc:SparkContext,graph:Graph[VD,Long]) = {
-		
+		runLevels(sc, initialGraph(graph), false)
+	}
+	
+	/**
+	 * Run community detection incrementally on a graph that has changed slightly since a previous run.
+	 * 
+	 * The first level is seeded with the previous run's communities, and only vertices near changed edges
+	 * (and, in turn, near vertices that change community) are re-evaluated; see LouvainCore.seedLouvainGraph.
+	 * Higher levels are clustered afresh, as their compressed graphs are small.
+	 * 
+	 * previousCommunities = the (level 0) community of each vertex in the previous run
+	 * previousEdges = the (level 0) edges of the graph in the previous run
+	 */
+	def runIncremental[VD: ClassTag](sc:SparkContext,graph:Graph[VD,Long],previousCommunities:RDD[(VertexId,Long)],previousEdges:RDD[Edge[Long]]) = {
+		val louvainGraph = initialGraph(graph)
+		val changedVertices = LouvainCore.changedVertices(previousEdges, louvainGraph.edges)
+		runLevels(sc, LouvainCore.seedLouvainGraph(louvainGraph, previousCommunities, changedVertices), true)
+	}
+	
+	private def initialGraph[VD: ClassTag](graph:Graph[VD,Long]) : Graph[VertexState,Long] = {
 		var louvainGraphTemp = LouvainCore.createLouvainGraph(graph)
 		var louvainGraph = (Graph(louvainGraphTemp.vertices, LouvainCore.tempPartitionBy(louvainGraphTemp.edges, PartitionStrategy.EdgePartition2D)))
 			.groupEdges(_+_)
 		louvainGraph.cache
-		
+	}
+	
+	private def runLevels(sc:SparkContext,initialLouvainGraph:Graph[VertexState,Long],seeded:Boolean) = {
+		var louvainGraph = initialLouvainGraph
 		
 		var level = -1  // number of times the graph has been compressed
 		var q = -1.0    // current modularity value
@@ -78,10 +104,16 @@ class  LouvainHarness(minProgressFactor:Double,progressCounter:Int) {
 			level += 1
 			println(s"\nStarting Louvain level $level")
 			
-			val minProgress = (minProgressFactor * louvainGraph.numVertices).toInt max 10
+			// a seeded first level only re-evaluates its active vertices, so measure progress against those
+			val incremental = seeded && level == 0
+			val minProgress = if (incremental) {
+				(minProgressFactor * louvainGraph.vertices.filter(_._2.active).count).toInt max 10
+			} else {
+				(minProgressFactor * louvainGraph.numVertices).toInt max 10
+			}
 			
 			// label each vertex with its best community choice at this level of compression
-			val (currentQ,currentGraph,passes) = LouvainCore.louvain(sc, louvainGraph,minProgress,progressCounter)
+			val (currentQ,currentGraph,passes) = LouvainCore.louvain(sc, louvainGraph,minProgress,progressCounter,incremental)
 			currentGraph.cache
 			louvainGraph.unpersistVertices(blocking=false)
 			
@@ -89,8 +121,9 @@ class  LouvainHarness(minProgressFactor:Double,progressCounter:Int) {
 			
 			// If modularity was increased by at least 0.001 compress the graph and repeat
 			// halt immediately if the community labeling took less than 3 passes
+			// (unless seeded, in which case few passes are expected)
 			//println(s"if ($passes > 2 && $currentQ > $q + 0.001 )")
-			if (passes > 2 && currentQ > q + 0.001 ){
+			if ((passes > 2 || incremental) && currentQ > q + 0.001 ){
 				//q = currentQ
 				//louvainGraph = LouvainCore.compressGraph(louvainGraph)
 			}
@@ -42,6 +42,23 @@ class VertexState extends Serializable{
 	var nodeDegree = 0		// out degree (unweighted)
 	var extraAttributes = ""	// extra node attributes
 	var changed = false
+	var active = true		// whether this vertex may change community (see LouvainCore.seedLouvainGraph)
+	
+	/**
+	 * A copy of this state without its extra attributes, for carrying through louvain passes
+	 */
+	def withoutAttributes(): VertexState = {
+		val state = new VertexState()
+		state.community = community
+		state.communitySigmaTot = communitySigmaTot
+		state.internalWeight = internalWeight
+		state.nodeWeight = nodeWeight
+		state.internalNodes = internalNodes
+		state.nodeDegree = nodeDegree
+		state.changed = changed
+		state.active = active
+		state
+	}
 	
 	override def toString(): String = {
 		"community:"+community+",communitySigmaTot:"+communitySigmaTot+
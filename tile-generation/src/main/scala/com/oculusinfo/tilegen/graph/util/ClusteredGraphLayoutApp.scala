@@ -50,6 +50,8 @@ object ClusteredGraphLayoutApp {
 		val gravity = argParser.getDouble("g", "Amount of gravitational force to use for Force-Directed layout to prevent outer nodes from spreading out too far. Default = 0 (no gravity)", Some(0.0))
 		val isolatedDegreeThres = argParser.getInt("degreeThres", "Degree threshold used to define 'leaf communities'. Such leaf communities are automatically laid out in an outer radial/spiral pattern. Default = 0", Some(0))
 		val communitySizeThres = argParser.getInt("commSizeThres", "Community size threshold used to exclude communities with < communitySizeThres nodes from layout. Default = 0", Some(0))
+		val layoutThreads = argParser.getInt("layoutThreads", "Number of threads with which to lay out each large community. Default = 0 (all available processors)", Some(0))
+		val energyTolerance = argParser.getDouble("convergence", "Relative change in node movement below which a community's force-directed layout is considered converged, and stopped early. Default = 0.001 (0 = never stop early)", Some(0.001))
  		
 		val fileStartTime = System.currentTimeMillis()
 		
@@ -70,7 +72,9 @@ object ClusteredGraphLayoutApp {
 		                         gravity,
 		                         isolatedDegreeThres,
 		                         communitySizeThres,
-		                         outputDir)
+		                         outputDir,
+		                         layoutThreads,
+		                         energyTolerance)
 		
 		val fileEndTime = System.currentTimeMillis()
 		println("Finished hierarchic graph layout job in "+((fileEndTime-fileStartTime)/60000.0)+" minutes")
@@ -50,6 +50,9 @@ import com.oculusinfo.geometry.quadtree.QuadNode
  *  - gravity = strength gravity force to use to prevent outer nodes from spreading out too far.  Default = 0.0 (no gravity),
  *  			whereas gravity = 1.0 gives gravitational force on a similar scale to edge attraction forces
  *  - isolatedDegreeThres = threshold to determine whether or not a community/node is considered 'isolated'.  Isolated nodes are laid out in an outer radial/spiral pattern   
+ *  - parallelism = number of threads with which to lay out large communities (see ForceDirectedEngine).  Default = number of available processors
+ *  - energyTolerance = relative change in node movement, over a window of iterations, below which the layout is considered converged
+ *  			and stopped early.  Default = 0.001 (0 = never stop early)
  * 
  *  - Format of output array is (node ID, x, y, radius, numInternalNodes, metaData)
  **/
@@ -117,7 +120,6 @@ class ForceDirected extends Serializable {
 	val QT_THETA = 1.0			// theta value for quadtree decomposition
 								// (>= 0; lower value gives more accurate repulsion force results, but is less efficient)
 	var _bNodesOverlapping = false	// boolean for whether community circles overlap or not
-	var _nodeOverlapRepulsionFactor = Math.pow(1000.0/256, 2.0)	// constant used for extra strong repulsion if node 'circles' overlap
 	
 	def run(nodes: Iterable[(Long, Long, Int, String)],
 	        edges: Iterable[(Long, Long, Long)],
@@ -130,7 +132,9 @@ class ForceDirected extends Serializable {
 	        bUseNodeSizes: Boolean = false,
 	        nodeAreaPercent: Int = 30,
 	        gravity: Double = 0.0,
-	        isolatedDegreeThres: Int = 0): Array[(Long, Double, Double, Double, Long, Int, String)] = {
+	        isolatedDegreeThres: Int = 0,
+	        parallelism: Int = Runtime.getRuntime.availableProcessors,
+	        energyTolerance: Double = 0.001): Array[(Long, Double, Double, Double, Long, Int, String)] = {
 
 		var numNodes = nodes.size
 		if (numNodes == 0) throw new IllegalArgumentException("number of nodes must be > 0")
@@ -235,164 +239,22 @@ class ForceDirected extends Serializable {
 			nodeCoords(n) = (id, x*boundingBoxFinal._3, y*boundingBoxFinal._4, radius, numInternalNodes, degree, metaData)
 		}
 		
-		//----- Init variables for controlling force-directed step-size
-		val bUseQTDecomp = numNodes > QT_NODE_THRES
-		val k2 = boundingBoxArea/numNodes
-		val k_inv = 1.0/Math.sqrt(k2)
-		val temperature0 = 0.5*Math.min(boundingBoxFinal._3, boundingBoxFinal._4)
-		var temperature = temperature0
-		val stepLimitFactor = 0.001
-		val alphaCool = Math.max(Math.min(1.0 + Math.log(stepLimitFactor)*4.0/maxIterations, 0.99), 0.8)	// set temperature cooling factor with respect to maxIterations (lower value == faster algorithm cooling)
-		val alphaCoolSlow = Math.max(Math.min(1.0 + Math.log(stepLimitFactor)*2.0/maxIterations, 0.99), 0.8)	// for cooling half as fast
-		val stepLimitSq = Math.pow(Math.min(boundingBoxFinal._3, boundingBoxFinal._4)*stepLimitFactor, 2.0)	// square of stepLimit
-		var energySum = Double.MaxValue		// init high
-		var progressCount = 0
-		_nodeOverlapRepulsionFactor = Math.pow(1000.0/Math.min(boundingBoxFinal._3, boundingBoxFinal._4), 2.0)	// constant used for extra strong repulsion if node 'circles' overlap
-
 		//----- Re-format edge data to reference node array indices instead of actual node ID labels (for faster array look-ups below)
-		val edgesArray = reformatEdges(edges, nodeCoords.map(n => n._1))
+		val adjacency = reformatEdges(edges, nodeCoords.map(n => n._1), if (bUseEdgeWeights) eWeightNormFactor else 0.0)
 
-		val numEdges = edgesArray.length
-		
-		//----- Main Force-directed algorithm...
-		var bDone = false
-		var iterations = 1
-		println("Starting Force Directed layout on " + numNodes + " nodes and " + numEdges + " edges...")
-		
-		while (!bDone) {
-			
-			_bNodesOverlapping = false
-			
-			// init array of node displacements for this iteration
-			var deltaXY = Array.fill[(Double, Double)](numNodes)((0.0,0.0))
-			
-			//---- Calc repulsion forces between all nodes
-			// (Also, account for node sizes, by adjusting distance between nodes by node radii)
-			if (bUseQTDecomp) {
-				// Use Quadtree Decomposition for repulsion force calculation
-				val qt = ForceDirected.createQuadTree(nodeCoords, numNodes)
-				
-				for (n1 <- 0 until numNodes) {
-					val (x,y,r) = (nodeCoords(n1)._2, nodeCoords(n1)._3, nodeCoords(n1)._4)
-					val qtDeltaXY = calcQTRepulsion(n1, x, y, r, qt.getRoot, k2, QT_THETA)
-					
-					deltaXY(n1) = (deltaXY(n1)._1 + qtDeltaXY._1, deltaXY(n1)._2 + qtDeltaXY._2)
-				}
-			}
-			else {
-				// Use regular repulsion force calculation instead
-				for (n1 <- 0 until numNodes) {
-					for (n2 <- 0 until numNodes) {
-						if (n1 != n2) {
-							// get x, y coords and radii of target and repulsor nodes
-							val xyr_target = (nodeCoords(n1)._2, nodeCoords(n1)._3, nodeCoords(n1)._4)
-							val xyr_repulsor = (nodeCoords(n2)._2, nodeCoords(n2)._3, nodeCoords(n2)._4)
-							
-							val nodeDeltaXY = calcRepulsionDelta(xyr_target, xyr_repulsor, k2)
-							deltaXY(n1) = (deltaXY(n1)._1 + nodeDeltaXY._1, deltaXY(n1)._2 + nodeDeltaXY._2)
-						}
-					}
-				}
-			}
-			
-			//---- Calc attraction forces due to all edges
-			// Also, account for node sizes, by adjusting distance between nodes by node radii
-			for (e1 <- 0 until numEdges) {
-				val (srcE, dstE, edgeWeight) = edgesArray(e1)	//get node indices for edge endpoints
-				
-				val xDist = nodeCoords(dstE)._2 - nodeCoords(srcE)._2
-				val yDist = nodeCoords(dstE)._3 - nodeCoords(srcE)._3
-				val dist = Math.sqrt(xDist*xDist + yDist*yDist) - nodeCoords(dstE)._4 - nodeCoords(srcE)._4	// distance minus node radii
-				if (dist > 0) {	// only calc attraction force if node circles don't overlap
-					val attractForce = if (bUseEdgeWeights) {
-						val w = eWeightNormFactor*edgeWeight //eWeightSlope*edgeWeight + eWeightOffset
-						dist * k_inv * w
-					}
-					else
-						dist * k_inv
-					
-					deltaXY(srcE) = (deltaXY(srcE)._1 + xDist*attractForce, deltaXY(srcE)._2 + yDist*attractForce)
-					deltaXY(dstE) = (deltaXY(dstE)._1 - xDist*attractForce, deltaXY(dstE)._2 - yDist*attractForce)
-				}
-			}
-			
-			//---- Calc gravitational force for all nodes
-
-			if (gravity > 0.0) {
-				//Also, account for node sizes using node radii
-				for (n <- 0 until numNodes) {
-					val xDist = xC - nodeCoords(n)._2	// node distance to centre
-					val yDist = yC - nodeCoords(n)._3
-					val dist = Math.sqrt(xDist*xDist + yDist*yDist) - nodeCoords(n)._4	// distance minus node radius
-					if (dist > 0) {
-						val gForce = dist * k_inv * gravity	// gravitational force for this node
-						deltaXY(n) = (deltaXY(n)._1 + xDist*gForce, deltaXY(n)._2 + yDist*gForce)
-					}
-				}
-			}
-			else if (bUseNodeSizes) {
-				// if using community sizes, but gravity = 0, then do an extra check to see
-				// if nodes are outside the bounding box
-				val rC = 0.5*Math.min(boundingBoxFinal._3, boundingBoxFinal._4)	// radius thres (smaller value == tighter layout boundary)
-				for (n <- 0 until numNodes) {
-					val xDist = xC - nodeCoords(n)._2	// node distance to centre
-					val yDist = yC - nodeCoords(n)._3
-					val dist = Math.sqrt(xDist*xDist + yDist*yDist)
-					if (dist > rC) {
-						val displRatio = (dist - rC)/dist
-						deltaXY(n) = (deltaXY(n)._1 + xDist*displRatio, deltaXY(n)._2 + yDist*displRatio)
-					}
-				}
-			}
-			
-			//---- Calc final displacements and save results for this iteration
-			var largestStepSq = Double.MinValue // init low
-			val energySum0 = energySum
-			energySum = 0.0
-			for (n <- 0 until numNodes) {
-				if (nodeCoords(n)._1 != parentID) {	// leave 'primary node' at fixed position at centre of bounding area
-					val deltaDist = Math.sqrt(deltaXY(n)._1*deltaXY(n)._1 + deltaXY(n)._2*deltaXY(n)._2);
-					if (deltaDist > temperature) {
-						val normalizedTemp = temperature/deltaDist
-						deltaXY(n) = (deltaXY(n)._1*normalizedTemp, deltaXY(n)._2*normalizedTemp)
-					}
-					val finalStepSq = deltaXY(n)._1*deltaXY(n)._1 + deltaXY(n)._2*deltaXY(n)._2
-					largestStepSq = Math.max(largestStepSq, finalStepSq);	// save largest step for this iteration
-					energySum += finalStepSq
-					
-					// save new node coord locations
-					nodeCoords(n) = (nodeCoords(n)._1, nodeCoords(n)._2 + deltaXY(n)._1, nodeCoords(n)._3 + deltaXY(n)._2, nodeCoords(n)._4, nodeCoords(n)._5, nodeCoords(n)._6, nodeCoords(n)._7)
-				}
-			}
-			
-			//---- Adaptive cooling function (based on Yifan Hu "Efficient, High-Quality Force-Directed Graph Drawing", 2006)
-			if (energySum < energySum0) {
-				// system energy (movement) is decreasing, so keep temperature constant
-				// or increase slightly to prevent algorithm getting stuck in a local minimum
-				progressCount += 1
-				if (progressCount >= 5) {
-					progressCount = 0
-					temperature = Math.min(temperature / alphaCool, temperature0)
-				}
-			}
-			else {
-				// system energy (movement) is increasing, so cool the temperature
-				progressCount = 0
-				if (_bNodesOverlapping)
-					temperature *= alphaCoolSlow	// cool slowly if nodes are overlapping
-				else
-					temperature *= alphaCool		// cool at the regular rate
-			}
-			
-			//---- Check if system has adequately converged (note: we allow iterations to go higher than maxIterations here, due to adaptive cooling routine)
-			if ( ((iterations >= 1.5f*maxIterations) || (!_bNodesOverlapping && (iterations >= maxIterations))) ||
-				    (temperature <= 0.0) ||
-				    (largestStepSq <= stepLimitSq) ) {
-				println("Finished layout algorithm in " + iterations + " iterations.")
-				bDone = true
-			}
-
-			iterations += 1
+		//----- Main Force-directed algorithm, run on primitive arrays of node coordinates and radii
+		println("Starting Force Directed layout on " + numNodes + " nodes and " + adjacency.numEdges + " edges...")
+		val xs = nodeCoords.map(_._2)
+		val ys = nodeCoords.map(_._3)
+		val radii = nodeCoords.map(_._4)
+		val fixedNode = nodeCoords.indexWhere(_._1 == parentID)	// leave 'primary node' at fixed position at centre of bounding area
+		val engine = new ForceDirectedEngine(parallelism, energyTolerance = energyTolerance, theta = QT_THETA, treeThreshold = QT_NODE_THRES)
+		_bNodesOverlapping = engine.layout(xs, ys, radii, adjacency, fixedNode,
+		                                   boundingBoxFinal._3, boundingBoxFinal._4,
+		                                   maxIterations, gravity, bUseNodeSizes)
+		for (n <- 0 until numNodes) {
+			val (id, x, y, radius, numInternalNodes, degree, metaData) = nodeCoords(n)
+			nodeCoords(n) = (id, xs(n), ys(n), radius, numInternalNodes, degree, metaData)
 		}
 		
 		//---- Use Anti-Overlap algo to tune layout if needed
@@ -430,22 +292,23 @@ class ForceDirected extends Serializable {
 		Array.concat(nodeCoords, isolatedNodeCoords)	// return final node coordinates (all node coords concatenated together)
 	}
 	
-	private def reformatEdges(edges: Iterable[(Long, Long, Long)], nodeIds: Array[Long]): Array[(Int, Int, Long)] = {
-		
-		edges.flatMap(e =>
+	// Convert edges to an adjacency list of node array indices, with weights normalized by
+	// eWeightNormFactor (or all 1.0, if eWeightNormFactor is 0)
+	private def reformatEdges(edges: Iterable[(Long, Long, Long)], nodeIds: Array[Long], eWeightNormFactor: Double): ForceDirectedEngine.Adjacency = {
+		val nodeIndices = nodeIds.zipWithIndex.toMap
+		val validEdges = edges.flatMap(e =>
 			{
-				val srcIndx = nodeIds.indexOf(e._1)
-				val dstIndx = nodeIds.indexOf(e._2)
-				//val srcIndx = nodeCoords.indexOf((e._1,_:Double,_:Double))
-				//val dstIndx = nodeCoords.indexOf((e._2,_:Double,_:Double))
-				
-				if (srcIndx == -1 || dstIndx == -1)
-					Iterator.empty 	// not a valid edge
-				else
-					Iterator( (srcIndx, dstIndx, e._3) )
-				
+				(nodeIndices.get(e._1), nodeIndices.get(e._2)) match {
+					case (Some(srcIndx), Some(dstIndx)) =>
+						val w = if (eWeightNormFactor > 0.0) eWeightNormFactor*e._3 else 1.0
+						Iterator( (srcIndx, dstIndx, w) )
+					case _ =>
+						Iterator.empty 	// not a valid edge
+				}
 			}
 		).toArray
+
+		ForceDirectedEngine.createAdjacency(nodeIds.length, validEdges.map(_._1), validEdges.map(_._2), validEdges.map(_._3))
 	}
 	
 	// Function to manually layout very small communities of <= 4 nodes
@@ -514,69 +377,4 @@ class ForceDirected extends Serializable {
 		
 		nodeResults
 	}
-	
-	// Calculate Node to Node repulsion force
-	def calcRepulsionDelta(target: (Double, Double, Double), repulsor: (Double, Double, Double), k2: Double): (Double, Double) = {
-		
-		//format for 'point' is assumed to be (x,y,radius)
-		var xDist = target._1 - repulsor._1
-		var yDist = target._2 - repulsor._2
-		val r1 = target._3
-		val r2 = repulsor._3
-		// calc distance between two nodes (corrected for node radii)
-		val dist = Math.sqrt(xDist*xDist + yDist*yDist) - r1 - r2	// distance minus node radii
-		if (dist > 0.0) {
-			val repulseForce = k2/(dist*dist)	// repulsion force
-			(xDist*repulseForce, yDist*repulseForce)
-		}
-		else {
-			_bNodesOverlapping = true
-			val repulseForce = _nodeOverlapRepulsionFactor*k2	// extra strong repulsion force if node circles overlap!
-			if ((xDist == 0) && (yDist == 0)) {
-				xDist = r1*0.01	// force xDist and yDist to be 1% of radius so repulse calc below doesn't == 0
-				yDist = r2*0.01	// TODO need random directions here!
-			}
-			(xDist*repulseForce, yDist*repulseForce)
-		}
-	}
-	
-	// Calculate QuadTree repulsion force
-	def calcQTRepulsion(index: Int, x: Double, y: Double,
-	                    r: Double, qn: QuadNode, k2: Double,
-	                    theta: Double): (Double, Double) = {
-		
-		if (qn == null) {
-			throw new IllegalArgumentException("quadNode == null") //return (0.0, 0.0)
-		}
-		if (qn.getNumChildren == 0) { // nothing to compute
-			return (0.0, 0.0)
-		}
-		
-		if (qn.getNumChildren == 1) { // leaf
-
-			val qnData = qn.getData
-			if (qnData.getId == index) {	// no repulsion for node compared to itself
-				return (0.0, 0.0)
-			}
-			val currentLeafPosition = qnData
-			val xyDelta = calcRepulsionDelta((x,y,r), (qnData.getX, qnData.getY, qnData.getSize), k2)
-			return xyDelta
-		}
-		
-		if (ForceDirected.useAsPseudoNode(qn, (x,y), r, theta)) {	// consider current quadnode as a 'pseudo node'?
-			val (xC, yC) = qn.getCenterOfMass									// use quadnode's Centre of Mass as repulsor's coords
-			val rC = qn.getSize													// and use average radius of all underlying nodes, for this pseudo node
-			val xyDelta = calcRepulsionDelta((x,y,r), (xC, yC, rC), k2)
-			return (xyDelta._1*qn.getNumChildren, xyDelta._2*qn.getNumChildren)	// multiply repulsion results by number of child nodes
-		}
-		
-		// failed to resolve a repulsion, so recurse into all four child quad nodes, and sum results
-		val xyDeltaNW = calcQTRepulsion(index, x, y, r, qn.getNW, k2, theta)
-		val xyDeltaNE = calcQTRepulsion(index, x, y, r, qn.getNE, k2, theta)
-		val xyDeltaSW = calcQTRepulsion(index, x, y, r, qn.getSW, k2, theta)
-		val xyDeltaSE = calcQTRepulsion(index, x, y, r, qn.getSE, k2, theta)
-
-		(xyDeltaNW._1 + xyDeltaNE._1 + xyDeltaSW._1 + xyDeltaSE._1,
-		 xyDeltaNW._2 + xyDeltaNE._2 + xyDeltaSW._2 + xyDeltaSE._2)
-	}
 }
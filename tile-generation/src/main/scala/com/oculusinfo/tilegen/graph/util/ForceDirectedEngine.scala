@@ -0,0 +1,387 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tilegen.graph.util
+
+
+
+import java.util.concurrent.{ForkJoinPool, ForkJoinTask, RecursiveAction}
+import java.util.concurrent.atomic.AtomicBoolean
+
+import scala.collection.mutable.{Map => MutableMap}
+
+import com.oculusinfo.geometry.quadtree.FlatQuadTree
+
+
+
+/**
+ * The iterative core of the force-directed layout algorithm used by ForceDirected, working on
+ * primitive arrays.
+ *
+ * Node positions and radii are kept in parallel arrays, and edges in an adjacency list that lists
+ * each edge under both of its endpoints, so the displacement of each node in an iteration
+ * (repulsion, attraction, and gravity together) can be computed independently of all the others.
+ * Repulsion is approximated using a Barnes-Hut quadtree (FlatQuadTree), rebuilt in place each
+ * iteration.  Communities of at least parallelThreshold nodes are laid out using a shared
+ * fork-join pool; smaller ones are laid out on the calling thread, so the many small communities
+ * spark lays out at once don't compete for cores.
+ *
+ * Cooling is adaptive, as in ForceDirected.  Besides the step size and iteration limits, layout
+ * also stops early once the total movement per iteration has changed by less than
+ * energyTolerance (as a fraction) over the last CONVERGENCE_WINDOW iterations, as long as no
+ * nodes overlap.
+ *
+ * @param parallelism The number of threads with which to lay out large communities
+ * @param parallelThreshold The number of nodes at or above which a community is laid out in
+ *                          parallel
+ * @param energyTolerance The relative change in total movement per iteration below which the
+ *                        layout is considered converged; 0 disables early termination
+ * @param theta Barnes-Hut theta (>= 0; lower values give more accurate repulsion, but are slower)
+ * @param treeThreshold The number of nodes above which repulsion is approximated using a quadtree
+ */
+class ForceDirectedEngine (parallelism: Int = Runtime.getRuntime.availableProcessors,
+                           parallelThreshold: Int = 5000,
+                           energyTolerance: Double = 0.001,
+                           theta: Double = 1.0,
+                           treeThreshold: Int = 20) {
+	import ForceDirectedEngine._
+
+	/**
+	 * Lay out a community, moving its nodes in place.
+	 *
+	 * @param x Node x coordinates, centred on (0, 0); updated with the final layout
+	 * @param y Node y coordinates, centred on (0, 0); updated with the final layout
+	 * @param radius Node radii
+	 * @param adjacency Edges between nodes (see ForceDirectedEngine.createAdjacency)
+	 * @param fixedNode The index of a node to leave at its starting position, or -1 for none
+	 * @param width The width of the layout area
+	 * @param height The height of the layout area
+	 * @param maxIterations The maximum number of iterations, not counting extra iterations while
+	 *                      nodes overlap
+	 * @param gravity Strength of gravity towards (0, 0)
+	 * @param bUseNodeSizes If true, and there is no gravity, nodes are pulled back inside the
+	 *                      layout area
+	 * @return True if nodes still overlap at the end of the layout
+	 */
+	def layout (x: Array[Double], y: Array[Double], radius: Array[Double],
+	            adjacency: Adjacency,
+	            fixedNode: Int,
+	            width: Double, height: Double,
+	            maxIterations: Int,
+	            gravity: Double,
+	            bUseNodeSizes: Boolean): Boolean =
+		new LayoutRun(x, y, radius, adjacency, fixedNode, width, height, gravity, bUseNodeSizes).run(maxIterations)
+
+
+
+	// The state of a single layout
+	private class LayoutRun (x: Array[Double], y: Array[Double], radius: Array[Double],
+	                         adjacency: Adjacency,
+	                         fixedNode: Int,
+	                         width: Double, height: Double,
+	                         gravity: Double,
+	                         bUseNodeSizes: Boolean) {
+		val numNodes = x.length
+		val useTree = numNodes > treeThreshold
+		val tree = if (useTree) new FlatQuadTree(numNodes) else null
+		val deltaX = new Array[Double](numNodes)
+		val deltaY = new Array[Double](numNodes)
+
+		val k2 = width * height / numNodes
+		val kInv = 1.0 / Math.sqrt(k2)
+		val overlapRepulsionFactor = Math.pow(1000.0 / Math.min(width, height), 2.0)	// extra strong repulsion if node circles overlap
+		val boundsRadius = 0.5 * Math.min(width, height)	// radius past which nodes are pulled back, if not using gravity
+		val overlapping = new AtomicBoolean(false)
+
+		def run (maxIterations: Int): Boolean = {
+			val temperature0 = 0.5 * Math.min(width, height)
+			var temperature = temperature0
+			val stepLimitFactor = 0.001
+			val alphaCool = Math.max(Math.min(1.0 + Math.log(stepLimitFactor)*4.0/maxIterations, 0.99), 0.8)	// temperature cooling factor
+			val alphaCoolSlow = Math.max(Math.min(1.0 + Math.log(stepLimitFactor)*2.0/maxIterations, 0.99), 0.8)	// for cooling half as fast
+			val stepLimitSq = Math.pow(Math.min(width, height)*stepLimitFactor, 2.0)
+			val parallel = numNodes >= parallelThreshold && parallelism > 1
+			var energySum = Double.MaxValue
+			var windowEnergy = Double.MaxValue
+			var progressCount = 0
+			var iterations = 1
+			var bDone = false
+
+			while (!bDone) {
+				overlapping.set(false)
+				if (useTree) tree.build(x, y, radius, numNodes)
+				if (parallel) pool(parallelism).invoke(new DisplacementTask(0, numNodes))
+				else computeDisplacements(0, numNodes)
+				val bOverlapping = overlapping.get
+
+				//---- Limit displacements by the current temperature, and move nodes
+				var largestStepSq = Double.MinValue
+				val energySum0 = energySum
+				energySum = 0.0
+				var n = 0
+				while (n < numNodes) {
+					if (n != fixedNode) {
+						val deltaDist = Math.sqrt(deltaX(n)*deltaX(n) + deltaY(n)*deltaY(n))
+						if (deltaDist > temperature) {
+							val normalizedTemp = temperature/deltaDist
+							deltaX(n) *= normalizedTemp
+							deltaY(n) *= normalizedTemp
+						}
+						val finalStepSq = deltaX(n)*deltaX(n) + deltaY(n)*deltaY(n)
+						largestStepSq = Math.max(largestStepSq, finalStepSq)
+						energySum += finalStepSq
+						x(n) += deltaX(n)
+						y(n) += deltaY(n)
+					}
+					n += 1
+				}
+
+				//---- Adaptive cooling (Yifan Hu, "Efficient, High-Quality Force-Directed Graph Drawing", 2006)
+				if (energySum < energySum0) {
+					progressCount += 1
+					if (progressCount >= 5) {
+						progressCount = 0
+						temperature = Math.min(temperature / alphaCool, temperature0)
+					}
+				} else {
+					progressCount = 0
+					if (bOverlapping) temperature *= alphaCoolSlow
+					else temperature *= alphaCool
+				}
+
+				//---- Check for convergence (iterations may go past maxIterations while nodes overlap)
+				var bConverged = false
+				if (0 == iterations % CONVERGENCE_WINDOW) {
+					bConverged = energyTolerance > 0.0 && !bOverlapping &&
+						Math.abs(windowEnergy - energySum) <= energyTolerance * windowEnergy
+					windowEnergy = energySum
+				}
+				if ((iterations >= 1.5f*maxIterations) || (!bOverlapping && (iterations >= maxIterations)) ||
+					    (temperature <= 0.0) ||
+					    (largestStepSq <= stepLimitSq) ||
+					    bConverged) {
+					println("Finished layout algorithm in " + iterations + " iterations.")
+					bDone = true
+				}
+
+				iterations += 1
+			}
+
+			overlapping.get
+		}
+
+		private class DisplacementTask (from: Int, until: Int) extends RecursiveAction {
+			def compute (): Unit =
+				if (until - from <= GRAIN_SIZE) {
+					computeDisplacements(from, until)
+				} else {
+					val mid = (from + until) >>> 1
+					ForkJoinTask.invokeAll(new DisplacementTask(from, mid), new DisplacementTask(mid, until))
+				}
+		}
+
+		// Calculate the net displacement of nodes from..until, before temperature limiting
+		def computeDisplacements (from: Int, until: Int): Unit = {
+			val force = new Force
+			val stack = if (useTree) new Array[Int](3 * FlatQuadTree.MAX_DEPTH + 4) else null
+
+			var n = from
+			while (n < until) {
+				force.dx = 0.0
+				force.dy = 0.0
+				val xn = x(n)
+				val yn = y(n)
+				val rn = radius(n)
+
+				//---- Repulsion from all other nodes
+				if (useTree) {
+					var top = 0
+					stack(top) = tree.getRoot
+					top += 1
+					while (top > 0) {
+						top -= 1
+						val cell = stack(top)
+						val count = tree.getNumPoints(cell)
+						if (0 == count) {
+							// empty cell; nothing to do
+						} else if (tree.isLeaf(cell)) {
+							var p = tree.getStart(cell)
+							while (p < tree.getEnd(cell)) {
+								val other = tree.getPoint(p)
+								if (other != n) repel(force, xn, yn, rn, x(other), y(other), radius(other), 1.0)
+								p += 1
+							}
+						} else if (usePseudoNode(cell, xn, yn)) {
+							// distant enough to treat the whole cell as a single node at its centre of mass
+							repel(force, xn, yn, rn, tree.getCenterX(cell), tree.getCenterY(cell), tree.getSize(cell), count)
+						} else {
+							val firstChild = tree.getFirstChild(cell)
+							var child = firstChild
+							while (child < firstChild + 4) {
+								stack(top) = child
+								top += 1
+								child += 1
+							}
+						}
+					}
+				} else {
+					var other = 0
+					while (other < numNodes) {
+						if (other != n) repel(force, xn, yn, rn, x(other), y(other), radius(other), 1.0)
+						other += 1
+					}
+				}
+
+				//---- Attraction along all edges (ignored if node circles overlap)
+				var e = adjacency.offsets(n)
+				val lastEdge = adjacency.offsets(n + 1)
+				while (e < lastEdge) {
+					val other = adjacency.neighbours(e)
+					val xDist = x(other) - xn
+					val yDist = y(other) - yn
+					val dist = Math.sqrt(xDist*xDist + yDist*yDist) - rn - radius(other)
+					if (dist > 0) {
+						val attractForce = dist * kInv * adjacency.weights(e)
+						force.dx += xDist*attractForce
+						force.dy += yDist*attractForce
+					}
+					e += 1
+				}
+
+				//---- Gravity towards the centre, or else pull back nodes outside the layout area
+				if (gravity > 0.0) {
+					val dist = Math.sqrt(xn*xn + yn*yn) - rn
+					if (dist > 0) {
+						val gForce = dist * kInv * gravity
+						force.dx -= xn*gForce
+						force.dy -= yn*gForce
+					}
+				} else if (bUseNodeSizes) {
+					val dist = Math.sqrt(xn*xn + yn*yn)
+					if (dist > boundsRadius) {
+						val displRatio = (dist - boundsRadius)/dist
+						force.dx -= xn*displRatio
+						force.dy -= yn*displRatio
+					}
+				}
+
+				deltaX(n) = force.dx
+				deltaY(n) = force.dy
+				n += 1
+			}
+
+			if (force.overlapping) overlapping.set(true)
+		}
+
+		// Whether a cell is far enough away from a node to be treated as a single 'pseudo node'
+		// (see ForceDirected.useAsPseudoNode)
+		private def usePseudoNode (cell: Int, xn: Double, yn: Double): Boolean = {
+			val cellLength = Math.min(tree.getWidth(cell), tree.getHeight(cell))
+			val deltaX = xn - tree.getCenterX(cell)
+			val deltaY = yn - tree.getCenterY(cell)
+			val dist = Math.sqrt(deltaX*deltaX + deltaY*deltaY) - tree.getSize(cell)
+			dist > 0 && cellLength <= theta*dist
+		}
+
+		// Add the repulsion of a node (or of scale nodes at the same position) to a force
+		private def repel (force: Force, xn: Double, yn: Double, rn: Double,
+		                   xr: Double, yr: Double, rr: Double, scale: Double): Unit = {
+			var xDist = xn - xr
+			var yDist = yn - yr
+			val dist = Math.sqrt(xDist*xDist + yDist*yDist) - rn - rr	// distance minus node radii
+			val repulseForce =
+				if (dist > 0.0) {
+					scale * k2/(dist*dist)
+				} else {
+					force.overlapping = true
+					if ((xDist == 0) && (yDist == 0)) {
+						xDist = rn*0.01	// force xDist and yDist to be 1% of radius so repulsion isn't 0
+						yDist = rr*0.01
+					}
+					scale * overlapRepulsionFactor*k2	// extra strong repulsion force if node circles overlap!
+				}
+			force.dx += xDist*repulseForce
+			force.dy += yDist*repulseForce
+		}
+	}
+}
+
+object ForceDirectedEngine {
+	/** The number of iterations over which convergence is measured */
+	val CONVERGENCE_WINDOW = 25
+	// The number of nodes below which a parallel task does its work rather than splitting further
+	private val GRAIN_SIZE = 256
+
+	private val pools = MutableMap[Int, ForkJoinPool]()
+	private def pool (parallelism: Int): ForkJoinPool = pools.synchronized {
+		pools.getOrElseUpdate(parallelism, new ForkJoinPool(parallelism))
+	}
+
+	// The displacement of a single node, accumulated without boxing
+	private class Force {
+		var dx = 0.0
+		var dy = 0.0
+		var overlapping = false
+	}
+
+	/**
+	 * Edges between nodes, as an adjacency list in compressed form: the neighbours of node n are
+	 * neighbours(offsets(n)) until neighbours(offsets(n+1)), with weights in the same positions.
+	 */
+	class Adjacency (val offsets: Array[Int], val neighbours: Array[Int], val weights: Array[Double]) {
+		/** The number of (undirected) edges */
+		def numEdges: Int = neighbours.length / 2
+	}
+
+	/**
+	 * Create an adjacency list from edges given as node indices, listing each edge under both of
+	 * its endpoints.  Self-loops are dropped, since they exert no force.
+	 */
+	def createAdjacency (numNodes: Int, sources: Array[Int], destinations: Array[Int], weights: Array[Double]): Adjacency = {
+		val offsets = new Array[Int](numNodes + 1)
+		for (e <- 0 until sources.length) {
+			if (sources(e) != destinations(e)) {
+				offsets(sources(e) + 1) += 1
+				offsets(destinations(e) + 1) += 1
+			}
+		}
+		for (n <- 0 until numNodes) offsets(n + 1) += offsets(n)
+
+		val neighbours = new Array[Int](offsets(numNodes))
+		val neighbourWeights = new Array[Double](offsets(numNodes))
+		val next = offsets.clone()
+		for (e <- 0 until sources.length) {
+			val (src, dst) = (sources(e), destinations(e))
+			if (src != dst) {
+				neighbours(next(src)) = dst
+				neighbourWeights(next(src)) = weights(e)
+				next(src) += 1
+				neighbours(next(dst)) = src
+				neighbourWeights(next(dst)) = weights(e)
+				next(dst) += 1
+			}
+		}
+		new Adjacency(offsets, neighbours, neighbourWeights)
+	}
+}
@@ -47,6 +47,9 @@ import org.apache.spark.graphx._
  *  isolatedDegreeThres = degree threshold used to define 'leaf communities'.  Such leaf communities are automatically laid out in an outer radial/spiral pattern.  Default = 0
  *  communitySizeThres = community size threshold used to exclude communities with < communitySizeThres nodes from layout, in order to speed up layout of very large parent communities.
  *  					 Only used for hierarchy level > 0.  Default = 0
+ *  layoutThreads = number of threads with which each large community is laid out (see ForceDirectedEngine).  Default = 0 (all available processors)
+ *  energyTolerance = relative change in node movement below which a community's layout is considered converged, and stopped early.
+ *  				  Default = 0.001 (0 = never stop early)
  *  
  **/ 
 class HierarchicFDLayout extends Serializable {
@@ -65,7 +68,9 @@ class HierarchicFDLayout extends Serializable {
 	                    gravity: Double = 0.0,
 	                    isolatedDegreeThres: Int = 0,
 	                    communitySizeThres: Int = 0,
-	                    outputDir: String) = {
+	                    outputDir: String,
+	                    layoutThreads: Int = 0,
+	                    energyTolerance: Double = 0.001) = {
 		
 		//TODO -- this class assumes edge weights are Longs.  If this becomes an issue for some datasets, then change expected edge weights to Doubles?
 	  		
@@ -182,6 +187,8 @@ class HierarchicFDLayout extends Serializable {
 					val communityNodes = p._2._1._1
 					// List of edges (srcID, dstID, weight)
 					val communityEdges = p._2._1._2
+					// Threads for laying out large communities (decided here, as executors may differ from the driver)
+					val parallelism = if (layoutThreads > 0) layoutThreads else Runtime.getRuntime.availableProcessors
 					// Note, 'nodesWithCoords' result is an array of format (ID, x, y, radius, numInternalNodes, degree, metaData)
 					val nodesWithCoords = forceDirectedLayouter.run(communityNodes,
 					                                                communityEdges,
@@ -194,7 +201,9 @@ class HierarchicFDLayout extends Serializable {
 					                                                bUseNodeSizes,
 					                                                nodeAreaPercent,
 					                                                g,
-					                                                isolatedDegreeThres)
+					                                                isolatedDegreeThres,
+					                                                parallelism,
+					                                                energyTolerance)
 
 					// calc circle coords of parent community for saving results
 					// centre of parent circle
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tilegen.kryo
+
+
+
+import java.lang.{Double => JavaDouble}
+
+import scala.collection.mutable.ArrayBuffer
+import scala.collection.mutable.{Map => MutableMap}
+
+import com.esotericsoftware.kryo.Kryo
+import com.esotericsoftware.kryo.Serializer
+import com.esotericsoftware.kryo.io.Input
+import com.esotericsoftware.kryo.io.Output
+
+import com.oculusinfo.binning.BinIndex
+import com.oculusinfo.tilegen.tiling.BinValueMap
+
+
+
+object BinValueMapSerializer {
+	// Value layouts
+	val GENERIC: Byte = 0
+	val DOUBLES: Byte = 1
+	val STRING_SCORES: Byte = 2
+
+	/**
+	 * Determine the most compact layout in which all the given bin values can be written
+	 */
+	def getLayout (values: Iterable[Any]): Byte =
+		if (values.isEmpty) GENERIC
+		else if (values.forall(_.isInstanceOf[JavaDouble])) DOUBLES
+		else if (values.forall{
+			         case scores: Map[_, _] => scores.keysIterator.forall(_.isInstanceOf[String])
+			         case _ => false
+		         }) STRING_SCORES
+		else GENERIC
+}
+
+/**
+ * A compact Kryo serializer for the bin values of a tile in the midst of being binned - the
+ * bulk of what the UniversalBinner shuffles.
+ *
+ * Bins are written as a pair of zig-zag varints, with no class or reference information.
+ * Values are written in one of several layouts, chosen per map:
+ * <ul>
+ *   <li>DOUBLES: raw doubles, for simple counts and sums</li>
+ *   <li>STRING_SCORES: string-keyed score maps, as produced by StringScoreAnalytic, with each
+ *       distinct string written once per tile, and referred to by index thereafter</li>
+ *   <li>GENERIC: anything else, written with its class, through kryo</li>
+ * </ul>
+ */
+class BinValueMapSerializer extends Serializer[BinValueMap[Any]] {
+	import BinValueMapSerializer._
+
+	override def write (kryo: Kryo, output: Output, bins: BinValueMap[Any]): Unit = {
+		val layout = getLayout(bins.values)
+		output.writeInt(bins.size, true)
+		output.writeByte(layout)
+
+		val dictionary = MutableMap[String, Int]()
+		bins.foreach{case (bin, value) =>
+			output.writeInt(bin.getX, false)
+			output.writeInt(bin.getY, false)
+			layout match {
+				case DOUBLES =>
+					output.writeDouble(value.asInstanceOf[JavaDouble].doubleValue)
+				case STRING_SCORES =>
+					writeScores(kryo, output, value.asInstanceOf[Map[String, Any]], dictionary)
+				case _ =>
+					kryo.writeClassAndObject(output, value)
+			}
+		}
+	}
+
+	override def read (kryo: Kryo, input: Input, kind: Class[BinValueMap[Any]]): BinValueMap[Any] = {
+		val size = input.readInt(true)
+		val layout = input.readByte
+
+		val dictionary = ArrayBuffer[String]()
+		val bins = new BinValueMap[Any]
+		for (i <- 0 until size) {
+			val bin = new BinIndex(input.readInt(false), input.readInt(false))
+			bins(bin) = layout match {
+				case DOUBLES => input.readDouble
+				case STRING_SCORES => readScores(kryo, input, dictionary)
+				case _ => kryo.readClassAndObject(input)
+			}
+		}
+		bins
+	}
+
+	// Write a score map, using (and adding to) the dictionary of strings already written
+	private def writeScores (kryo: Kryo, output: Output,
+	                         scores: Map[String, Any], dictionary: MutableMap[String, Int]): Unit = {
+		output.writeInt(scores.size, true)
+		scores.foreach{case (key, score) =>
+			dictionary.get(key) match {
+				case Some(index) =>
+					output.writeInt(index + 1, true)
+				case None =>
+					output.writeInt(0, true)
+					output.writeString(key)
+					dictionary(key) = dictionary.size
+			}
+			kryo.writeClassAndObject(output, score)
+		}
+	}
+
+	// Read a score map, using (and adding to) the dictionary of strings already read
+	private def readScores (kryo: Kryo, input: Input, dictionary: ArrayBuffer[String]): Map[String, Any] = {
+		val size = input.readInt(true)
+		val scores = Map.newBuilder[String, Any]
+		for (i <- 0 until size) {
+			val code = input.readInt(true)
+			val key =
+				if (0 == code) {
+					val newKey = input.readString
+					dictionary += newKey
+					newKey
+				} else {
+					dictionary(code - 1)
+				}
+			scores += key -> kryo.readClassAndObject(input)
+		}
+		scores.result
+	}
+}
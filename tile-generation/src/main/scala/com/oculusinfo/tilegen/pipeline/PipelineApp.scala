@@ -132,7 +132,7 @@ abstract class PipelineApp(val jobType: String, val args: Array[String]) {
 
 	// Setup hbase or file IO
 	private def parseHBaseArgs(hbaseParam: Option[HBaseParameters]) = {
-		hbaseParam.map(p => new HBaseTileIO(p.zookeeperQuorum, p.zookeeperPort, p.hbaseMaster, p.slicing))
+		hbaseParam.map(p => new HBaseTileIO(p.zookeeperQuorum, p.zookeeperPort, p.hbaseMaster, p.slicing, p.bulkLoadDirectory))
 			.getOrElse(new LocalTileIO)
 	}
 
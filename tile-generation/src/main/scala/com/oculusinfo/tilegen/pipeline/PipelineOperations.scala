@@ -30,6 +30,7 @@ package com.oculusinfo.tilegen.pipeline
 
 
 import java.io.{OutputStream, OutputStreamWriter, BufferedWriter, FileNotFoundException}
+import java.lang.{Integer => JavaInt, Long => JavaLong, Float => JavaFloat, Double => JavaDouble}
 import java.net.URI
 import java.sql.Timestamp
 import java.text.SimpleDateFormat
@@ -42,7 +43,8 @@ import com.oculusinfo.tilegen.datasets.ErrorAccumulator.{ErrorCollector, ErrorCo
 import com.oculusinfo.tilegen.datasets._
 import com.oculusinfo.tilegen.datasets.SchemaTypeUtilities._
 import com.oculusinfo.tilegen.tiling._
-import com.oculusinfo.tilegen.util.{ExtendedNumeric, KeyValueArgumentSource, HdfsFileManager, HdfsSession, HdfsFile}
+import com.oculusinfo.tilegen.tiling.analytics.{Analytic, NumericMaxAnalytic, NumericMinAnalytic, NumericSumAnalytic}
+import com.oculusinfo.tilegen.util.{ExtendedNumeric, KeyValueArgumentSource, HdfsFileManager, HdfsSession, HdfsFile, TypeConversion}
 
 import org.apache.hadoop.conf.Configuration
 import org.apache.hadoop.fs.FileSystem
@@ -482,6 +484,8 @@ object PipelineOperations {
 									 (data: PipelineData): PipelineData = {
 		val context = data.sqlContext
 		val reader = new CSVReader(context, path, argumentSource)
+		// If we need to report errors, keep the parse results, so we don't have to parse everything twice
+		if (errorLog.isDefined) reader.persistParse()
 		val dataFrame = coalesce(context, reader.asDataFrame, partitions)
 
 		val outStream: Option[OutputStream] = errorLog match {
@@ -1080,6 +1084,7 @@ object PipelineOperations {
 			"oculus.binning.description" -> taskParameters.description,
 			"oculus.binning.tileWidth" -> taskParameters.tileWidth.toString,
 			"oculus.binning.tileHeight" -> taskParameters.tileHeight.toString,
+			"oculus.binning.zOrderPartitioning" -> taskParameters.zOrderPartitioning.toString,
 			"oculus.binning.index.type" -> "cartesian",
 			"oculus.binning.index.field.0" -> xColSpec,
 			"oculus.binning.index.field.1" -> yColSpec)
@@ -1103,11 +1108,45 @@ object PipelineOperations {
 		val tableName = PipelineOperations.getOrGenTableName(input, "heatmap_op")
 
 		val tilingTask = TilingTask(input.sqlContext, tableName, args ++ levelsProps ++ valueProps ++ properties)
-		tilingTask.doTiling(tileIO)
+		if (taskParameters.incremental) {
+			val mergeAnalytic = heatMapMergeAnalytic(operation, valueColType)
+			tilingTask.asInstanceOf[TilingTask[_, _, _, Any]].doIncrementalTiling(tileIO, mergeAnalytic.asInstanceOf[Analytic[Any]])
+		} else {
+			tilingTask.doTiling(tileIO)
+		}
 
 		PipelineData(input.sqlContext, input.srdd, Option(tableName))
 	}
 
+	/*
+	 * Get an analytic that can merge the final bin values of heatmap tiles, for incremental tiling.  Means can't be
+	 * merged from their final values, so can't be tiled incrementally.
+	 */
+	private def heatMapMergeAnalytic (operation: OperationType, valueColType: Option[String]): Analytic[_] = {
+		def forType[T, JT] (implicit numeric: ExtendedNumeric[T], conversion: TypeConversion[T, JT]): Analytic[JT] = {
+			val base: Analytic[T] = operation match {
+				case SUM => new NumericSumAnalytic[T]
+				case MIN => new NumericMinAnalytic[T]
+				case MAX => new NumericMaxAnalytic[T]
+				case _ => throw new IllegalArgumentException(s"Operation $operation can't be tiled incrementally")
+			}
+			new FinalValueAnalytic[T, JT](base)
+		}
+
+		operation match {
+			case SUM | MAX | MIN =>
+				valueColType.get match {
+					case "int" => forType[Int, JavaInt]
+					case "long" => forType[Long, JavaLong]
+					case "float" => forType[Float, JavaFloat]
+					case "double" => forType[Double, JavaDouble]
+					case other => throw new IllegalArgumentException(s"Value type $other can't be tiled incrementally")
+				}
+			case MEAN => throw new IllegalArgumentException(s"Operation $operation can't be tiled incrementally")
+			case _ => new FinalValueAnalytic[Int, JavaInt](new NumericSumAnalytic[Int])
+		}
+	}
+
 	def heatMapBlurredImpl(xColSpec: String,
 												 yColSpec: String,
 												 tilingParams: TilingTaskParameters,
@@ -1191,7 +1230,8 @@ object PipelineOperations {
 												 lineType: Option[LineDrawingType] = Some(LineDrawingType.Lines),
 												 minimumSegmentLength: Option[Int] = Some(4),
 												 maximumSegmentLength: Option[Int] = Some(1024),
-												 maximumLeaderLength: Option[Int] = Some(1024))
+												 maximumLeaderLength: Option[Int] = Some(1024),
+												 maximumDecimatedLevel: Option[Int] = None)
 												(input: PipelineData) = {
 		val tileIO = hbaseParameters match {
 			case Some(p) => new HBaseTileIO(p.zookeeperQuorum, p.zookeeperPort, p.hbaseMaster)
@@ -1201,7 +1241,7 @@ object PipelineOperations {
 
 		segmentTilingOpImpl(x1ColSpec, y1ColSpec, x2ColSpec, y2ColSpec, operation, valueColSpec, valueColType,
 												lineType, minimumSegmentLength, maximumSegmentLength, maximumLeaderLength,
-												tilingParams, tileIO, properties)(input)
+												maximumDecimatedLevel, tilingParams, tileIO, properties)(input)
 	}
 
 	private def segmentTilingOpImpl(x1ColSpec: String,
@@ -1215,6 +1255,7 @@ object PipelineOperations {
 																	minimumSegmentLength: Option[Int] = Some(4),
 																	maximumSegmentLength: Option[Int] = Some(1024),
 																	maximumLeaderLength: Option[Int] = Some(1024),
+																	maximumDecimatedLevel: Option[Int] = None,
 																	taskParameters: TilingTaskParameters,
 																	tileIO: TileIO,
 																	properties: Map[String, String])
@@ -1275,8 +1316,10 @@ object PipelineOperations {
 				  }
 				  case LineDrawingType.Lines | _ => {
 						(
-						  StandardBinningFunctions.locateLine(task.getIndexScheme, task.getTilePyramid,
-								minimumSegmentLength, maximumSegmentLength, task.getNumXBins, task.getNumYBins),
+						  StandardBinningFunctions.locateDecimatedLine(task.getIndexScheme, task.getTilePyramid,
+								maximumDecimatedLevel.map(StandardBinningFunctions.coarseLevelDecimation(minimumSegmentLength, _))
+									.getOrElse((level: Int) => minimumSegmentLength),
+								maximumSegmentLength, task.getNumXBins, task.getNumYBins),
 						  StandardBinningFunctions.populateTileWithLineSegments(StandardScalingFunctions.identityScale)
 						  )
 				  }
@@ -1339,8 +1382,10 @@ object PipelineOperations {
  * @param zookeeperQuorum Zookeeper quorum addresses specified as a comma separated list.
  * @param zookeeperPort Zookeeper port.
  * @param hbaseMaster HBase master address
+ * @param bulkLoadDirectory If set, an HDFS directory in which to stage HFiles so tiles can be bulk-loaded
  */
-case class HBaseParameters(zookeeperQuorum: String, zookeeperPort: String, hbaseMaster: String, slicing: Boolean = false)
+case class HBaseParameters(zookeeperQuorum: String, zookeeperPort: String, hbaseMaster: String, slicing: Boolean = false,
+                           bulkLoadDirectory: Option[String] = None)
 
 /**
  * Area of interest region
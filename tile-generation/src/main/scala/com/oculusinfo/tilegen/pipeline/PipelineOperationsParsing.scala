@@ -332,6 +332,8 @@ object PipelineOperationsParsing extends Logging {
 	 *		ops.aggregationType - Aggregation operation applied during tiling - allowed values are "count",
 	 *													"sum", "mean", "max"
 	 *		ops.valueColumn - Colspec denoting data column to use as aggregation source.	Not required when type is
+	 *		ops.maximumDecimatedLevel - The finest level on which segments are decimated, rather than drawn bin by
+	 *													bin.	Segments are not decimated if unset. (optional)
 	 *
 	 *		Tiling task consumes a TilingTaskParameters object that
 	 *		is populated via an argument map.	The argument map passed to this function will be used for that
@@ -343,7 +345,7 @@ object PipelineOperationsParsing extends Logging {
 		val params = parseSegmentTilingOpImpl(args, argParser)
 		geoSegmentTilingOp(params._1, params._2, params._3, params._4, params._5,
 											 params._6, params._7, params._8, params._9, params._10,
-											 params._11, params._12, params._13)(_)
+											 params._11, params._12, params._13, params._14)(_)
 		}
 
 		private def parseSegmentTilingOpImpl(args: Map[String, String], argParser: KeyValueArgumentSource) = {
@@ -359,6 +361,7 @@ object PipelineOperationsParsing extends Logging {
 			val minimumSegmentLength = argParser.getIntOption("", "The minimum length of a segment (in bins) before it is drawn", Some(4))
 			val maximumSegmentLength = argParser.getIntOption("", "The maximum length of a segment (in bins) before it is no longer drawn", Some(1024))
 			val maximumLeaderLength = argParser.getIntOption("", "The maximum number of bins to draw at each end of a segment.	Bins farther than this distance from both endpoints will be ignored.", Some(1024))
+			val maximumDecimatedLevel = argParser.getIntOption("ops.maximumDecimatedLevel", "The finest level on which segments are decimated - drawn coarsely, so that long segments at coarse levels remain cheap to tile.", None)
 
 			val parsedArgs = List(argParser.getStringOption("hbase.zookeeper.quorum", "Zookeeper quorum addresses", None),
 														argParser.getStringOption("hbase.zookeeper.port", "Zookeeper port", None),
@@ -374,7 +377,7 @@ object PipelineOperationsParsing extends Logging {
 			taskParametersFactory.readConfiguration(JsonUtilities.mapToJSON(args))
 			val taskParameters = taskParametersFactory.produce(classOf[TilingTaskParameters])
 
-			(x1ColSpec, y1ColSpec, x2ColSpec, y2ColSpec, taskParameters, hbaseArgs, operationEnum, valueColSpec, valueColType, Some(lineTypeEnum), minimumSegmentLength, maximumSegmentLength, maximumLeaderLength)
+			(x1ColSpec, y1ColSpec, x2ColSpec, y2ColSpec, taskParameters, hbaseArgs, operationEnum, valueColSpec, valueColType, Some(lineTypeEnum), minimumSegmentLength, maximumSegmentLength, maximumLeaderLength, maximumDecimatedLevel)
 		}
 
 	}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tilegen.tiling
+
+
+
+import scala.collection.mutable.HashMap
+
+import com.oculusinfo.binning.BinIndex
+
+
+
+/**
+ * The bin values of a tile while it is being combined by the UniversalBinner.
+ *
+ * This is an ordinary mutable hash map; it exists as its own class only so that tile combiners
+ * can be given their own compact Kryo serializer (see
+ * {@link com.oculusinfo.tilegen.kryo.BinValueMapSerializer}), which Spark would otherwise
+ * replace with the generic one Chill registers for all mutable hash maps.
+ *
+ * @tparam PT The processing type of the bin values
+ */
+class BinValueMap[PT] extends HashMap[BinIndex, PT]
+
+object BinValueMap {
+	/**
+	 * Create a bin value map holding the given bin values
+	 */
+	def apply[PT] (values: TraversableOnce[(BinIndex, PT)]): BinValueMap[PT] = {
+		val map = new BinValueMap[PT]
+		map ++= values
+		map
+	}
+}
@@ -27,10 +27,14 @@ package com.oculusinfo.tilegen.tiling
 
 import com.oculusinfo.tilegen.util.ExtendedNumeric.ExtendedDouble
 
-import scala.collection.mutable.{Map => MutableMap}
+import scala.collection.mutable.{ArrayBuffer, Map => MutableMap}
 import com.oculusinfo.binning.TilePyramid
 import com.oculusinfo.binning.BinIndex
+import com.oculusinfo.binning.IndexKeys
+import com.oculusinfo.binning.NormalizingTilePyramid
 import com.oculusinfo.binning.TileIndex
+import com.oculusinfo.binning.TileLocator
+import com.oculusinfo.binning.util.SeparableBlur
 import com.oculusinfo.tilegen.util.ExtendedNumeric
 
 
@@ -59,16 +63,35 @@ trait StandardPointBinningFunctions {
 	                             xBins: Int = 256, yBins: Int = 256)
 			: Traversable[Int] => T => Traversable[(TileIndex, Array[BinIndex])] =
 		levels => {
+      val locatePoint = pointLocator(pyramid, xBins, yBins, levels)
       index => {
         val (x, y) = indexScheme.toCartesian(index)
-        levels.map{level =>
-          val tile = pyramid.rootToTile(x, y, level, xBins, yBins)
-          val bin = pyramid.rootToBin(x, y, tile)
-          (tile, Array(bin))
-        }
+        locatePoint(x, y)
       }
     }
 
+	/**
+	 * Get a function that locates a single point at each of the given levels. Where the pyramid
+	 * allows it, each point is projected only once, and its tiles and bins at every level are
+	 * derived from that one projection.
+	 */
+	private def pointLocator (pyramid: TilePyramid, xBins: Int, yBins: Int, levels: Traversable[Int])
+			: (Double, Double) => Traversable[(TileIndex, Array[BinIndex])] =
+		pyramid match {
+			case normalizing: NormalizingTilePyramid if levels.nonEmpty && levels.min >= 0 =>
+				val locator = new TileLocator(normalizing, xBins, yBins, levels.max)
+				(x, y) => {
+					val ux = locator.rootToUniversalX(x)
+					val uy = locator.rootToUniversalY(y)
+					levels.map(level => (locator.getTile(ux, uy, level), Array(locator.getBin(ux, uy, level))))
+				}
+			case _ =>
+				(x, y) => levels.map{level =>
+					val tile = pyramid.rootToTile(x, y, level, xBins, yBins)
+					(tile, Array(pyramid.rootToBin(x, y, tile)))
+				}
+		}
+
 	/**
 	 * Simple function to spread an input point over several levels of tile pyramid, ignoring
 	 * points that are out of bounds
@@ -80,14 +103,11 @@ trait StandardPointBinningFunctions {
 		val (minX, minY, maxX, maxY) = (bounds.getMinX, bounds.getMinY,
 		                                bounds.getMaxX, bounds.getMaxY)
     levels => {
+      val locatePoint = pointLocator(pyramid, xBins, yBins, levels)
       index => {
         val (x, y) = indexScheme.toCartesian(index)
         if (minX <= x && x < maxX && minY <= y && y < maxY) {
-          levels.map{level =>
-            val tile = pyramid.rootToTile(x, y, level, xBins, yBins)
-            val bin = pyramid.rootToBin(x, y, tile)
-            (tile, Array(bin))
-          }
+          locatePoint(x, y)
         } else {
           Traversable()
         }
@@ -100,34 +120,24 @@ trait StandardPointBinningFunctions {
 	 * correct coordinate system.
 	 */
 	def populateTileIdentity[T]: (TileIndex, Array[BinIndex], T) => MutableMap[BinIndex, T] =
-		(tile, bins, value) => MutableMap(bins.map(bin => (TileIndex.universalBinIndexToTileBinIndex(tile, bin).getBin, value)): _*)
+		(tile, bins, value) => {
+			// Equivalent to TileIndex.universalBinIndexToTileBinIndex(tile, bin).getBin, but via packed
+			// bin keys, so no intermediate tile or bin indices are created per bin.
+			val (xBins, yBins) = (tile.getXBins, tile.getYBins)
+			MutableMap(bins.map(bin =>
+				(IndexKeys.toBinIndex(IndexKeys.universalBinKeyToTileBinKey(xBins, yBins, IndexKeys.binKey(bin))), value)
+			): _*)
+		}
 
   /**
    * Returns a two dimensional array with diameter radius*2+1 and given then standard deviation
+   *
+   * This is the outer product of the one-dimensional kernel used by SeparableBlur, so bin-space
+   * smoothing here matches blurring of rendered images.
    */
   def makeGaussianKernel(radius : Int, sigma : Double) : Array[Array[Double]] = {
-    val dim = (radius * 2) + 1
-    val kernel = Array.ofDim[Double](dim, dim)
-    var sum = 0.0
-
-    for (u <- 0 until kernel.length) {
-      for (v <- 0 until kernel(0).length) {
-        val uc = u - (kernel.length - 1) / 2
-        val vc = v - (kernel(0).length - 1) / 2
-        // Calculate and save
-        val g = Math.exp(-(uc * uc + vc * vc) / (2 * sigma * sigma))
-        sum += g
-        kernel(u)(v) = g
-      }
-    }
-
-    // Normalize the kernel
-    for (u <- 0 until kernel.length) {
-      for (v <- 0 until kernel(0).length) {
-        kernel(u)(v) /= sum
-      }
-    }
-    kernel
+    val kernel1D = SeparableBlur.gaussianKernelDouble(radius, sigma)
+    kernel1D.map(ku => kernel1D.map(kv => ku * kv))
   }
 
 	/**
@@ -293,9 +303,33 @@ trait StandardLinearBinningFunctions {
 	def locateLine[T](indexScheme: IndexScheme[T], pyramid: TilePyramid,
 	                  minBins: Option[Int], maxBins: Option[Int],
 	                  xBins: Int = 256, yBins: Int = 256)
+			: Traversable[Int] => T => Traversable[(TileIndex, Array[BinIndex])] =
+		locateDecimatedLine(indexScheme, pyramid, _ => minBins, maxBins, xBins, yBins)
+
+	/**
+	 * Spread input lines over several levels of tile pyramid, with a minimum segment length that
+	 * can vary by level.  This allows edges to be decimated on coarse levels, where short
+	 * segments collapse to a bin or two and only add noise (and tiling time), while still being
+	 * drawn on finer levels.
+	 *
+	 * @param indexScheme The scheme for interpretting input indices
+	 * @param pyramid The tile pyramid for projecting interpretted indices into tile space.
+	 * @param minBins A function from level to the minimum length of a segment on that level, in
+	 *                bins, below which it is not drawn, or None to have no minimum segment length
+	 *                on that level.  See coarseLevelDecimation.
+	 * @param maxBins The maximum length of a segment, in bins, above which it is not drawn, or None
+	 *                to have no minimum segment length
+	 * @param xBins The number of bins into which each tile is broken in the horizontal direction
+	 * @param yBins the number of bins into which each tile is broken in the vertical direction
+	 * @return a traversable over the tiles this line crosses, each associated with the overall
+	 *         endpoints of this line, in universal bin coordinates.
+	 */
+	def locateDecimatedLine[T](indexScheme: IndexScheme[T], pyramid: TilePyramid,
+	                           minBins: Int => Option[Int], maxBins: Option[Int],
+	                           xBins: Int = 256, yBins: Int = 256)
 			: Traversable[Int] => T => Traversable[(TileIndex, Array[BinIndex])] = {
     val spread: (Long, BinIndex, BinIndex, TileIndex) => Traversable[(TileIndex, Array[BinIndex])] = (length, firstBin, lastBin, sampleTile) => {
-      if (minBins.map(_ <= length).getOrElse(true) &&
+      if (minBins(sampleTile.getLevel).map(_ <= length).getOrElse(true) &&
         maxBins.map(_ > length).getOrElse(true)) {
         // Fill in somewhere around here.
         linearTiles(firstBin, lastBin, sampleTile).map(tile => (tile, Array(firstBin, lastBin)))
@@ -338,6 +372,21 @@ trait StandardLinearBinningFunctions {
     }
 	}
 
+	/**
+	 * A level-dependent minimum segment length, for use with locateDecimatedLine, that drops
+	 * sub-pixel segments on coarse levels.
+	 *
+	 * @param minBins The minimum length of a segment, in bins, on all levels, or None to have no
+	 *                overall minimum segment length
+	 * @param maxDecimatedLevel The finest level on which to decimate segments
+	 * @param subPixelBins The length, in bins, below which a segment is considered sub-pixel on
+	 *                     levels up to and including maxDecimatedLevel
+	 */
+	def coarseLevelDecimation (minBins: Option[Int], maxDecimatedLevel: Int, subPixelBins: Int = 1): Int => Option[Int] =
+		level =>
+			if (level <= maxDecimatedLevel) Some(minBins.map(_ max subPixelBins).getOrElse(subPixelBins))
+			else minBins
+
 	private def locateLineInternal[T](indexScheme: IndexScheme[T], pyramid: TilePyramid,
 	                                  spread: (Long, BinIndex, BinIndex, TileIndex) => Traversable[(TileIndex, Array[BinIndex])],
 	                                  xBins: Int = 256, yBins: Int = 256)
@@ -615,59 +664,99 @@ trait StandardLinearBinningFunctions {
 	 */
 	def closeLinearBinsForTile[T] (start: BinIndex, end: BinIndex, tile: TileIndex, maxBinDistance: Int,
 	                               valuer: BinIndex => T): MutableMap[BinIndex, T] = {
+		val result = MutableMap[BinIndex, T]()
+		visitCloseLinearBinsForTile(start, end, tile, maxBinDistance, (x, y) => {
+			val bin = new BinIndex(x, y)
+			result(bin) = valuer(bin)
+		})
+		result
+	}
+
+	/**
+	 * Rasterization kernel behind closeLinearBinsForTile.  Rather than walking the whole line
+	 * and testing each bin against the tile, the range of the line that falls within the tile
+	 * (and within D bins of an endpoint) is solved for directly from the Bresenham error term,
+	 * and only those bins are visited, as primitive tile bin coordinates, without allocating
+	 * any intermediate bin or tile indices.
+	 *
+	 * @param start The start bin, in unviersal bin coordinates, of the segment
+	 * @param end The end bin, in universal bin coordinates, of the segment
+	 * @param tile The tile whose bins are desired
+	 * @param maxBinDistance The maximum distance D allowed between either endpoint and a visited
+	 *                       bin, or Int.MaxValue to visit the whole line.
+	 * @param visitor A function called once for each bin of the given tile on this line, with
+	 *                the x and y tile bin coordinates of that bin.
+	 */
+	def visitCloseLinearBinsForTile (start: BinIndex, end: BinIndex, tile: TileIndex, maxBinDistance: Int,
+	                                 visitor: (Int, Int) => Unit): Unit = {
 		val (steep, x0, y0, x1, y1) = initializeBresenham(start, end)
 
 		val deltax: Long = x1 - x0
 		val deltay: Long = math.abs(y1 - y0)
-		var error: Long = deltax >> 1
-		var y = y0
+		val baseError: Long = deltax >> 1
 		val ystep = if (y0 < y1) 1 else -1
 
-		// Figure out the bounds of this tile in our x direction
+		// Figure out the bounds of this tile, in universal bins, in our x and y directions
 		val tileMin = TileIndex.tileBinIndexToUniversalBinIndex(tile, new BinIndex(0, 0))
 		val tileMax = TileIndex.tileBinIndexToUniversalBinIndex(tile, new BinIndex(tile.getXBins-1, tile.getYBins-1))
 		val (minX, maxX, minY, maxY) =
 			if (steep) (tileMin.getY, tileMax.getY, tileMin.getX, tileMax.getX)
 			else (tileMin.getX, tileMax.getX, tileMin.getY, tileMax.getY)
+		val (baseX, baseY) = (tileMin.getX, tileMin.getY)
 
-		val xx0 = x0 max minX
-		val xx1 = (x1 min maxX) + 1
-
-		// Offset to our start location
-		val startOffset = xx0 - x0
-		error = error - startOffset * deltay
-		if (error < 0) {
-			val factor = math.ceil(-error.toDouble / deltax).toInt
-			error = error + factor * deltax
-			y = y + factor*ystep
+		// The number of y steps taken before the bin k bins along x from the start
+		def ySteps (k: Long): Long = {
+			val e = k * deltay - baseError
+			if (e <= 0) 0L else (e + deltax - 1) / deltax
 		}
+		// The first x offset at which at least n y steps have been taken
+		def firstWithSteps (n: Long): Long =
+			if (n <= 0) 0L
+			else if (0 == deltay) Long.MaxValue
+			else ((n - 1) * deltax + baseError) / deltay + 1
+		// The last x offset at which at most n y steps have been taken
+		def lastWithSteps (n: Long): Long =
+			if (n < 0) -1L
+			else if (0 == deltay) Long.MaxValue
+			else (n * deltax + baseError) / deltay
+
+		// Clip our x range to the part of the line whose x and y are both within the tile
+		val (minSteps, maxSteps) =
+			if (ystep > 0) (minY.toLong - y0, maxY.toLong - y0)
+			else (y0.toLong - maxY, y0.toLong - minY)
+		val kStart = 0L max (minX.toLong - x0) max firstWithSteps(minSteps)
+		val kEnd = deltax min (maxX.toLong - x0) min lastWithSteps(maxSteps)
+
+		// Since Bresenham never steps y more often than x, the axial distance of the bin k bins
+		// along from the start is just k, and from the end, deltax - k.
+		def visitRange (from: Long, to: Long): Unit = {
+			if (from <= to) {
+				val steps = ySteps(from)
+				var y = y0 + (steps * ystep).toInt
+				var error = baseError - from * deltay + steps * deltax
+				var k = from
+				while (k <= to) {
+					val x = (x0 + k).toInt
+					val curY = y
+					error = error - deltay
+					if (error < 0) {
+						y = y + ystep
+						error = error + deltax
+					}
 
-		// Get the universal bin of our lower left corner (for offsets)
-		var baseX = if (steep) tileMax.getY else tileMin.getX
-		var baseY = if (steep) tileMin.getX else tileMax.getY
-
-		// And iterate over our range
-		val result = MutableMap[BinIndex, T]()
-		Range(xx0, xx1).foreach{x =>
-			val curY = y
-			error = error - deltay
-			if (error < 0) {
-				y = y + ystep
-				error = error + deltax
-			}
-
-			if (minY <= curY && curY <= maxY) {
-				val uBin = if (steep) new BinIndex(curY, x) else new BinIndex(x, curY)
-
-				if (maxBinDistance == Int.MaxValue || axialDistance(uBin, start) <= maxBinDistance || axialDistance(uBin, end) <= maxBinDistance) {
-					val bin = TileIndex.universalBinIndexToTileBinIndex(tile, uBin).getBin
-					result(bin) = valuer(bin)
-				} else None
+					if (steep) visitor(curY - baseX, x - baseY)
+					else visitor(x - baseX, curY - baseY)
+					k = k + 1
+				}
 			}
-			else None
 		}
 
-		result
+		if (maxBinDistance == Int.MaxValue || deltax <= 2L * maxBinDistance + 1) {
+			visitRange(kStart, kEnd)
+		} else {
+			visitRange(kStart, kEnd min maxBinDistance)
+			visitRange(kStart max (deltax - maxBinDistance), kEnd)
+		}
 	}
 }
 
@@ -740,9 +829,12 @@ trait StandardArcBinningFunctions {
 	 */
 	def populateTileWithArcs[T] (distance: Option[Int], scaler: (Array[BinIndex], BinIndex, T) => T)
 	                        (tile: TileIndex, bins: Array[BinIndex], value: T): MutableMap[BinIndex, T] = {
-		MutableMap(arcBinsForTile(bins(0), bins(1), tile, distance).map(bin =>
-			           (bin, scaler(bins, TileIndex.tileBinIndexToUniversalBinIndex(tile, bin), value))
-		           ).toSeq: _*)
+		val result = MutableMap[BinIndex, T]()
+		visitArcBinsForTile(bins(0), bins(1), tile, distance, (x, y) => {
+			val bin = new BinIndex(x, y)
+			result(bin) = scaler(bins, TileIndex.tileBinIndexToUniversalBinIndex(tile, bin), value)
+		})
+		result
 	}
 
 	/**
@@ -1024,9 +1116,23 @@ trait StandardArcBinningFunctions {
 		}
 	}
 
-	// Limited version of arcUniversalBins that just gets the tiles crossed.
+	// Limited version of arcUniversalBins that just gets the bins on a single tile.
 	def arcBinsForTile (start: BinIndex, end: BinIndex, tile: TileIndex, limit: Option[Int] = None): TraversableOnce[BinIndex] = {
+		val bins = ArrayBuffer[BinIndex]()
+		visitArcBinsForTile(start, end, tile, limit, (x, y) => bins += new BinIndex(x, y))
+		bins
+	}
 
+	/**
+	 * Rasterization kernel behind arcBinsForTile.  Each row of the arc is clipped against the
+	 * bounds of the tile before it is walked, so only bins on the given tile are visited, as
+	 * primitive tile bin coordinates.
+	 *
+	 * @param visitor A function called once for each bin of the given tile on this arc, with
+	 *                the x and y tile bin coordinates of that bin.
+	 */
+	def visitArcBinsForTile (start: BinIndex, end: BinIndex, tile: TileIndex, limit: Option[Int],
+	                         visitor: (Int, Int) => Unit): Unit = {
 		val x0 = start.getX
 		val y0 = start.getY
 		val x1 = end.getX
@@ -1059,6 +1165,11 @@ trait StandardArcBinningFunctions {
 		val maxBinRot = rotate(maxBin.getX - xc, maxBin.getY - yc, rotation)
 		val minY = minBinRot._2 min maxBinRot._2
 		val maxY = minBinRot._2 max maxBinRot._2
+		// And our rotated, absolute tile bounds, for clipping each row
+		val minBinAbs = rotate(minBin.getX, minBin.getY, rotation)
+		val maxBinAbs = rotate(maxBin.getX, maxBin.getY, rotation)
+		val (minXAbs, maxXAbs) = (minBinAbs._1 min maxBinAbs._1, minBinAbs._1 max maxBinAbs._1)
+		val (minYAbs, maxYAbs) = (minBinAbs._2 min maxBinAbs._2, minBinAbs._2 max maxBinAbs._2)
 
 		val yStartArc = math.round(y1r+ycr)-0.5-ycr
 		val yEndArc = math.round(y0r+ycr)-0.5-ycr
@@ -1076,49 +1187,33 @@ trait StandardArcBinningFunctions {
 		val yEnd = math.round((maxY min y0r)+ycr)-0.5-ycr
 		val r2 = radius*radius
 
-		new WhileIterator(
-			// Figure out the Y range of this tile
-			() => y <= yEnd,
-			() => {
-				val yCur = y
-				y = y + 1
-
-				// If we have a gap, see if we're in it
-				yMids.foreach{case (endStart, startEnd) =>
-					if (y > endStart && y < startEnd) y = startEnd
-				}
-
-				yCur
-			}
-		).flatMap{y =>
+		while (y <= yEnd) {
 			// Map each Y into its X range
 			val ypr = math.round(ycr+y).toInt
-			// x range from the start of the bin to the end of the bin
-			val ya = y max y1r
-			val x2ad = math.sqrt(r2 - (ya * ya)) + xcr
-			val yb = (y+1) min y0r
-			val x2bd = math.sqrt(r2 - (yb * yb)) + xcr
-			val x2a = math.round(math.sqrt(r2 - (ya * ya)) + xcr).toInt
-			val x2b = math.round(math.sqrt(r2 - (yb * yb)) + xcr).toInt
-
-			val bins = if (x2a == x2b) {
-				// No X travel; output the one bin
-				val (xp, yp) = rotate(x2a, ypr, -rotation)
-				val uBin = new BinIndex(xp, yp)
-				Seq(TileIndex.universalBinIndexToTileBinIndex(tile, uBin))
-			} else {
-				// X travel; output both bins.
-				((x2a min x2b) to (x2a max x2b)).map { xpr =>
+			if (minYAbs <= ypr && ypr <= maxYAbs) {
+				// x range from the start of the bin to the end of the bin
+				val ya = y max y1r
+				val yb = (y+1) min y0r
+				val x2a = math.round(math.sqrt(r2 - (ya * ya)) + xcr).toInt
+				val x2b = math.round(math.sqrt(r2 - (yb * yb)) + xcr).toInt
+
+				// Clip that range to the tile; if the arc spans multiple tiles in X on this row,
+				// there may be bins here in the other one.
+				var xpr = (x2a min x2b) max minXAbs
+				val xprEnd = (x2a max x2b) min maxXAbs
+				while (xpr <= xprEnd) {
 					val (xp, yp) = rotate(xpr, ypr, -rotation)
-					val uBin = new BinIndex(xp, yp)
-					TileIndex.universalBinIndexToTileBinIndex(tile, uBin)
+					visitor(xp - minBin.getX, yp - minBin.getY)
+					xpr = xpr + 1
 				}
 			}
-			bins
-		}.filter { tileAndBin =>
-			// If the arc spans multiple tiles in Y at this X, there may be bins here in the other one.
-			tileAndBin.getTile == tile
-		}.map(_.getBin)
+
+			y = y + 1
+			// If we have a gap, see if we're in it
+			yMids.foreach{case (endStart, startEnd) =>
+				if (y > endStart && y < startEnd) y = startEnd
+			}
+		}
 	}
 }
 
@@ -27,18 +27,24 @@ package com.oculusinfo.tilegen.tiling
 
 
 import java.io.ByteArrayInputStream
+import java.lang.{Integer => JavaInt}
 
+import scala.collection.JavaConverters._
 import scala.collection.mutable.{HashSet => MutableSet}
 
-import org.apache.hadoop.hbase.TableName
-import org.apache.hadoop.hbase.client.{ConnectionFactory, Result}
+import org.apache.hadoop.fs.Path
+import org.apache.hadoop.hbase.{CellUtil, KeyValue, TableName}
+import org.apache.hadoop.hbase.client.{ConnectionFactory, HTable, Put, Result}
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable
 import org.apache.hadoop.hbase.mapred.TableOutputFormat
-import org.apache.hadoop.hbase.mapreduce.TableInputFormat
+import org.apache.hadoop.hbase.mapreduce.{HFileOutputFormat2, LoadIncrementalHFiles, TableInputFormat}
+import org.apache.hadoop.hbase.util.Bytes
 import org.apache.hadoop.mapred.JobConf
+import org.apache.hadoop.mapreduce.Job
 
 
+import org.apache.spark.Partitioner
 import org.apache.spark.SparkContext
 import org.apache.spark.SparkContext._
 import org.apache.spark.rdd.RDD
@@ -64,11 +70,26 @@ import com.oculusinfo.tilegen.util.ArgumentParser
  *
  * In the case of HBase, this requires overriding small portions of several
  * basic TileIO methods - which essentially requires us to simply rewrite them.
+ *
+ * For large tile sets, writing through region servers one put at a time causes
+ * a great deal of memstore flushing and compaction.  If a bulk load directory
+ * is given, tiles are instead sorted by row key, partitioned by the table's
+ * region boundaries, written directly to HFiles in that directory, and then
+ * bulk-loaded into the table.
+ *
+ * @param bulkLoadDirectory An HDFS directory in which to stage HFiles for bulk
+ *                          loading.  If None, tiles are written with puts.
+ * @param preSplitLevels Levels by which to pre-split new tables
+ * @param regionsPerLevel The number of regions into which to pre-split each
+ *                        of the preSplitLevels
  */
 class HBaseTileIO ( zookeeperQuorum: String,
                     zookeeperPort: String,
                     hbaseMaster: String,
-										slicing: Boolean = false) extends TileIO {
+										slicing: Boolean = false,
+                    bulkLoadDirectory: Option[String] = None,
+                    preSplitLevels: Seq[Int] = Seq(),
+                    regionsPerLevel: Int = 1) extends TileIO {
 	// We are going to need access to HBasePyramidIO constants and static
 	// methods, for column names, and row ID formation and parsing.
 	import com.oculusinfo.binning.io.impl.HBasePyramidIO._
@@ -158,7 +179,8 @@ class HBaseTileIO ( zookeeperQuorum: String,
 		import org.apache.hadoop.hbase.mapred.TableOutputFormat._
 
 		// Do any needed table initialization
-		pyramidIO.initializeForWrite(baseLocation)
+		if (preSplitLevels.isEmpty) pyramidIO.initializeForWrite(baseLocation)
+		else pyramidIO.initializeForWrite(baseLocation, HBasePyramidIO.getSplitKeys(preSplitLevels.map(new JavaInt(_)).asJava, regionsPerLevel))
 
 		// Record and report the total number of tiles we write, because it's
 		// basically free and easy
@@ -197,17 +219,22 @@ class HBaseTileIO ( zookeeperQuorum: String,
 		)
 
 
-		// Configure our write job
-		val configuration = pyramidIO.getConfiguration()
-
-		val jobConfig = new JobConf(configuration, this.getClass)
-		jobConfig.setOutputFormat(classOf[TableOutputFormat])
-		jobConfig.set(TableOutputFormat.OUTPUT_TABLE, baseLocation)
-
 		// Write tiles.
 		// This also populates the count, min, and max accumulators set up
 		// above.
-		HBaseTiles.saveAsHadoopDataset(jobConfig)
+		bulkLoadDirectory match {
+			case Some(directory) =>
+				bulkLoad(pyramidIO, baseLocation, directory, HBaseTiles.map(_._2))
+			case None =>
+				// Configure our write job
+				val configuration = pyramidIO.getConfiguration()
+
+				val jobConfig = new JobConf(configuration, this.getClass)
+				jobConfig.setOutputFormat(classOf[TableOutputFormat])
+				jobConfig.set(TableOutputFormat.OUTPUT_TABLE, baseLocation)
+
+				HBaseTiles.saveAsHadoopDataset(jobConfig)
+		}
 		println("Input tiles: "+tileCount)
 		println("Input levels: "+levelSet.value)
 		println("X bins: "+xbins.value)
@@ -228,6 +255,107 @@ class HBaseTileIO ( zookeeperQuorum: String,
 		writeMetaData(baseLocation, metaData)
 
 	}
+
+	/*
+	 * Write a set of puts to HFiles, partitioned and sorted to match the regions of the given
+	 * table, and bulk-load them into that table.
+	 *
+	 * Puts and KeyValues aren't serializable, so we shuffle cells as simple byte arrays, keyed
+	 * by row ID, and only create KeyValues once everything is in its final order.
+	 */
+	private def bulkLoad (pyramidIO: HBasePyramidIO, tableName: String, directory: String, puts: RDD[Put]): Unit = {
+		val configuration = pyramidIO.getConfiguration()
+		val connection = ConnectionFactory.createConnection(configuration)
+		try {
+			val table = TableName.valueOf(tableName)
+			val regionLocator = connection.getRegionLocator(table)
+			val startKeys = try {
+				regionLocator.getStartKeys.map(new String(_))
+			} finally {
+				regionLocator.close()
+			}
+			// A single timestamp for the whole write, so all new cells supercede older ones equally
+			val timestamp = System.currentTimeMillis()
+
+			val cells: RDD[(String, Seq[(Array[Byte], Array[Byte], Array[Byte])])] = puts.map { put =>
+				val rowCells = put.getFamilyCellMap.values.asScala.flatMap(_.asScala).map(cell =>
+					(CellUtil.cloneFamily(cell), CellUtil.cloneQualifier(cell), CellUtil.cloneValue(cell))
+				).toSeq
+				(new String(put.getRow), rowCells)
+			}
+
+			val hfileCells = cells.repartitionAndSortWithinPartitions(new HBaseRegionPartitioner(startKeys))
+				.flatMap { case (rowId, rowCells) =>
+					val row = rowId.getBytes
+					rowCells.sortWith((a, b) =>
+						{
+							val familyOrder = Bytes.compareTo(a._1, b._1)
+							if (0 == familyOrder) Bytes.compareTo(a._2, b._2) < 0
+							else familyOrder < 0
+						}
+					).map { case (family, qualifier, value) =>
+						(new ImmutableBytesWritable(row), new KeyValue(row, family, qualifier, timestamp, value))
+					}
+				}
+
+			// One table handle serves both to configure the HFiles and to load them
+			val hTable = connection.getTable(table).asInstanceOf[HTable]
+			try {
+				val job = Job.getInstance(configuration)
+				job.setMapOutputKeyClass(classOf[ImmutableBytesWritable])
+				job.setMapOutputValueClass(classOf[KeyValue])
+				HFileOutputFormat2.configureIncrementalLoadMap(job, hTable)
+
+				val stagingPath = new Path(directory, tableName+"-"+timestamp)
+				hfileCells.saveAsNewAPIHadoopFile(stagingPath.toString,
+					classOf[ImmutableBytesWritable],
+					classOf[KeyValue],
+					classOf[HFileOutputFormat2],
+					job.getConfiguration)
+
+				println("Bulk-loading HFiles from "+stagingPath)
+				new LoadIncrementalHFiles(configuration).doBulkLoad(stagingPath, hTable)
+				stagingPath.getFileSystem(configuration).delete(stagingPath, true)
+			} finally {
+				hTable.close()
+			}
+		} finally {
+			connection.close()
+		}
+	}
+}
+
+
+
+/**
+ * A partitioner that sends each row to the partition corresponding to the table region in which
+ * it belongs, so that each partition can be written as a set of HFiles for a single region.
+ *
+ * @param startKeys The start keys of each region of the table, in order.  The first region's
+ *                  start key is always empty.
+ */
+class HBaseRegionPartitioner (val startKeys: Array[String]) extends Partitioner {
+	def numPartitions: Int = startKeys.length max 1
+
+	def getPartition (key: Any): Int = {
+		val rowId = key.asInstanceOf[String]
+		// Find the last region whose start key is not after our row
+		var low = 0
+		var high = startKeys.length - 1
+		while (low < high) {
+			val mid = (low + high + 1) / 2
+			if (startKeys(mid).compareTo(rowId) <= 0) low = mid
+			else high = mid - 1
+		}
+		low max 0
+	}
+
+	override def equals (that: Any): Boolean = that match {
+		case other: HBaseRegionPartitioner => startKeys.sameElements(other.startKeys)
+		case _ => false
+	}
+
+	override def hashCode: Int = startKeys.toSeq.hashCode
 }
 
 
@@ -0,0 +1,535 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tilegen.tiling
+
+
+
+import java.io.IOException
+import java.lang.{Double => JavaDouble}
+import java.lang.{Integer => JavaInt}
+import java.lang.{Long => JavaLong}
+import java.util.concurrent.{Callable, ExecutorService, Executors, Future, ThreadFactory}
+
+import scala.collection.JavaConverters._
+import scala.collection.mutable.{ArrayBuffer, Queue}
+import scala.collection.mutable.{Map => MutableMap}
+import scala.util.Try
+
+import org.apache.spark.SparkContext
+import org.apache.spark.SparkContext._
+import org.apache.spark.rdd.RDD
+import org.apache.spark.storage.StorageLevel
+
+import com.oculusinfo.binning.TileData
+import com.oculusinfo.binning.TileData.StorageType
+import com.oculusinfo.binning.TileIndex
+import com.oculusinfo.binning.impl.DenseTileData
+import com.oculusinfo.binning.impl.SparseTileData
+import com.oculusinfo.binning.io.PyramidIO
+import com.oculusinfo.binning.io.ScannablePyramidIO
+import com.oculusinfo.binning.io.serialization.TileSerializer
+import com.oculusinfo.binning.metadata.PyramidMetaData
+import com.oculusinfo.tilegen.spark.MinMaxAccumulableParam
+import com.oculusinfo.tilegen.tiling.analytics.{Analytic, NumericMaxAnalytic, NumericMinAnalytic, NumericSumAnalytic}
+import com.oculusinfo.tilegen.util.{ArgumentParser, ExtendedNumeric, TypeConversion}
+
+
+
+/**
+ * Rebuilds the coarser levels of an existing pyramid from a finer one, compacting tiles as it goes.
+ *
+ * Starting from a source level, each level is derived from the one below it: the existing children
+ * of each tile are read, each two-by-two block of child bins is combined into one parent bin with
+ * the given analytic, and the parent is written in whichever storage type (dense or sparse) suits
+ * its occupancy.  Parents with no non-default bins are not written.  Per-level minimum and maximum
+ * bin values are gathered as each level is written, and recorded in the pyramid metadata.
+ *
+ * The source level may optionally be compacted too - rewritten in optimal storage form, with its
+ * empty tiles removed.
+ *
+ * Where the PyramidIO can list its tiles (see ScannablePyramidIO), only populated tiles of the
+ * source level are visited; otherwise, every possible tile of the source level is tried once, and
+ * only those found are carried up to coarser levels.
+ *
+ * Tile metadata (such as tile analytics) is not carried from children to derived parents.
+ *
+ * @param analytic An analytic that aggregates final bin values (see FinalValueAnalytic)
+ * @param toDouble A conversion of bin values to numbers, used to record per-level extrema; if
+ *                 None, extrema are not recorded
+ * @param tileType The storage type of written tiles; by default, this is chosen per tile, by
+ *                 occupancy
+ * @tparam T The bin type of the pyramid
+ */
+class PyramidRegenerator[T] (analytic: Analytic[T],
+                             toDouble: Option[T => Double] = None,
+                             tileType: Option[StorageType] = None)
+		extends Serializable
+{
+	import PyramidRegenerator._
+
+	/**
+	 * Derive a tile from its children, combining each two-by-two block of child bins into a
+	 * single parent bin.
+	 *
+	 * @param parent The tile to derive; its bin counts are taken from the children
+	 * @param children Whichever of the parent's four children exist
+	 * @return The derived tile, or None if none of the children has a non-default bin
+	 */
+	def aggregateChildren (parent: TileIndex, children: Iterable[TileData[T]]): Option[TileData[T]] =
+		children.headOption.flatMap { first =>
+			val xBins = first.getDefinition.getXBins
+			val yBins = first.getDefinition.getYBins
+			val index = new TileIndex(parent.getLevel, parent.getX, parent.getY, xBins, yBins)
+			val values = new Array[AnyRef](xBins * yBins)
+			var count = 0
+
+			children.foreach { child =>
+				val childIndex = child.getDefinition
+				// Tiles count up from the bottom, but bins count down from the top, so the upper
+				// (odd) children fill the top half of the parent.
+				val xOffset = (childIndex.getX - 2 * parent.getX) * xBins
+				val yOffset = (1 - (childIndex.getY - 2 * parent.getY)) * yBins
+				forEachBin(child) { (x, y, value) =>
+					val bin = (xOffset + x) / 2 + ((yOffset + y) / 2) * xBins
+					val existing = values(bin)
+					if (null == existing) {
+						values(bin) = value.asInstanceOf[AnyRef]
+						count += 1
+					} else {
+						values(bin) = analytic.aggregate(existing.asInstanceOf[T], value).asInstanceOf[AnyRef]
+					}
+				}
+			}
+
+			if (0 == count) None
+			else Some(createTile(index, first.getDefaultValue, values, count))
+		}
+
+	/**
+	 * Rewrite a tile in its optimal storage type.
+	 *
+	 * @return The rewritten tile, or None if the tile has no non-default bins
+	 */
+	def compact (tile: TileData[T]): Option[TileData[T]] = {
+		val index = tile.getDefinition
+		val values = new Array[AnyRef](index.getXBins * index.getYBins)
+		var count = 0
+		forEachBin(tile) { (x, y, value) =>
+			values(x + y * index.getXBins) = value.asInstanceOf[AnyRef]
+			count += 1
+		}
+
+		if (0 == count) None
+		else {
+			val compacted = createTile(index, tile.getDefaultValue, values, count)
+			Option(tile.getMetaDataProperties).foreach(_.asScala.foreach(property =>
+				compacted.setMetaData(property, tile.getMetaData(property))
+			))
+			Some(compacted)
+		}
+	}
+
+	/**
+	 * The minimum and maximum non-default bin values of a tile, if extrema are being recorded
+	 */
+	def tileExtrema (tile: TileData[T]): Option[(Double, Double)] =
+		toDouble.flatMap { convert =>
+			var minimum = Double.MaxValue
+			var maximum = Double.MinValue
+			forEachBin(tile) { (x, y, value) =>
+				val number = convert(value)
+				if (!number.isNaN) {
+					minimum = minimum min number
+					maximum = maximum max number
+				}
+			}
+			if (minimum <= maximum) Some((minimum, maximum)) else None
+		}
+
+	/**
+	 * Regenerate a pyramid using local threads.  The PyramidIO is shared between threads, so must
+	 * be thread-safe if more than one thread is used.
+	 *
+	 * @param sourceLevel The level from which all coarser levels are derived
+	 * @param minLevel The coarsest level to regenerate
+	 * @param compactSource If true, the source level is also rewritten in optimal storage form,
+	 *                      and its empty tiles removed
+	 * @param threads The number of threads with which to read, aggregate, and write tiles
+	 * @param blockSize The number of tiles (or, above the source level, families of tiles) each
+	 *                  thread handles at once
+	 * @return The extrema of each regenerated level
+	 */
+	def regenerateLocal (pyramidIO: PyramidIO,
+	                     serializer: TileSerializer[T],
+	                     pyramidId: String,
+	                     sourceLevel: Int,
+	                     minLevel: Int = 0,
+	                     compactSource: Boolean = false,
+	                     threads: Int = Runtime.getRuntime.availableProcessors,
+	                     blockSize: Int = 100,
+	                     tileWidth: Int = 256,
+	                     tileHeight: Int = 256): Map[Int, (Double, Double)] = {
+		val pool = createPool(threads)
+		val maxPending = 2 * (threads max 1)
+
+		// Run blocks of work on our pool, with a bounded number outstanding at once
+		def parallel[A] (work: Iterator[A])(fcn: Seq[A] => BlockResult): Seq[BlockResult] = {
+			val results = ArrayBuffer[BlockResult]()
+			val pending = Queue[Future[BlockResult]]()
+			work.grouped(blockSize max 1).foreach { block =>
+				if (pending.size >= maxPending) results += pending.dequeue().get
+				pending.enqueue(pool.submit(new Callable[BlockResult] {
+					def call (): BlockResult = fcn(block)
+				}))
+			}
+			while (pending.nonEmpty) results += pending.dequeue().get
+			results
+		}
+
+		try {
+			val extrema = MutableMap[Int, (Double, Double)]()
+			def record (level: Int, results: Seq[BlockResult]): Unit =
+				combineExtrema(results.flatMap(_._2)).foreach(levelExtrema => extrema(level) = levelExtrema)
+
+			val scanned = scanLevel(pyramidIO, pyramidId, sourceLevel, tileWidth, tileHeight)
+			var current: Seq[TileIndex] =
+				if (scanned.isDefined && !compactSource) {
+					scanned.get
+				} else {
+					// Stream through the source level, finding which tiles exist, and compacting them
+					// if requested.
+					val candidates = scanned.map(_.iterator).getOrElse(allTiles(sourceLevel, tileWidth, tileHeight))
+					val results = parallel(candidates) { block =>
+						val tiles = readExisting(pyramidIO, serializer, pyramidId, block)
+						if (compactSource) compactTiles(pyramidIO, serializer, pyramidId, tiles)
+						else (tiles.map(_.getDefinition), None)
+					}
+					if (compactSource) record(sourceLevel, results)
+					results.flatMap(_._1)
+				}
+
+			for (level <- (sourceLevel - 1) to minLevel by -1) {
+				// Group children by parent, so that each block holds whole families
+				val families = current.groupBy(index => TileIndex.getParent(index)).values.iterator
+				val results = parallel(families) { block =>
+					val children = readExisting(pyramidIO, serializer, pyramidId, block.flatten)
+					val parents = children.groupBy(child => TileIndex.getParent(child.getDefinition)).toSeq
+						.flatMap { case (parent, family) => aggregateChildren(parent, family) }
+					if (parents.nonEmpty) pyramidIO.writeTiles(pyramidId, serializer, parents.asJava)
+					(parents.map(_.getDefinition), combineExtrema(parents.flatMap(tileExtrema)))
+				}
+				record(level, results)
+				current = results.flatMap(_._1)
+				println("Regenerated level "+level+": "+current.size+" tiles")
+			}
+
+			updateMetaData(pyramidIO, pyramidId, regeneratedLevels(sourceLevel, minLevel, compactSource), extrema.toMap)
+			extrema.toMap
+		} finally {
+			pool.shutdownNow()
+		}
+	}
+
+	/**
+	 * Regenerate a pyramid using spark.
+	 *
+	 * @param sourceLevel The level from which all coarser levels are derived
+	 * @param minLevel The coarsest level to regenerate
+	 * @param compactSource If true, the source level is also rewritten in optimal storage form,
+	 *                      and its empty tiles removed
+	 * @return The extrema of each regenerated level
+	 */
+	def regenerate (sc: SparkContext,
+	                tileIO: TileIO,
+	                serializer: TileSerializer[T],
+	                pyramidId: String,
+	                sourceLevel: Int,
+	                minLevel: Int = 0,
+	                compactSource: Boolean = false,
+	                tileWidth: Int = 256,
+	                tileHeight: Int = 256): Map[Int, (Double, Double)] = {
+		val extrema = sc.accumulable(Map[Int, (Double, Double)]())(new MinMaxAccumulableParam)
+		def accumulateExtrema (level: Int, tile: TileData[T]): Unit =
+			tileExtrema(tile).foreach { case (minimum, maximum) =>
+				extrema += ((level, minimum))
+				extrema += ((level, maximum))
+			}
+
+		val indices: RDD[TileIndex] = scanLevel(tileIO.getPyramidIO, pyramidId, sourceLevel, tileWidth, tileHeight) match {
+			case Some(scanned) =>
+				sc.parallelize(scanned, (scanned.size / 1024) max 1)
+			case None =>
+				val size = 1 << sourceLevel
+				sc.parallelize(Range(0, size), 1 << ((sourceLevel-10) max 0)).flatMap(x =>
+					Range(0, size).map(y => new TileIndex(sourceLevel, x, y, tileWidth, tileHeight))
+				)
+		}
+		val source: RDD[TileData[T]] = indices.mapPartitions { iter =>
+			val pyramidIO = tileIO.getPyramidIO
+			iter.grouped(1024).flatMap(group => readExisting(pyramidIO, serializer, pyramidId, group))
+		}
+
+		var current: RDD[TileData[T]] =
+			if (compactSource) {
+				val compacted = source.mapPartitions { iter =>
+					val pyramidIO = tileIO.getPyramidIO
+					iter.grouped(1024).flatMap { group =>
+						val kept = compactAndWrite(pyramidIO, serializer, pyramidId, group)
+						kept.foreach(tile => accumulateExtrema(sourceLevel, tile))
+						kept
+					}
+				}.persist(StorageLevel.MEMORY_AND_DISK)
+				println("Compacted level "+sourceLevel+": "+compacted.count+" tiles")
+				compacted
+			} else {
+				source
+			}
+
+		for (level <- (sourceLevel - 1) to minLevel by -1) {
+			val parents = current
+				.map(tile => (TileIndex.getParent(tile.getDefinition), tile))
+				.groupByKey()
+				.flatMap { case (parent, children) => aggregateChildren(parent, children) }
+				.persist(StorageLevel.MEMORY_AND_DISK)
+
+			val tileCount = sc.accumulator(0)
+			parents.foreachPartition { iter =>
+				val pyramidIO = tileIO.getPyramidIO
+				iter.grouped(1024).foreach { group =>
+					pyramidIO.writeTiles(pyramidId, serializer, group.asJava)
+					group.foreach { tile =>
+						tileCount += 1
+						accumulateExtrema(level, tile)
+					}
+				}
+			}
+			println("Regenerated level "+level+": "+tileCount.value+" tiles")
+
+			current.unpersist(false)
+			current = parents
+		}
+		current.unpersist(false)
+
+		updateMetaData(tileIO.getPyramidIO, pyramidId, regeneratedLevels(sourceLevel, minLevel, compactSource), extrema.value)
+		extrema.value
+	}
+
+	private def forEachBin (tile: TileData[T])(fcn: (Int, Int, T) => Unit): Unit = {
+		val defaultValue = tile.getDefaultValue
+		def visit (x: Int, y: Int, value: T): Unit =
+			if (null != value && value != defaultValue) fcn(x, y, value)
+
+		tile match {
+			case sparse: SparseTileData[T] =>
+				sparse.getData.asScala.foreach(entry => visit(entry.getFirst.getX, entry.getFirst.getY, entry.getSecond))
+			case _ =>
+				val index = tile.getDefinition
+				for (x <- 0 until index.getXBins; y <- 0 until index.getYBins)
+					visit(x, y, tile.getBin(x, y))
+		}
+	}
+
+	// Build a tile from a row-major array of bin values, nulls marking default bins
+	private def createTile (index: TileIndex, defaultValue: T, values: Array[AnyRef], count: Int): TileData[T] = {
+		val typeToUse = tileType.getOrElse(
+			if (count > index.getXBins * index.getYBins / 2) StorageType.Dense
+			else StorageType.Sparse
+		)
+		val tile: TileData[T] = typeToUse match {
+			case StorageType.Dense => new DenseTileData[T](index, defaultValue)
+			case StorageType.Sparse => new SparseTileData[T](index, defaultValue)
+		}
+		val xBins = index.getXBins
+		for (bin <- 0 until values.length) {
+			if (null != values(bin)) tile.setBin(bin % xBins, bin / xBins, values(bin).asInstanceOf[T])
+		}
+		tile
+	}
+
+	private def readExisting (pyramidIO: PyramidIO, serializer: TileSerializer[T],
+	                          pyramidId: String, indices: Seq[TileIndex]): Seq[TileData[T]] =
+		Option(pyramidIO.readTiles(pyramidId, serializer, indices.asJava))
+			.map(_.asScala.filter(null != _).toSeq)
+			.getOrElse(Seq[TileData[T]]())
+
+	// Compact a group of tiles, writing back the non-empty ones, and removing the rest
+	private def compactAndWrite (pyramidIO: PyramidIO, serializer: TileSerializer[T],
+	                             pyramidId: String, tiles: Seq[TileData[T]]): Seq[TileData[T]] = {
+		val compacted = tiles.map(tile => (tile.getDefinition, compact(tile)))
+		val kept = compacted.flatMap(_._2)
+		if (kept.nonEmpty) pyramidIO.writeTiles(pyramidId, serializer, kept.asJava)
+
+		val empty = compacted.filter(_._2.isEmpty).map(_._1)
+		if (empty.nonEmpty) {
+			try {
+				pyramidIO.removeTiles(pyramidId, empty.asJava)
+			} catch {
+				case e: IOException => println("Unable to remove "+empty.size+" empty tiles: "+e.getMessage)
+			}
+		}
+		kept
+	}
+
+	private def compactTiles (pyramidIO: PyramidIO, serializer: TileSerializer[T],
+	                          pyramidId: String, tiles: Seq[TileData[T]]): BlockResult = {
+		val kept = compactAndWrite(pyramidIO, serializer, pyramidId, tiles)
+		(kept.map(_.getDefinition), combineExtrema(kept.flatMap(tileExtrema)))
+	}
+}
+
+object PyramidRegenerator {
+	/** The indices written by a block of work, and the extrema of their bins */
+	private[tiling] type BlockResult = (Seq[TileIndex], Option[(Double, Double)])
+
+	def combineExtrema (values: Seq[(Double, Double)]): Option[(Double, Double)] =
+		if (values.isEmpty) None
+		else Some((values.map(_._1).min, values.map(_._2).max))
+
+	/**
+	 * Create a regenerator for numeric tiles, combining child bins by sum, minimum, or maximum.
+	 *
+	 * @param aggregation "min", "max", or anything else for "sum"
+	 * @tparam T The numeric type with which bins are aggregated
+	 * @tparam JT The bin type of the tiles
+	 */
+	def numeric[T, JT] (aggregation: String)
+	                   (implicit numericType: ExtendedNumeric[T], conversion: TypeConversion[T, JT]): PyramidRegenerator[JT] = {
+		val base: Analytic[T] = aggregation match {
+			case "min" => new NumericMinAnalytic[T]
+			case "max" => new NumericMaxAnalytic[T]
+			case _ => new NumericSumAnalytic[T]
+		}
+		new PyramidRegenerator[JT](new FinalValueAnalytic[T, JT](base),
+		                           Some((value: JT) => numericType.toDouble(conversion.backwards(value))))
+	}
+
+	private def createPool (threads: Int): ExecutorService =
+		Executors.newFixedThreadPool(threads max 1, new ThreadFactory {
+			def newThread (runnable: Runnable): Thread = {
+				val thread = new Thread(runnable, "pyramid-regenerator")
+				thread.setDaemon(true)
+				thread
+			}
+		})
+
+	private def scanLevel (pyramidIO: PyramidIO, pyramidId: String, level: Int,
+	                       tileWidth: Int, tileHeight: Int): Option[Seq[TileIndex]] =
+		pyramidIO match {
+			case scannable: ScannablePyramidIO =>
+				Option(scannable.scanTiles(pyramidId, level, null)).map { scan =>
+					try {
+						scan.asScala.map(index => new TileIndex(index, tileWidth, tileHeight)).toList
+					} finally {
+						scan.close()
+					}
+				}
+			case _ => None
+		}
+
+	private def allTiles (level: Int, tileWidth: Int, tileHeight: Int): Iterator[TileIndex] = {
+		val size = 1 << level
+		Iterator.range(0, size).flatMap(x =>
+			Iterator.range(0, size).map(y => new TileIndex(level, x, y, tileWidth, tileHeight))
+		)
+	}
+
+	private def regeneratedLevels (sourceLevel: Int, minLevel: Int, compactSource: Boolean): Seq[Int] =
+		if (compactSource) minLevel to sourceLevel
+		else minLevel until sourceLevel
+
+	/*
+	 * Record regenerated levels and their extrema in the pyramid metadata, widening the global
+	 * extrema to cover them.
+	 */
+	private def updateMetaData (pyramidIO: PyramidIO, pyramidId: String,
+	                            levels: Seq[Int], extrema: Map[Int, (Double, Double)]): Unit =
+		Option(pyramidIO.readMetaData(pyramidId)).flatMap(raw => Try(new PyramidMetaData(raw)).toOption) match {
+			case Some(metaData) =>
+				metaData.addValidZoomLevels(levels.map(new JavaInt(_)).asJava)
+				extrema.foreach { case (level, (minimum, maximum)) =>
+					metaData.setCustomMetaData(new JavaDouble(minimum), level.toString, TileMerger.MINIMUM_KEY)
+					metaData.setCustomMetaData(new JavaDouble(maximum), level.toString, TileMerger.MAXIMUM_KEY)
+				}
+				combineExtrema(extrema.values.toSeq).foreach { case (minimum, maximum) =>
+					def global (key: String): Option[Double] =
+						Option(metaData.getCustomMetaData("global", key)).flatMap(value => Try(value.toDouble).toOption)
+					val globalMinimum = global(TileMerger.MINIMUM_KEY).map(_ min minimum).getOrElse(minimum)
+					val globalMaximum = global(TileMerger.MAXIMUM_KEY).map(_ max maximum).getOrElse(maximum)
+					metaData.setCustomMetaData(new JavaDouble(globalMinimum), "global", TileMerger.MINIMUM_KEY)
+					metaData.setCustomMetaData(new JavaDouble(globalMaximum), "global", TileMerger.MAXIMUM_KEY)
+				}
+				pyramidIO.writeMetaData(pyramidId, metaData.toString)
+			case None =>
+				println("No metadata found for "+pyramidId+"; regenerated levels and extrema not recorded")
+		}
+
+	def main (args: Array[String]): Unit = {
+		val argParser = new ArgumentParser(args)
+		val tileIO = TileIO.fromArguments(argParser)
+		val pyramidId = argParser.getString("pyramid", "The id of the pyramid to regenerate")
+		val sourceLevel = argParser.getInt("sourcelevel", "The level from which all coarser levels are derived")
+		val minLevel = argParser.getInt("minlevel", "The coarsest level to regenerate", Some(0))
+		val compactSource = argParser.getBoolean("compact",
+		                                         "If true, the source level is also rewritten in optimal "+
+			                                         "storage form, and its empty tiles removed",
+		                                         Some(false))
+		val aggregation = argParser.getString("aggregation",
+		                                      "How child bins are combined into parent bins: sum (DEFAULT), "+
+			                                      "min, or max",
+		                                      Some("sum"))
+		val useSpark = argParser.getBoolean("spark",
+		                                    "If true, regenerate using spark; otherwise, use local threads",
+		                                    Some(false))
+		val threads = argParser.getInt("threads", "The number of local threads to use, when not using spark",
+		                               Some(Runtime.getRuntime.availableProcessors))
+		val serializerType = argParser.getString("serializer",
+		                                         "The type of tile serializer to use: avro-double (DEFAULT), "+
+			                                         "avro-int, or avro-long",
+		                                         Some("avro-double"))
+		val serializer = TileSerializerChooser.getSerializer(serializerType)
+
+		def run[BT] (regenerator: PyramidRegenerator[BT]): Unit = {
+			val typedSerializer = serializer.asInstanceOf[TileSerializer[BT]]
+			val extrema =
+				if (useSpark) {
+					val sc = argParser.getSparkConnector().createContext(Some("Regenerating "+pyramidId))
+					regenerator.regenerate(sc, tileIO, typedSerializer, pyramidId, sourceLevel, minLevel, compactSource)
+				} else {
+					regenerator.regenerateLocal(tileIO.getPyramidIO, typedSerializer, pyramidId,
+					                            sourceLevel, minLevel, compactSource, threads)
+				}
+			extrema.toSeq.sortBy(_._1).foreach { case (level, (minimum, maximum)) =>
+				println("Level "+level+": "+minimum+" to "+maximum)
+			}
+		}
+
+		serializerType match {
+			case "avro-int" => run(numeric[Int, JavaInt](aggregation))
+			case "avro-long" => run(numeric[Long, JavaLong](aggregation))
+			case "avro-double" => run(numeric[Double, JavaDouble](aggregation))
+			case _ => throw new IllegalArgumentException("Regeneration is only supported for numeric serializers, not "+serializerType)
+		}
+	}
+}
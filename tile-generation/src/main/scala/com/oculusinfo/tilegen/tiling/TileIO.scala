@@ -30,6 +30,7 @@ import java.lang.{Integer => JavaInt}
 import java.lang.{Long => JavaLong}
 import java.io.File
 import org.apache.avro.util.Utf8
+import org.json.JSONObject
 
 import scala.collection.JavaConversions._
 import scala.collection.JavaConverters._
@@ -51,6 +52,7 @@ import com.oculusinfo.binning.io.serialization.impl.PairArrayAvroSerializer
 import com.oculusinfo.binning.metadata.PyramidMetaData
 import com.oculusinfo.factory.util.Pair
 import com.oculusinfo.tilegen.spark.IntMaxAccumulatorParam
+import com.oculusinfo.tilegen.tiling.analytics.Analytic
 import com.oculusinfo.tilegen.tiling.analytics.AnalysisDescription
 import com.oculusinfo.tilegen.util.ArgumentParser
 import com.oculusinfo.tilegen.util.KeyValueArgumentSource
@@ -89,7 +91,19 @@ object TileIO {
 				                    Some("2181")),
 				argParser.getString(Array("hbasemaster", "hbase.master"),
 				                    "The master machine for hbase",
-				                    None)
+				                    None),
+				bulkLoadDirectory =
+					argParser.getStringOption("hbase.bulkload.directory",
+					                          "An HDFS directory in which to stage HFiles, if tiles are to be "+
+						                          "bulk-loaded into HBase rather than written with puts",
+					                          None),
+				preSplitLevels =
+					argParser.getIntSeq("hbase.presplit.levels",
+					                    "Levels by which to pre-split newly created tables into regions"),
+				regionsPerLevel =
+					argParser.getInt("hbase.presplit.regions",
+					                 "The number of regions into which to pre-split each pre-split level",
+					                 Some(1))
 			)
 			case "sqlite" => new SqliteTileIO(
 				argParser.getString(Array("sqlitepath", "oculus.tileio.sqlite.path"),
@@ -207,6 +221,93 @@ trait TileIO extends Serializable {
 		writeMetaData(baseLocation, metaData)
 	}
 
+	/**
+	 * Merge all tiles contained in the given data into any tiles already in the pyramid, rather
+	 * than overwriting them.  Tiles not yet in the pyramid are simply written.
+	 *
+	 * Tile analytics are calculated here, on the merged tiles, rather than during binning, so
+	 * that the values written into tile and pyramid metadata reflect the full merged tile.
+	 *
+	 * @param mergeAnalytic An analytic that can combine final bin values of existing and new tiles
+	 * @param batch An ID for the batch of data being merged.  IDs must increase from batch to
+	 *              batch; any tile already containing this batch is skipped, so a batch may be
+	 *              safely re-run after a failure.
+	 */
+	def mergeTileSet[BT, AT, DT] (pyramider: TilePyramid,
+	                              baseLocation: String,
+	                              data: RDD[TileData[BT]],
+	                              serializer: TileSerializer[BT],
+	                              mergeAnalytic: Analytic[BT],
+	                              batch: Long,
+	                              tileAnalytics: Option[AnalysisDescription[TileData[BT], AT]],
+	                              dataAnalytics: Option[AnalysisDescription[_, DT]],
+	                              name: String = "unknown",
+	                              description: String = "unknown"): Unit = {
+		getPyramidIO.initializeForWrite(baseLocation)
+
+		val tileCount = data.context.accumulator(0)
+		val mergeCount = data.context.accumulator(0)
+		val levelSet = data.context.accumulableCollection(MutableSet[Int]())
+		val xbins = data.context.accumulator(0)(new IntMaxAccumulatorParam)
+		val ybins = data.context.accumulator(0)(new IntMaxAccumulatorParam)
+
+		println("Merging tile set into "+baseLocation+" (batch "+batch+")")
+
+		data.mapPartitions(_.grouped(1024)).foreach(group =>
+			{
+				val pyramidIO = getPyramidIO
+				// Read whatever versions of these tiles already exist
+				val existing = Option(pyramidIO.readTiles(baseLocation, serializer, group.map(_.getDefinition).asJava))
+					.map(_.asScala.filter(null != _).map(tile => (tile.getDefinition, tile)).toMap)
+					.getOrElse(Map[TileIndex, TileData[BT]]())
+
+				val merged = group.flatMap(tile =>
+					existing.get(tile.getDefinition) match {
+						case Some(oldTile) if TileMerger.isMerged(oldTile, batch) => None
+						case Some(oldTile) =>
+							mergeCount += 1
+							Some(TileMerger.mergeTiles(oldTile, tile, mergeAnalytic))
+						case None => Some(tile)
+					}
+				)
+
+				merged.foreach(tile =>
+					{
+						tileAnalytics.foreach(ta =>
+							{
+								val analyticValue = ta.convert(tile)
+								ta.accumulate(tile.getDefinition, analyticValue)
+								AnalysisDescription.record(analyticValue, ta, tile)
+							}
+						)
+						TileMerger.markMerged(tile, batch)
+
+						val index = tile.getDefinition
+						tileCount += 1
+						levelSet += index.getLevel
+						xbins += index.getXBins
+						ybins += index.getYBins
+					}
+				)
+
+				pyramidIO.writeTiles(baseLocation, serializer, merged)
+			}
+		)
+		println("Written tiles: "+tileCount+" ("+mergeCount+" merged with existing tiles)")
+		println("Input levels: "+levelSet.value)
+
+		val oldCustomMetaData = readMetaData(baseLocation).flatMap(md => Option(md.getRawData.optJSONObject("meta")))
+			.map(meta => new JSONObject(meta.toString))
+		val metaData =
+			combineMetaData(pyramider, baseLocation,
+			                levelSet.value.toSet,
+			                tileAnalytics, dataAnalytics,
+			                xbins.value, ybins.value,
+			                name, description)
+		oldCustomMetaData.foreach(TileMerger.mergeExtrema(_, metaData.getRawData.optJSONObject("meta")))
+		writeMetaData(baseLocation, metaData)
+	}
+
 	/**
 	 * Takes a map of levels to (mins, maxes) and combines them with the current metadata
 	 * that already exists, or creates a new one if none exists.
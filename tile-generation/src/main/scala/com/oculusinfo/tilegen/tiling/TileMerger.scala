@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tilegen.tiling
+
+
+
+import scala.collection.JavaConverters._
+import scala.util.Try
+
+import org.json.JSONObject
+
+import com.oculusinfo.binning.TileData
+import com.oculusinfo.binning.impl.SparseTileData
+import com.oculusinfo.tilegen.tiling.analytics.Analytic
+import com.oculusinfo.tilegen.util.TypeConversion
+
+
+
+/**
+ * Functions needed to merge newly binned tiles into tiles that already exist in a pyramid.
+ *
+ * Merging is done on finished bin values, so the analytic used must be able to aggregate final
+ * bin values (for sums, minimums, and maximums, the processing and final types are the same, so
+ * this is usually just the binning analytic itself).
+ *
+ * Each merged tile is stamped with the ID of the batch that last updated it; a tile that already
+ * carries the current batch ID (or a later one) is left untouched, so replaying a batch after a
+ * partial failure will not count any of its data twice.
+ */
+object TileMerger {
+	/** The tile metadata key under which the ID of the last batch merged into a tile is stored */
+	val BATCH_KEY = "batch"
+
+	/** Pyramid metadata keys whose values are extrema, and so must be merged, rather than replaced */
+	val MINIMUM_KEY = "minimum"
+	val MAXIMUM_KEY = "maximum"
+
+	/**
+	 * Determine if a tile has already had the given batch merged into it
+	 */
+	def isMerged (tile: TileData[_], batch: Long): Boolean =
+		Option(tile.getMetaData(BATCH_KEY)).flatMap(b => Try(b.toLong).toOption).exists(_ >= batch)
+
+	/**
+	 * Mark a tile as containing the data from the given batch
+	 */
+	def markMerged (tile: TileData[_], batch: Long): Unit =
+		tile.setMetaData(BATCH_KEY, batch.toString)
+
+	/**
+	 * Merge a newly generated tile into an existing one.  The existing tile is modified in place.
+	 *
+	 * Bins of the existing tile that are empty (null) or still hold the tile's default value are
+	 * treated as having no data, and simply take the updated value; otherwise analytics like minima
+	 * would aggregate real values with the default, and collapse to it.
+	 *
+	 * @param existing The tile as it exists already in the pyramid
+	 * @param update The new tile whose values are to be added into the existing tile
+	 * @param analytic An analytic to aggregate the final bin values of the two tiles
+	 * @return The existing tile, with the update merged into it
+	 */
+	def mergeTiles[T] (existing: TileData[T], update: TileData[T], analytic: Analytic[T]): TileData[T] = {
+		val updateDefault = update.getDefaultValue
+		val existingDefault = existing.getDefaultValue
+		def mergeBin (x: Int, y: Int, value: T): Unit =
+			if (value != updateDefault) {
+				val oldValue = existing.getBin(x, y)
+				if (null == oldValue || oldValue == existingDefault) existing.setBin(x, y, value)
+				else existing.setBin(x, y, analytic.aggregate(oldValue, value))
+			}
+
+		update match {
+			case sparse: SparseTileData[T] =>
+				sparse.getData.asScala.foreach(entry => mergeBin(entry.getFirst.getX, entry.getFirst.getY, entry.getSecond))
+			case _ =>
+				val index = update.getDefinition
+				for (x <- 0 until index.getXBins; y <- 0 until index.getYBins)
+					mergeBin(x, y, update.getBin(x, y))
+		}
+
+		// Metadata from the update (data analytics, for instance) overrides the old metadata
+		Option(update.getMetaDataProperties).foreach(_.asScala.foreach(property =>
+			existing.setMetaData(property, update.getMetaData(property))
+		))
+
+		existing
+	}
+
+	/**
+	 * Merge extrema in pyramid metadata.  Everything in the new metadata simply replaces the old
+	 * metadata, except that minima and maxima are combined with their old values, so that levels
+	 * with tiles untouched by the latest batch keep their correct extrema.
+	 *
+	 * @param oldMetaData The custom metadata of the pyramid before the latest batch was recorded
+	 * @param newMetaData The custom metadata of the pyramid after the latest batch was recorded;
+	 *                    this is modified in place.
+	 */
+	def mergeExtrema (oldMetaData: JSONObject, newMetaData: JSONObject): Unit =
+		if (null != oldMetaData && null != newMetaData) {
+			Option(JSONObject.getNames(newMetaData)).foreach(_.foreach { key =>
+				(oldMetaData.opt(key), newMetaData.opt(key)) match {
+					case (oldChild: JSONObject, newChild: JSONObject) =>
+						mergeExtrema(oldChild, newChild)
+					case (oldValue, newValue) if (null != oldValue && null != newValue) =>
+						val extremum = for (o <- Try(oldValue.toString.toDouble);
+						                    n <- Try(newValue.toString.toDouble)) yield (o, n)
+						extremum.foreach { case (o, n) =>
+							if (MINIMUM_KEY == key && o < n) newMetaData.put(key, oldValue)
+							if (MAXIMUM_KEY == key && o > n) newMetaData.put(key, oldValue)
+						}
+					case _ =>
+				}
+			})
+		}
+}
+
+
+
+/**
+ * Adapts an analytic over processing values into one over final bin values, for analytics (like
+ * numeric sums, minima, and maxima) whose final values are simple conversions of their
+ * processing values.  This allows, for instance, a NumericSumBinningAnalytic[Double, JavaDouble]
+ * to be used to merge tiles of JavaDoubles.
+ *
+ * @param base The analytic on processing values
+ * @tparam PT The processing type of the base analytic
+ * @tparam BT The final bin type
+ */
+class FinalValueAnalytic[PT, BT] (base: Analytic[PT])(implicit converter: TypeConversion[PT, BT])
+		extends Analytic[BT]
+{
+	def aggregate (a: BT, b: BT): BT =
+		converter.forwards(base.aggregate(converter.backwards(a), converter.backwards(b)))
+	def defaultProcessedValue: BT = converter.forwards(base.defaultProcessedValue)
+	def defaultUnprocessedValue: BT = converter.forwards(base.defaultUnprocessedValue)
+}
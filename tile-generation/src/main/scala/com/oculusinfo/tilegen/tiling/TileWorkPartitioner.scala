@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.oculusinfo.tilegen.tiling
+
+
+
+import scala.collection.mutable.PriorityQueue
+
+import org.apache.spark.{HashPartitioner, Partitioner}
+
+import com.oculusinfo.binning.TileIndex
+
+
+
+object TileWorkPartitioner {
+	// The maximum number of explicitly placed keys per partition, to keep the partitioner small
+	// enough to ship with every task
+	val MAX_KEYS_PER_PARTITION = 64
+
+	/**
+	 * Determine how many sub-keys each hot tile should be split into, so that no single sub-key
+	 * holds much more than one partition's fair share of the work.
+	 *
+	 * @param tileCounts The estimated number of records in each tile.  Tiles with no estimate
+	 *                   are assumed to be small.
+	 * @param partitions The number of partitions among which the work is to be spread
+	 * @return The number of sub-keys into which to split each hot tile.  Tiles that don't need
+	 *         splitting are not included.
+	 */
+	def getSalts (tileCounts: Map[TileIndex, Long], partitions: Int): Map[TileIndex, Int] = {
+		val total = tileCounts.values.sum
+		val fairShare = (total.toDouble / partitions) max 1.0
+		tileCounts.map{case (tile, count) =>
+			(tile, math.ceil(count / fairShare).toInt.min(partitions))
+		}.filter(_._2 > 1)
+	}
+
+	/**
+	 * Create a partitioner for salted tile keys that balances the estimated work of each
+	 * partition.  Known tiles (or, for hot tiles, sub-keys) are assigned largest first, each to
+	 * the least-loaded partition; tiles without an estimate, or too small to be among the
+	 * MAX_KEYS_PER_PARTITION heaviest keys per partition, are hashed.
+	 *
+	 * @param tileCounts The estimated number of records in each tile.
+	 * @param salts The number of sub-keys into which each hot tile is split, as per getSalts
+	 * @param partitions The number of partitions to create
+	 */
+	def apply (tileCounts: Map[TileIndex, Long], salts: Map[TileIndex, Int], partitions: Int): TileWorkPartitioner = {
+		val work = tileCounts.toSeq.flatMap{case (tile, count) =>
+			val tileSalts = salts.getOrElse(tile, 1)
+			Range(0, tileSalts).map(salt => ((tile, salt), count.toDouble / tileSalts))
+		}.sortBy(-_._2).take(partitions * MAX_KEYS_PER_PARTITION)
+
+		// Least-loaded partition first
+		val loads = PriorityQueue[(Double, Int)]()(Ordering.by[(Double, Int), (Double, Int)](load => (-load._1, -load._2)))
+		Range(0, partitions).foreach(partition => loads.enqueue((0.0, partition)))
+
+		val assignments = work.map{case (key, keyWork) =>
+			val (load, partition) = loads.dequeue()
+			loads.enqueue((load + keyWork, partition))
+			(key, partition)
+		}.toMap
+		new TileWorkPartitioner(partitions, assignments)
+	}
+}
+
+/**
+ * A partitioner for (tile, salt) keys, which places keys with a known work estimate explicitly,
+ * and hashes everything else.
+ *
+ * @param partitions The number of partitions
+ * @param assignments The partition to which each known key should be sent
+ */
+class TileWorkPartitioner (partitions: Int, val assignments: Map[(TileIndex, Int), Int]) extends Partitioner {
+	private val defaultPartitioner = new HashPartitioner(partitions)
+
+	def numPartitions: Int = partitions
+
+	def getPartition (key: Any): Int =
+		assignments.getOrElse(key.asInstanceOf[(TileIndex, Int)], defaultPartitioner.getPartition(key))
+
+	override def equals (that: Any): Boolean = that match {
+		case other: TileWorkPartitioner => partitions == other.numPartitions && assignments == other.assignments
+		case _ => false
+	}
+
+	override def hashCode: Int = assignments.hashCode
+}
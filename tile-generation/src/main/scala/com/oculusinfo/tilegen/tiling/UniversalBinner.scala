@@ -26,8 +26,9 @@ package com.oculusinfo.tilegen.tiling
 
 
 import grizzled.slf4j.Logging
-import org.apache.spark.Accumulator
+import org.apache.spark.{Accumulator, RangePartitioner}
 
+import scala.collection.mutable.ArrayBuffer
 import scala.collection.mutable.{Map => MutableMap}
 import scala.util.Try
 
@@ -38,6 +39,8 @@ import org.apache.spark.rdd.RDD
 import org.apache.spark.storage.StorageLevel
 
 import com.oculusinfo.binning.BinIndex
+import com.oculusinfo.binning.IndexKeys
+import com.oculusinfo.binning.PyramidComparator
 import com.oculusinfo.binning.TileIndex
 import com.oculusinfo.binning.TileData
 import com.oculusinfo.binning.TilePyramid
@@ -105,6 +108,24 @@ object UniversalBinner {
 		}
 	}
 
+	/**
+	 * Add the entries of one map into another in place, aggregating entries with the same key
+	 * according to a given aggregator function.
+	 *
+	 * @param aggFcn The aggregation function for adding values together
+	 * @param target The map into which to add entries
+	 * @param source The map whose entries are to be added
+	 * @tparam K The class type of the map keys
+	 * @tparam V The class type of the map values
+	 * @return The target map
+	 */
+	def aggregateInto[K, V](aggFcn: (V, V) => V, target: MutableMap[K, V], source: MutableMap[K, V]): MutableMap[K, V] = {
+		source.foreach { case (key, value) =>
+			target(key) = target.get(key).map(aggFcn(_, value)).getOrElse(value)
+		}
+		target
+	}
+
 	//	def oldAggregateMaps[K, V](aggFcn: (V, V) => V, map1: MutableMap[K, V], map2: MutableMap[K, V]): MutableMap[K, V] = {
 	//		(map1.toSeq ++ map2.toSeq).groupBy(_._1).map { case (k, v) => (k, v.map(_._2).reduce(aggFcn)) }
 	//	}
@@ -115,6 +136,30 @@ object UniversalBinner {
 class UniversalBinner extends Logging {
 	import UniversalBinner._
 
+	// Intermediate results persisted while binning, held until released by the caller
+	@transient private val intermediates = ArrayBuffer[RDD[_]]()
+
+	// Persist an intermediate result that will be read more than once
+	private def persistIntermediate[T] (rdd: RDD[T]): RDD[T] = {
+		rdd.persist(StorageLevel.MEMORY_AND_DISK)
+		intermediates.synchronized {
+			intermediates += rdd
+		}
+		rdd
+	}
+
+	/**
+	 * Release any intermediate results persisted while binning.  The RDDs of tiles returned by
+	 * this binner are lazy, and read these intermediates when materialized, so this should be
+	 * called once those tiles have been written out (or otherwise used), not before.
+	 */
+	def releaseIntermediates (): Unit = {
+		intermediates.synchronized {
+			intermediates.foreach(_.unpersist(false))
+			intermediates.clear()
+		}
+	}
+
 	/** Helper function to mimic RDDBinner interface */
 	def binAndWriteData[RT: ClassTag, IT: ClassTag, PT: ClassTag,
 	                    AT: ClassTag, DT: ClassTag, BT] (
@@ -258,6 +303,207 @@ class UniversalBinner extends Logging {
 			}
 
 		// Combine all information from a single tile
+		val (createCombiner, mergeValue, mergeCombiners) =
+			getTileCombiners[PT, DT, BT](binAnalytic, dataAnalytics, populateTileFcn)
+		val tileInfos = parameters.skewSampleFraction match {
+			case Some(sampleFraction) =>
+				// Only the sampled records need be located to estimate tile frequencies
+				val sampledTiles = data.sample(false, sampleFraction).flatMap(record =>
+					locateIndexFcn(record._1).map(_._1)
+				)
+				combineSkewedTiles(consolidatedByPartition, sampledTiles, sampleFraction,
+				                   createCombiner, mergeValue, mergeCombiners, parameters)
+			case None =>
+				val a = consolidatedByPartition.map{case (tile, bins, value, analyticValue) =>
+					(tile, (tile, bins, value, analyticValue))
+				}
+				a.combineByKey[(MutableMap[BinIndex, PT], Option[DT])](createCombiner, mergeValue, mergeCombiners)
+		}
+
+		// Now, go through those results and convert to tiles.
+		finishTiles(tileInfos, binAnalytic, tileAnalytics, dataAnalytics, parameters)
+	}
+
+	/**
+	 * Range-partition data once by the Z-order (Morton) key of its location, sorting each
+	 * partition by that key.  The result can then be tiled at any number of levels by
+	 * processZOrderedData without any further shuffling of the raw data.
+	 *
+	 * @param data The data to partition
+	 * @param keyFcn A function to calculate the Morton key of each input index, at a level at
+	 *               least as deep as any that will be tiled; see
+	 *               {@link com.oculusinfo.binning.PyramidComparator#getComparisonKey}
+	 * @param parameters General binning parameters; the partition limits are used to determine
+	 *                   the number of key ranges into which to split the data.
+	 */
+	def zOrderPartition[IT: ClassTag, PT: ClassTag, DT: ClassTag]
+		(data: RDD[(IT, PT, Option[DT])],
+		 keyFcn: IT => Long,
+		 parameters: BinningParameters = new BinningParameters()): RDD[(Long, (IT, PT, Option[DT]))] =
+	{
+		val keyedData = data.map(record => (keyFcn(record._1), record))
+		val partitions = getNumSplits(data, parameters.minPartitions, parameters.maxPartitions)
+		keyedData.repartitionAndSortWithinPartitions(new RangePartitioner(partitions, keyedData))
+	}
+
+	/**
+	 * Tile data that has already been range-partitioned by Morton key (see zOrderPartition).
+	 *
+	 * Each partition is binned on its own, in key order, so the tiles it touches are completed
+	 * as the curve leaves them and only a handful are held open at once.  A tile whose key range
+	 * lies entirely within one partition is finished right there; only tiles straddling a
+	 * partition boundary (at most one per level per boundary, for point data) go through a
+	 * secondary merge.
+	 *
+	 * This relies on every input record only being located in tiles containing its own key, as
+	 * is the case for point data binned with StandardBinningFunctions.locateIndexOverLevels.
+	 * Locators that spread records over neighbouring tiles (lines, kernels, and the like)
+	 * should use processData instead.
+	 *
+	 * Partial tiles are persisted, as they are read for both interior and boundary tiles; call
+	 * releaseIntermediates once the returned tiles have been written to release them.
+	 *
+	 * @param data The data to tile, range-partitioned and sorted by Morton key
+	 * @param comparator The comparator used to generate the Morton keys of the data
+	 * @see processData for descriptions of the remaining parameters.
+	 */
+	def processZOrderedData[IT: ClassTag, PT: ClassTag, AT: ClassTag, DT: ClassTag, BT]
+		(data: RDD[(Long, (IT, PT, Option[DT]))],
+		 comparator: PyramidComparator,
+		 binAnalytic: BinningAnalytic[PT, BT],
+		 tileAnalytics: Option[AnalysisDescription[TileData[BT], AT]],
+		 dataAnalytics: Option[AnalysisDescription[_, DT]],
+		 locateIndexFcn: IT => Traversable[(TileIndex, Array[BinIndex])],
+		 populateTileFcn: (TileIndex, Array[BinIndex], PT) => MutableMap[BinIndex, PT],
+		 parameters: BinningParameters = new BinningParameters()): RDD[TileData[BT]] =
+	{
+		val partitioner = data.partitioner.getOrElse(
+			throw new IllegalArgumentException("Z-ordered data must be range-partitioned by Morton key")
+		)
+		val (createCombiner, mergeValue, mergeCombiners) =
+			getTileCombiners[PT, DT, BT](binAnalytic, dataAnalytics, populateTileFcn)
+
+		// Bin each partition separately, marking each tile as to whether it lies entirely
+		// within this partition
+		val partialTiles = data.mapPartitionsWithIndex{(partition, records) =>
+			val openTiles = MutableMap[TileIndex, (MutableMap[BinIndex, PT], Option[DT])]()
+			// Key ranges of open tiles; tiles outside the pyramid have no reliable key range, so
+			// are left out, and held until the end of the partition.
+			val tileRanges = MutableMap[TileIndex, (Long, Long)]()
+			var nextCompletion = Long.MaxValue
+
+			def releaseTile (tile: TileIndex): (TileIndex, (MutableMap[BinIndex, PT], Option[DT]), Boolean) = {
+				val interior = tileRanges.remove(tile).exists{case (minKey, maxKey) =>
+					partitioner.getPartition(minKey) == partition && partitioner.getPartition(maxKey) == partition
+				}
+				(tile, openTiles.remove(tile).get, interior)
+			}
+
+			records.flatMap{case (key, (index, value, analyticValue)) =>
+				// Release any tiles the curve has left before adding this record
+				val completed =
+					if (key > nextCompletion) {
+						val completedTiles = tileRanges.filter(_._2._2 < key).keys.toList.map(releaseTile)
+						nextCompletion = if (tileRanges.isEmpty) Long.MaxValue else tileRanges.values.map(_._2).min
+						completedTiles
+					} else {
+						Nil
+					}
+
+				locateIndexFcn(index).foreach{case (tile, bins) =>
+					val located = (tile, bins, value, analyticValue)
+					openTiles.get(tile) match {
+						case Some(tileInfo) => openTiles(tile) = mergeValue(tileInfo, located)
+						case None =>
+							openTiles(tile) = createCombiner(located)
+							if (IndexKeys.isEncodable(tile)) {
+								val tileKey = IndexKeys.tileKey(tile)
+								val maxKey = comparator.getMaximumComparisonKey(tileKey)
+								tileRanges(tile) = (comparator.getMinimumComparisonKey(tileKey), maxKey)
+								nextCompletion = nextCompletion min maxKey
+							}
+					}
+				}
+				completed
+			} ++ openTiles.keys.toList.map(releaseTile)
+		}
+		persistIntermediate(partialTiles)
+
+		val interiorTiles = partialTiles.filter(_._3).map(t => (t._1, t._2))
+		val boundaryTiles = partialTiles.filter(!_._3).map(t => (t._1, t._2)).reduceByKey(mergeCombiners)
+
+		finishTiles(interiorTiles union boundaryTiles, binAnalytic, tileAnalytics, dataAnalytics, parameters)
+	}
+	/*
+	 * Combine located records into per-tile bin values, splitting the hottest tiles across
+	 * several reducers.
+	 *
+	 * Tile frequencies are estimated from the tiles of a sample of the input records, located
+	 * separately so that estimating them doesn't locate the whole input.  The records of each
+	 * hot tile are spread over several sub-keys, sub-keys are partially combined on partitions
+	 * chosen to balance the estimated work, and the partial results for each hot tile are then
+	 * merged.  Only hot tiles take part in that final merge.
+	 */
+	private def combineSkewedTiles[PT, DT]
+		(located: RDD[(TileIndex, Array[BinIndex], PT, Option[DT])],
+		 sampledTiles: RDD[TileIndex],
+		 sampleFraction: Double,
+		 createCombiner: ((TileIndex, Array[BinIndex], PT, Option[DT])) => (MutableMap[BinIndex, PT], Option[DT]),
+		 mergeValue: ((MutableMap[BinIndex, PT], Option[DT]), (TileIndex, Array[BinIndex], PT, Option[DT])) => (MutableMap[BinIndex, PT], Option[DT]),
+		 mergeCombiners: ((MutableMap[BinIndex, PT], Option[DT]), (MutableMap[BinIndex, PT], Option[DT])) => (MutableMap[BinIndex, PT], Option[DT]),
+		 parameters: BinningParameters): RDD[(TileIndex, (MutableMap[BinIndex, PT], Option[DT]))] =
+	{
+		val partitions = getNumSplits(located, parameters.minPartitions, parameters.maxPartitions)
+		val tileCounts = sampledTiles.countByValue()
+			.map{case (tile, count) => (tile, (count / sampleFraction).toLong)}.toMap
+		val salts = TileWorkPartitioner.getSalts(tileCounts, partitions)
+		val partitioner = TileWorkPartitioner(tileCounts, salts, partitions)
+		if (parameters.debug) {
+			info("Splitting "+salts.size+" hot tiles over "+partitions+" partitions: "+
+				     salts.map{case (tile, tileSalts) => tile+" -> "+tileSalts}.mkString(", "))
+		}
+
+		// Deal the records of each hot tile round-robin over its sub-keys
+		val saltedRecords = located.mapPartitionsWithIndex{(partition, records) =>
+			var n = partition.toLong
+			records.map{record =>
+				val salt = salts.get(record._1) match {
+					case Some(tileSalts) =>
+						n += 1
+						(n % tileSalts).toInt
+					case None => 0
+				}
+				((record._1, salt), record)
+			}
+		}
+		val partialTiles = saltedRecords.combineByKey(createCombiner, mergeValue, mergeCombiners, partitioner)
+			.map{case ((tile, salt), tileInfo) => (tile, tileInfo)}
+
+		if (salts.isEmpty) {
+			partialTiles
+		} else {
+			// Partial tiles are read twice - once for cold tiles, once for hot ones
+			persistIntermediate(partialTiles)
+			val hotTiles = salts.keySet
+			val coldTiles = partialTiles.filter(tileInfo => !hotTiles.contains(tileInfo._1))
+			val mergedHotTiles = partialTiles.filter(tileInfo => hotTiles.contains(tileInfo._1))
+				.reduceByKey(mergeCombiners, salts.size)
+			coldTiles union mergedHotTiles
+		}
+	}
+
+	/*
+	 * Get the functions needed to combine located input records into the bin values and data
+	 * analytic value of a single tile, in the form needed by combineByKey.
+	 */
+	private def getTileCombiners[PT, DT, BT]
+		(binAnalytic: BinningAnalytic[PT, BT],
+		 dataAnalytics: Option[AnalysisDescription[_, DT]],
+		 populateTileFcn: (TileIndex, Array[BinIndex], PT) => MutableMap[BinIndex, PT]):
+			(((TileIndex, Array[BinIndex], PT, Option[DT])) => (MutableMap[BinIndex, PT], Option[DT]),
+			 ((MutableMap[BinIndex, PT], Option[DT]), (TileIndex, Array[BinIndex], PT, Option[DT])) => (MutableMap[BinIndex, PT], Option[DT]),
+			 ((MutableMap[BinIndex, PT], Option[DT]), (MutableMap[BinIndex, PT], Option[DT])) => (MutableMap[BinIndex, PT], Option[DT])) =
+	{
 		val createCombiner: ((TileIndex, Array[BinIndex], PT, Option[DT])) => (MutableMap[BinIndex, PT], Option[DT]) =
 			c => {
 				val (tile, bins, value, analyticValue) = c
@@ -269,7 +515,9 @@ class UniversalBinner extends Logging {
 					)
 				)
 
-				(populateTileFcn(tile, bins, value), analyticValue)
+				// Combined bin values are kept in a BinValueMap, so they get its compact
+				// serializer when shuffled
+				(BinValueMap(populateTileFcn(tile, bins, value)), analyticValue)
 			}
 		val mergeValue: ((MutableMap[BinIndex, PT], Option[DT]),
 		                 (TileIndex, Array[BinIndex], PT, Option[DT])) => (MutableMap[BinIndex, PT], Option[DT]) =
@@ -282,7 +530,7 @@ class UniversalBinner extends Logging {
         // Accumulate data analytic metadata
 				newAnalyticValue.foreach(av => dataAnalytics.foreach(analytic => analytic.accumulate(tile, av)))
 
-				(aggregateMaps(binAggregator, binValues, populateTileFcn(tile, bins, value)),
+				(aggregateInto(binAggregator, binValues, populateTileFcn(tile, bins, value)),
 				 optAggregate(analyticAggregator, curAnalyticValue, newAnalyticValue))
 			}
 		val mergeCombiners: ((MutableMap[BinIndex, PT], Option[DT]),
@@ -295,12 +543,20 @@ class UniversalBinner extends Logging {
 				(aggregateMaps(binAggregator, binValues1, binValues2),
 				 optAggregate(analyticAggregator, analyticValue1, analyticValue2))
 			}
-		val a = consolidatedByPartition.map{case (tile, bins, value, analyticValue) =>
-			(tile, (tile, bins, value, analyticValue))
-		}
-		val tileInfos = a.combineByKey[(MutableMap[BinIndex, PT], Option[DT])](createCombiner, mergeValue, mergeCombiners)
+		(createCombiner, mergeValue, mergeCombiners)
+	}
 
-		// Now, go through those results and convert to tiles.
+	/*
+	 * Convert combined bin values and data analytic values into finished tiles, recording
+	 * data and tile analytics as we go.
+	 */
+	private def finishTiles[PT, AT, DT, BT]
+		(tileInfos: RDD[(TileIndex, (MutableMap[BinIndex, PT], Option[DT]))],
+		 binAnalytic: BinningAnalytic[PT, BT],
+		 tileAnalytics: Option[AnalysisDescription[TileData[BT], AT]],
+		 dataAnalytics: Option[AnalysisDescription[_, DT]],
+		 parameters: BinningParameters): RDD[TileData[BT]] =
+	{
 		tileInfos.map{tileInfo =>
 			val index = tileInfo._1
 			val binValues = tileInfo._2._1
@@ -361,9 +617,14 @@ class UniversalBinner extends Logging {
  * @param maxPartitions The maximum number of partitions to use during reduce operations
  * @param tileType The type of tile to generate (dense or sparse); None for a fairly good
  *                 heuristic to decide on a tile-by-tile basis.
+ * @param skewSampleFraction If set, the fraction of input records to sample in order to find
+ *                           hot tiles, which are then split across several reducers and merged
+ *                           afterwards; see UniversalBinner.releaseIntermediates.  None to
+ *                           combine each tile on a single reducer.
  */
 case class BinningParameters (debug: Boolean = true,
                               xBins: Int = 256, yBins: Int = 256,
                               minPartitions: Option[Int] = None,
                               maxPartitions: Option[Int] = None,
-                              tileType: Option[StorageType] = None)
+                              tileType: Option[StorageType] = None,
+                              skewSampleFraction: Option[Double] = None)
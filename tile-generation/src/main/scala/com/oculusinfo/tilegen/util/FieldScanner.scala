@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tilegen.util
+
+
+
+/**
+ * Allocation-light methods for splitting delimited text into fields and parsing numbers out of
+ * those fields without first copying them into their own strings.
+ *
+ * These are used by the CSV reader for the common case of an unquoted file with a plain (non-regex)
+ * separator; anything more complex is left to {@link StringUtilities#separateString}.  All number
+ * parsers accept exactly what the equivalent <code>s.trim.toXXX</code> call would, and produce the
+ * same value, or throw the same type of exception.
+ */
+object FieldScanner {
+	private val REGEX_SPECIAL_CHARACTERS = "\\^$.|?*+()[]{}"
+
+	// Powers of ten that can be represented exactly as doubles
+	private val EXACT_POWERS_OF_TEN = Array.iterate(1.0, 23)(_ * 10.0)
+	// The largest integer mantissa we can be sure is represented exactly in a double
+	private val MAX_EXACT_MANTISSA = 1L << 53
+
+	/**
+	 * Determine if a separator, which is nominally a regular expression, is actually a simple
+	 * literal string, and can be searched for directly.
+	 */
+	def isLiteral (separator: String): Boolean =
+		null != separator && !separator.isEmpty && !separator.exists(c => REGEX_SPECIAL_CHARACTERS.indexOf(c) >= 0)
+
+	/**
+	 * Find the bounds of each field in a line of text.
+	 *
+	 * @param line The line of text to split
+	 * @param separator A literal separator string
+	 * @param starts An array into which to write the start index of each field.  This array is
+	 *               reused between lines, and grown as necessary.
+	 * @param ends An array into which to write the end index (exclusive) of each field.  Like
+	 *             starts, this array is reused and grown as necessary.
+	 * @return The number of fields found, and the start and end arrays in which their bounds were
+	 *         recorded (which will be the arrays passed in, unless they were too small)
+	 */
+	def findFields (line: String, separator: String,
+	                starts: Array[Int], ends: Array[Int]): (Int, Array[Int], Array[Int]) = {
+		var fieldStarts = starts
+		var fieldEnds = ends
+		var fields = 0
+		var start = 0
+		var done = false
+		while (!done) {
+			if (fields == fieldStarts.length) {
+				fieldStarts = java.util.Arrays.copyOf(fieldStarts, (fields * 2) max 8)
+				fieldEnds = java.util.Arrays.copyOf(fieldEnds, (fields * 2) max 8)
+			}
+			val end = line.indexOf(separator, start)
+			fieldStarts(fields) = start
+			if (end < 0) {
+				fieldEnds(fields) = line.length
+				done = true
+			} else {
+				fieldEnds(fields) = end
+				start = end + separator.length
+			}
+			fields += 1
+		}
+		(fields, fieldStarts, fieldEnds)
+	}
+
+	private def numberFormatError (text: String, start: Int, end: Int) =
+		new NumberFormatException("For input string: \""+text.substring(start, end)+"\"")
+
+	// Skip leading whitespace, the way String.trim does
+	private def trimStart (text: String, start: Int, end: Int): Int = {
+		var n = start
+		while (n < end && text.charAt(n) <= ' ') n += 1
+		n
+	}
+
+	// Skip trailing whitespace, the way String.trim does
+	private def trimEnd (text: String, start: Int, end: Int): Int = {
+		var n = end
+		while (n > start && text.charAt(n-1) <= ' ') n -= 1
+		n
+	}
+
+	/**
+	 * Parse a long integer from a portion of a string, exactly as
+	 * <code>text.substring(start, end).trim.toLong</code> would
+	 */
+	def parseLong (text: String, start: Int, end: Int): Long = {
+		val s = trimStart(text, start, end)
+		val e = trimEnd(text, s, end)
+		if (s == e) throw numberFormatError(text, start, end)
+
+		val first = text.charAt(s)
+		val negative = '-' == first
+		var n = if (negative || '+' == first) s + 1 else s
+		if (n == e) throw numberFormatError(text, start, end)
+
+		// Accumulate negatively, so we can represent Long.MinValue
+		val limit = if (negative) Long.MinValue else -Long.MaxValue
+		val multiplicationLimit = limit / 10
+		var result = 0L
+		while (n < e) {
+			val digit = Character.digit(text.charAt(n), 10)
+			if (digit < 0 || result < multiplicationLimit) throw numberFormatError(text, start, end)
+			result *= 10
+			if (result < limit + digit) throw numberFormatError(text, start, end)
+			result -= digit
+			n += 1
+		}
+		if (negative) result else -result
+	}
+
+	/**
+	 * Parse an integer from a portion of a string, exactly as
+	 * <code>text.substring(start, end).trim.toInt</code> would
+	 */
+	def parseInt (text: String, start: Int, end: Int): Int = {
+		val value = parseLong(text, start, end)
+		if (value < Int.MinValue || value > Int.MaxValue) throw numberFormatError(text, start, end)
+		value.toInt
+	}
+
+	/**
+	 * Parse a short integer from a portion of a string, exactly as
+	 * <code>text.substring(start, end).trim.toShort</code> would
+	 */
+	def parseShort (text: String, start: Int, end: Int): Short = {
+		val value = parseLong(text, start, end)
+		if (value < Short.MinValue || value > Short.MaxValue) throw numberFormatError(text, start, end)
+		value.toShort
+	}
+
+	/**
+	 * Parse a double from a portion of a string, with the same results as
+	 * <code>text.substring(start, end).trim.toDouble</code>.
+	 *
+	 * Simple decimal numbers with at most 15 significant digits and a small exponent are calculated
+	 * directly, with a single (and therefore correctly rounded) floating-point operation;
+	 * anything else is handed off to the standard parser.
+	 */
+	def parseDouble (text: String, start: Int, end: Int): Double = {
+		val s = trimStart(text, start, end)
+		val e = trimEnd(text, s, end)
+		def fallback: Double = java.lang.Double.parseDouble(text.substring(s, e))
+
+		if (s == e) return fallback
+		val first = text.charAt(s)
+		val negative = '-' == first
+		var n = if (negative || '+' == first) s + 1 else s
+
+		var mantissa = 0L
+		var digits = 0
+		var significantDigits = 0
+		var fractionDigits = 0
+		var inFraction = false
+		var c = if (n < e) text.charAt(n) else ' '
+		while (n < e && (('0' <= c && c <= '9') || ('.' == c && !inFraction))) {
+			if ('.' == c) {
+				inFraction = true
+			} else {
+				digits += 1
+				if (inFraction) fractionDigits += 1
+				if (significantDigits > 0 || '0' != c) {
+					significantDigits += 1
+					mantissa = mantissa * 10 + (c - '0')
+				}
+			}
+			n += 1
+			if (n < e) c = text.charAt(n)
+		}
+		if (0 == digits || significantDigits > 15) return fallback
+
+		var exponent = 0
+		if (n < e && ('e' == c || 'E' == c)) {
+			n += 1
+			if (n == e) return fallback
+			val expNegative = '-' == text.charAt(n)
+			if (expNegative || '+' == text.charAt(n)) n += 1
+			val expStart = n
+			while (n < e && '0' <= text.charAt(n) && text.charAt(n) <= '9' && n - expStart < 4) {
+				exponent = exponent * 10 + (text.charAt(n) - '0')
+				n += 1
+			}
+			if (n == expStart) return fallback
+			if (expNegative) exponent = -exponent
+		}
+		// Anything we don't understand (type suffixes, hex, NaN, etc.) goes to the standard parser
+		if (n != e || mantissa > MAX_EXACT_MANTISSA) return fallback
+
+		val scale = exponent - fractionDigits
+		val magnitude =
+			if (0 == mantissa) 0.0
+			else if (0 <= scale && scale < EXACT_POWERS_OF_TEN.length) mantissa * EXACT_POWERS_OF_TEN(scale)
+			else if (scale < 0 && -scale < EXACT_POWERS_OF_TEN.length) mantissa / EXACT_POWERS_OF_TEN(-scale)
+			else return fallback
+		if (negative) -magnitude else magnitude
+	}
+}
@@ -254,4 +254,23 @@ class CSVReaderTestSuite extends FunSuite with SharedSparkContext {
     val result = reader.asDataFrame.select(new Column("test")).map(_(0).asInstanceOf[String]).first()
     assertResult("One, field")(result)
   }
+
+	test("CSV read errors are collected in the same parse as the data") {
+		val configuration = new Properties()
+		configuration.setProperty("oculus.binning.parsing.separator",   ",")
+		configuration.setProperty("oculus.binning.parsing.a.index",     "0")
+		configuration.setProperty("oculus.binning.parsing.a.fieldType", "int")
+		configuration.setProperty("oculus.binning.parsing.b.index",     "2")
+		configuration.setProperty("oculus.binning.parsing.b.fieldType", "double")
+		val data = sc.parallelize(List("1,x, 2.5", "two,x,3.5", "3,x", "4,x,4.5e1"))
+		val reader = new CSVReader(sqlc, data, new PropertiesWrapper(configuration)).persistParse()
+
+		val values = reader.asDataFrame.map(row => (row.getInt(0), row.getDouble(1))).collect.toList
+		assert(List((1, 2.5), (4, 45.0)) === values)
+
+		val errors = reader.readErrors.collect.toList
+		assert(List("two,x,3.5", "3,x") === errors.map(_._1))
+		assert(errors(0)._2.isInstanceOf[NumberFormatException])
+		assert(errors(1)._2.isInstanceOf[ArrayIndexOutOfBoundsException])
+	}
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tilegen.graph.cluster
+
+
+
+import org.scalatest.FunSuite
+
+import org.apache.spark.{SharedSparkContext, SparkContext}
+import org.apache.spark.graphx._
+
+
+
+class LouvainCoreTestSuite extends FunSuite with SharedSparkContext {
+	private def entries (message: CommunityMessage): List[(Long, Long, Long)] = {
+		var result = List[(Long, Long, Long)]()
+		message.foreach((community, sigmaTot, weight) => result = result :+ ((community, sigmaTot, weight)))
+		result
+	}
+
+	test("Community messages merge matching entries") {
+		val a = CommunityMessage(3L, 5L, 1L).merge(CommunityMessage(1L, 2L, 4L))
+		val b = CommunityMessage(3L, 5L, 2L).merge(CommunityMessage(3L, 6L, 1L))
+		assert(List((1L, 2L, 4L), (3L, 5L, 1L)) === entries(a))
+		assert(List((1L, 2L, 4L), (3L, 5L, 3L), (3L, 6L, 1L)) === entries(a.merge(b)))
+		assert(entries(a.merge(b)) === entries(b.merge(a)))
+	}
+
+	test("Changed vertices") {
+		val previous = sc.parallelize(Seq(Edge(1L, 2L, 1L), Edge(2L, 3L, 1L), Edge(3L, 4L, 1L), Edge(5L, 6L, 1L)))
+		val current = sc.parallelize(Seq(Edge(2L, 1L, 1L), Edge(2L, 3L, 2L), Edge(5L, 6L, 1L), Edge(6L, 7L, 1L)))
+		assert(List(2L, 3L, 4L, 6L, 7L) === LouvainCore.changedVertices(previous, current).collect.toList.sorted)
+	}
+
+	test("Seeded graph activates changed vertices and their neighbours") {
+		// a chain 1-2-3-4-5, plus new vertex 6 attached to 5
+		val edges = sc.parallelize(Seq(Edge(1L, 2L, 1L), Edge(2L, 3L, 1L), Edge(3L, 4L, 1L), Edge(4L, 5L, 1L), Edge(5L, 6L, 1L)))
+		val louvainGraph = LouvainCore.createLouvainGraph(Graph.fromEdges(edges, None))
+		val previousCommunities = sc.parallelize(Seq((1L, 2L), (2L, 2L), (3L, 2L), (4L, 5L), (5L, 5L)))
+		val seeded = LouvainCore.seedLouvainGraph(louvainGraph, previousCommunities, sc.parallelize(Seq(1L)))
+		val states = seeded.vertices.collect.toMap
+
+		assert(Set(1L, 2L, 5L, 6L) === states.filter(_._2.active).keySet)
+		assert(2L === states(1L).community)
+		assert(6L === states(6L).community)
+		// sigma total is the total weight of each community's vertices
+		assert(5L === states(3L).communitySigmaTot)
+		assert(4L === states(4L).communitySigmaTot)
+		assert(1L === states(6L).communitySigmaTot)
+	}
+
+	// two 4-cliques, {1, 2, 3, 4} and {5, 6, 7, 8}, joined by a single edge from 4 to 5
+	private def cliqueEdges: Seq[Edge[Long]] = {
+		val cliques = for (base <- Seq(0L, 4L); i <- 1L to 4L; j <- (i + 1L) to 4L) yield Edge(base + i, base + j, 1L)
+		cliques :+ Edge(4L, 5L, 1L)
+	}
+
+	private def partition (communities: Map[VertexId, Long]): Set[Set[VertexId]] =
+		communities.groupBy(_._2).values.map(_.keySet).toSet
+
+	test("Incremental louvain on an unchanged graph keeps the previous communities") {
+		val edges = sc.parallelize(cliqueEdges)
+		val graph = Graph.fromEdges(edges, None)
+		val (fullQ, fullGraph, fullPasses) = LouvainCore.louvainFromStandardGraph(sc, graph)
+		val fullCommunities = fullGraph.vertices.mapValues(_.community).collect.toMap
+
+		val seeded = LouvainCore.seedLouvainGraph(LouvainCore.createLouvainGraph(graph),
+		                                          sc.parallelize(fullCommunities.toSeq),
+		                                          LouvainCore.changedVertices(edges, edges))
+		assert(0L === seeded.vertices.filter(_._2.active).count)
+
+		val (incrementalQ, incrementalGraph, incrementalPasses) = LouvainCore.louvain(sc, seeded, incremental = true)
+		val incrementalCommunities = incrementalGraph.vertices.mapValues(_.community).collect.toMap
+		assert(partition(fullCommunities) === partition(incrementalCommunities))
+		assert(math.abs(fullQ - incrementalQ) < 1e-9)
+	}
+
+	test("Incremental louvain moves a single vertex after a small edge change") {
+		// vertex 9 hangs off clique {1, 2, 3, 4}; a new, heavier edge pulls it over to {5, 6, 7, 8}
+		val previousEdges = sc.parallelize(cliqueEdges :+ Edge(9L, 4L, 1L))
+		val currentEdges = sc.parallelize(cliqueEdges ++ Seq(Edge(9L, 4L, 1L), Edge(9L, 5L, 2L)))
+		val previousCommunities = Map(1L -> 4L, 2L -> 4L, 3L -> 4L, 4L -> 4L, 9L -> 4L,
+		                              5L -> 5L, 6L -> 5L, 7L -> 5L, 8L -> 5L)
+
+		val harness = new LevelZeroHarness
+		harness.runIncremental(sc, Graph.fromEdges(currentEdges, None), sc.parallelize(previousCommunities.toSeq), previousEdges)
+
+		assert(previousCommunities.updated(9L, 5L) === harness.communities)
+	}
+}
+
+/**
+ * Harness that records the community of each vertex at level 0
+ */
+class LevelZeroHarness extends LouvainHarness(0.15, 1) {
+	var communities = Map[VertexId, Long]()
+
+	override def saveLevel(sc: SparkContext, level: Int, q: Double, graph: Graph[VertexState, Long]) = {
+		if (0 == level) communities = graph.vertices.mapValues(_.community).collect.toMap
+	}
+}
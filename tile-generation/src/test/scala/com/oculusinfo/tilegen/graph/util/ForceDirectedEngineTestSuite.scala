@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tilegen.graph.util
+
+
+
+import scala.util.Random
+
+import org.scalatest.FunSuite
+
+import com.oculusinfo.geometry.quadtree.FlatQuadTree
+
+
+
+class ForceDirectedEngineTestSuite extends FunSuite {
+	private def randomPoints (n: Int, seed: Int): (Array[Double], Array[Double], Array[Double]) = {
+		val random = new Random(seed)
+		(Array.fill(n)(random.nextDouble - 0.5), Array.fill(n)(random.nextDouble - 0.5), Array.fill(n)(0.001))
+	}
+
+	// Two dense clusters of nodes, joined by a single edge
+	private def twoClusters (clusterSize: Int): ForceDirectedEngine.Adjacency = {
+		val edges = for (cluster <- 0 until 2; a <- 0 until clusterSize; b <- (a + 1) until clusterSize)
+		yield (cluster * clusterSize + a, cluster * clusterSize + b)
+		val allEdges = edges :+ ((0, clusterSize))
+		ForceDirectedEngine.createAdjacency(2 * clusterSize, allEdges.map(_._1).toArray, allEdges.map(_._2).toArray,
+		                                    Array.fill(allEdges.size)(1.0))
+	}
+
+	test("Quadtree cells partition their points") {
+		val (x, y, r) = randomPoints(500, 3)
+		val tree = new FlatQuadTree(10)
+		tree.build(x, y, r, x.length)
+
+		val root = tree.getRoot
+		assert(500 === tree.getNumPoints(root))
+		assert(math.abs(x.sum / 500 - tree.getCenterX(root)) < 1E-12)
+		assert(math.abs(y.sum / 500 - tree.getCenterY(root)) < 1E-12)
+		assert(math.abs(0.001 - tree.getSize(root)) < 1E-12)
+
+		// Every point should be in exactly one leaf, within that leaf's bounds
+		val seen = new Array[Int](500)
+		for (cell <- 0 until tree.getNumCells) {
+			if (tree.isLeaf(cell)) {
+				assert(tree.getNumPoints(cell) <= 1)
+				for (p <- tree.getStart(cell) until tree.getEnd(cell)) {
+					val i = tree.getPoint(p)
+					seen(i) += 1
+					assert(x(i) >= tree.getMinX(cell) && x(i) <= tree.getMinX(cell) + tree.getWidth(cell))
+					assert(y(i) >= tree.getMinY(cell) && y(i) <= tree.getMinY(cell) + tree.getHeight(cell))
+				}
+			} else {
+				val first = tree.getFirstChild(cell)
+				assert(tree.getNumPoints(cell) === (first until first + 4).map(tree.getNumPoints).sum)
+			}
+		}
+		assert(seen.forall(1 == _))
+	}
+
+	test("Quadtree keeps coincident points together") {
+		val x = Array(0.0, 1.0, 1.0, 1.0)
+		val y = Array(0.0, 1.0, 1.0, 1.0)
+		val tree = new FlatQuadTree
+		tree.build(x, y, Array.fill(4)(0.0), 4)
+		val leaves = (0 until tree.getNumCells).filter(cell => tree.isLeaf(cell) && tree.getNumPoints(cell) > 0)
+		assert(List(1, 3) === leaves.map(tree.getNumPoints).sorted.toList)
+	}
+
+	test("Adjacency lists each edge under both endpoints") {
+		val adjacency = ForceDirectedEngine.createAdjacency(3, Array(0, 1, 2), Array(1, 1, 0), Array(2.0, 3.0, 4.0))
+		assert(2 === adjacency.numEdges)
+		assert(List(0, 2, 3, 4) === adjacency.offsets.toList)
+		assert(Set(1, 2) === adjacency.neighbours.slice(0, 2).toSet)
+		assert(List(0) === adjacency.neighbours.slice(2, 3).toList)
+		assert(List(4.0) === adjacency.weights.slice(3, 4).toList)
+	}
+
+	test("Parallel layout matches sequential layout") {
+		val adjacency = twoClusters(40)
+		val (x1, y1, r1) = randomPoints(80, 7)
+		val (x2, y2, r2) = (x1.clone, y1.clone, r1.clone)
+
+		new ForceDirectedEngine(parallelism = 1).layout(x1, y1, r1, adjacency, -1, 1.0, 1.0, 200, 0.0, false)
+		new ForceDirectedEngine(parallelism = 4, parallelThreshold = 1).layout(x2, y2, r2, adjacency, -1, 1.0, 1.0, 200, 0.0, false)
+		assert(x1.toList === x2.toList)
+		assert(y1.toList === y2.toList)
+	}
+
+	test("Layout separates unconnected clusters and leaves fixed node in place") {
+		val adjacency = twoClusters(30)
+		val (x, y, r) = randomPoints(60, 11)
+		x(0) = 0.0
+		y(0) = 0.0
+		new ForceDirectedEngine(parallelism = 2, parallelThreshold = 1).layout(x, y, r, adjacency, 0, 1.0, 1.0, 500, 0.0, false)
+		assert(0.0 === x(0))
+		assert(0.0 === y(0))
+
+		def centre (from: Int, until: Int) =
+			((from until until).map(x(_)).sum / (until - from), (from until until).map(y(_)).sum / (until - from))
+		def spread (from: Int, until: Int, c: (Double, Double)) =
+			(from until until).map(n => math.hypot(x(n) - c._1, y(n) - c._2)).sum / (until - from)
+		val (c1, c2) = (centre(0, 30), centre(30, 60))
+		val separation = math.hypot(c1._1 - c2._1, c1._2 - c2._2)
+		assert(separation > spread(0, 30, c1))
+		assert(separation > spread(30, 60, c2))
+	}
+}
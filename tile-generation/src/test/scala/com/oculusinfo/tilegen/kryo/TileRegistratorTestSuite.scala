@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tilegen.kryo
+
+
+
+import scala.collection.mutable.{Map => MutableMap}
+import scala.reflect.ClassTag
+
+import org.apache.spark.SparkConf
+import org.apache.spark.serializer.KryoSerializer
+
+import org.scalatest.FunSuite
+
+import com.oculusinfo.binning.BinIndex
+import com.oculusinfo.binning.TileIndex
+import com.oculusinfo.tilegen.tiling.BinValueMap
+
+
+
+object TileRegistratorTestSuite {
+	// Deliberately left unregistered
+	class UnregisteredRecord (val value: Int)
+}
+
+/**
+ * Test that the records the binner shuffles go through Kryo, as configured by the
+ * TileRegistrator, compactly and intact.  The registrator requires registration, so any
+ * shuffled class it misses fails here rather than in a job.
+ */
+class TileRegistratorTestSuite extends FunSuite {
+	import TileRegistratorTestSuite._
+
+	private def newSerializer =
+		new KryoSerializer(new SparkConf(false).set("spark.kryo.registrator", classOf[TileRegistrator].getName))
+			.newInstance()
+
+	// Serialize and deserialize a value as a shuffle would, returning the result and its
+	// serialized size
+	private def roundTrip[T: ClassTag] (value: T): (T, Int) = {
+		val serializer = newSerializer
+		val bytes = serializer.serialize(value)
+		val size = bytes.remaining
+		(serializer.deserialize[T](bytes), size)
+	}
+
+	// New strings for each call, as would come from parsing input data
+	private def topicScores: Map[String, Double] =
+		(0 until 10).map(t => ("topic "+t+" of a moderately large vocabulary") -> t.toDouble).toMap
+
+	test("Test located records") {
+		val record = (new TileIndex(4, 3, 2), Array(new BinIndex(0, 0), new BinIndex(255, 17)), 1.5, Some(2.0))
+		val (result, size) = roundTrip(record)
+
+		assert(record._1 === result._1)
+		assert(record._2.toList === result._2.toList)
+		assert(1.5 === result._3)
+		assert(Some(2.0) === result._4)
+	}
+
+	test("Test combined count bins") {
+		val bins = BinValueMap((0 until 256).map(n => new BinIndex(n % 16, n / 16) -> n.toDouble))
+		val combiner: (TileIndex, (MutableMap[BinIndex, Double], Option[Int])) =
+			(new TileIndex(4, 3, 2), (bins, Some(256)))
+		val (result, size) = roundTrip(combiner)
+
+		assert(combiner._1 === result._1)
+		assert(result._2._1.isInstanceOf[BinValueMap[_]])
+		assert(bins.toMap === result._2._1.toMap)
+		assert(Some(256) === result._2._2)
+		// Two bytes per bin index, eight per value, and a little overhead
+		assert(size < 256 * 10 + 64)
+	}
+
+	test("Test combined string score bins") {
+		val compact = BinValueMap((0 until 64).map(n => new BinIndex(n % 8, n / 8) -> topicScores))
+		val plain = MutableMap[BinIndex, Map[String, Double]]()
+		(0 until 64).foreach(n => plain(new BinIndex(n % 8, n / 8)) = topicScores)
+
+		val (compactResult, compactSize) = roundTrip[MutableMap[BinIndex, Map[String, Double]]](compact)
+		val (plainResult, plainSize) = roundTrip(plain)
+
+		assert(compactResult.isInstanceOf[BinValueMap[_]])
+		assert(compact.toMap === compactResult.toMap)
+		assert(plain.toMap === plainResult.toMap)
+		// Each topic is only written out once, rather than once per bin
+		assert(compactSize * 2 < plainSize)
+	}
+
+	test("Test combined stats bins") {
+		val bins = BinValueMap((0 until 16).map(n => new BinIndex(n, 0) -> (n.toDouble, (n * n).toDouble, 1)))
+		val (result, size) = roundTrip[MutableMap[BinIndex, (Double, Double, Int)]](bins)
+
+		assert(result.isInstanceOf[BinValueMap[_]])
+		assert(bins.toMap === result.toMap)
+	}
+
+	test("Test unregistered classes are rejected") {
+		intercept[IllegalArgumentException] {
+			newSerializer.serialize(new UnregisteredRecord(1))
+		}
+	}
+}
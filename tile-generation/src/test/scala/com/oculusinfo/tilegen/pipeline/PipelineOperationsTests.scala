@@ -538,6 +538,63 @@ class PipelineOperationsTests extends FunSuite with SharedSparkContext with Tile
 		}
 	}
 
+	test("Test incremental geo heatmap parse and operation") {
+
+		try {
+			// pipeline stage to create test data
+			def createDataOp(count: Int)(input: PipelineData) = {
+				val jsonData = for (x <- 0 until count; y <- 0 until count/2) yield {
+					val lon = -180.0 + (x / count.toFloat * 360.0)
+					val lat = -45.0 + (y  * 90.0 / (count / 2))
+					s"""{"x":$lon, "y":$lat, "data":${(x * count + y).toDouble}}\n"""
+				}
+				val srdd = sqlc.jsonRDD(sc.parallelize(jsonData))
+				PipelineData(sqlc, srdd)
+			}
+
+			val args = Map(
+				"ops.xColumn" -> "x",
+				"ops.yColumn" -> "y",
+				"ops.name" -> "test.{i}.{v}",
+				"ops.description" -> "a test description",
+				"ops.prefix" -> "test_prefix",
+				"ops.levels.0" -> "0",
+				"ops.tileWidth" -> "4",
+				"ops.tileHeight" -> "4",
+				"ops.valueColumn" -> "data",
+				"ops.valueType" -> "double",
+				"ops.aggregationType" -> "sum",
+				"ops.incremental" -> "true")
+
+			val pyramidIO = new FileBasedPyramidIO(new FileSystemPyramidSource("", "avro"))
+			val serializer = new PrimitiveAvroSerializer[JavaDouble](classOf[JavaDouble], CodecFactory.bzip2Codec())
+			def runBatch (): List[Double] = {
+				val rootStage = PipelineStage("create_data", createDataOp(8)(_))
+				rootStage.addChild(PipelineStage("geo_heatmap_op", parseGeoHeatMapOp(args)))
+				PipelineTree.execute(rootStage, sqlc)
+
+				val tile = pyramidIO.readTiles("test.x.y.data", serializer, Iterable(new TileIndex(0, 0, 0, 4, 4)).asJava).get(0)
+				(for (y <- 0 until 4; x <- 0 until 4) yield tile.getBin(x, y).doubleValue).toList
+			}
+
+			// Tile the same data in two batches; the second should be merged into the first, rather than replacing it.
+			val firstBatch = runBatch()
+			assert(firstBatch.sum > 0.0)
+			val secondBatch = runBatch()
+			assert(firstBatch.map(_ * 2.0) === secondBatch)
+		} finally {
+			// Remove the tile set we created
+			def removeRecursively (file: File): Unit = {
+				if (file.isDirectory) {
+					file.listFiles().foreach(removeRecursively)
+				}
+				file.delete()
+			}
+			// If you want to look at the tile set (not remove it) comment out this line.
+			removeRecursively(new File("test.x.y.data"))
+		}
+	}
+
 	test("Test crossplot heatmap parse and operation") {
 
 		try {
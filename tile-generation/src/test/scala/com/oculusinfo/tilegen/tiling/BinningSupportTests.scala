@@ -30,6 +30,8 @@ import scala.collection.mutable.{Map => MutableMap}
 
 import org.scalatest.FunSuite
 
+import com.oculusinfo.binning.BinIndex
+
 
 
 /**
@@ -64,6 +66,19 @@ class BinningSupportTests extends FunSuite {
 		}
 	}
 
+	test("Test in-place map aggregation") {
+		val aggFcn: (Int, Int) => Int = (n, m) => n + m
+
+		val a = BinValueMap(List(new BinIndex(0, 0) -> 1))
+		val b = MutableMap(new BinIndex(0, 0) -> 2, new BinIndex(1, 0) -> 4)
+
+		val ab = UniversalBinner.aggregateInto(aggFcn, a, b)
+		// Make sure the values are correct
+		assert(Map(new BinIndex(0, 0) -> 3, new BinIndex(1, 0) -> 4) === ab.toMap)
+		// Make sure the source was merged into the target, even though the target was smaller
+		assert(ab eq a)
+	}
+
 	test("Test optional aggregation") {
 		val aggFcn: (Int, Int) => Int = (n, m) => n + m
 
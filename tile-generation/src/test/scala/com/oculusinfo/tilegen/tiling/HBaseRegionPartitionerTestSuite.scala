@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tilegen.tiling
+
+
+
+import java.lang.{Integer => JavaInt}
+
+import scala.collection.JavaConverters._
+
+import org.scalatest.FunSuite
+
+import com.oculusinfo.binning.TileIndex
+import com.oculusinfo.binning.io.impl.HBasePyramidIO
+
+
+
+class HBaseRegionPartitionerTestSuite extends FunSuite {
+	test("Pre-split keys") {
+		val keys = HBasePyramidIO.getSplitKeys(List(new JavaInt(1), new JavaInt(4)).asJava, 4).map(new String(_)).toList
+		assert(List("01,", "01,1", "04,", "04,04", "04,08", "04,12") === keys)
+	}
+
+	test("Rows go to their regions") {
+		val startKeys = Array("") ++ HBasePyramidIO.getSplitKeys(List(new JavaInt(1), new JavaInt(4)).asJava, 4).map(new String(_))
+		val partitioner = new HBaseRegionPartitioner(startKeys)
+		def partition (level: Int, x: Int, y: Int): Int =
+			partitioner.getPartition(HBasePyramidIO.rowIdFromTileIndex(new TileIndex(level, x, y)))
+
+		assert(7 === partitioner.numPartitions)
+		assert(0 === partition(0, 0, 0))
+		assert(1 === partition(1, 0, 1))
+		assert(2 === partition(1, 1, 0))
+		assert(3 === partition(4, 3, 15))
+		assert(4 === partition(4, 4, 0))
+		assert(5 === partition(4, 11, 7))
+		assert(6 === partition(4, 15, 15))
+		assert(6 === partition(5, 0, 0))
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tilegen.tiling
+
+
+
+import java.lang.{Double => JavaDouble}
+
+import scala.collection.JavaConverters._
+
+import org.scalatest.FunSuite
+
+import org.apache.spark.SharedSparkContext
+
+import com.oculusinfo.binning.TileData
+import com.oculusinfo.binning.TileIndex
+import com.oculusinfo.binning.impl.AOITilePyramid
+import com.oculusinfo.binning.impl.DenseTileData
+import com.oculusinfo.binning.impl.SparseTileData
+import com.oculusinfo.binning.metadata.PyramidMetaData
+
+
+
+class PyramidRegeneratorTestSuite extends FunSuite with SharedSparkContext {
+	private val regenerator = PyramidRegenerator.numeric[Double, JavaDouble]("sum")
+
+	private def sparseTile (level: Int, x: Int, y: Int, bins: ((Int, Int), Double)*): TileData[JavaDouble] = {
+		val tile = new SparseTileData[JavaDouble](new TileIndex(level, x, y, 4, 4), 0.0)
+		bins.foreach { case ((bx, by), value) => tile.setBin(bx, by, value) }
+		tile
+	}
+
+	// Write a three-level pyramid's finest level, with metadata, returning the tile IO holding it
+	private def writeSource (pyramidId: String): TestTileIO = {
+		val tileIO = new TestTileIO
+		val pyramid = new AOITilePyramid(0.0, 0.0, 1.0, 1.0)
+		val metaData = new PyramidMetaData("name", "description", 4, 4,
+		                                   pyramid.getTileScheme(),
+		                                   pyramid.getProjection(),
+		                                   Seq(Int.box(2)).asJava,
+		                                   pyramid.getTileBounds(new TileIndex(0, 0, 0)),
+		                                   null, null)
+		val pyramidIO = tileIO.getPyramidIO
+		pyramidIO.writeMetaData(pyramidId, metaData.toString)
+		pyramidIO.writeTiles(pyramidId, null, Seq(
+			                     sparseTile(2, 0, 0, ((0, 3), 1.0)),
+			                     sparseTile(2, 1, 1, ((3, 0), 2.0)),
+			                     sparseTile(2, 3, 3, ((0, 0), 5.0)),
+			                     sparseTile(2, 2, 0)
+		                     ).asJava)
+		tileIO
+	}
+
+	private def bin (tileIO: TestTileIO, pyramidId: String, level: Int, x: Int, y: Int, bx: Int, by: Int): Double =
+		tileIO.getTile(pyramidId, new TileIndex(level, x, y, 4, 4)).get
+			.asInstanceOf[TileData[JavaDouble]].getBin(bx, by).doubleValue
+
+	private def checkPyramid (tileIO: TestTileIO, pyramidId: String, extrema: Map[Int, (Double, Double)]): Unit = {
+		assert(1.0 === bin(tileIO, pyramidId, 1, 0, 0, 0, 3))
+		assert(2.0 === bin(tileIO, pyramidId, 1, 0, 0, 3, 0))
+		assert(5.0 === bin(tileIO, pyramidId, 1, 1, 1, 2, 0))
+		assert(tileIO.getTile(pyramidId, new TileIndex(1, 1, 0, 4, 4)).isEmpty)
+
+		assert(1.0 === bin(tileIO, pyramidId, 0, 0, 0, 0, 3))
+		assert(2.0 === bin(tileIO, pyramidId, 0, 0, 0, 1, 2))
+		assert(5.0 === bin(tileIO, pyramidId, 0, 0, 0, 3, 0))
+		assert(0.0 === bin(tileIO, pyramidId, 0, 0, 0, 0, 0))
+
+		assert(Some((1.0, 5.0)) === extrema.get(1))
+		assert(Some((1.0, 5.0)) === extrema.get(0))
+
+		val metaData = new PyramidMetaData(tileIO.getMetaData(pyramidId).get)
+		assert(List(0, 1, 2) === metaData.getValidZoomLevels.asScala.map(_.intValue).sorted.toList)
+		assert(1.0 === metaData.getCustomMetaData("0", TileMerger.MINIMUM_KEY).toDouble)
+		assert(5.0 === metaData.getCustomMetaData("1", TileMerger.MAXIMUM_KEY).toDouble)
+		assert(5.0 === metaData.getCustomMetaData("global", TileMerger.MAXIMUM_KEY).toDouble)
+	}
+
+	test("Child bins are aggregated into the right parent bins") {
+		val parent = new TileIndex(0, 0, 0, 4, 4)
+		val tile = regenerator.aggregateChildren(parent, Seq(
+			                                         sparseTile(1, 0, 1, ((0, 0), 1.0), ((1, 1), 2.0)),
+			                                         sparseTile(1, 1, 0, ((3, 3), 4.0))
+		                                         )).get
+		assert(parent === tile.getDefinition)
+		assert(3.0 === tile.getBin(0, 0))
+		assert(4.0 === tile.getBin(3, 3))
+		assert(0.0 === tile.getBin(1, 1))
+
+		assert(regenerator.aggregateChildren(parent, Seq(sparseTile(1, 0, 0))).isEmpty)
+		assert(regenerator.aggregateChildren(parent, Seq[TileData[JavaDouble]]()).isEmpty)
+	}
+
+	test("Compaction chooses storage by occupancy") {
+		val sparse = new DenseTileData[JavaDouble](new TileIndex(1, 0, 0, 4, 4), 0.0)
+		sparse.setBin(1, 2, 3.0)
+		sparse.setMetaData("name", "sparse")
+		val compactedSparse = regenerator.compact(sparse).get
+		assert(compactedSparse.isInstanceOf[SparseTileData[_]])
+		assert(3.0 === compactedSparse.getBin(1, 2))
+		assert("sparse" === compactedSparse.getMetaData("name"))
+
+		val dense = sparseTile(1, 0, 0, (for (x <- 0 until 4; y <- 0 until 3) yield ((x, y), 1.0)): _*)
+		val compactedDense = regenerator.compact(dense).get
+		assert(compactedDense.isInstanceOf[DenseTileData[_]])
+		assert(1.0 === compactedDense.getBin(2, 2))
+		assert(0.0 === compactedDense.getBin(2, 3))
+
+		assert(regenerator.compact(sparseTile(1, 0, 0)).isEmpty)
+	}
+
+	test("Local regeneration") {
+		val pyramidId = "local regeneration test"
+		val tileIO = writeSource(pyramidId)
+		try {
+			val extrema = regenerator.regenerateLocal(tileIO.getPyramidIO, null, pyramidId, 2,
+			                                          threads = 1, tileWidth = 4, tileHeight = 4)
+			checkPyramid(tileIO, pyramidId, extrema)
+			assert(extrema.get(2).isEmpty)
+		} finally {
+			tileIO.clearPyramid(pyramidId)
+		}
+	}
+
+	test("Spark regeneration") {
+		val pyramidId = "spark regeneration test"
+		val tileIO = writeSource(pyramidId)
+		try {
+			val extrema = regenerator.regenerate(sc, tileIO, null, pyramidId, 2, tileWidth = 4, tileHeight = 4)
+			checkPyramid(tileIO, pyramidId, extrema)
+		} finally {
+			tileIO.clearPyramid(pyramidId)
+		}
+	}
+}
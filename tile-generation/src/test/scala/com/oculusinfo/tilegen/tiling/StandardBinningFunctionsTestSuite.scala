@@ -282,6 +282,49 @@ class StandardBinningFunctionsTestSuite extends FunSuite {
 			       "Bin "+bin+" in tile "+tile+" is more than "+distance+" from endpoints (distance is "+binDistance+")")
 		}
 	}
+	test("Test linear bin kernel only visits bins on the given tile") {
+		// level 4, 4 bins per tile = 64 bins
+		val start = new BinIndex(3, 50)
+		val end = new BinIndex(45, 17)
+		def distance (a: BinIndex, b: BinIndex): Int =
+			math.abs(a.getX - b.getX) max math.abs(a.getY - b.getY)
+
+		List(Int.MaxValue, 0, 5).foreach{limit =>
+			val expected = linearUniversalBins(start, end)
+				.filter(bin => limit == Int.MaxValue || distance(bin, start) <= limit || distance(bin, end) <= limit)
+				.toList.sortWith(binSorter)
+
+			val actual = for (x <- 0 until 16; y <- 0 until 16) yield {
+				val tile = new TileIndex(4, x, y, 4, 4)
+				val bins = mutable.Buffer[BinIndex]()
+				visitCloseLinearBinsForTile(start, end, tile, limit, (bx, by) => {
+					assert(0 <= bx && bx < 4 && 0 <= by && by < 4)
+					bins += TileIndex.tileBinIndexToUniversalBinIndex(tile, new BinIndex(bx, by))
+				})
+				bins
+			}
+
+			assert(expected === actual.flatten.toList.sortWith(binSorter))
+		}
+	}
+
+	test("Test coarse level line decimation") {
+		val pyramid: TilePyramid = new AOITilePyramid(0.0, 0.0, 1.0, 1.0)
+		val index = new LineSegmentIndexScheme
+		// 0.4 to 0.6 bins long on level 0, 6.4 to 9.6 on level 4
+		val line = (0.1, 0.1, 0.15, 0.1)
+
+		val allLevels = locateLine(index, pyramid, None, None, 4, 4)(List(0, 4))(line)
+		assert(Set(0, 4) === allLevels.map(_._1.getLevel).toSet)
+
+		val decimated = locateDecimatedLine(index, pyramid, coarseLevelDecimation(None, 2), None, 4, 4)(List(0, 4))(line)
+		assert(Set(4) === decimated.map(_._1.getLevel).toSet)
+
+		// The normal minimum still applies on finer levels
+		val minimum = locateDecimatedLine(index, pyramid, coarseLevelDecimation(Some(4), 2), None, 4, 4)(List(0, 4))(line)
+		assert(minimum.isEmpty)
+	}
+
 	// Also test:
 	//   No gap (barely)
 	//   Gap of 1 bin in tile
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tilegen.tiling
+
+
+
+import java.lang.{Double => JavaDouble}
+
+import org.json.JSONObject
+import org.scalatest.FunSuite
+
+import org.apache.spark.SharedSparkContext
+
+import com.oculusinfo.binning.TileData
+import com.oculusinfo.binning.TileIndex
+import com.oculusinfo.binning.impl.AOITilePyramid
+import com.oculusinfo.binning.impl.DenseTileData
+import com.oculusinfo.binning.impl.SparseTileData
+import com.oculusinfo.tilegen.tiling.analytics.{AnalysisDescription, NumericMinAnalytic, NumericSumAnalytic}
+
+
+
+class TileMergerTestSuite extends FunSuite with SharedSparkContext {
+	private def sparseTile (x: Int, y: Int, value: Double): TileData[JavaDouble] = {
+		val tile = new SparseTileData[JavaDouble](new TileIndex(1, 0, 0, 4, 4), 0.0)
+		tile.setBin(x, y, value)
+		tile
+	}
+
+	test("Merge sparse tile into dense tile") {
+		val existing = new DenseTileData[JavaDouble](new TileIndex(1, 0, 0, 4, 4), 0.0)
+		existing.setBin(1, 1, 2.0)
+		val merged = TileMerger.mergeTiles(existing, sparseTile(1, 1, 3.0), new FinalValueAnalytic[Double, JavaDouble](new NumericSumAnalytic[Double]))
+		assert(5.0 === merged.getBin(1, 1))
+		assert(0.0 === merged.getBin(0, 0))
+	}
+
+	test("Merge minima into tile with default values") {
+		val existing = new DenseTileData[JavaDouble](new TileIndex(1, 0, 0, 4, 4), 0.0)
+		existing.setBin(1, 1, 2.0)
+		val update = sparseTile(1, 1, 3.0)
+		update.setBin(2, 2, 5.0)
+		val merged = TileMerger.mergeTiles(existing, update, new FinalValueAnalytic[Double, JavaDouble](new NumericMinAnalytic[Double]))
+		assert(2.0 === merged.getBin(1, 1))
+		// Bins without data in the existing tile take the new value, rather than the default
+		assert(5.0 === merged.getBin(2, 2))
+		assert(0.0 === merged.getBin(0, 0))
+	}
+
+	test("Batch marking") {
+		val tile = sparseTile(0, 0, 1.0)
+		assert(!TileMerger.isMerged(tile, 3L))
+		TileMerger.markMerged(tile, 3L)
+		assert(TileMerger.isMerged(tile, 2L))
+		assert(TileMerger.isMerged(tile, 3L))
+		assert(!TileMerger.isMerged(tile, 4L))
+	}
+
+	test("Merge extrema") {
+		val oldMeta = new JSONObject("""{"global": {"minimum": 1.0, "maximum": 4.0}, "1": {"minimum": 2.0, "maximum": 3.0}, "name": "a"}""")
+		val newMeta = new JSONObject("""{"global": {"minimum": 2.0, "maximum": 3.0}, "1": {"minimum": 0.5, "maximum": 7.0}, "name": "b"}""")
+		TileMerger.mergeExtrema(oldMeta, newMeta)
+		assert(1.0 === newMeta.getJSONObject("global").getDouble("minimum"))
+		assert(4.0 === newMeta.getJSONObject("global").getDouble("maximum"))
+		assert(0.5 === newMeta.getJSONObject("1").getDouble("minimum"))
+		assert(7.0 === newMeta.getJSONObject("1").getDouble("maximum"))
+		assert("b" === newMeta.getString("name"))
+	}
+
+	test("Merge tile sets by batch") {
+		val tileIO = new TestTileIO
+		val pyramid = new AOITilePyramid(0.0, 0.0, 1.0, 1.0)
+		val pyramidId = "merge test"
+		val index = new TileIndex(1, 0, 0, 4, 4)
+		val noTileAnalytics: Option[AnalysisDescription[TileData[JavaDouble], Double]] = None
+		val noDataAnalytics: Option[AnalysisDescription[_, Double]] = None
+		def merge (batch: Long, value: Double): Unit =
+			tileIO.mergeTileSet(pyramid, pyramidId, sc.parallelize(Seq(sparseTile(2, 3, value))), null,
+			                    new FinalValueAnalytic[Double, JavaDouble](new NumericSumAnalytic[Double]), batch, noTileAnalytics, noDataAnalytics)
+
+		try {
+			merge(1L, 1.0)
+			merge(2L, 2.0)
+			// Replaying a batch shouldn't change anything
+			merge(2L, 2.0)
+
+			val tile = tileIO.getTile(pyramidId, index).get.asInstanceOf[TileData[JavaDouble]]
+			assert(3.0 === tile.getBin(2, 3))
+			assert("2" === tile.getMetaData(TileMerger.BATCH_KEY))
+		} finally {
+			tileIO.clearPyramid(pyramidId)
+		}
+	}
+}
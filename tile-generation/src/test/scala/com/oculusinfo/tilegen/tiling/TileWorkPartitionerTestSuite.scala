@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.oculusinfo.tilegen.tiling
+
+
+
+import java.lang.{Double => JavaDouble}
+
+import scala.collection.JavaConverters._
+
+import org.apache.spark.SharedSparkContext
+import org.scalatest.FunSuite
+
+import com.oculusinfo.binning.{TileData, TileIndex}
+import com.oculusinfo.binning.impl.{AOITilePyramid, DenseTileData}
+import com.oculusinfo.tilegen.tiling.analytics.{AnalysisDescription, NumericSumBinningAnalytic}
+
+
+
+class TileWorkPartitionerTestSuite extends FunSuite with SharedSparkContext {
+	test("Only hot tiles are salted") {
+		val hot = new TileIndex(4, 3, 5)
+		val warm = new TileIndex(4, 3, 6)
+		val cold = new TileIndex(4, 3, 7)
+		val salts = TileWorkPartitioner.getSalts(Map(hot -> 700L, warm -> 200L, cold -> 100L), 4)
+
+		// Fair share is 250 records per partition
+		assert(Map(hot -> 3) === salts)
+	}
+
+	test("Salts are limited to the number of partitions") {
+		val hot = new TileIndex(4, 3, 5)
+		val salts = TileWorkPartitioner.getSalts(Map(hot -> 1000L, new TileIndex(4, 3, 6) -> 1L), 4)
+
+		assert(Map(hot -> 4) === salts)
+	}
+
+	test("Work is balanced across partitions") {
+		val hot = new TileIndex(4, 3, 5)
+		val tileCounts = Map(hot -> 600L,
+		                     new TileIndex(4, 0, 0) -> 200L,
+		                     new TileIndex(4, 0, 1) -> 100L,
+		                     new TileIndex(4, 0, 2) -> 100L)
+		val salts = TileWorkPartitioner.getSalts(tileCounts, 4)
+		val partitioner = TileWorkPartitioner(tileCounts, salts, 4)
+
+		assert(Map(hot -> 3) === salts)
+		// The three sub-keys of the hot tile should each get their own partition, with the
+		// smaller tiles filling in around them.
+		val hotPartitions = Range(0, 3).map(salt => partitioner.getPartition((hot, salt)))
+		assert(3 === hotPartitions.distinct.size)
+		val loads = tileCounts.toSeq.flatMap{case (tile, count) =>
+			val tileSalts = salts.getOrElse(tile, 1)
+			Range(0, tileSalts).map(salt => (partitioner.getPartition((tile, salt)), count / tileSalts))
+		}.groupBy(_._1).map(_._2.map(_._2).sum)
+		assert(List(200L, 200L, 300L, 300L) === loads.toList.sorted)
+
+		// Unknown tiles should still be placed
+		val unknown = partitioner.getPartition((new TileIndex(4, 1, 1), 0))
+		assert(0 <= unknown && unknown < 4)
+	}
+
+	test("Skewed binning matches standard binning") {
+		val pyramid = new AOITilePyramid(0.0, 0.0, 16.0, 16.0)
+		// Most of the data in one small area
+		val points = (Range(0, 1000).map(n => (0.5 + (n % 10) * 0.1, 0.5 + (n / 100) * 0.1)) ++
+			Range(0, 256).map(n => ((n % 16).toDouble + 0.5, (n / 16).toDouble + 0.5)))
+			.map(p => (p, 1.0, None: Option[Double]))
+		val data = sc.parallelize(points, 4)
+
+		val binner = new UniversalBinner
+		val binAnalytic = new NumericSumBinningAnalytic[Double, JavaDouble]()
+		val tileAnalytics: Option[AnalysisDescription[TileData[JavaDouble], Double]] = None
+		val dataAnalytics: Option[AnalysisDescription[_, Double]] = None
+		val locFcn = StandardBinningFunctions.locateIndexOverLevels(new CartesianIndexScheme, pyramid, 4, 4)(Seq(0, 1, 2, 3))
+		val popFcn = StandardBinningFunctions.populateTileIdentity[Double]
+
+		def binData (parameters: BinningParameters): Map[TileIndex, List[Double]] =
+			binner.processData[(Double, Double), Double, Double, Double, JavaDouble](
+				data, binAnalytic, tileAnalytics, dataAnalytics, locFcn, popFcn, parameters
+			).collect.map(tile =>
+				(tile.getDefinition, DenseTileData.getData(tile).asScala.map(_.doubleValue).toList)
+			).toMap
+
+		val expected = binData(new BinningParameters(true, 4, 4, Some(4), Some(4), None))
+		val actual = binData(new BinningParameters(true, 4, 4, Some(4), Some(4), None, Some(1.0)))
+
+		assert(expected === actual)
+
+		// Any partial tiles persisted for the hot tiles' merge should be releasable
+		binner.releaseIntermediates()
+		assert(sc.getPersistentRDDs.isEmpty)
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.oculusinfo.tilegen.tiling
+
+
+
+import java.lang.{Double => JavaDouble}
+
+import scala.collection.JavaConverters._
+import scala.util.Random
+
+import org.apache.spark.SharedSparkContext
+import org.scalatest.FunSuite
+
+import com.oculusinfo.binning.{PyramidComparator, TileData, TileIndex}
+import com.oculusinfo.binning.impl.{AOITilePyramid, DenseTileData}
+import com.oculusinfo.tilegen.tiling.analytics.{AnalysisDescription, NumericSumBinningAnalytic}
+
+
+
+class ZOrderBinningTestSuite extends FunSuite with SharedSparkContext {
+	private val pyramid = new AOITilePyramid(0.0, 0.0, 16.0, 16.0)
+	private val levels = Seq(0, 1, 2, 3, 4)
+
+	private def tileContents (tiles: Seq[TileData[JavaDouble]]): Map[TileIndex, List[Double]] =
+		tiles.map(tile =>
+			(tile.getDefinition, DenseTileData.getData(tile).asScala.map(_.doubleValue).toList)
+		).toMap
+
+	test("Z-ordered binning matches standard binning") {
+		val random = new Random(17)
+		// Include some points on the outer edge of the pyramid, whose tiles are out of bounds
+		val points = (Range(0, 2000).map(n => (random.nextDouble * 16.0, random.nextDouble * 16.0)) ++
+			Seq((16.0, 3.0), (16.0, 3.0), (5.0, 16.0))).map(p => (p, 1.0, None: Option[Double]))
+		val data = sc.parallelize(points, 5)
+
+		val binner = new UniversalBinner
+		val indexScheme = new CartesianIndexScheme
+		val binAnalytic = new NumericSumBinningAnalytic[Double, JavaDouble]()
+		val tileAnalytics: Option[AnalysisDescription[TileData[JavaDouble], Double]] = None
+		val dataAnalytics: Option[AnalysisDescription[_, Double]] = None
+		val locFcn = StandardBinningFunctions.locateIndexOverLevels(indexScheme, pyramid, 4, 4)(levels)
+		val popFcn = StandardBinningFunctions.populateTileIdentity[Double]
+		val parameters = new BinningParameters(true, 4, 4, Some(7), Some(7), None)
+
+		val expected = binner.processData[(Double, Double), Double, Double, Double, JavaDouble](
+			data, binAnalytic, tileAnalytics, dataAnalytics, locFcn, popFcn, parameters
+		).collect.toSeq
+
+		val comparator = new PyramidComparator(pyramid, levels.max)
+		val keyFcn: ((Double, Double)) => Long = index => comparator.getComparisonKey(index._1, index._2)
+		val partitionedData = binner.zOrderPartition(data, keyFcn, parameters)
+		assert(7 === partitionedData.partitions.size)
+
+		val actual = binner.processZOrderedData[(Double, Double), Double, Double, Double, JavaDouble](
+			partitionedData, comparator, binAnalytic, tileAnalytics, dataAnalytics, locFcn, popFcn, parameters
+		).collect.toSeq
+
+		// Each tile should be produced exactly once
+		assert(expected.size === actual.size)
+		assert(actual.map(_.getDefinition).distinct.size === actual.size)
+		assert(tileContents(expected) === tileContents(actual))
+
+		// Once the tiles are used, the partial tiles should be releasable
+		assert(sc.getPersistentRDDs.nonEmpty)
+		binner.releaseIntermediates()
+		assert(sc.getPersistentRDDs.isEmpty)
+	}
+
+	test("Z-ordered binning requires partitioned data") {
+		val binner = new UniversalBinner
+		val data = sc.parallelize(Seq((1L, ((1.0, 1.0), 1.0, None: Option[Double]))))
+		val tileAnalytics: Option[AnalysisDescription[TileData[JavaDouble], Double]] = None
+		val dataAnalytics: Option[AnalysisDescription[_, Double]] = None
+
+		intercept[IllegalArgumentException] {
+			binner.processZOrderedData[(Double, Double), Double, Double, Double, JavaDouble](
+				data, new PyramidComparator(pyramid, 4), new NumericSumBinningAnalytic[Double, JavaDouble](),
+				tileAnalytics, dataAnalytics,
+				StandardBinningFunctions.locateIndexOverLevels(new CartesianIndexScheme, pyramid, 4, 4)(levels),
+				StandardBinningFunctions.populateTileIdentity[Double])
+		}
+	}
+}
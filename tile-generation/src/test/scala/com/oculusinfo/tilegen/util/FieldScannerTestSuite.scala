@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tilegen.util
+
+import org.scalatest.FunSuite
+
+import scala.util.Try
+
+class FieldScannerTestSuite extends FunSuite {
+	import FieldScanner._
+
+	private def fields (line: String, separator: String): List[String] = {
+		val (n, starts, ends) = findFields(line, separator, new Array[Int](1), new Array[Int](1))
+		(0 until n).map(i => line.substring(starts(i), ends(i))).toList
+	}
+
+	test("Test literal separator detection") {
+		assert(isLiteral(","))
+		assert(isLiteral("\t"))
+		assert(isLiteral(", "))
+		assert(!isLiteral("\\|"))
+		assert(!isLiteral("[,;]"))
+		assert(!isLiteral(""))
+	}
+
+	test("Test field splitting") {
+		assert(List("a", "", "bb", "") === fields("a,,bb,", ","))
+		assert(List("a", "b", "c") === fields("a, b, c", ", "))
+		assert(List("") === fields("", ","))
+		assert(List("a", "b", "c") === fields("a::b::c", "::"))
+	}
+
+	test("Test integer parsing matches standard parsing") {
+		val samples = List("0", "42", " 42 ", "+7", "-7", "-9223372036854775808", "9223372036854775807",
+		                   "9223372036854775808", "-9223372036854775809", "+", "-", "", "1a", "1.0")
+		samples.foreach { s =>
+			val expected = Try(s.trim.toLong)
+			val actual = Try(parseLong("[" + s + "]", 1, s.length + 1))
+			assert(expected.isSuccess === actual.isSuccess, "for "+s)
+			if (expected.isSuccess) assert(expected.get === actual.get, "for "+s)
+		}
+		assert(-2147483648 === parseInt("-2147483648", 0, 11))
+		intercept[NumberFormatException](parseInt("2147483648", 0, 10))
+		intercept[NumberFormatException](parseShort("32768", 0, 5))
+	}
+
+	test("Test double parsing matches standard parsing") {
+		val random = new scala.util.Random(13)
+		val samples = List("1", "-0", "+3.5", " 12.25 ", "1e10", "1.5E-7", "0.000123", ".5", "5.", "123456789012345",
+		                   "1234567890123456789", "9007199254740993", "0.1", "2.2250738585072014E-308", "NaN",
+		                   "-Infinity", "1.0d", "abc", "", "-", "1e", "1e+", "0x1p3") ++
+			(1 to 10000).map(n => (random.nextDouble() * math.pow(10, random.nextInt(40) - 20)).toString) ++
+			(1 to 10000).map(n => "%.6f".format(random.nextGaussian() * 1000))
+		samples.foreach { s =>
+			val expected = Try(s.trim.toDouble)
+			val actual = Try(parseDouble("[" + s + "]", 1, s.length + 1))
+			assert(expected.isSuccess === actual.isSuccess, "for "+s)
+			if (expected.isSuccess)
+				assert(java.lang.Double.doubleToRawLongBits(expected.get) ===
+					       java.lang.Double.doubleToRawLongBits(actual.get), "for "+s)
+		}
+	}
+}
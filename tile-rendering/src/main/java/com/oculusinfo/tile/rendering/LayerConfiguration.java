@@ -270,4 +270,23 @@ public class LayerConfiguration extends ConfigurableFactory<LayerConfiguration>
 	                                 Iterable<TileIndex> tileSet) {
 		// NOOP
 	}
+
+	/**
+	 * As {@link #prepareForRendering(String, TileIndex, Iterable)}, on behalf
+	 * of a given client. Tiles may be rendered off the thread serving the
+	 * client's request, so the client is passed explicitly.
+	 *
+	 * @param session The client requesting the tile; null if the request
+	 *            isn't on behalf of any particular client
+	 * @param layer The layer to be rendered.
+	 * @param tile The tile to be rendered
+	 * @param tileSet Any other tiles that will need to be rendered along with
+	 *            this one.
+	 */
+	public void prepareForRendering (String session,
+	                                 String layer,
+	                                 TileIndex tile,
+	                                 Iterable<TileIndex> tileSet) {
+		prepareForRendering(layer, tile, tileSet);
+	}
 }
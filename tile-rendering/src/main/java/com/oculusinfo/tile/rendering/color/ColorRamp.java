@@ -52,4 +52,14 @@ public interface ColorRamp {
 	 * 	The rgb colour value.
 	 */
 	int getRGBA(double scale, double alpha);
+
+	/**
+	 * Transform a whole array of scale values into colours at once.
+	 * @param scales
+	 * 	Values between 0 - 1.
+	 * @param colors
+	 * 	The array into which to put the rgb colour of each scale value; it
+	 * 	must be at least as long as scales.
+	 */
+	void getRGB(double[] scales, int[] colors);
 }
@@ -36,6 +36,7 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.oculusinfo.binning.util.SynchronizedLRUCache;
 import com.oculusinfo.factory.ConfigurableFactory;
 import com.oculusinfo.factory.ConfigurationException;
 import com.oculusinfo.factory.properties.DoubleProperty;
@@ -47,6 +48,13 @@ import com.oculusinfo.tile.rendering.color.impl.GreyColorRamp;
 import com.oculusinfo.tile.rendering.color.impl.SteppedGradientColorRamp;
 import com.oculusinfo.tile.rendering.color.impl.WareColorRamp;
 
+/**
+ * Creates colour ramps from layer configuration.
+ *
+ * Ramps are immutable, and precompute their colours when constructed, so
+ * identical ramps are shared, process-wide, between all layers and requests
+ * that configure them the same way.
+ */
 public class ColorRampFactory extends ConfigurableFactory<ColorRamp> {
 
 	public static final StringProperty RAMP_TYPE = new StringProperty("ramp", "The desired type of color ramp", "spectral");
@@ -60,6 +68,9 @@ public class ColorRampFactory extends ConfigurableFactory<ColorRamp> {
 	public static final StringProperty THEME = new StringProperty("theme", "The active theme.", "dark");
 	public static final JSONArrayProperty GRADIENTS = new JSONArrayProperty("gradients", "A set of themed gradient definitions.", "[]");
 
+	// Ramps already created, keyed by the configuration that created them
+	private static final SynchronizedLRUCache<String, ColorRamp> RAMP_CACHE = new SynchronizedLRUCache<>(256);
+
 	
 	private List<ThemedGradientFactory> gradients = new ArrayList<>();
 
@@ -105,6 +116,35 @@ public class ColorRampFactory extends ConfigurableFactory<ColorRamp> {
 
 	@Override
 	protected ColorRamp create () throws ConfigurationException {
+		String key = getCacheKey();
+		ColorRamp ramp = RAMP_CACHE.get(key);
+		if (null == ramp) {
+			ramp = createRamp();
+			RAMP_CACHE.put(key, ramp);
+		}
+		return ramp;
+	}
+
+	// Describe everything that createRamp uses to decide on and construct
+	// a ramp.
+	private String getCacheKey () throws ConfigurationException {
+		final String rampType = getPropertyValue(RAMP_TYPE);
+		StringBuilder key = new StringBuilder();
+		key.append(rampType.toLowerCase()).append('|');
+		key.append(getPropertyValue(THEME).toLowerCase()).append('|');
+		key.append(getPropertyValue(GRADIENTS).toString()).append('|');
+		if (rampType.equalsIgnoreCase("flat")) {
+			key.append(hasPropertyValue(COLOR1) ? getPropertyValue(COLOR1) : "");
+		} else if (rampType.equalsIgnoreCase("single-gradient")) {
+			key.append(getPropertyValue(COLOR1)).append('|').append(getPropertyValue(ALPHA1)).append('|');
+			key.append(getPropertyValue(COLOR2)).append('|').append(getPropertyValue(ALPHA2));
+		} else if (rampType.equalsIgnoreCase("hue")) {
+			key.append(getPropertyValue(HUE1)).append('|').append(getPropertyValue(HUE2));
+		}
+		return key.toString();
+	}
+
+	private ColorRamp createRamp () throws ConfigurationException {
 		final String rampType = getPropertyValue(RAMP_TYPE);
 		final double opacity = 1.0; //getPropertyValue(OPACITY);
 		final String theme = getPropertyValue(THEME);
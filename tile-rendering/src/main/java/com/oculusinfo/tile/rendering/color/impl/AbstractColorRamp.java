@@ -29,28 +29,46 @@ import com.oculusinfo.tile.rendering.color.ColorRamp;
 import com.oculusinfo.tile.rendering.color.FixedPoint;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * A colour ramp defined by fixed points along each of its channels.
+ *
+ * Ramps are immutable; the colour of each point along the ramp is worked out
+ * once, when the ramp is constructed, and looked up thereafter.
+ */
 public abstract class AbstractColorRamp implements ColorRamp {
-	private boolean isInverted;
-	protected List<FixedPoint> reds = new ArrayList<FixedPoint>();
-	protected List<FixedPoint> greens = new ArrayList<FixedPoint>();
-	protected List<FixedPoint> blues = new ArrayList<FixedPoint>();
-	protected List<FixedPoint> alphas = new ArrayList<FixedPoint>();
+	private final boolean isInverted;
+	protected final List<FixedPoint> reds;
+	protected final List<FixedPoint> greens;
+	protected final List<FixedPoint> blues;
+	protected final List<FixedPoint> alphas;
+	// The full colour, and the unscaled alpha value, of each table entry
+	private final int[] colorTable;
+	private final double[] alphaTable;
 
 	public AbstractColorRamp (boolean inverted, List<FixedPoint> reds, List<FixedPoint> greens, List<FixedPoint> blues, List<FixedPoint> alphas, double opacity){
 		this.isInverted = inverted;
-		this.reds = reds;
-		this.greens = greens;
-		this.blues = blues;
+		this.reds = Collections.unmodifiableList(new ArrayList<>(reds));
+		this.greens = Collections.unmodifiableList(new ArrayList<>(greens));
+		this.blues = Collections.unmodifiableList(new ArrayList<>(blues));
 		if (null == alphas) {
 			//there's no alphas, so initialize them with the single opacity field
-			this.alphas = new ArrayList<>();
-			this.alphas.add(new FixedPoint(0, opacity));
-			this.alphas.add(new FixedPoint(1, opacity));
+			this.alphas = Collections.unmodifiableList(Arrays.asList(new FixedPoint(0, opacity), new FixedPoint(1, opacity)));
 		} else {
-			this.alphas = alphas;
+			this.alphas = Collections.unmodifiableList(new ArrayList<>(alphas));
+		}
+
+		this.colorTable = new int[ColorRampTable.SIZE];
+		this.alphaTable = new double[ColorRampTable.SIZE];
+		for (int i = 0; i < ColorRampTable.SIZE; ++i) {
+			double scale = ColorRampTable.getScale(i);
+			if (this.isInverted) scale = 1-scale;
+			colorTable[i] = smoothBetweenFixedPoints(this.reds, this.greens, this.blues, this.alphas, scale, 1.0);
+			alphaTable[i] = valueFromFixedPoints(this.alphas, scale);
 		}
 	}
 
@@ -58,14 +76,18 @@ public abstract class AbstractColorRamp implements ColorRamp {
 
 
 	public int getRGB(double scale) {
-		return smoothBetweenFixedPoints(reds, greens, blues, alphas,
-		                                (this.isInverted ? 1-scale : scale), 1.0);
+		return colorTable[ColorRampTable.getIndex(scale)];
 	}
 
 	public int getRGBA(double scale, double alphaScale) {
-		return smoothBetweenFixedPoints(reds, greens, blues, alphas,
-			(this.isInverted ? 1-scale : scale),
-			(this.isInverted ? 1-alphaScale : alphaScale));
+		int index = ColorRampTable.getIndex(scale);
+		int a = (int)(alphaTable[index] * (this.isInverted ? 1-alphaScale : alphaScale) * 255);
+		a = Math.max(0, Math.min(0xFF, a));
+		return (a << 24) | (colorTable[index] & 0xFFFFFF);
+	}
+
+	public void getRGB(double[] scales, int[] colors) {
+		ColorRampTable.lookup(colorTable, scales, colors);
 	}
 
 	public static double luminosity(int r, int g, int b) {
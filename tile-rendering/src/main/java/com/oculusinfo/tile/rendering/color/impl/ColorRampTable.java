@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rendering.color.impl;
+
+/**
+ * Helpers for colour ramps that precompute their colours into a lookup table
+ * when they are constructed, rather than working them out on every pixel.
+ *
+ * Tables hold {@link #SIZE} evenly spaced samples of the 0-1 scale; scales
+ * outside that range are clamped to its ends.
+ */
+final class ColorRampTable {
+	/** The number of entries in each ramp's table */
+	static final int SIZE = 4096;
+
+	private ColorRampTable () {
+	}
+
+	/**
+	 * Get the scale value sampled by the given table entry
+	 */
+	static double getScale (int index) {
+		return index / (double) (SIZE - 1);
+	}
+
+	/**
+	 * Get the table entry nearest the given scale value.  NaN maps to the
+	 * start of the table.
+	 */
+	static int getIndex (double scale) {
+		if (!(scale > 0.0)) return 0;
+		if (scale >= 1.0) return SIZE - 1;
+		return (int) (scale * (SIZE - 1) + 0.5);
+	}
+
+	/**
+	 * Look up a whole array of scale values at once.
+	 *
+	 * @param table The table of colours
+	 * @param scales The scale values to look up
+	 * @param colors The array into which to put the colour for each scale; it
+	 *            must be at least as long as scales
+	 */
+	static void lookup (int[] table, double[] scales, int[] colors) {
+		for (int i = 0; i < scales.length; ++i) {
+			colors[i] = table[getIndex(scales[i])];
+		}
+	}
+}
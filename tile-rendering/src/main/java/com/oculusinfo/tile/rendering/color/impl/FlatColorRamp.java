@@ -25,6 +25,7 @@
 package com.oculusinfo.tile.rendering.color.impl;
 
 import java.awt.Color;
+import java.util.Arrays;
 
 import com.oculusinfo.tile.rendering.color.ColorRamp;
 import com.oculusinfo.tile.rendering.color.ColorRampParameter;
@@ -39,7 +40,7 @@ import com.oculusinfo.tile.rendering.color.ColorRampParameter;
 public class FlatColorRamp implements ColorRamp {
 
 	protected ColorRampParameter params;
-	private int col;
+	private final int col;
 
 
 	/**
@@ -64,4 +65,9 @@ public class FlatColorRamp implements ColorRamp {
 		return col;
 	}
 
+	@Override
+	public void getRGB(double[] scales, int[] colors) {
+		Arrays.fill(colors, 0, scales.length, col);
+	}
+
 }
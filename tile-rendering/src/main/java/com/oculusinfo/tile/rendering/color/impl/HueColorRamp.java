@@ -36,12 +36,16 @@ import com.oculusinfo.tile.rendering.color.ColorRampParameter;
  * 		hue gradient. Values outside the range (0, 1) are clamped.
  *
  *
+ * Colours are converted from HSL once, when the ramp is constructed, and
+ * looked up thereafter.
+ *
  * @author cregnier
  *
  */
 public class HueColorRamp implements ColorRamp {
-	private double fromVal = 0.0;
-	private double toVal = 0.0;
+	private final double fromVal;
+	private final double toVal;
+	private final int[] colorTable;
 
 	private final double clamp(double v, double min, double max) {
 		return (v > min)? ((v < max)? v : max): min;
@@ -50,16 +54,26 @@ public class HueColorRamp implements ColorRamp {
 	public HueColorRamp(double from, double to) {
 		fromVal = clamp(from, 0.0, 1.0);
 		toVal = clamp(to, 0.0, 1.0);
+
+		colorTable = new int[ColorRampTable.SIZE];
+		for (int i = 0; i < ColorRampTable.SIZE; ++i) {
+			colorTable[i] = hslToRGB((toVal - fromVal) * ColorRampTable.getScale(i) + fromVal, 1.0, 0.5);
+		}
 	}
 
 	@Override
-		 public int getRGB(double scale) {
-		return hslToRGB((toVal - fromVal) * scale + fromVal, 1.0, 0.5);
+	public int getRGB(double scale) {
+		return colorTable[ColorRampTable.getIndex(scale)];
 	}
 
 	@Override
 	public int getRGBA(double scale, double alphaValue) {
-		return hslToRGB((toVal - fromVal) * scale + fromVal, 1.0, 0.5);
+		return colorTable[ColorRampTable.getIndex(scale)];
+	}
+
+	@Override
+	public void getRGB(double[] scales, int[] colors) {
+		ColorRampTable.lookup(colorTable, scales, colors);
 	}
 
 	protected double hueToRGB(double p, double q, double t) {
@@ -31,6 +31,7 @@ package com.oculusinfo.tile.rendering.filter;
  * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import com.oculusinfo.binning.util.SeparableBlur;
 import com.oculusinfo.tile.util.GraphicsUtilities;
 
 import java.awt.image.BufferedImage;
@@ -94,117 +95,54 @@ public class FastBlurFilter extends AbstractFilter {
 			dst = createCompatibleDestImage(src, null);
 		}
 
-		int[] srcPixels = new int[width * height];
-		int[] dstPixels = new int[width * height];
+		int[] pixels = new int[width * height];
 
-		GraphicsUtilities.getPixels(src, 0, 0, width, height, srcPixels);
-		// horizontal pass
-		blur(srcPixels, dstPixels, width, height, radius);
-		// vertical pass
-		blur(dstPixels, srcPixels, height, width, radius);
-		// the result is now stored in srcPixels due to the 2nd pass
-		GraphicsUtilities.setPixels(dst, 0, 0, width, height, srcPixels);
+		GraphicsUtilities.getPixels(src, 0, 0, width, height, pixels);
+		blur(pixels, width, height, radius, 1);
+		GraphicsUtilities.setPixels(dst, 0, 0, width, height, pixels);
 
 		return dst;
 	}
 
 	/**
-	 * <p>Blurs the source pixels into the destination pixels. The force of
-	 * the blur is specified by the radius which must be greater than 0.</p>
-	 * <p>The source and destination pixels arrays are expected to be in the
-	 * INT_ARGB format.</p>
+	 * <p>Box blurs INT_ARGB pixels in place. The channels are unpacked once
+	 * into floats, blurred there by {@link SeparableBlur}, and packed back
+	 * again.</p>
 	 *
-	 * @param srcPixels the source pixels
-	 * @param dstPixels the destination pixels
-	 * @param width the width of the source picture
-	 * @param height the height of the source picture
+	 * @param pixels the pixels to blur
+	 * @param width the width of the picture
+	 * @param height the height of the picture
 	 * @param radius the radius of the blur effect
+	 * @param iterations the number of times to apply the blur
 	 */
-	static void blur(int[] srcPixels, int[] dstPixels,
-	                 int width, int height, int radius) {
-		final int windowSize = radius * 2 + 1;
-		final int radiusPlusOne = radius + 1;
-
-		int sumAlpha;
-		int sumRed;
-		int sumGreen;
-		int sumBlue;
-
-		int srcIndex = 0;
-		int dstIndex;
-		int pixel;
-
-		int[] sumLookupTable = new int[256 * windowSize];
-		for (int i = 0; i < sumLookupTable.length; i++) {
-			sumLookupTable[i] = i / windowSize;
-		}
-
-		int[] indexLookupTable = new int[radiusPlusOne];
-		if (radius < width) {
-			for (int i = 0; i < indexLookupTable.length; i++) {
-				indexLookupTable[i] = i;
-			}
-		} else {
-			for (int i = 0; i < width; i++) {
-				indexLookupTable[i] = i;
-			}
-			for (int i = width; i < indexLookupTable.length; i++) {
-				indexLookupTable[i] = width - 1;
+	static void blur(int[] pixels, int width, int height, int radius, int iterations) {
+		float[][] rows = new float[height][width * 4];
+		for (int y = 0, i = 0; y < height; y++) {
+			float[] row = rows[y];
+			for (int c = 0; c < row.length; c += 4, i++) {
+				int pixel = pixels[i];
+				row[c]     = (pixel >>> 24) & 0xFF;
+				row[c + 1] = (pixel >> 16) & 0xFF;
+				row[c + 2] = (pixel >>  8) & 0xFF;
+				row[c + 3] =  pixel        & 0xFF;
 			}
 		}
 
-		for (int y = 0; y < height; y++) {
-			sumAlpha = sumRed = sumGreen = sumBlue = 0;
-			dstIndex = y;
-
-			pixel = srcPixels[srcIndex];
-			sumAlpha += radiusPlusOne * ((pixel >> 24) & 0xFF);
-			sumRed   += radiusPlusOne * ((pixel >> 16) & 0xFF);
-			sumGreen += radiusPlusOne * ((pixel >>  8) & 0xFF);
-			sumBlue  += radiusPlusOne * ( pixel        & 0xFF);
-
-			for (int i = 1; i <= radius; i++) {
-				pixel = srcPixels[srcIndex + indexLookupTable[i]];
-				sumAlpha += (pixel >> 24) & 0xFF;
-				sumRed   += (pixel >> 16) & 0xFF;
-				sumGreen += (pixel >>  8) & 0xFF;
-				sumBlue  +=  pixel        & 0xFF;
-			}
-
-			for  (int x = 0; x < width; x++) {
-				dstPixels[dstIndex] = sumLookupTable[sumAlpha] << 24 |
-					sumLookupTable[sumRed]   << 16 |
-					sumLookupTable[sumGreen] <<  8 |
-					sumLookupTable[sumBlue];
-				dstIndex += height;
-
-				int nextPixelIndex = x + radiusPlusOne;
-				if (nextPixelIndex >= width) {
-					nextPixelIndex = width - 1;
-				}
-
-				int previousPixelIndex = x - radius;
-				if (previousPixelIndex < 0) {
-					previousPixelIndex = 0;
-				}
+		SeparableBlur.boxBlur(rows, 4, radius, iterations);
 
-				int nextPixel = srcPixels[srcIndex + nextPixelIndex];
-				int previousPixel = srcPixels[srcIndex + previousPixelIndex];
-
-				sumAlpha += (nextPixel     >> 24) & 0xFF;
-				sumAlpha -= (previousPixel >> 24) & 0xFF;
-
-				sumRed += (nextPixel     >> 16) & 0xFF;
-				sumRed -= (previousPixel >> 16) & 0xFF;
-
-				sumGreen += (nextPixel     >> 8) & 0xFF;
-				sumGreen -= (previousPixel >> 8) & 0xFF;
-
-				sumBlue += nextPixel & 0xFF;
-				sumBlue -= previousPixel & 0xFF;
+		for (int y = 0, i = 0; y < height; y++) {
+			float[] row = rows[y];
+			for (int c = 0; c < row.length; c += 4, i++) {
+				pixels[i] = toByte(row[c]) << 24 |
+					toByte(row[c + 1]) << 16 |
+					toByte(row[c + 2]) <<  8 |
+					toByte(row[c + 3]);
 			}
-
-			srcIndex += width;
 		}
 	}
+
+	private static int toByte(float value) {
+		int rounded = (int) (value + 0.5f);
+		return rounded < 0 ? 0 : (rounded > 255 ? 255 : rounded);
+	}
 }
@@ -132,18 +132,11 @@ public class StackBlurFilter extends AbstractFilter {
 			dst = createCompatibleDestImage(src, null);
 		}
 
-		int[] srcPixels = new int[width * height];
-		int[] dstPixels = new int[width * height];
-
-		GraphicsUtilities.getPixels(src, 0, 0, width, height, srcPixels);
-		for (int i = 0; i < iterations; i++) {
-			// horizontal pass
-			FastBlurFilter.blur(srcPixels, dstPixels, width, height, radius);
-			// vertical pass
-			FastBlurFilter.blur(dstPixels, srcPixels, height, width, radius);
-		}
-		// the result is now stored in srcPixels due to the 2nd pass
-		GraphicsUtilities.setPixels(dst, 0, 0, width, height, srcPixels);
+		int[] pixels = new int[width * height];
+
+		GraphicsUtilities.getPixels(src, 0, 0, width, height, pixels);
+		FastBlurFilter.blur(pixels, width, height, radius, iterations);
+		GraphicsUtilities.setPixels(dst, 0, 0, width, height, pixels);
 
 		return dst;
 	}
@@ -27,6 +27,7 @@ package com.oculusinfo.tile.rendering.impl;
 import com.oculusinfo.binning.TileData;
 import com.oculusinfo.binning.metadata.PyramidMetaData;
 import com.oculusinfo.binning.util.TypeDescriptor;
+import com.oculusinfo.tile.util.ImageBufferPool;
 import com.oculusinfo.factory.util.Pair;
 import com.oculusinfo.factory.ConfigurationException;
 import com.oculusinfo.factory.properties.StringProperty;
@@ -79,7 +80,7 @@ public class NumberImageRenderer implements TileDataImageRenderer<Number> {
 			String rangeMode = config.getPropertyValue( LayerConfiguration.RANGE_MODE );
 			String pixelShape = config.getPropertyValue( LayerConfiguration.PIXEL_SHAPE );
 
-			bi = new BufferedImage( outputWidth, outputHeight, BufferedImage.TYPE_INT_ARGB );
+			bi = ImageBufferPool.acquire( outputWidth, outputHeight );
 
 			@SuppressWarnings( "unchecked" )
 			ValueTransformer<Number> t = config.produce( "valueTransformer", ValueTransformer.class );
@@ -109,40 +110,17 @@ public class NumberImageRenderer implements TileDataImageRenderer<Number> {
 		float yScale = outHeight / yBins;
 		double radius2 = pow2( Math.min( xScale, yScale ) * 0.5 );    // min squared 'radius' of final scaled bin
 
-		double oneOverScaledRange = 1.0 / ( valueMax - valueMin );
 		boolean bCoarseCircles = pixelShape.equals( "circle" );    // render 'coarse' bins as circles or squares?
 
 		int[] rgbArray = ( ( DataBufferInt ) bi.getRaster().getDataBuffer() ).getData();
+		int[] binColors = getBinColors( data, t, valueMin, valueMax, mode, colorRamp );
 
 		if ( ( xScale == 1.0 ) && ( yScale == 1.0 ) ) {
 			// no bin scaling needed
 
 			for ( int ty = 0; ty < yBins; ty++ ) {
-				for ( int tx = 0; tx < xBins; tx++ ) {
-					// get bin count
-					double binCount = data.getBin( tx, ty ).doubleValue();
-					// transform value
-					double transformedValue = t.transform( binCount ).doubleValue();
-					// set pixel value
-					int rgb;
-					if ( ( mode.equals( "dropZero" ) && binCount != 0 ) || binCount > 0 ) {
-						if ( mode.equals( "cull" ) ) {
-							if ( transformedValue >= valueMin && transformedValue <= valueMax ) {
-								rgb = colorRamp.getRGB( ( transformedValue - valueMin ) * oneOverScaledRange );
-							} else {
-								rgb = COLOR_BLANK.getRGB();
-							}
-						} else {
-							rgb = colorRamp.getRGB( ( transformedValue - valueMin ) * oneOverScaledRange );
-						}
-					} else {
-						rgb = COLOR_BLANK.getRGB();
-					}
-
-					// set pixel
-					int i = ty * outWidth + tx;
-					rgbArray[i] = rgb;
-				}
+				// set pixels
+				System.arraycopy( binColors, ty * xBins, rgbArray, ty * outWidth, xBins );
 			}
 		} else {
 			// perform bin scaling (i.e. if bin coarseness != 1.0)
@@ -156,25 +134,7 @@ public class NumberImageRenderer implements TileDataImageRenderer<Number> {
 					int maxY = Math.round( ( ty + 1 ) * yScale );
 					double centreX = ( maxX + minX ) * 0.5;
 					double centreY = ( maxY + minY ) * 0.5;
-					// get bin count
-					double binCount = data.getBin( tx, ty ).doubleValue();
-					// transform value
-					double transformedValue = t.transform( binCount ).doubleValue();
-					// set pixel value
-					int rgb;
-					if ( ( mode.equals( "dropZero" ) && binCount != 0 ) || binCount > 0 ) {
-						if ( mode.equals( "cull" ) ) {
-							if ( transformedValue >= valueMin && transformedValue <= valueMax ) {
-								rgb = colorRamp.getRGB( ( transformedValue - valueMin ) * oneOverScaledRange );
-							} else {
-								rgb = COLOR_BLANK.getRGB();
-							}
-						} else {
-							rgb = colorRamp.getRGB( ( transformedValue - valueMin ) * oneOverScaledRange );
-						}
-					} else {
-						rgb = COLOR_BLANK.getRGB();
-					}
+					int rgb = binColors[ty * xBins + tx];
 
 					//'draw' out the scaled 'pixel'
 					if ( bCoarseCircles && radius2 > 1.0 ) {
@@ -205,6 +165,49 @@ public class NumberImageRenderer implements TileDataImageRenderer<Number> {
 		return bi;
 	}
 
+	/*
+	 * Work out the colour of every bin in the tile, in row order.  Ramp values
+	 * are gathered for the whole tile and coloured in a single batch, then
+	 * bins that shouldn't be drawn are blanked.
+	 */
+	private int[] getBinColors( TileData<Number> data, ValueTransformer<Number> t,
+								double valueMin, double valueMax, String mode, ColorRamp colorRamp ) {
+		int xBins = data.getDefinition().getXBins();
+		int yBins = data.getDefinition().getYBins();
+		double[] scales = new double[xBins * yBins];
+		boolean[] blank = new boolean[xBins * yBins];
+		double oneOverScaledRange = 1.0 / ( valueMax - valueMin );
+		boolean cull = mode.equals( "cull" );
+		boolean dropZero = mode.equals( "dropZero" );
+
+		for ( int ty = 0; ty < yBins; ty++ ) {
+			for ( int tx = 0; tx < xBins; tx++ ) {
+				int i = ty * xBins + tx;
+				// get bin count
+				double binCount = data.getBin( tx, ty ).doubleValue();
+				// transform value
+				double transformedValue = t.transform( binCount ).doubleValue();
+				if ( ( dropZero && binCount != 0 ) || binCount > 0 ) {
+					if ( cull && ( transformedValue < valueMin || transformedValue > valueMax ) ) {
+						blank[i] = true;
+					} else {
+						scales[i] = ( transformedValue - valueMin ) * oneOverScaledRange;
+					}
+				} else {
+					blank[i] = true;
+				}
+			}
+		}
+
+		int[] colors = new int[scales.length];
+		colorRamp.getRGB( scales, colors );
+		int blankRGB = COLOR_BLANK.getRGB();
+		for ( int i = 0; i < colors.length; i++ ) {
+			if ( blank[i] ) colors[i] = blankRGB;
+		}
+		return colors;
+	}
+
 
 	/**
 	 * {@inheritDoc}
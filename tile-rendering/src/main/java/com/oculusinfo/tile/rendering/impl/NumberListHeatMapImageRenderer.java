@@ -43,6 +43,7 @@ import com.oculusinfo.binning.TileIndex;
 import com.oculusinfo.binning.metadata.PyramidMetaData;
 import com.oculusinfo.factory.util.Pair;
 import com.oculusinfo.binning.util.TypeDescriptor;
+import com.oculusinfo.tile.util.ImageBufferPool;
 import com.oculusinfo.factory.ConfigurationException;
 import com.oculusinfo.factory.properties.StringProperty;
 
@@ -87,7 +88,7 @@ public class NumberListHeatMapImageRenderer implements TileDataImageRenderer<Lis
 			String rangeMode = config.getPropertyValue( LayerConfiguration.RANGE_MODE );
 			String pixelShape = config.getPropertyValue( LayerConfiguration.PIXEL_SHAPE );
 
-			bi = new BufferedImage( outputWidth, outputHeight, BufferedImage.TYPE_INT_ARGB );
+			bi = ImageBufferPool.acquire( outputWidth, outputHeight );
 
 			@SuppressWarnings( "unchecked" )
 			ValueTransformer<Number> t = config.produce( "valueTransformer", ValueTransformer.class );
@@ -39,6 +39,16 @@ import java.util.List;
  * @author nkronenfeld
  */
 public class TopAndBottomTextScoresImageRenderer extends TopTextScoresImageRenderer {
+	@Override
+	protected int getLowScoreCount () {
+		return 5;
+	}
+
+	@Override
+	protected int getHighScoreCount () {
+		return 5;
+	}
+
 	@Override
 	protected int[] getTextsToDraw(List<Pair<String, Double>> cellData) {
 		int n = cellData.size();
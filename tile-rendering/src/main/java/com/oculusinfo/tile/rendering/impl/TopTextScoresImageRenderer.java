@@ -29,6 +29,8 @@ import com.oculusinfo.binning.TileIndex;
 import com.oculusinfo.binning.metadata.PyramidMetaData;
 import com.oculusinfo.factory.util.Pair;
 import com.oculusinfo.binning.util.TypeDescriptor;
+import com.oculusinfo.tile.util.GlyphRunAtlas;
+import com.oculusinfo.tile.util.ImageBufferPool;
 import com.oculusinfo.factory.ConfigurationException;
 import com.oculusinfo.tile.rendering.LayerConfiguration;
 import com.oculusinfo.tile.rendering.TileDataImageRenderer;
@@ -38,10 +40,12 @@ import org.slf4j.LoggerFactory;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 
 /**
  * A server side to render Map<String, Double> (well, technically,
@@ -49,13 +53,29 @@ import java.util.List;
  *
  * This renderer by default renders the top scores, rendering up to 10 per bin.
  * To render more, fewer, or different texts, override
- * {@link #getTextsToDraw(List)}.
+ * {@link #getTextsToDraw(List)}, along with {@link #getLowScoreCount()} and
+ * {@link #getHighScoreCount()}, which determine the entries it may choose from.
+ *
+ * Text is drawn straight into the image's pixels from a shared
+ * {@link GlyphRunAtlas}, so frequent terms are only rasterized once.
  *
  * @author nkronenfeld
  */
 public class TopTextScoresImageRenderer implements TileDataImageRenderer<List<Pair<String, Double>>> {
 	private final Logger LOGGER = LoggerFactory.getLogger(getClass());
 
+	// The default font of a BufferedImage's graphics
+	private static final Font  FONT       = new Font(Font.DIALOG, Font.PLAIN, 12);
+	private static final int   TEXT_COLOR = new Color(255, 255, 128, 192).getRGB();
+
+	private static final Comparator<Pair<String, Double>> BY_SCORE = new Comparator<Pair<String, Double>>() {
+		@Override
+		public int compare (Pair<String, Double> p1, Pair<String, Double> p2) {
+			return Double.compare(p1.getSecond(), p2.getSecond());
+		}
+	};
+	private static final Comparator<Pair<String, Double>> BY_SCORE_DESCENDING = Collections.reverseOrder(BY_SCORE);
+
 	// Best we can do here :-(
 	@SuppressWarnings({"unchecked", "rawtypes"})
 	@Override
@@ -73,7 +93,9 @@ public class TopTextScoresImageRenderer implements TileDataImageRenderer<List<Pa
 
 
 
-	private void drawScoredText (Graphics2D g, Pair<String, Double> textScore, double offsetFromCenter,
+	// Draw directly into the image's pixels, clipped to the bin's area
+	private void drawScoredText (int[] raster, int rasterWidth, GlyphRunAtlas atlas,
+	                             Pair<String, Double> textScore, double offsetFromCenter,
 	                             int minX, int maxX, int minY, int maxY,
 	                             int rowHeight, int barHeight, int padding,
 	                             ColorRamp ramp, double scale) {
@@ -88,23 +110,33 @@ public class TopTextScoresImageRenderer implements TileDataImageRenderer<List<Pa
 		double colorValue = (value+1.0)/2.0;
 		int barWidth = (int)Math.round((maxX-centerX)*0.8*value);
 
-		String text = textScore.getFirst();
-		FontMetrics metrics = g.getFontMetrics();
-		int textBaseline = baseline;
-
-		g.setColor(new Color(ramp.getRGB(colorValue)));
+		// Bars are drawn opaque
+		int barColor = 0xFF000000 | ramp.getRGB(colorValue);
 		if (barWidth > 0) {
-			g.fillRect(centerX+padding, barBaseline, barWidth, barHeight);
+			fillRect(raster, rasterWidth, minX, minY, maxX, maxY, centerX+padding, barBaseline, barWidth, barHeight, barColor);
 		} else {
-			g.fillRect(centerX+barWidth-padding, barBaseline, -barWidth, barHeight);
+			fillRect(raster, rasterWidth, minX, minY, maxX, maxY, centerX+barWidth-padding, barBaseline, -barWidth, barHeight, barColor);
 		}
 
-		g.setColor(new Color(255, 255, 128, 192));
+		GlyphRunAtlas.GlyphRun text = atlas.getRun(textScore.getFirst());
 		if (barWidth < 0) {
-			g.drawString(text, centerX+padding, textBaseline);
+			text.draw(raster, rasterWidth, minX, minY, maxX, maxY, centerX+padding, baseline, TEXT_COLOR);
 		} else {
-			int textWidth = metrics.stringWidth(text);
-			g.drawString(text, centerX-padding-textWidth, textBaseline);
+			text.draw(raster, rasterWidth, minX, minY, maxX, maxY, centerX-padding-text.getAdvance(), baseline, TEXT_COLOR);
+		}
+	}
+
+	private void fillRect (int[] raster, int rasterWidth,
+	                       int clipMinX, int clipMinY, int clipMaxX, int clipMaxY,
+	                       int x, int y, int width, int height, int argb) {
+		int startX = Math.max(x, clipMinX);
+		int endX = Math.min(x + width, clipMaxX);
+		int startY = Math.max(y, clipMinY);
+		int endY = Math.min(y + height, clipMaxY);
+		for (int py = startY; py < endY; ++py) {
+			for (int px = startX; px < endX; ++px) {
+				raster[py * rasterWidth + px] = argb;
+			}
 		}
 	}
 
@@ -122,16 +154,14 @@ public class TopTextScoresImageRenderer implements TileDataImageRenderer<List<Pa
 			int width = config.getPropertyValue(LayerConfiguration.OUTPUT_WIDTH);
 			int height = config.getPropertyValue(LayerConfiguration.OUTPUT_HEIGHT);
 
-			bi = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			// Acquired images are already transparent
+			bi = ImageBufferPool.acquire(width, height);
+			int[] raster = ((DataBufferInt) bi.getRaster().getDataBuffer()).getData();
+			GlyphRunAtlas atlas = GlyphRunAtlas.getAtlas(FONT);
 
 			int xBins = data.getDefinition().getXBins();
 			int yBins = data.getDefinition().getYBins();
 
-			Graphics2D g = bi.createGraphics();
-			// Transparent background
-			g.setColor(new Color(0, 0, 0, 0));
-			g.fillRect(0, 0, width, height);
-
 			int rowHeight = 16;
 			int barHeight = 3;
 			int padding = 2;
@@ -144,29 +174,23 @@ public class TopTextScoresImageRenderer implements TileDataImageRenderer<List<Pa
 					int yMin = y*height/yBins;
 					int yMax = (y+1)*height/yBins;
 
-					List<Pair<String, Double>> cellData = new ArrayList<Pair<String, Double>>(data.getBin(x, y));
-					if (cellData.size()>0) {
-						Collections.sort(cellData, new Comparator<Pair<String, Double>>() {
-								@Override
-								public int compare(Pair<String, Double> p1,
-								                   Pair<String, Double> p2) {
-									if (p1.getSecond() < p2.getSecond()) return -1;
-									else if (p1.getSecond() > p2.getSecond()) return 1;
-									else return 0;
-								}
-							});
-						double minVal = cellData.get(0).getSecond();
-						double maxVal = cellData.get(cellData.size()-1).getSecond();
+					List<Pair<String, Double>> binData = data.getBin(x, y);
+					if (binData.size()>0) {
+						double minVal = Double.POSITIVE_INFINITY;
+						double maxVal = Double.NEGATIVE_INFINITY;
+						for (Pair<String, Double> entry: binData) {
+							minVal = Math.min(minVal, entry.getSecond());
+							maxVal = Math.max(maxVal, entry.getSecond());
+						}
 						double scaleVal = Math.max(Math.abs(minVal), Math.abs(maxVal));
 
+						List<Pair<String, Double>> cellData = selectScores(binData, getLowScoreCount(), getHighScoreCount());
 						int[] toDraw = getTextsToDraw(cellData);
 						int n = toDraw.length;
 
-						g.setClip(null);
-						g.clipRect(xMin, yMin, xMax-xMin, yMax-yMin);
 						for (int i=0; i<n; ++i) {
 							double offset = (2*i + 1 - n) / 2.0;
-							drawScoredText(g, cellData.get(toDraw[i]), offset,
+							drawScoredText(raster, width, atlas, cellData.get(toDraw[i]), offset,
 							               xMin, xMax, yMin, yMax, rowHeight, barHeight, padding, colorRamp, scaleVal);
 						}
 					}
@@ -180,8 +204,72 @@ public class TopTextScoresImageRenderer implements TileDataImageRenderer<List<Pa
 		return bi;
 	}
 
+	/**
+	 * Pick out the lowest and highest scoring entries of a bin, in ascending
+	 * order of score, without sorting the whole bin.
+	 *
+	 * If the bin has no more than low+high entries, all of them are returned;
+	 * otherwise, the lowest low entries are followed by the highest high
+	 * entries.  Either way, the ends of the result are the ends of the bin's
+	 * full ranking.
+	 */
+	protected static List<Pair<String, Double>> selectScores (List<Pair<String, Double>> binData, int low, int high) {
+		List<Pair<String, Double>> result;
+		if (binData.size() <= low + high) {
+			result = new ArrayList<>(binData);
+			Collections.sort(result, BY_SCORE);
+			return result;
+		}
+
+		// Bounded heaps, each with its worst candidate at the head
+		PriorityQueue<Pair<String, Double>> lowest = new PriorityQueue<>(Math.max(1, low), BY_SCORE_DESCENDING);
+		PriorityQueue<Pair<String, Double>> highest = new PriorityQueue<>(Math.max(1, high), BY_SCORE);
+		for (Pair<String, Double> entry: binData) {
+			offer(lowest, low, entry, BY_SCORE_DESCENDING);
+			offer(highest, high, entry, BY_SCORE);
+		}
+
+		result = new ArrayList<>(low + high);
+		List<Pair<String, Double>> part = new ArrayList<>(lowest);
+		Collections.sort(part, BY_SCORE);
+		result.addAll(part);
+		part = new ArrayList<>(highest);
+		Collections.sort(part, BY_SCORE);
+		result.addAll(part);
+		return result;
+	}
+
+	private static void offer (PriorityQueue<Pair<String, Double>> heap, int size,
+	                           Pair<String, Double> entry, Comparator<Pair<String, Double>> order) {
+		if (heap.size() < size) {
+			heap.add(entry);
+		} else if (size > 0 && order.compare(entry, heap.peek()) > 0) {
+			heap.poll();
+			heap.add(entry);
+		}
+	}
+
+	/**
+	 * The number of lowest-scoring entries of each bin, in ascending order,
+	 * that are passed to {@link #getTextsToDraw(List)}.
+	 */
+	protected int getLowScoreCount () {
+		return 10;
+	}
+
+	/**
+	 * The number of highest-scoring entries of each bin, in ascending order,
+	 * that are passed to {@link #getTextsToDraw(List)}, after the lowest.
+	 */
+	protected int getHighScoreCount () {
+		return 0;
+	}
+
 	/**
 	 * This function returns which scored texts to use.  The default prints up to the top 10 texts.
+	 *
+	 * @param cellData The entries of a bin chosen by {@link #getLowScoreCount()}
+	 *            and {@link #getHighScoreCount()}, in ascending order of score
 	 */
 	protected int[] getTextsToDraw (List<Pair<String, Double>> cellData) {
 		int n = Math.min(10, cellData.size());
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.util;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.oculusinfo.binning.util.SynchronizedLRUCache;
+
+/**
+ * A cache of rasterized runs of text in a single font, so that text which
+ * appears over and over again on tiles (such as frequent terms in topic
+ * layers) only goes through the Java2D text pipeline once.
+ *
+ * Runs are rasterized with the same rendering hints as a plain
+ * {@link BufferedImage#createGraphics()}, and are kept as coverage masks,
+ * which are blended directly into ARGB rasters when drawn.  The least
+ * recently used runs are dropped once the atlas is full.
+ *
+ * There is one shared atlas per font (and so per size); get it with
+ * {@link #getAtlas(Font)}.
+ */
+public class GlyphRunAtlas {
+	private static final int DEFAULT_CAPACITY = 4096;
+
+	private static final ConcurrentMap<Font, GlyphRunAtlas> ATLASES = new ConcurrentHashMap<>();
+
+	/**
+	 * Get the shared atlas for the given font.
+	 */
+	public static GlyphRunAtlas getAtlas (Font font) {
+		GlyphRunAtlas atlas = ATLASES.get(font);
+		if (null == atlas) {
+			ATLASES.putIfAbsent(font, new GlyphRunAtlas(font, DEFAULT_CAPACITY));
+			atlas = ATLASES.get(font);
+		}
+		return atlas;
+	}
+
+
+
+	private Font                                   _font;
+	private FontMetrics                            _metrics;
+	private SynchronizedLRUCache<String, GlyphRun> _runs;
+
+	/**
+	 * Create an atlas for a single font.  Normally, the shared atlas from
+	 * {@link #getAtlas(Font)} should be used instead.
+	 *
+	 * @param font The font in which text is drawn
+	 * @param capacity The maximum number of runs of text to keep
+	 */
+	public GlyphRunAtlas (Font font, int capacity) {
+		_font = font;
+		_runs = new SynchronizedLRUCache<>(capacity);
+
+		Graphics2D g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+		g.setFont(font);
+		_metrics = g.getFontMetrics();
+		g.dispose();
+	}
+
+	public Font getFont () {
+		return _font;
+	}
+
+	/**
+	 * Get the rasterized form of a run of text, rasterizing it if it isn't
+	 * already in the atlas.
+	 */
+	public GlyphRun getRun (String text) {
+		GlyphRun run = _runs.get(text);
+		if (null == run) {
+			synchronized (this) {
+				run = _runs.get(text);
+				if (null == run) {
+					run = rasterize(text);
+					_runs.put(text, run);
+				}
+			}
+		}
+		return run;
+	}
+
+	// Draw the text in white on a transparent background, which leaves the
+	// coverage of each pixel in its alpha channel, and keep only the part
+	// the text actually touches.
+	private GlyphRun rasterize (String text) {
+		int advance = _metrics.stringWidth(text);
+		int ascent = _metrics.getMaxAscent();
+		int pad = _font.getSize() + 2;
+		int width = advance + 2 * pad;
+		int height = ascent + _metrics.getMaxDescent() + 2 * pad;
+
+		BufferedImage scratch = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = scratch.createGraphics();
+		g.setFont(_font);
+		g.setColor(Color.WHITE);
+		g.drawString(text, pad, pad + ascent);
+		g.dispose();
+
+		int[] pixels = ((DataBufferInt) scratch.getRaster().getDataBuffer()).getData();
+		int minX = width, minY = height, maxX = -1, maxY = -1;
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				if (0 != (pixels[y * width + x] >>> 24)) {
+					minX = Math.min(minX, x);
+					maxX = Math.max(maxX, x);
+					minY = Math.min(minY, y);
+					maxY = Math.max(maxY, y);
+				}
+			}
+		}
+		if (maxX < 0) {
+			return new GlyphRun(advance, 0, 0, 0, 0, new byte[0]);
+		}
+
+		int runWidth = maxX - minX + 1;
+		int runHeight = maxY - minY + 1;
+		byte[] coverage = new byte[runWidth * runHeight];
+		for (int y = 0; y < runHeight; ++y) {
+			for (int x = 0; x < runWidth; ++x) {
+				coverage[y * runWidth + x] = (byte) (pixels[(y + minY) * width + x + minX] >>> 24);
+			}
+		}
+		return new GlyphRun(advance, minX - pad, minY - pad - ascent, runWidth, runHeight, coverage);
+	}
+
+
+
+	/**
+	 * A single rasterized run of text.
+	 */
+	public static class GlyphRun {
+		private int    _advance;
+		// Position of the mask's top left corner, relative to the start of the
+		// baseline
+		private int    _offsetX;
+		private int    _offsetY;
+		private int    _width;
+		private int    _height;
+		private byte[] _coverage;
+
+		GlyphRun (int advance, int offsetX, int offsetY, int width, int height, byte[] coverage) {
+			_advance = advance;
+			_offsetX = offsetX;
+			_offsetY = offsetY;
+			_width = width;
+			_height = height;
+			_coverage = coverage;
+		}
+
+		/**
+		 * Get the width of the text, as {@link FontMetrics#stringWidth(String)}
+		 * would give it.
+		 */
+		public int getAdvance () {
+			return _advance;
+		}
+
+		/**
+		 * Draw this run of text into an ARGB raster, as
+		 * {@link Graphics2D#drawString(String, int, int)} would.
+		 *
+		 * @param raster The pixels of the image on which to draw
+		 * @param rasterWidth The width of the image
+		 * @param clipMinX The left edge of the area on which to draw
+		 * @param clipMinY The top edge of the area on which to draw
+		 * @param clipMaxX The right edge (exclusive) of the area on which to
+		 *            draw
+		 * @param clipMaxY The bottom edge (exclusive) of the area on which to
+		 *            draw
+		 * @param x The start of the text's baseline
+		 * @param baseline The y coordinate of the text's baseline
+		 * @param argb The colour of the text
+		 */
+		public void draw (int[] raster, int rasterWidth,
+		                  int clipMinX, int clipMinY, int clipMaxX, int clipMaxY,
+		                  int x, int baseline, int argb) {
+			int left = x + _offsetX;
+			int top = baseline + _offsetY;
+			int startX = Math.max(left, clipMinX);
+			int endX = Math.min(left + _width, clipMaxX);
+			int startY = Math.max(top, clipMinY);
+			int endY = Math.min(top + _height, clipMaxY);
+			int alpha = argb >>> 24;
+
+			for (int py = startY; py < endY; ++py) {
+				int maskRow = (py - top) * _width - left;
+				int rasterRow = py * rasterWidth;
+				for (int px = startX; px < endX; ++px) {
+					int coverage = _coverage[maskRow + px] & 0xFF;
+					if (0 != coverage) {
+						int i = rasterRow + px;
+						raster[i] = blend(raster[i], argb, (alpha * coverage + 127) / 255);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Composite a colour over a non-premultiplied ARGB pixel, as
+	 * {@link java.awt.AlphaComposite#SrcOver} would.
+	 *
+	 * @param dst The existing pixel
+	 * @param src The colour to draw; its alpha is ignored
+	 * @param srcAlpha The alpha (0-255) with which to draw src
+	 */
+	public static int blend (int dst, int src, int srcAlpha) {
+		int dstAlpha = dst >>> 24;
+		if (255 == srcAlpha || 0 == dstAlpha) {
+			return (srcAlpha << 24) | (src & 0xFFFFFF);
+		}
+		// Contribution of the destination, 0-255*255
+		int dstWeight = dstAlpha * (255 - srcAlpha);
+		int srcWeight = srcAlpha * 255;
+		int outWeight = srcWeight + dstWeight;
+		int outAlpha = (outWeight + 127) / 255;
+
+		int r = (((src >> 16) & 0xFF) * srcWeight + ((dst >> 16) & 0xFF) * dstWeight) / outWeight;
+		int g = (((src >>  8) & 0xFF) * srcWeight + ((dst >>  8) & 0xFF) * dstWeight) / outWeight;
+		int b = ((src & 0xFF) * srcWeight + (dst & 0xFF) * dstWeight) / outWeight;
+		return (outAlpha << 24) | (r << 16) | (g << 8) | b;
+	}
+}
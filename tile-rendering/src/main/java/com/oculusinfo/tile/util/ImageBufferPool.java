@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A pool of reusable ARGB image buffers, one pool per image size, so that rendering a tile
+ * doesn't have to allocate a new multi-hundred-kilobyte image each time.
+ *
+ * Images should be {@link #acquire acquired} by renderers, and {@link #release released} by
+ * whoever finally consumes them (normally the image encoder) once they are no longer needed.
+ * Images that are never released are simply garbage-collected.
+ *
+ * The pool also holds one shared, immutable blank image per size, for empty tiles; it is never
+ * handed out by {@link #acquire}, and must not be drawn upon.
+ */
+public class ImageBufferPool {
+	private static final int                                   MAX_POOLED_PER_SIZE = 32;
+
+	private static final ConcurrentMap<Long, BlockingQueue<BufferedImage>> POOLS = new ConcurrentHashMap<>();
+	private static final ConcurrentMap<Long, BufferedImage>              BLANKS = new ConcurrentHashMap<>();
+
+
+
+	private static Long getKey (int width, int height) {
+		return (((long) width) << 32) | (height & 0xFFFFFFFFL);
+	}
+
+	private static BlockingQueue<BufferedImage> getPool (int width, int height) {
+		Long key = getKey(width, height);
+		BlockingQueue<BufferedImage> pool = POOLS.get(key);
+		if (null == pool) {
+			POOLS.putIfAbsent(key, new ArrayBlockingQueue<BufferedImage>(MAX_POOLED_PER_SIZE));
+			pool = POOLS.get(key);
+		}
+		return pool;
+	}
+
+	/**
+	 * Get a fully transparent ARGB image of the given size, reusing a released one if possible.
+	 */
+	public static BufferedImage acquire (int width, int height) {
+		BufferedImage image = getPool(width, height).poll();
+		if (null == image) {
+			return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		}
+		Arrays.fill(((DataBufferInt) image.getRaster().getDataBuffer()).getData(), 0);
+		return image;
+	}
+
+	/**
+	 * Return an image to the pool once it is no longer in use.  Images that can't be reused (the
+	 * shared blank images, and images not of type ARGB) are ignored, as are images beyond the
+	 * pool's capacity.
+	 */
+	public static void release (BufferedImage image) {
+		if (null == image || BufferedImage.TYPE_INT_ARGB != image.getType() || isBlankImage(image)) {
+			return;
+		}
+		getPool(image.getWidth(), image.getHeight()).offer(image);
+	}
+
+	/**
+	 * Get the shared blank image of the given size.
+	 */
+	public static BufferedImage getBlankImage (int width, int height) {
+		Long key = getKey(width, height);
+		BufferedImage blank = BLANKS.get(key);
+		if (null == blank) {
+			BLANKS.putIfAbsent(key, new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB));
+			blank = BLANKS.get(key);
+		}
+		return blank;
+	}
+
+	/**
+	 * Determine if an image is the shared blank image for its size.
+	 */
+	public static boolean isBlankImage (BufferedImage image) {
+		return null != image && image == BLANKS.get(getKey(image.getWidth(), image.getHeight()));
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Composites a stack of ARGB tile images, bottom to top, each with its own
+ * blend mode and opacity, into a single image.
+ *
+ * Layers are accumulated as premultiplied ARGB, in which every blend mode is
+ * a few multiplies and adds per channel with no division, in plain loops over
+ * the whole image.  The result is only converted back to ordinary
+ * (non-premultiplied) ARGB once, at the end.
+ */
+public class ImageCompositor {
+	/**
+	 * The ways in which a layer may be combined with those beneath it.  These
+	 * follow the W3C compositing definitions of the same names.
+	 */
+	public enum BlendMode {
+		/** Draw the layer over those beneath it */
+		Normal,
+		/** Multiply colours, darkening those beneath the layer */
+		Multiply,
+		/** Multiply inverse colours, lightening those beneath the layer */
+		Screen,
+		/** Add colours and opacities, clamping at full intensity */
+		Add;
+
+		/**
+		 * Get the blend mode with the given name, ignoring case.  Null or
+		 * unknown names give {@link #Normal}.
+		 */
+		public static BlendMode fromString (String name) {
+			if (null != name) {
+				for (BlendMode mode: values()) {
+					if (mode.name().equalsIgnoreCase(name.trim())) return mode;
+				}
+			}
+			return Normal;
+		}
+	}
+
+
+
+	private int   _width;
+	private int   _height;
+	// The composite so far, as premultiplied ARGB
+	private int[] _pixels;
+
+	public ImageCompositor (int width, int height) {
+		_width = width;
+		_height = height;
+		_pixels = new int[width * height];
+	}
+
+	// a*b/255, rounded, for a and b in 0-255
+	private static int mul (int a, int b) {
+		int t = a * b + 128;
+		return (t + (t >> 8)) >> 8;
+	}
+
+	/**
+	 * Add a layer on top of the composite so far.
+	 *
+	 * @param layer The layer's image, which must be the same size as the
+	 *            composite
+	 * @param mode How to combine the layer with those beneath it
+	 * @param opacity The opacity (0-1) with which to draw the layer
+	 */
+	public void addLayer (BufferedImage layer, BlendMode mode, double opacity) {
+		if (layer.getWidth() != _width || layer.getHeight() != _height) {
+			throw new IllegalArgumentException("Layer is "+layer.getWidth()+"x"+layer.getHeight()
+			                                   +", but composite is "+_width+"x"+_height);
+		}
+		int layerOpacity = (int) Math.round(Math.max(0.0, Math.min(1.0, opacity)) * 255);
+		if (0 == layerOpacity || ImageBufferPool.isBlankImage(layer)) {
+			return;
+		}
+
+		int[] src;
+		if (BufferedImage.TYPE_INT_ARGB == layer.getType()) {
+			src = ((DataBufferInt) layer.getRaster().getDataBuffer()).getData();
+		} else {
+			src = layer.getRGB(0, 0, _width, _height, null, 0, _width);
+		}
+
+		switch (mode) {
+		case Multiply: multiply(src, layerOpacity); break;
+		case Screen:   screen(src, layerOpacity); break;
+		case Add:      add(src, layerOpacity); break;
+		default:       normal(src, layerOpacity); break;
+		}
+	}
+
+	// Each blend below first premultiplies the source pixel, including the
+	// layer opacity, into sa, sr, sg, sb.
+
+	private void normal (int[] src, int opacity) {
+		int[] dst = _pixels;
+		for (int i = 0; i < dst.length; ++i) {
+			int s = src[i], d = dst[i];
+			int sa = mul(s >>> 24, opacity);
+			int sr = mul((s >> 16) & 0xFF, sa), sg = mul((s >> 8) & 0xFF, sa), sb = mul(s & 0xFF, sa);
+			int inv = 255 - sa;
+			int a = sa + mul(d >>> 24, inv);
+			int r = sr + mul((d >> 16) & 0xFF, inv);
+			int g = sg + mul((d >> 8) & 0xFF, inv);
+			int b = sb + mul(d & 0xFF, inv);
+			dst[i] = (a << 24) | (r << 16) | (g << 8) | b;
+		}
+	}
+
+	private void multiply (int[] src, int opacity) {
+		int[] dst = _pixels;
+		for (int i = 0; i < dst.length; ++i) {
+			int s = src[i], d = dst[i];
+			int sa = mul(s >>> 24, opacity);
+			int sr = mul((s >> 16) & 0xFF, sa), sg = mul((s >> 8) & 0xFF, sa), sb = mul(s & 0xFF, sa);
+			int da = d >>> 24, dr = (d >> 16) & 0xFF, dg = (d >> 8) & 0xFF, db = d & 0xFF;
+			int invS = 255 - sa, invD = 255 - da;
+			// Cs*Cd + Cs*(1-ad) + Cd*(1-as)
+			int a = sa + mul(da, invS);
+			int r = Math.min(255, mul(sr, dr) + mul(sr, invD) + mul(dr, invS));
+			int g = Math.min(255, mul(sg, dg) + mul(sg, invD) + mul(dg, invS));
+			int b = Math.min(255, mul(sb, db) + mul(sb, invD) + mul(db, invS));
+			dst[i] = (a << 24) | (r << 16) | (g << 8) | b;
+		}
+	}
+
+	private void screen (int[] src, int opacity) {
+		int[] dst = _pixels;
+		for (int i = 0; i < dst.length; ++i) {
+			int s = src[i], d = dst[i];
+			int sa = mul(s >>> 24, opacity);
+			int sr = mul((s >> 16) & 0xFF, sa), sg = mul((s >> 8) & 0xFF, sa), sb = mul(s & 0xFF, sa);
+			int da = d >>> 24, dr = (d >> 16) & 0xFF, dg = (d >> 8) & 0xFF, db = d & 0xFF;
+			// Cs + Cd - Cs*Cd
+			int a = sa + da - mul(sa, da);
+			int r = sr + dr - mul(sr, dr);
+			int g = sg + dg - mul(sg, dg);
+			int b = sb + db - mul(sb, db);
+			dst[i] = (a << 24) | (r << 16) | (g << 8) | b;
+		}
+	}
+
+	private void add (int[] src, int opacity) {
+		int[] dst = _pixels;
+		for (int i = 0; i < dst.length; ++i) {
+			int s = src[i], d = dst[i];
+			int sa = mul(s >>> 24, opacity);
+			int sr = mul((s >> 16) & 0xFF, sa), sg = mul((s >> 8) & 0xFF, sa), sb = mul(s & 0xFF, sa);
+			int a = Math.min(255, sa + (d >>> 24));
+			int r = Math.min(255, sr + ((d >> 16) & 0xFF));
+			int g = Math.min(255, sg + ((d >> 8) & 0xFF));
+			int b = Math.min(255, sb + (d & 0xFF));
+			dst[i] = (a << 24) | (r << 16) | (g << 8) | b;
+		}
+	}
+
+	/**
+	 * Get the composite of all layers added so far, as an ordinary ARGB image
+	 * from the {@link ImageBufferPool}.
+	 */
+	public BufferedImage getImage () {
+		BufferedImage image = ImageBufferPool.acquire(_width, _height);
+		int[] out = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		for (int i = 0; i < _pixels.length; ++i) {
+			int p = _pixels[i];
+			int a = p >>> 24;
+			if (0 == a) {
+				out[i] = 0;
+			} else if (255 == a) {
+				out[i] = p;
+			} else {
+				int half = a / 2;
+				int r = Math.min(255, (((p >> 16) & 0xFF) * 255 + half) / a);
+				int g = Math.min(255, (((p >> 8) & 0xFF) * 255 + half) / a);
+				int b = Math.min(255, ((p & 0xFF) * 255 + half) / a);
+				out[i] = (a << 24) | (r << 16) | (g << 8) | b;
+			}
+		}
+		return image;
+	}
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * A PNG encoder tuned for tile images, with control over the deflate compression level and the
+ * scanline filter, and an optional indexed-palette mode for images with few enough colors
+ * (as is typical of ramp-based heatmaps with a limited number of distinct values).
+ *
+ * Palette mode is lossless; images with more than 256 distinct colors are written as true
+ * color, with alpha only if some pixel isn't fully opaque.
+ *
+ * Encoders are immutable, and may be shared between threads.
+ */
+public class PNGEncoder {
+	private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+
+	private static final int COLOR_TYPE_RGB     = 2;
+	private static final int COLOR_TYPE_INDEXED = 3;
+	private static final int COLOR_TYPE_RGBA    = 6;
+
+	/**
+	 * The scanline filter to use.  Adaptive chooses the best filter for each row, using the
+	 * minimum sum of absolute differences heuristic recommended by the PNG specification.
+	 */
+	public enum Filter {
+		None(0), Sub(1), Up(2), Average(3), Paeth(4), Adaptive(-1);
+
+		private final int _type;
+		Filter (int type) {
+			_type = type;
+		}
+	}
+
+
+
+	private final int     _compressionLevel;
+	private final Filter  _filter;
+	private final boolean _allowPalette;
+
+
+
+	/**
+	 * Create an encoder with sensible defaults for tiles: fast compression, adaptive filtering,
+	 * and indexed color where possible.
+	 */
+	public PNGEncoder () {
+		this(Deflater.BEST_SPEED, Filter.Adaptive, true);
+	}
+
+	/**
+	 * @param compressionLevel The deflate compression level, from 0 (none) to 9 (best)
+	 * @param filter The scanline filter to use
+	 * @param allowPalette Whether to write images with at most 256 colors in indexed form
+	 */
+	public PNGEncoder (int compressionLevel, Filter filter, boolean allowPalette) {
+		if (compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException("Illegal PNG compression level "+compressionLevel);
+		}
+		_compressionLevel = compressionLevel;
+		_filter = filter;
+		_allowPalette = allowPalette;
+	}
+
+	/**
+	 * Encode an image as a PNG
+	 */
+	public byte[] encode (BufferedImage image) throws IOException {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] pixels = getPixels(image);
+
+		// Figure out our color type
+		int colorType;
+		int[] palette = null;
+		Map<Integer, Integer> paletteIndices = null;
+		if (_allowPalette) {
+			paletteIndices = getPalette(pixels);
+		}
+		if (null != paletteIndices) {
+			colorType = COLOR_TYPE_INDEXED;
+			palette = new int[paletteIndices.size()];
+			for (Map.Entry<Integer, Integer> entry: paletteIndices.entrySet()) {
+				palette[entry.getValue()] = entry.getKey();
+			}
+		} else if (isOpaque(pixels)) {
+			colorType = COLOR_TYPE_RGB;
+		} else {
+			colorType = COLOR_TYPE_RGBA;
+		}
+		int bytesPerPixel = (COLOR_TYPE_INDEXED == colorType ? 1 : (COLOR_TYPE_RGB == colorType ? 3 : 4));
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream(width * height / 4 + 1024);
+		output.write(SIGNATURE);
+
+		ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+		writeInt(header, width);
+		writeInt(header, height);
+		header.write(8);         // bit depth
+		header.write(colorType);
+		header.write(0);         // compression method
+		header.write(0);         // filter method
+		header.write(0);         // no interlacing
+		writeChunk(output, "IHDR", header.toByteArray());
+
+		if (COLOR_TYPE_INDEXED == colorType) {
+			byte[] plte = new byte[palette.length * 3];
+			byte[] trns = new byte[palette.length];
+			boolean translucent = false;
+			for (int i = 0; i < palette.length; ++i) {
+				int argb = palette[i];
+				plte[3 * i] = (byte) (argb >> 16);
+				plte[3 * i + 1] = (byte) (argb >> 8);
+				plte[3 * i + 2] = (byte) argb;
+				trns[i] = (byte) (argb >>> 24);
+				translucent = translucent || (0xFF != (argb >>> 24));
+			}
+			writeChunk(output, "PLTE", plte);
+			if (translucent) writeChunk(output, "tRNS", trns);
+		}
+
+		// Filter and compress our scanlines
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(width * height / 4 + 1024);
+		Deflater deflater = new Deflater(_compressionLevel);
+		try {
+			DeflaterOutputStream deflaterStream = new DeflaterOutputStream(compressed, deflater, 16384);
+			int rowBytes = width * bytesPerPixel;
+			byte[] previousRow = new byte[rowBytes];
+			byte[] row = new byte[rowBytes];
+			byte[][] filtered = new byte[5][rowBytes + 1];
+			for (int y = 0; y < height; ++y) {
+				int offset = y * width;
+				for (int x = 0; x < width; ++x) {
+					int argb = pixels[offset + x];
+					int i = x * bytesPerPixel;
+					if (COLOR_TYPE_INDEXED == colorType) {
+						row[i] = (byte) paletteIndices.get(0 == (argb >>> 24) ? 0 : argb).intValue();
+					} else {
+						row[i] = (byte) (argb >> 16);
+						row[i + 1] = (byte) (argb >> 8);
+						row[i + 2] = (byte) argb;
+						if (COLOR_TYPE_RGBA == colorType) row[i + 3] = (byte) (argb >>> 24);
+					}
+				}
+
+				deflaterStream.write(filterRow(row, previousRow, bytesPerPixel, filtered));
+
+				byte[] swap = previousRow;
+				previousRow = row;
+				row = swap;
+			}
+			deflaterStream.finish();
+		} finally {
+			deflater.end();
+		}
+		writeChunk(output, "IDAT", compressed.toByteArray());
+		writeChunk(output, "IEND", new byte[0]);
+
+		return output.toByteArray();
+	}
+
+	// Get the ARGB pixels of an image, directly from its buffer where possible.
+	private static int[] getPixels (BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		if (BufferedImage.TYPE_INT_ARGB == image.getType() &&
+		    image.getRaster().getDataBuffer() instanceof DataBufferInt &&
+		    image.getSampleModel() instanceof SinglePixelPackedSampleModel &&
+		    ((SinglePixelPackedSampleModel) image.getSampleModel()).getScanlineStride() == width &&
+		    0 == image.getRaster().getSampleModelTranslateX() &&
+		    0 == image.getRaster().getSampleModelTranslateY()) {
+			int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			if (data.length == width * height) return data;
+		}
+		return image.getRGB(0, 0, width, height, null, 0, width);
+	}
+
+	// Get a palette of the colors in the image, if there are few enough of them
+	private static Map<Integer, Integer> getPalette (int[] pixels) {
+		Map<Integer, Integer> palette = new HashMap<>();
+		int lastColor = 0;
+		boolean first = true;
+		for (int argb: pixels) {
+			// Fully transparent pixels are all the same to us
+			if (0 == (argb >>> 24)) argb = 0;
+			if (first || argb != lastColor) {
+				if (!palette.containsKey(argb)) {
+					if (palette.size() == 256) return null;
+					palette.put(argb, palette.size());
+				}
+				lastColor = argb;
+				first = false;
+			}
+		}
+		return palette;
+	}
+
+	private static boolean isOpaque (int[] pixels) {
+		for (int argb: pixels) {
+			if (0xFF != (argb >>> 24)) return false;
+		}
+		return true;
+	}
+
+	// Filter a row, returning the filter type byte followed by the filtered row
+	private byte[] filterRow (byte[] row, byte[] previousRow, int bytesPerPixel, byte[][] filtered) {
+		if (Filter.Adaptive != _filter) {
+			applyFilter(_filter._type, row, previousRow, bytesPerPixel, filtered[_filter._type]);
+			return filtered[_filter._type];
+		}
+
+		int bestType = 0;
+		long bestSum = Long.MAX_VALUE;
+		for (int type = 0; type < 5; ++type) {
+			applyFilter(type, row, previousRow, bytesPerPixel, filtered[type]);
+			long sum = 0;
+			byte[] candidate = filtered[type];
+			for (int i = 1; i < candidate.length && sum < bestSum; ++i) {
+				sum += Math.abs((int) candidate[i]);
+			}
+			if (sum < bestSum) {
+				bestSum = sum;
+				bestType = type;
+			}
+		}
+		return filtered[bestType];
+	}
+
+	private static void applyFilter (int type, byte[] row, byte[] previousRow, int bpp, byte[] output) {
+		output[0] = (byte) type;
+		for (int i = 0; i < row.length; ++i) {
+			int raw = row[i] & 0xFF;
+			int left = i >= bpp ? row[i - bpp] & 0xFF : 0;
+			int up = previousRow[i] & 0xFF;
+			int upperLeft = i >= bpp ? previousRow[i - bpp] & 0xFF : 0;
+			int predictor;
+			switch (type) {
+			case 1: predictor = left; break;
+			case 2: predictor = up; break;
+			case 3: predictor = (left + up) >> 1; break;
+			case 4: predictor = paeth(left, up, upperLeft); break;
+			default: predictor = 0;
+			}
+			output[i + 1] = (byte) (raw - predictor);
+		}
+	}
+
+	private static int paeth (int a, int b, int c) {
+		int p = a + b - c;
+		int pa = Math.abs(p - a);
+		int pb = Math.abs(p - b);
+		int pc = Math.abs(p - c);
+		if (pa <= pb && pa <= pc) return a;
+		else if (pb <= pc) return b;
+		else return c;
+	}
+
+	private static void writeInt (ByteArrayOutputStream output, int value) {
+		output.write(value >>> 24);
+		output.write(value >>> 16);
+		output.write(value >>> 8);
+		output.write(value);
+	}
+
+	private static void writeChunk (ByteArrayOutputStream output, String type, byte[] data) throws IOException {
+		byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+		CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		crc.update(data);
+
+		writeInt(output, data.length);
+		output.write(typeBytes);
+		output.write(data);
+		writeInt(output, (int) crc.getValue());
+	}
+}
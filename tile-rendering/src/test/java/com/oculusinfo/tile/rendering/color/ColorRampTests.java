@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rendering.color;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oculusinfo.tile.rendering.color.impl.AbstractColorRamp;
+import com.oculusinfo.tile.rendering.color.impl.GreyColorRamp;
+import com.oculusinfo.tile.rendering.color.impl.HueColorRamp;
+import com.oculusinfo.tile.rendering.color.impl.SteppedGradientColorRamp;
+import com.oculusinfo.tile.rendering.color.impl.WareColorRamp;
+
+public class ColorRampTests {
+	private static final List<FixedPoint> WARE_REDS = Arrays.asList(new FixedPoint(0, 0.25), new FixedPoint(0.25, 0.9), new FixedPoint(0.5, 0.1), new FixedPoint(0.75, 1));
+	private static final List<FixedPoint> WARE_BLUES = Arrays.asList(new FixedPoint(0, 0.25), new FixedPoint(0.25, 0), new FixedPoint(0.85, 0), new FixedPoint(1, 1));
+	private static final List<FixedPoint> OPAQUE = Arrays.asList(new FixedPoint(0, 1.0), new FixedPoint(1, 1.0));
+
+	// Table lookups may differ from exact calculation by rounding only
+	private void assertColorsClose (int expected, int actual) {
+		for (int shift = 0; shift < 32; shift += 8) {
+			int e = (expected >>> shift) & 0xFF;
+			int a = (actual >>> shift) & 0xFF;
+			Assert.assertTrue(String.format("Expected %08x, got %08x", expected, actual), Math.abs(e - a) <= 1);
+		}
+	}
+
+	@Test
+	public void testTableMatchesFixedPoints () {
+		ColorRamp ramp = new WareColorRamp(false, 1.0);
+		List<FixedPoint> noGreens = Arrays.asList();
+		for (int i = 0; i <= 1000; ++i) {
+			double scale = i / 1000.0;
+			int expected = AbstractColorRamp.smoothBetweenFixedPoints(WARE_REDS, noGreens, WARE_BLUES, OPAQUE, scale, 1.0);
+			assertColorsClose(expected, ramp.getRGB(scale));
+		}
+	}
+
+	@Test
+	public void testInversion () {
+		ColorRamp normal = new GreyColorRamp(false, 1.0);
+		ColorRamp inverted = new GreyColorRamp(true, 1.0);
+		for (int i = 0; i <= 100; ++i) {
+			double scale = i / 100.0;
+			assertColorsClose(normal.getRGB(1.0 - scale), inverted.getRGB(scale));
+		}
+		Assert.assertEquals(0xFFFFFFFF, inverted.getRGB(0.0));
+		Assert.assertEquals(0xFF000000, inverted.getRGB(1.0));
+	}
+
+	@Test
+	public void testOpacityAndAlphaScale () {
+		ColorRamp ramp = new GreyColorRamp(false, 0.5);
+		Assert.assertEquals(127, ramp.getRGB(0.5) >>> 24);
+		Assert.assertEquals(63, ramp.getRGBA(0.5, 0.5) >>> 24);
+		Assert.assertEquals(ramp.getRGB(0.5) & 0xFFFFFF, ramp.getRGBA(0.5, 0.5) & 0xFFFFFF);
+	}
+
+	@Test
+	public void testOutOfRangeScalesClamp () {
+		ColorRamp ramp = SteppedGradientColorRamp.from(Arrays.asList(Color.RED, Color.GREEN, Color.BLUE));
+		Assert.assertEquals(Color.RED.getRGB(), ramp.getRGB(-3.0));
+		Assert.assertEquals(Color.BLUE.getRGB(), ramp.getRGB(7.0));
+		Assert.assertEquals(Color.RED.getRGB(), ramp.getRGB(Double.NaN));
+		assertColorsClose(Color.GREEN.getRGB(), ramp.getRGB(0.5));
+	}
+
+	@Test
+	public void testBatchMatchesSingle () {
+		ColorRamp[] ramps = new ColorRamp[] {
+			new WareColorRamp(true, 1.0),
+			new HueColorRamp(0.2, 0.8),
+			SteppedGradientColorRamp.hot(false)
+		};
+		double[] scales = new double[257];
+		for (int i = 0; i < scales.length; ++i) {
+			scales[i] = (i - 10) / 230.0;
+		}
+		for (ColorRamp ramp: ramps) {
+			int[] colors = new int[scales.length];
+			ramp.getRGB(scales, colors);
+			for (int i = 0; i < scales.length; ++i) {
+				Assert.assertEquals(ramp.getRGB(scales[i]), colors[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rendering.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oculusinfo.factory.util.Pair;
+
+public class TopTextScoresImageRendererTests {
+	private static List<Pair<String, Double>> randomBin (int size) {
+		Random random = new Random(size);
+		List<Pair<String, Double>> bin = new ArrayList<>();
+		for (int i = 0; i < size; ++i) {
+			bin.add(new Pair<String, Double>("term" + i, random.nextGaussian()));
+		}
+		return bin;
+	}
+
+	private static List<Double> scores (List<Pair<String, Double>> entries) {
+		List<Double> scores = new ArrayList<>();
+		for (Pair<String, Double> entry: entries) {
+			scores.add(entry.getSecond());
+		}
+		return scores;
+	}
+
+	@Test
+	public void testSmallBinsAreFullySorted () {
+		List<Pair<String, Double>> bin = randomBin(7);
+		List<Double> expected = scores(bin);
+		Collections.sort(expected);
+
+		Assert.assertEquals(expected, scores(TopTextScoresImageRenderer.selectScores(bin, 5, 5)));
+	}
+
+	@Test
+	public void testSelectsExtremes () {
+		List<Pair<String, Double>> bin = randomBin(200);
+		List<Double> sorted = scores(bin);
+		Collections.sort(sorted);
+
+		List<Double> expected = new ArrayList<>(sorted.subList(0, 5));
+		expected.addAll(sorted.subList(197, 200));
+		Assert.assertEquals(expected, scores(TopTextScoresImageRenderer.selectScores(bin, 5, 3)));
+
+		Assert.assertEquals(sorted.subList(0, 10), scores(TopTextScoresImageRenderer.selectScores(bin, 10, 0)));
+	}
+
+	@Test
+	public void testTopAndBottomMatchesFullSort () {
+		List<Pair<String, Double>> bin = randomBin(50);
+		List<Pair<String, Double>> sorted = new ArrayList<>(bin);
+		Collections.sort(sorted, new java.util.Comparator<Pair<String, Double>>() {
+			@Override
+			public int compare (Pair<String, Double> a, Pair<String, Double> b) {
+				return a.getSecond().compareTo(b.getSecond());
+			}
+		});
+
+		TopAndBottomTextScoresImageRenderer renderer = new TopAndBottomTextScoresImageRenderer();
+		List<Pair<String, Double>> selected = TopTextScoresImageRenderer.selectScores(bin, renderer.getLowScoreCount(), renderer.getHighScoreCount());
+		int[] fromSelected = renderer.getTextsToDraw(selected);
+		int[] fromSorted = renderer.getTextsToDraw(sorted);
+		Assert.assertEquals(fromSorted.length, fromSelected.length);
+		for (int i = 0; i < fromSorted.length; ++i) {
+			Assert.assertEquals(sorted.get(fromSorted[i]), selected.get(fromSelected[i]));
+		}
+	}
+}
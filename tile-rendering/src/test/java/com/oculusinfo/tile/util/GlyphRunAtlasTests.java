@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.util;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GlyphRunAtlasTests {
+	private static final Font FONT = new Font(Font.DIALOG, Font.PLAIN, 12);
+
+	private static int[] getPixels (BufferedImage image) {
+		return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	}
+
+	private static void assertImagesClose (BufferedImage expected, BufferedImage actual) {
+		int[] e = getPixels(expected);
+		int[] a = getPixels(actual);
+		for (int i = 0; i < e.length; ++i) {
+			for (int shift = 0; shift < 32; shift += 8) {
+				int ec = (e[i] >>> shift) & 0xFF;
+				int ac = (a[i] >>> shift) & 0xFF;
+				Assert.assertTrue(String.format("Pixel %d: expected %08x, got %08x", i, e[i], a[i]),
+				                  Math.abs(ec - ac) <= 2);
+			}
+		}
+	}
+
+	private static BufferedImage background (int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(new Color(20, 80, 200));
+		g.fillRect(0, 0, width / 2, height);
+		g.dispose();
+		return image;
+	}
+
+	@Test
+	public void testMatchesDrawString () {
+		Color color = new Color(255, 255, 128, 192);
+		String text = "tweets #topic";
+
+		BufferedImage expected = background(120, 30);
+		Graphics2D g = expected.createGraphics();
+		g.setFont(FONT);
+		g.setColor(color);
+		g.drawString(text, 5, 20);
+		g.dispose();
+
+		BufferedImage actual = background(120, 30);
+		GlyphRunAtlas atlas = new GlyphRunAtlas(FONT, 10);
+		atlas.getRun(text).draw(getPixels(actual), 120, 0, 0, 120, 30, 5, 20, color.getRGB());
+
+		assertImagesClose(expected, actual);
+		Assert.assertEquals(expected.createGraphics().getFontMetrics(FONT).stringWidth(text),
+		                    atlas.getRun(text).getAdvance());
+	}
+
+	@Test
+	public void testClipping () {
+		Color color = Color.WHITE;
+		String text = "clipped text";
+
+		BufferedImage expected = new BufferedImage(60, 20, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = expected.createGraphics();
+		g.setFont(FONT);
+		g.setColor(color);
+		g.clipRect(10, 2, 30, 10);
+		g.drawString(text, 4, 14);
+		g.dispose();
+
+		BufferedImage actual = new BufferedImage(60, 20, BufferedImage.TYPE_INT_ARGB);
+		GlyphRunAtlas.getAtlas(FONT).getRun(text).draw(getPixels(actual), 60, 10, 2, 40, 12, 4, 14, color.getRGB());
+
+		assertImagesClose(expected, actual);
+	}
+
+	@Test
+	public void testRunsAreCached () {
+		GlyphRunAtlas atlas = GlyphRunAtlas.getAtlas(FONT);
+		Assert.assertSame(atlas, GlyphRunAtlas.getAtlas(new Font(Font.DIALOG, Font.PLAIN, 12)));
+		Assert.assertSame(atlas.getRun("abc"), atlas.getRun("abc"));
+		Assert.assertEquals(0, atlas.getRun("").getAdvance());
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+public class ImageBufferPoolTests {
+	@Test
+	public void testReuse () {
+		BufferedImage image = ImageBufferPool.acquire(17, 11);
+		image.setRGB(3, 4, 0xFF123456);
+		ImageBufferPool.release(image);
+
+		BufferedImage reused = ImageBufferPool.acquire(17, 11);
+		Assert.assertSame(image, reused);
+		// Reused images should come back cleared
+		Assert.assertEquals(0, reused.getRGB(3, 4));
+
+		// Different sizes shouldn't be mixed
+		ImageBufferPool.release(reused);
+		Assert.assertNotSame(reused, ImageBufferPool.acquire(11, 17));
+	}
+
+	@Test
+	public void testBlankImagesAreNotPooled () {
+		BufferedImage blank = ImageBufferPool.getBlankImage(13, 7);
+		Assert.assertSame(blank, ImageBufferPool.getBlankImage(13, 7));
+		Assert.assertTrue(ImageBufferPool.isBlankImage(blank));
+
+		ImageBufferPool.release(blank);
+		Assert.assertNotSame(blank, ImageBufferPool.acquire(13, 7));
+		Assert.assertFalse(ImageBufferPool.isBlankImage(new BufferedImage(13, 7, BufferedImage.TYPE_INT_ARGB)));
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.util;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oculusinfo.tile.util.ImageCompositor.BlendMode;
+
+public class ImageCompositorTests {
+	private static BufferedImage randomImage (int width, int height, long seed) {
+		Random random = new Random(seed);
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				// Include some fully transparent and fully opaque pixels
+				int alpha = random.nextInt(4) == 0 ? 0 : (random.nextInt(4) == 0 ? 255 : random.nextInt(256));
+				image.setRGB(x, y, (alpha << 24) | random.nextInt(0x1000000));
+			}
+		}
+		return image;
+	}
+
+	private static BufferedImage solid (int width, int height, Color color) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				image.setRGB(x, y, color.getRGB());
+			}
+		}
+		return image;
+	}
+
+	private static void assertPixelClose (int expected, int actual, int tolerance) {
+		int ea = expected >>> 24, aa = actual >>> 24;
+		Assert.assertTrue(String.format("Expected %08x, got %08x", expected, actual), Math.abs(ea - aa) <= tolerance);
+		// Colour is meaningless, and poorly defined, in nearly transparent pixels
+		if (ea < 8) return;
+		for (int shift = 0; shift < 24; shift += 8) {
+			int e = (expected >>> shift) & 0xFF;
+			int a = (actual >>> shift) & 0xFF;
+			Assert.assertTrue(String.format("Expected %08x, got %08x", expected, actual),
+			                  Math.abs(e - a) <= tolerance + 255 / ea);
+		}
+	}
+
+	@Test
+	public void testNormalMatchesSrcOver () {
+		int width = 32, height = 16;
+		BufferedImage bottom = randomImage(width, height, 1);
+		BufferedImage top = randomImage(width, height, 2);
+
+		BufferedImage expected = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = expected.createGraphics();
+		g.drawImage(bottom, 0, 0, null);
+		g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.6f));
+		g.drawImage(top, 0, 0, null);
+		g.dispose();
+
+		ImageCompositor compositor = new ImageCompositor(width, height);
+		compositor.addLayer(bottom, BlendMode.Normal, 1.0);
+		compositor.addLayer(top, BlendMode.Normal, 0.6);
+		BufferedImage actual = compositor.getImage();
+
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				assertPixelClose(expected.getRGB(x, y), actual.getRGB(x, y), 2);
+			}
+		}
+	}
+
+	@Test
+	public void testOpaqueBlendModes () {
+		Color bottom = new Color(200, 100, 40);
+		Color top = new Color(128, 255, 20);
+
+		ImageCompositor compositor = new ImageCompositor(4, 4);
+		compositor.addLayer(solid(4, 4, bottom), BlendMode.Normal, 1.0);
+		compositor.addLayer(solid(4, 4, top), BlendMode.Multiply, 1.0);
+		assertPixelClose(new Color(100, 100, 3).getRGB(), compositor.getImage().getRGB(1, 1), 1);
+
+		compositor = new ImageCompositor(4, 4);
+		compositor.addLayer(solid(4, 4, bottom), BlendMode.Normal, 1.0);
+		compositor.addLayer(solid(4, 4, top), BlendMode.Screen, 1.0);
+		assertPixelClose(new Color(228, 255, 57).getRGB(), compositor.getImage().getRGB(1, 1), 1);
+
+		compositor = new ImageCompositor(4, 4);
+		compositor.addLayer(solid(4, 4, bottom), BlendMode.Normal, 1.0);
+		compositor.addLayer(solid(4, 4, top), BlendMode.Add, 1.0);
+		assertPixelClose(new Color(255, 255, 60).getRGB(), compositor.getImage().getRGB(1, 1), 1);
+	}
+
+	@Test
+	public void testBlendOverTransparent () {
+		// Over nothing, every mode should just draw the layer
+		Color color = new Color(10, 200, 90, 128);
+		for (BlendMode mode: BlendMode.values()) {
+			ImageCompositor compositor = new ImageCompositor(2, 2);
+			compositor.addLayer(solid(2, 2, color), mode, 1.0);
+			assertPixelClose(color.getRGB(), compositor.getImage().getRGB(0, 0), 2);
+		}
+	}
+
+	@Test
+	public void testBlendModeNames () {
+		Assert.assertEquals(BlendMode.Multiply, BlendMode.fromString("multiply"));
+		Assert.assertEquals(BlendMode.Screen, BlendMode.fromString(" SCREEN "));
+		Assert.assertEquals(BlendMode.Normal, BlendMode.fromString("unknown"));
+		Assert.assertEquals(BlendMode.Normal, BlendMode.fromString(null));
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+public class PNGEncoderTests {
+	private void assertRoundTrip (BufferedImage image, PNGEncoder encoder) throws Exception {
+		BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(encoder.encode(image)));
+		Assert.assertEquals(image.getWidth(), decoded.getWidth());
+		Assert.assertEquals(image.getHeight(), decoded.getHeight());
+		for (int x = 0; x < image.getWidth(); ++x) {
+			for (int y = 0; y < image.getHeight(); ++y) {
+				int expected = image.getRGB(x, y);
+				int actual = decoded.getRGB(x, y);
+				if (0 == (expected >>> 24)) {
+					Assert.assertEquals("Pixel ["+x+", "+y+"] should be transparent", 0, actual >>> 24);
+				} else {
+					Assert.assertEquals("Pixel ["+x+", "+y+"]", expected, actual);
+				}
+			}
+		}
+	}
+
+	private BufferedImage createImage (int colors, boolean opaque) {
+		Random random = new Random(3);
+		int[] palette = new int[colors];
+		for (int i = 0; i < colors; ++i) {
+			palette[i] = random.nextInt() | (opaque ? 0xFF000000 : 0);
+		}
+		BufferedImage image = new BufferedImage(37, 23, BufferedImage.TYPE_INT_ARGB);
+		for (int x = 0; x < image.getWidth(); ++x) {
+			for (int y = 0; y < image.getHeight(); ++y) {
+				image.setRGB(x, y, palette[(x * y + x) % colors]);
+			}
+		}
+		return image;
+	}
+
+	@Test
+	public void testAllFilters () throws Exception {
+		BufferedImage image = createImage(1000, false);
+		for (PNGEncoder.Filter filter: PNGEncoder.Filter.values()) {
+			assertRoundTrip(image, new PNGEncoder(6, filter, false));
+		}
+	}
+
+	@Test
+	public void testOpaqueImage () throws Exception {
+		assertRoundTrip(createImage(1000, true), new PNGEncoder());
+	}
+
+	@Test
+	public void testPaletteImage () throws Exception {
+		BufferedImage image = createImage(40, false);
+		PNGEncoder indexed = new PNGEncoder();
+		PNGEncoder trueColor = new PNGEncoder(Deflater.BEST_SPEED, PNGEncoder.Filter.Adaptive, false);
+		assertRoundTrip(image, indexed);
+		Assert.assertTrue(indexed.encode(image).length < trueColor.encode(image).length);
+	}
+
+	@Test
+	public void testBlankImage () throws Exception {
+		assertRoundTrip(new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB), new PNGEncoder());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testIllegalCompressionLevel () {
+		new PNGEncoder(10, PNGEncoder.Filter.None, true);
+	}
+}
@@ -24,6 +24,7 @@
 package com.oculusinfo.tile;
 
 import com.google.inject.Singleton;
+import com.oculusinfo.tile.metrics.TileMetrics;
 import com.oculusinfo.tile.servlet.DefaultServerConfigModule;
 import com.oculusinfo.tile.servlet.RestModule;
 import com.oculusinfo.tile.servlet.ServletLifecycleListener;
@@ -139,6 +140,8 @@ public class TileServiceConfiguration extends GuiceServletContextListener {
 			}
 		}
 
+		TileMetrics.registerMBean();
+
 		super.contextInitialized( servletContextEvent );
 	}
 
@@ -166,6 +169,8 @@ public class TileServiceConfiguration extends GuiceServletContextListener {
 			}
 		}
 
+		TileMetrics.unregisterMBean();
+
 		super.contextDestroyed( servletContextEvent );
 	}
 
@@ -32,6 +32,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 import com.oculusinfo.binning.TileIndex;
 import com.oculusinfo.binning.TilePyramid;
 import com.oculusinfo.binning.io.PyramidIO;
@@ -39,14 +40,32 @@ import com.oculusinfo.binning.io.PyramidIOFactory;
 import com.oculusinfo.binning.io.serialization.TileSerializer;
 import com.oculusinfo.factory.ConfigurableFactory;
 import com.oculusinfo.factory.ConfigurationException;
+import com.oculusinfo.factory.UberFactory;
 import com.oculusinfo.factory.providers.FactoryProvider;
 import com.oculusinfo.factory.providers.AbstractFactoryProvider;
+import com.oculusinfo.tile.metrics.TileMetrics;
 import com.oculusinfo.tile.rendering.LayerConfiguration;
 import com.oculusinfo.tile.rendering.TileDataImageRenderer;
 import com.oculusinfo.tile.rendering.transformations.tile.TileTransformer;
+import com.oculusinfo.tile.rest.tile.TileRequestScheduler;
 import com.oculusinfo.tile.rest.tile.caching.CachingPyramidIO;
 import com.oculusinfo.tile.rest.tile.caching.CachingPyramidIO.LayerDataChangedListener;
+import com.oculusinfo.tile.rest.tile.caching.TilePrefetcher;
 
+/**
+ * Produces layer configurations that read tiles through a shared {@link CachingPyramidIO}.
+ *
+ * Besides the tiles a client explicitly asks for, the cache is fed by a {@link TilePrefetcher},
+ * which follows each client's pans and zooms and reads ahead of them. This is controlled by the
+ * optional properties
+ * <ul>
+ * <li>com.oculusinfo.tile.prefetch.threads - the maximum number of concurrent prefetch reads
+ * (default 2; 0 turns prefetching off)</li>
+ * <li>com.oculusinfo.tile.prefetch.depth - how many tiles ahead of a pan to read (default 1)</li>
+ * <li>com.oculusinfo.tile.prefetch.warmupLevels - if set, levels 0 through this level of every
+ * configured layer are read into the cache at startup</li>
+ * </ul>
+ */
 @Singleton
 public class CachingLayerConfigurationProvider extends AbstractFactoryProvider<LayerConfiguration>{
 	private static final Logger LOGGER = LoggerFactory.getLogger(CachingLayerConfigurationProvider.class);
@@ -58,6 +77,8 @@ public class CachingLayerConfigurationProvider extends AbstractFactoryProvider<L
     private FactoryProvider<TileTransformer<?>> _tileTransformerFactoryProvider;
     private FactoryProvider<PyramidIO> _cachingProvider;
 	private CachingPyramidIO _pyramidIO;
+	private TilePrefetcher _prefetcher;
+	private int _warmupLevels;
 
     @Inject
     public CachingLayerConfigurationProvider( FactoryProvider<PyramidIO> pyramidIOFactoryProvider,
@@ -73,8 +94,77 @@ public class CachingLayerConfigurationProvider extends AbstractFactoryProvider<L
         _tileTransformerFactoryProvider = tileTransformerFactoryProvider;
         _cachingProvider = new CachingPyramidIOProvider();
 		_pyramidIO = new CachingPyramidIO();
+		_prefetcher = new TilePrefetcher(2, 1);
+		_warmupLevels = -1;
+		TileMetrics.registerGauge(TileMetrics.PREFETCH_QUEUE, new TileMetrics.Gauge() {
+			@Override
+			public long getValue () {
+				return _prefetcher.getQueueDepth();
+			}
+		});
     }
 
+	/*
+	 * Speculative reads - prefetches and warm-up - go through the same
+	 * scheduler as client requests, behind them.
+	 */
+	@Inject(optional = true)
+	public void setScheduler (TileRequestScheduler scheduler) {
+		_pyramidIO.setScheduler(scheduler);
+	}
+
+	@Inject(optional = true)
+	public void setPrefetchThreads (@Named("com.oculusinfo.tile.prefetch.threads") int threads) {
+		_prefetcher.setThreads(threads);
+	}
+
+	@Inject(optional = true)
+	public void setPrefetchDepth (@Named("com.oculusinfo.tile.prefetch.depth") int depth) {
+		_prefetcher.setDepth(depth);
+	}
+
+	@Inject(optional = true)
+	public void setWarmupLevels (@Named("com.oculusinfo.tile.prefetch.warmupLevels") int levels) {
+		_warmupLevels = levels;
+	}
+
+	public boolean isWarmupEnabled () {
+		return _warmupLevels >= 0 && _prefetcher.isEnabled();
+	}
+
+	/**
+	 * Queue the top levels of a layer to be read into the cache, if so
+	 * configured.
+	 *
+	 * @param config A configuration of the layer, as produced by this provider
+	 */
+	public void warmUp (LayerConfiguration config) {
+		if (!isWarmupEnabled()) {
+			return;
+		}
+		try {
+			// Producing the pyramid IO makes sure the cache knows where to read from
+			config.produce(PyramidIO.class);
+			TileSerializer<?> serializer = config.produce(TileSerializer.class);
+			String pyramidId = config.getPropertyValue(LayerConfiguration.LAYER_ID);
+			LOGGER.info("Warming up levels 0 to {} of layer {}", _warmupLevels, pyramidId);
+			_prefetcher.warmUp(_pyramidIO, pyramidId, serializer, _warmupLevels);
+		} catch (ConfigurationException e) {
+			LOGGER.warn("Error warming up layer", e);
+		}
+	}
+
+	/*
+	 * Identify the client making a request of a layer, so the prefetcher can
+	 * follow its movements.
+	 */
+	private static String getSessionKey (String session, String layer) {
+		if (null == session) {
+			return layer;
+		}
+		return session + "|" + layer;
+	}
+
 	public void addLayerListener (LayerDataChangedListener listener) {
 		_pyramidIO.addLayerListener(listener);
 	}
@@ -116,10 +206,24 @@ public class CachingLayerConfigurationProvider extends AbstractFactoryProvider<L
 		public void prepareForRendering (String layer,
 		                                 TileIndex tile,
 		                                 Iterable<TileIndex> tileSet) {
+			prepareForRendering(TileRequestScheduler.getCurrentSession(), layer, tile, tileSet);
+		}
+
+		@Override
+		public void prepareForRendering (String session,
+		                                 String layer,
+		                                 TileIndex tile,
+		                                 Iterable<TileIndex> tileSet) {
 			try {
 				TileSerializer<?> serializer = produce(TileSerializer.class);
 				String pyramidId = getPropertyValue(LayerConfiguration.LAYER_ID);
 				_pyramidIO.requestTiles(pyramidId, serializer, tileSet);
+
+				if (_prefetcher.isEnabled()) {
+					int coarseness = getPropertyValue(LayerConfiguration.COARSENESS);
+					List<TileIndex> predicted = _prefetcher.observe(getSessionKey(session, layer), tile, coarseness);
+					_prefetcher.prefetch(_pyramidIO, pyramidId, serializer, predicted);
+				}
 			} catch (IOException e) {
 				LOGGER.warn("Error requesting tile set", e);
 			} catch (ConfigurationException e) {
@@ -163,7 +267,7 @@ public class CachingLayerConfigurationProvider extends AbstractFactoryProvider<L
 			if (!_baseInitialized) {
 				try {
 					String pyramidId = _parent.getPropertyValue(LayerConfiguration.LAYER_ID);
-					_pyramidIO.setupBasePyramidIO(pyramidId, _baseFactory);
+					_pyramidIO.setupBasePyramidIO(pyramidId, _baseFactory, getBackend());
 					_baseInitialized = true;
 				} catch (ConfigurationException e) {
 					LOGGER.warn("Error determining layer id", e);
@@ -171,6 +275,15 @@ public class CachingLayerConfigurationProvider extends AbstractFactoryProvider<L
 			}
 		}
 
+		// The type of storage the base pyramid reads, named as TileServiceImpl
+		// names it to the scheduler
+		private String getBackend () throws ConfigurationException {
+			if (_baseFactory.hasPropertyValue(UberFactory.FACTORY_TYPE)) {
+				return _baseFactory.getPropertyValue(UberFactory.FACTORY_TYPE);
+			}
+			return "unknown";
+		}
+
 		@Override
 		protected PyramidIO create () {
 			setupBasePyramidIO();
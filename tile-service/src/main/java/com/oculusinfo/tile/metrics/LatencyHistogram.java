@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies, in the manner of HdrHistogram.
+ *
+ * Latencies are recorded in microseconds into log-linear buckets: values below
+ * 32us get a bucket each, and each power of two above that is split into 16
+ * equal buckets, so any reported percentile is within about 6% of the true
+ * value.  Recording is a couple of atomic increments, so it may be done on
+ * every request from any number of threads.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS     = 1 << SUB_BUCKET_BITS;
+	private static final int HALF_BUCKETS    = SUB_BUCKETS >> 1;
+	// Values of 2^36us (about 19 hours) and above all land in the last bucket
+	private static final int MAX_MAGNITUDE   = 36;
+	private static final int BUCKETS         = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * HALF_BUCKETS + HALF_BUCKETS;
+
+	private final AtomicLongArray _counts;
+	private final AtomicLong      _count;
+	private final AtomicLong      _total;
+	private final AtomicLong      _max;
+
+	public LatencyHistogram () {
+		_counts = new AtomicLongArray(BUCKETS);
+		_count = new AtomicLong();
+		_total = new AtomicLong();
+		_max = new AtomicLong();
+	}
+
+	/**
+	 * Record one latency.
+	 *
+	 * @param nanos The latency, in nanoseconds
+	 */
+	public void record (long nanos) {
+		long micros = Math.max(0L, nanos / 1000L);
+		_counts.incrementAndGet(getBucket(micros));
+		_count.incrementAndGet();
+		_total.addAndGet(micros);
+		long max = _max.get();
+		while (micros > max && !_max.compareAndSet(max, micros)) {
+			max = _max.get();
+		}
+	}
+
+	/**
+	 * Record the time elapsed since a start time obtained from
+	 * {@link System#nanoTime()}.
+	 */
+	public void recordSince (long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	public void reset () {
+		for (int i = 0; i < BUCKETS; ++i) {
+			_counts.set(i, 0L);
+		}
+		_count.set(0L);
+		_total.set(0L);
+		_max.set(0L);
+	}
+
+	public long getCount () {
+		return _count.get();
+	}
+
+	/**
+	 * @return The mean latency, in milliseconds
+	 */
+	public double getMean () {
+		long count = _count.get();
+		if (0 == count) return 0.0;
+		return _total.get() / (double) count / 1000.0;
+	}
+
+	/**
+	 * @return The largest latency recorded, in milliseconds
+	 */
+	public double getMax () {
+		return _max.get() / 1000.0;
+	}
+
+	/**
+	 * Get a percentile of the recorded latencies.
+	 *
+	 * Recording may go on while this is calculated; the result then reflects
+	 * some of the concurrent records and not others, which is fine for
+	 * monitoring.
+	 *
+	 * @param percentile The percentile wanted, from 0 to 100
+	 * @return The latency at that percentile, in milliseconds
+	 */
+	public double getPercentile (double percentile) {
+		long[] counts = new long[BUCKETS];
+		long count = 0;
+		for (int i = 0; i < BUCKETS; ++i) {
+			counts[i] = _counts.get(i);
+			count += counts[i];
+		}
+		if (0 == count) return 0.0;
+
+		long rank = Math.max(1L, (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; ++i) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(getBucketMidpoint(i), _max.get()) / 1000.0;
+			}
+		}
+		return getMax();
+	}
+
+	static int getBucket (long micros) {
+		if (micros < SUB_BUCKETS) return (int) micros;
+		int magnitude = 63 - Long.numberOfLeadingZeros(micros);
+		if (magnitude > MAX_MAGNITUDE) return BUCKETS - 1;
+		// Keep the top SUB_BUCKET_BITS bits, the first of which is always set
+		int shift = magnitude - SUB_BUCKET_BITS + 1;
+		return shift * HALF_BUCKETS + (int) (micros >>> shift);
+	}
+
+	static long getBucketMidpoint (int bucket) {
+		if (bucket < SUB_BUCKETS) return bucket;
+		int shift = bucket / HALF_BUCKETS - 1;
+		long low = (long) (bucket - shift * HALF_BUCKETS) << shift;
+		return low + ((1L << shift) >> 1);
+	}
+
+	/**
+	 * Record one latency, given in some other unit.
+	 */
+	public void record (long duration, TimeUnit unit) {
+		record(unit.toNanos(duration));
+	}
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process-wide metrics for the tile-serving path: latency histograms for each
+ * stage of rendering a tile, for each layer, and for each storage backend;
+ * counts of tiles and bytes served and of tile cache hits; and gauges of work
+ * queue depths.
+ *
+ * Everything recorded here is lock-free, so it is cheap enough to record on
+ * every request.  Metrics are available as JSON through the metrics resource,
+ * and through JMX once {@link #registerMBean()} has been called.
+ */
+public class TileMetrics {
+	private static final Logger LOGGER = LoggerFactory.getLogger(TileMetrics.class);
+
+	// Stages of rendering an image tile
+	public static final String RENDER_CONFIG       = "render.config";
+	public static final String RENDER_READ         = "render.read";
+	public static final String RENDER_DESERIALIZE  = "render.deserialize";
+	public static final String RENDER_COMBINE      = "render.combine";
+	public static final String RENDER_TRANSFORM    = "render.transform";
+	public static final String RENDER_RENDER       = "render.render";
+	public static final String RENDER_ENCODE       = "render.encode";
+	public static final String SCHEDULER_WAIT      = "scheduler.wait";
+
+	// Prefixes of per-layer and per-backend latencies
+	public static final String LAYER_PREFIX        = "layer.";
+	public static final String BACKEND_PREFIX      = "backend.";
+
+	// Counters
+	public static final String IMAGE_TILES         = "tiles.image";
+	public static final String IMAGE_BYTES         = "bytes.image";
+	public static final String DATA_TILES          = "tiles.data";
+	public static final String DATA_BYTES          = "bytes.data";
+	public static final String CACHE_REQUESTS      = "cache.requests";
+	public static final String CACHE_HITS          = "cache.hits";
+	public static final String SCHEDULER_SHED      = "scheduler.shed";
+	public static final String SCHEDULER_CANCELLED = "scheduler.cancelled";
+
+	// Gauges
+	public static final String ENCODER_QUEUE       = "queue.encoder";
+	public static final String COMPOSITE_QUEUE     = "queue.composite";
+	public static final String PREFETCH_QUEUE      = "queue.prefetch";
+	public static final String SCHEDULER_QUEUE     = "queue.scheduler";
+
+	private static final String MBEAN_NAME = "com.oculusinfo.tile:type=TileMetrics";
+
+	private static final ConcurrentMap<String, LatencyHistogram> LATENCIES = new ConcurrentHashMap<>();
+	private static final ConcurrentMap<String, AtomicLong>       COUNTERS  = new ConcurrentHashMap<>();
+	private static final ConcurrentMap<String, Gauge>            GAUGES    = new ConcurrentHashMap<>();
+
+
+
+	/**
+	 * A value that is read when metrics are reported, rather than recorded as
+	 * it changes.
+	 */
+	public interface Gauge {
+		public long getValue ();
+	}
+
+	private TileMetrics () {
+	}
+
+
+
+	/**
+	 * Get the named latency histogram, creating it if it doesn't yet exist.
+	 */
+	public static LatencyHistogram getLatency (String name) {
+		LatencyHistogram histogram = LATENCIES.get(name);
+		if (null == histogram) {
+			LatencyHistogram newHistogram = new LatencyHistogram();
+			histogram = LATENCIES.putIfAbsent(name, newHistogram);
+			if (null == histogram) histogram = newHistogram;
+		}
+		return histogram;
+	}
+
+	/**
+	 * Record the time elapsed since a start time obtained from
+	 * {@link System#nanoTime()} in the named latency histogram.
+	 *
+	 * @return The current time, so that consecutive stages may be timed with
+	 *         <code>start = TileMetrics.recordSince(STAGE, start);</code>
+	 */
+	public static long recordSince (String name, long startNanos) {
+		long now = System.nanoTime();
+		getLatency(name).record(now - startNanos);
+		return now;
+	}
+
+	/**
+	 * Add to the named counter, creating it if it doesn't yet exist.
+	 */
+	public static void increment (String name, long delta) {
+		AtomicLong counter = COUNTERS.get(name);
+		if (null == counter) {
+			AtomicLong newCounter = new AtomicLong();
+			counter = COUNTERS.putIfAbsent(name, newCounter);
+			if (null == counter) counter = newCounter;
+		}
+		counter.addAndGet(delta);
+	}
+
+	public static long getCount (String name) {
+		AtomicLong counter = COUNTERS.get(name);
+		return null == counter ? 0L : counter.get();
+	}
+
+	/**
+	 * Register a gauge, replacing any previous gauge of the same name.
+	 */
+	public static void registerGauge (String name, Gauge gauge) {
+		GAUGES.put(name, gauge);
+	}
+
+	public static void unregisterGauge (String name) {
+		GAUGES.remove(name);
+	}
+
+	/**
+	 * @return The fraction of tile requests served from the tile cache, or 0
+	 *         if there have been none
+	 */
+	public static double getCacheHitRatio () {
+		long requests = getCount(CACHE_REQUESTS);
+		if (0 == requests) return 0.0;
+		return getCount(CACHE_HITS) / (double) requests;
+	}
+
+	/**
+	 * Clear all counters and latency histograms; gauges are left registered.
+	 */
+	public static void reset () {
+		for (LatencyHistogram histogram: LATENCIES.values()) {
+			histogram.reset();
+		}
+		for (AtomicLong counter: COUNTERS.values()) {
+			counter.set(0L);
+		}
+	}
+
+
+
+	public static Map<String, Long> getCounters () {
+		Map<String, Long> counters = new TreeMap<>();
+		for (Map.Entry<String, AtomicLong> entry: COUNTERS.entrySet()) {
+			counters.put(entry.getKey(), entry.getValue().get());
+		}
+		return counters;
+	}
+
+	public static Map<String, Long> getGauges () {
+		Map<String, Long> gauges = new TreeMap<>();
+		for (Map.Entry<String, Gauge> entry: GAUGES.entrySet()) {
+			try {
+				gauges.put(entry.getKey(), entry.getValue().getValue());
+			} catch (RuntimeException e) {
+				LOGGER.warn("Error reading gauge {}", entry.getKey(), e);
+			}
+		}
+		return gauges;
+	}
+
+	public static Map<String, Double> getLatencies () {
+		Map<String, Double> latencies = new TreeMap<>();
+		for (Map.Entry<String, LatencyHistogram> entry: LATENCIES.entrySet()) {
+			String name = entry.getKey();
+			LatencyHistogram histogram = entry.getValue();
+			latencies.put(name+".count", (double) histogram.getCount());
+			latencies.put(name+".mean", histogram.getMean());
+			latencies.put(name+".p50", histogram.getPercentile(50));
+			latencies.put(name+".p90", histogram.getPercentile(90));
+			latencies.put(name+".p99", histogram.getPercentile(99));
+			latencies.put(name+".max", histogram.getMax());
+		}
+		return latencies;
+	}
+
+	/**
+	 * Describe all current metrics, with latencies in milliseconds.
+	 */
+	public static JSONObject toJSON () throws JSONException {
+		JSONObject result = new JSONObject();
+
+		JSONObject latencies = new JSONObject();
+		for (Map.Entry<String, LatencyHistogram> entry: new TreeMap<>(LATENCIES).entrySet()) {
+			LatencyHistogram histogram = entry.getValue();
+			JSONObject summary = new JSONObject();
+			summary.put("count", histogram.getCount());
+			summary.put("mean", histogram.getMean());
+			summary.put("p50", histogram.getPercentile(50));
+			summary.put("p90", histogram.getPercentile(90));
+			summary.put("p99", histogram.getPercentile(99));
+			summary.put("max", histogram.getMax());
+			latencies.put(entry.getKey(), summary);
+		}
+		result.put("latencies", latencies);
+
+		JSONObject counters = new JSONObject();
+		for (Map.Entry<String, Long> entry: getCounters().entrySet()) {
+			counters.put(entry.getKey(), entry.getValue().longValue());
+		}
+		result.put("counters", counters);
+
+		JSONObject gauges = new JSONObject();
+		for (Map.Entry<String, Long> entry: getGauges().entrySet()) {
+			gauges.put(entry.getKey(), entry.getValue().longValue());
+		}
+		result.put("gauges", gauges);
+
+		result.put("cacheHitRatio", getCacheHitRatio());
+		return result;
+	}
+
+
+
+	/**
+	 * Make these metrics available through the platform MBean server.
+	 */
+	public static void registerMBean () {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(MBEAN_NAME);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(new StandardMBean(new MXBean(), TileMetricsMXBean.class, true), name);
+			}
+		} catch (JMException | RuntimeException e) {
+			LOGGER.warn("Unable to register tile metrics with JMX", e);
+		}
+	}
+
+	public static void unregisterMBean () {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(MBEAN_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException | RuntimeException e) {
+			LOGGER.warn("Unable to unregister tile metrics from JMX", e);
+		}
+	}
+
+	private static class MXBean implements TileMetricsMXBean {
+		@Override
+		public Map<String, Long> getCounters () {
+			return TileMetrics.getCounters();
+		}
+
+		@Override
+		public Map<String, Long> getGauges () {
+			return TileMetrics.getGauges();
+		}
+
+		@Override
+		public Map<String, Double> getLatencies () {
+			return TileMetrics.getLatencies();
+		}
+
+		@Override
+		public double getCacheHitRatio () {
+			return TileMetrics.getCacheHitRatio();
+		}
+
+		@Override
+		public void reset () {
+			TileMetrics.reset();
+		}
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.metrics;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link TileMetrics}, registered as
+ * <code>com.oculusinfo.tile:type=TileMetrics</code>.
+ */
+public interface TileMetricsMXBean {
+	/**
+	 * @return The count of each counted event, such as tiles and bytes served
+	 */
+	public Map<String, Long> getCounters ();
+
+	/**
+	 * @return The current value of each gauge, such as work queue depths
+	 */
+	public Map<String, Long> getGauges ();
+
+	/**
+	 * @return Summaries of each latency histogram, in milliseconds, keyed by
+	 *         histogram name and statistic (e.g. <code>render.read.p99</code>)
+	 */
+	public Map<String, Double> getLatencies ();
+
+	/**
+	 * @return The fraction of tile requests served from the tile cache
+	 */
+	public double getCacheHitRatio ();
+
+	/**
+	 * Clear all counters and latency histograms.
+	 */
+	public void reset ();
+}
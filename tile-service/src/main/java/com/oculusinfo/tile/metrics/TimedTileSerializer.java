@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.oculusinfo.binning.TileData;
+import com.oculusinfo.binning.TileIndex;
+import com.oculusinfo.binning.io.serialization.TileSerializer;
+import com.oculusinfo.binning.util.TypeDescriptor;
+
+/**
+ * A tile serializer that records how long its wrapped serializer takes to
+ * deserialize each tile, so that deserialization can be told apart from
+ * storage access in the time taken to read tiles.
+ */
+public class TimedTileSerializer<T> implements TileSerializer<T> {
+	private static final long serialVersionUID = 1L;
+
+	private TileSerializer<T> _base;
+	private String            _latencyName;
+
+	public TimedTileSerializer (TileSerializer<T> base, String latencyName) {
+		_base = base;
+		_latencyName = latencyName;
+	}
+
+	@Override
+	public TypeDescriptor getBinTypeDescription () {
+		return _base.getBinTypeDescription();
+	}
+
+	@Override
+	public TileData<T> deserialize (TileIndex index, InputStream rawData) throws IOException {
+		long start = System.nanoTime();
+		try {
+			return _base.deserialize(index, rawData);
+		} finally {
+			TileMetrics.recordSince(_latencyName, start);
+		}
+	}
+
+	@Override
+	public void serialize (TileData<T> data, OutputStream output) throws IOException {
+		_base.serialize(data, output);
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rest;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.oculusinfo.tile.metrics.TileMetrics;
+import com.oculusinfo.tile.util.ImageBufferPool;
+import com.oculusinfo.tile.util.PNGEncoder;
+import org.restlet.data.MediaType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * Encodes tile images on a bounded pool of encoder threads, separate from the request threads,
+ * so that a burst of requests can't have every server thread deflating images at once.  When
+ * the encoder queue is full, requests encode on their own thread.
+ *
+ * PNGs are written with {@link PNGEncoder}; its compression level, filter, and use of indexed
+ * color may be set with the optional properties
+ * <ul>
+ * <li>com.oculusinfo.tile.image.png.compression (0-9, default 1)</li>
+ * <li>com.oculusinfo.tile.image.png.filter (None, Sub, Up, Average, Paeth, or Adaptive, the
+ * default)</li>
+ * <li>com.oculusinfo.tile.image.png.palette (default true)</li>
+ * </ul>
+ * and the number of encoder threads with com.oculusinfo.tile.image.encoders (default: the number
+ * of processors).
+ *
+ * Blank tiles are encoded once per size, and the result shared.
+ */
+@Singleton
+public class ImageEncodingServiceImpl implements ImageEncodingService {
+	private static final Logger LOGGER = LoggerFactory.getLogger( ImageEncodingServiceImpl.class );
+
+	private static final int   QUEUE_SIZE_PER_ENCODER = 16;
+	private static final float JPEG_QUALITY           = 0.85f;
+
+	private int                           _pngCompression;
+	private PNGEncoder.Filter             _pngFilter;
+	private boolean                       _pngPalette;
+	private PNGEncoder                    _pngEncoder;
+	private ThreadPoolExecutor            _executor;
+	private ConcurrentMap<String, byte[]> _blankImages;
+
+	@Inject
+	public ImageEncodingServiceImpl() {
+		_pngCompression = Deflater.BEST_SPEED;
+		_pngFilter = PNGEncoder.Filter.Adaptive;
+		_pngPalette = true;
+		_blankImages = new ConcurrentHashMap<>();
+		updatePNGEncoder();
+		setEncoderThreads( Runtime.getRuntime().availableProcessors() );
+		TileMetrics.registerGauge( TileMetrics.ENCODER_QUEUE, new TileMetrics.Gauge() {
+			@Override
+			public long getValue() {
+				return _executor.getQueue().size();
+			}
+		} );
+	}
+
+	@Inject(optional = true)
+	public void setPNGCompression( @Named("com.oculusinfo.tile.image.png.compression") int compressionLevel ) {
+		_pngCompression = compressionLevel;
+		updatePNGEncoder();
+	}
+
+	@Inject(optional = true)
+	public void setPNGFilter( @Named("com.oculusinfo.tile.image.png.filter") String filter ) {
+		_pngFilter = PNGEncoder.Filter.valueOf( filter );
+		updatePNGEncoder();
+	}
+
+	@Inject(optional = true)
+	public void setPNGPalette( @Named("com.oculusinfo.tile.image.png.palette") boolean allowPalette ) {
+		_pngPalette = allowPalette;
+		updatePNGEncoder();
+	}
+
+	private void updatePNGEncoder() {
+		_pngEncoder = new PNGEncoder( _pngCompression, _pngFilter, _pngPalette );
+		_blankImages.clear();
+	}
+
+	@Inject(optional = true)
+	public void setEncoderThreads( @Named("com.oculusinfo.tile.image.encoders") int threads ) {
+		final AtomicInteger threadNumber = new AtomicInteger( 0 );
+		ThreadFactory threadFactory = new ThreadFactory() {
+			@Override
+			public Thread newThread( Runnable runnable ) {
+				Thread thread = new Thread( runnable, "tile-image-encoder-" + threadNumber.incrementAndGet() );
+				thread.setDaemon( true );
+				return thread;
+			}
+		};
+		ThreadPoolExecutor oldExecutor = _executor;
+		_executor = new ThreadPoolExecutor( threads, threads, 60, TimeUnit.SECONDS,
+											new ArrayBlockingQueue<Runnable>( threads * QUEUE_SIZE_PER_ENCODER ),
+											threadFactory, new ThreadPoolExecutor.CallerRunsPolicy() );
+		if ( null != oldExecutor ) {
+			oldExecutor.shutdown();
+		}
+	}
+
+	@Override
+	public byte[] encode( BufferedImage image, MediaType mediaType ) throws IOException {
+		long start = System.nanoTime();
+		byte[] encoded = encodeImage( image, mediaType );
+		TileMetrics.recordSince( TileMetrics.RENDER_ENCODE, start );
+		TileMetrics.increment( TileMetrics.IMAGE_TILES, 1 );
+		TileMetrics.increment( TileMetrics.IMAGE_BYTES, encoded.length );
+		return encoded;
+	}
+
+	private byte[] encodeImage( final BufferedImage image, final MediaType mediaType ) throws IOException {
+		if ( ImageBufferPool.isBlankImage( image ) ) {
+			String key = mediaType + ":" + image.getWidth() + "x" + image.getHeight();
+			byte[] blank = _blankImages.get( key );
+			if ( null == blank ) {
+				blank = encodeNow( image, mediaType );
+				_blankImages.putIfAbsent( key, blank );
+			}
+			return blank;
+		}
+
+		try {
+			return _executor.submit( new Callable<byte[]>() {
+				@Override
+				public byte[] call() throws Exception {
+					return encodeNow( image, mediaType );
+				}
+			} ).get();
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new IOException( "Interrupted while encoding image", e );
+		} catch ( ExecutionException e ) {
+			if ( e.getCause() instanceof IOException ) {
+				throw ( IOException ) e.getCause();
+			}
+			throw new IOException( "Error encoding image", e.getCause() );
+		} finally {
+			ImageBufferPool.release( image );
+		}
+	}
+
+	private byte[] encodeNow( BufferedImage image, MediaType mediaType ) throws IOException {
+		if ( MediaType.IMAGE_JPEG.equals( mediaType ) ) {
+			return encodeJPEG( image );
+		} else {
+			if ( !MediaType.IMAGE_PNG.equals( mediaType ) ) {
+				LOGGER.warn( "Unsupported image type {}, encoding as PNG", mediaType );
+			}
+			return _pngEncoder.encode( image );
+		}
+	}
+
+	private byte[] encodeJPEG( BufferedImage image ) throws IOException {
+		// JPEGs have no alpha channel
+		BufferedImage rgbImage = new BufferedImage( image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB );
+		Graphics2D g = rgbImage.createGraphics();
+		g.drawImage( image, 0, 0, null );
+		g.dispose();
+
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName( "jpeg" );
+		if ( !writers.hasNext() ) {
+			throw new IOException( "No JPEG encoder available" );
+		}
+		ImageWriter writer = writers.next();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try ( ImageOutputStream stream = ImageIO.createImageOutputStream( output ) ) {
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			param.setCompressionMode( ImageWriteParam.MODE_EXPLICIT );
+			param.setCompressionQuality( JPEG_QUALITY );
+			writer.setOutput( stream );
+			writer.write( null, new IIOImage( rgbImage, null, null ), param );
+		} finally {
+			writer.dispose();
+		}
+		return output.toByteArray();
+	}
+}
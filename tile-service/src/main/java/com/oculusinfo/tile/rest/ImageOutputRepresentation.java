@@ -37,15 +37,28 @@ import java.io.OutputStream;
  */
 public class ImageOutputRepresentation extends OutputRepresentation {
 	private BufferedImage _image;
+	private ImageEncodingService _encoder;
+	private byte[] _encoded;
 	
 	/**
 	 * @param mediaType
 	 * @param image
 	 */
 	public ImageOutputRepresentation(MediaType mediaType, BufferedImage image) {
+		this(mediaType, image, null);
+	}
+
+	/**
+	 * @param mediaType
+	 * @param image
+	 * @param encoder The service with which to encode the image; if null, the image is encoded
+	 *                directly with ImageIO.
+	 */
+	public ImageOutputRepresentation(MediaType mediaType, BufferedImage image, ImageEncodingService encoder) {
 		super(mediaType);
 
 		_image = image;
+		_encoder = encoder;
 	}
 
 	/* (non-Javadoc)
@@ -53,7 +66,15 @@ public class ImageOutputRepresentation extends OutputRepresentation {
 	 */
 	@Override
 	public void write(OutputStream outputStream) throws IOException {
-		// TODO: create a constant map of MediaType to ImageIO file type for the "png".
-		ImageIO.write(_image, "png", outputStream);
+		if (null == _encoder) {
+			ImageIO.write(_image, MediaType.IMAGE_JPEG.equals(getMediaType()) ? "jpeg" : "png", outputStream);
+		} else {
+			// The encoder recycles the image, so only encode it once
+			if (null == _encoded) {
+				_encoded = _encoder.encode(_image, getMediaType());
+				_image = null;
+			}
+			outputStream.write(_encoded);
+		}
 	}
 }
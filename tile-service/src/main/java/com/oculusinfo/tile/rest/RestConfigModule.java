@@ -31,6 +31,8 @@ import com.oculusinfo.tile.rest.layer.KMLLayerResource;
 import com.oculusinfo.tile.rest.layer.LayerResource;
 import com.oculusinfo.tile.rest.layer.StateResource;
 import com.oculusinfo.tile.rest.legend.LegendResource;
+import com.oculusinfo.tile.rest.metrics.MetricsResource;
+import com.oculusinfo.tile.rest.tile.CompositeTileResource;
 import com.oculusinfo.tile.rest.tile.TileResource;
 import com.oculusinfo.tile.rest.translation.TileTranslationResource;
 
@@ -66,12 +68,18 @@ public class RestConfigModule extends AbstractModule {
 		resourceBinder.addBinding( "/{version}/tile/{layer}/{level}/{x}/{y}.{ext}" ).toInstance( TileResource.class );
 		resourceBinder.addBinding( "/tile/{layer}/{level}/{x}/{y}.{ext}" ).toInstance( TileResource.class );
 
+		resourceBinder.addBinding( "/{version}/composite/{level}/{x}/{y}.{ext}" ).toInstance( CompositeTileResource.class );
+		resourceBinder.addBinding( "/composite/{level}/{x}/{y}.{ext}" ).toInstance( CompositeTileResource.class );
+
 		resourceBinder.addBinding( "/{version}/legend/{layer}" ).toInstance( LegendResource.class );
 		resourceBinder.addBinding( "/legend/{layer}" ).toInstance( LegendResource.class );
 
 		resourceBinder.addBinding( "/{version}/translate" ).toInstance( TileTranslationResource.class );
 		resourceBinder.addBinding( "/translate" ).toInstance( TileTranslationResource.class );
 
+		resourceBinder.addBinding( "/{version}/metrics" ).toInstance( MetricsResource.class );
+		resourceBinder.addBinding( "/metrics" ).toInstance( MetricsResource.class );
+
 		resourceBinder.addBinding( "/{version}/layers/{layer}/kml/{kmlId}/{kmlFile}" ).toInstance( KMLLayerResource.class );
 		resourceBinder.addBinding( "/layers/{layer}/kml/{kmlId}/{kmlFile}" ).toInstance( KMLLayerResource.class );
 	}
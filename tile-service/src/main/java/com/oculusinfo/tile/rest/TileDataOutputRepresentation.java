@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rest;
+
+import com.oculusinfo.binning.TileData;
+import com.oculusinfo.tile.metrics.TileMetrics;
+import com.oculusinfo.tile.rest.tile.BinaryTileEncoder;
+import org.restlet.data.MediaType;
+import org.restlet.representation.OutputRepresentation;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A representation of raw tile data in the binary form written by {@link BinaryTileEncoder}.
+ */
+public class TileDataOutputRepresentation extends OutputRepresentation {
+	private TileData<?> _tile;
+
+	public TileDataOutputRepresentation (TileData<?> tile) {
+		super(MediaType.APPLICATION_OCTET_STREAM);
+
+		_tile = tile;
+	}
+
+	@Override
+	public void write (OutputStream outputStream) throws IOException {
+		CountingOutputStream countingStream = new CountingOutputStream(outputStream);
+		BinaryTileEncoder.write(_tile, countingStream);
+		TileMetrics.increment(TileMetrics.DATA_TILES, 1);
+		TileMetrics.increment(TileMetrics.DATA_BYTES, countingStream._count);
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream {
+		private long _count;
+
+		CountingOutputStream (OutputStream base) {
+			super(base);
+			_count = 0;
+		}
+
+		@Override
+		public void write (int b) throws IOException {
+			out.write(b);
+			++_count;
+		}
+
+		@Override
+		public void write (byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			_count += len;
+		}
+	}
+}
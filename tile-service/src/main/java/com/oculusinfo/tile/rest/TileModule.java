@@ -47,6 +47,7 @@ public class TileModule extends AbstractModule {
         bind( LayerService.class ).to( LayerServiceImpl.class );
 		bind( TileService.class ).to( TileServiceImpl.class );
 		bind( LegendService.class ).to( LegendServiceImpl.class );
+		bind( ImageEncodingService.class ).to( ImageEncodingServiceImpl.class );
 		bind( TileTranslationService.class ).to( TileTranslationServiceImpl.class );
 		bind( ConfigPropertiesService.class ).to( ConfigPropertiesServiceImpl.class );
 	}
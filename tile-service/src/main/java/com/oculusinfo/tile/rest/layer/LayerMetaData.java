@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rest.layer;
+
+import java.util.Iterator;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.oculusinfo.binning.metadata.PyramidMetaData;
+
+/**
+ * A snapshot of the pyramid metadata of a layer, as read at some version.
+ *
+ * Every tile request needs the extrema of its level, so these are pulled out
+ * of the metadata once, when it is read, into arrays indexed by level, rather
+ * than looked up by path in the metadata JSON on each request.
+ */
+public class LayerMetaData {
+	// Levels beyond this are too deep to be real pyramid levels
+	private static final int MAX_LEVELS = 64;
+
+	private final String          _rawData;
+	private final long            _version;
+	private final PyramidMetaData _metaData;
+	private final String[]        _levelMinimums;
+	private final String[]        _levelMaximums;
+	private final double[]        _levelMinimumValues;
+	private final double[]        _levelMaximumValues;
+
+	/**
+	 * @param rawData The metadata, as read from the layer's pyramid; null if
+	 *            the pyramid has none
+	 * @param version The version of the metadata for this layer
+	 */
+	public LayerMetaData (String rawData, long version) throws JSONException {
+		_rawData = rawData;
+		_version = version;
+		_metaData = new PyramidMetaData(null == rawData ? new JSONObject() : new JSONObject(rawData));
+
+		int levels = 0;
+		JSONObject meta = _metaData.getRawData().optJSONObject("meta");
+		if (null != meta) {
+			Iterator<?> keys = meta.keys();
+			while (keys.hasNext()) {
+				try {
+					int level = Integer.parseInt(keys.next().toString());
+					if (0 <= level && level < MAX_LEVELS) {
+						levels = Math.max(levels, level + 1);
+					}
+				} catch (NumberFormatException e) {
+					// Not a level
+				}
+			}
+		}
+
+		_levelMinimums = new String[levels];
+		_levelMaximums = new String[levels];
+		_levelMinimumValues = new double[levels];
+		_levelMaximumValues = new double[levels];
+		for (int level = 0; level < levels; ++level) {
+			_levelMinimums[level] = _metaData.getCustomMetaData(Integer.toString(level), "minimum");
+			_levelMaximums[level] = _metaData.getCustomMetaData(Integer.toString(level), "maximum");
+			_levelMinimumValues[level] = parse(_levelMinimums[level]);
+			_levelMaximumValues[level] = parse(_levelMaximums[level]);
+		}
+	}
+
+	// Extrema of non-scalar bins aren't numbers
+	private static double parse (String value) {
+		if (null == value) return Double.NaN;
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	String getRawData () {
+		return _rawData;
+	}
+
+	/**
+	 * @return The version of this metadata; each time the metadata of a layer
+	 *         is found to have changed, its version increases.
+	 */
+	public long getVersion () {
+		return _version;
+	}
+
+	public PyramidMetaData getMetaData () {
+		return _metaData;
+	}
+
+	/**
+	 * @return The minimum of the given level, as recorded in the metadata, or
+	 *         null if none is recorded
+	 */
+	public String getLevelMinimum (int level) {
+		return (0 <= level && level < _levelMinimums.length) ? _levelMinimums[level] : null;
+	}
+
+	/**
+	 * @return The maximum of the given level, as recorded in the metadata, or
+	 *         null if none is recorded
+	 */
+	public String getLevelMaximum (int level) {
+		return (0 <= level && level < _levelMaximums.length) ? _levelMaximums[level] : null;
+	}
+
+	/**
+	 * @return The minimum of the given level, or NaN if none is recorded or it
+	 *         isn't a single number
+	 */
+	public double getLevelMinimumValue (int level) {
+		return (0 <= level && level < _levelMinimumValues.length) ? _levelMinimumValues[level] : Double.NaN;
+	}
+
+	/**
+	 * @return The maximum of the given level, or NaN if none is recorded or it
+	 *         isn't a single number
+	 */
+	public double getLevelMaximumValue (int level) {
+		return (0 <= level && level < _levelMaximumValues.length) ? _levelMaximumValues[level] : Double.NaN;
+	}
+}
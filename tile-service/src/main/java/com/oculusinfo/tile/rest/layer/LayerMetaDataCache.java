@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rest.layer;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the {@link LayerMetaData} of each layer.
+ *
+ * Metadata is read the first time it is needed.  After that, it is only
+ * refreshed when the layer's data is known to have changed; the refresh is
+ * read in the background, and until it arrives, requests continue to see the
+ * previous version.  Refreshes of a layer that arrive while one is already
+ * waiting to be read are folded into it, and a refresh that finds the
+ * metadata unchanged keeps the current version.
+ */
+public class LayerMetaDataCache {
+	private static final Logger LOGGER = LoggerFactory.getLogger(LayerMetaDataCache.class);
+
+	/**
+	 * Where metadata comes from.
+	 */
+	public interface Source {
+		/**
+		 * @return The raw metadata of the given layer, or null if it has none
+		 * @throws IOException if the metadata can't be read
+		 */
+		public String readMetaData (String layerId) throws IOException;
+	}
+
+	private Source                                 _source;
+	private Executor                               _refresher;
+	private ConcurrentMap<String, LayerMetaData>   _metaData;
+	private ConcurrentMap<String, Boolean>         _pendingRefreshes;
+
+	public LayerMetaDataCache (Source source) {
+		this(source, createRefresher());
+	}
+
+	/**
+	 * @param source Where metadata is read from
+	 * @param refresher Where metadata refreshes are read
+	 */
+	public LayerMetaDataCache (Source source, Executor refresher) {
+		_source = source;
+		_refresher = refresher;
+		_metaData = new ConcurrentHashMap<>();
+		_pendingRefreshes = new ConcurrentHashMap<>();
+	}
+
+	private static Executor createRefresher () {
+		ThreadFactory threadFactory = new ThreadFactory() {
+			@Override
+			public Thread newThread (Runnable runnable) {
+				Thread thread = new Thread(runnable, "layer-metadata-refresher");
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		return new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+	}
+
+	/**
+	 * Get the metadata of a layer, reading it if it hasn't been read yet.
+	 *
+	 * @return The layer's metadata, or null if it couldn't be read
+	 */
+	public LayerMetaData get (String layerId) {
+		LayerMetaData metaData = _metaData.get(layerId);
+		if (null == metaData) {
+			metaData = read(layerId, 0L);
+			if (null != metaData) {
+				LayerMetaData existing = _metaData.putIfAbsent(layerId, metaData);
+				if (null != existing) metaData = existing;
+			}
+		}
+		return metaData;
+	}
+
+	/**
+	 * Note that the metadata of a layer may have changed, and re-read it in
+	 * the background.
+	 */
+	public void refresh (final String layerId) {
+		if (!_metaData.containsKey(layerId)) {
+			// Not read yet; when it is, it will be up to date
+			return;
+		}
+		if (null == _pendingRefreshes.putIfAbsent(layerId, Boolean.TRUE)) {
+			_refresher.execute(new Runnable() {
+				@Override
+				public void run () {
+					// Clear the flag first, so changes made during the read
+					// get a read of their own
+					_pendingRefreshes.remove(layerId);
+					reload(layerId);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Forget the metadata of a layer, so that it is read afresh the next time
+	 * it is needed.
+	 */
+	public void invalidate (String layerId) {
+		_metaData.remove(layerId);
+	}
+
+	private void reload (String layerId) {
+		LayerMetaData current = _metaData.get(layerId);
+		if (null == current) return;
+
+		LayerMetaData updated = read(layerId, current.getVersion() + 1);
+		if (null == updated) return;
+
+		if (null == updated.getRawData() ? null == current.getRawData() : updated.getRawData().equals(current.getRawData())) {
+			return;
+		}
+		// Only replace the version we read from; if something else has
+		// replaced or invalidated it since, that wins.
+		_metaData.replace(layerId, current, updated);
+	}
+
+	private LayerMetaData read (String layerId, long version) {
+		try {
+			return new LayerMetaData(_source.readMetaData(layerId), version);
+		} catch (JSONException e) {
+			LOGGER.error("Metadata file for layer is missing or corrupt: {}", layerId, e);
+		} catch (IOException e) {
+			LOGGER.error("Couldn't read metadata: {}", layerId, e);
+		}
+		return null;
+	}
+}
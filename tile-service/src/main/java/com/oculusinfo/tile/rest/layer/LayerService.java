@@ -92,4 +92,11 @@ public interface LayerService {
      * @param layerId The layer identification string
      */
     public PyramidMetaData getMetaData (String layerId);
+
+    /**
+     * Returns the cached meta-data of the given layer, with the extrema of each
+     * level ready for use.
+     * @param layerId The layer identification string
+     */
+    public LayerMetaData getLayerMetaData (String layerId);
 }
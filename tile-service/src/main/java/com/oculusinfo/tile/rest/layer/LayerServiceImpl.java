@@ -63,7 +63,7 @@ public class LayerServiceImpl implements LayerService {
 	private List< JSONObject > _layers;
 	private Map< String, JSONObject > _layersById;
     private Map< String, JSONObject > _layersBySha;
-	private Map< String, JSONObject > _metaDataCache;
+	private LayerMetaDataCache _metaDataCache;
     private FactoryProvider< LayerConfiguration > _layerConfigurationProvider;
     private final ConfigService _configService;
 
@@ -74,7 +74,12 @@ public class LayerServiceImpl implements LayerService {
 		_layers = new ArrayList<>();
 		_layersById = new HashMap<>();
         _layersBySha = new HashMap<>();
-		_metaDataCache = new HashMap<>();
+		_metaDataCache = new LayerMetaDataCache( new LayerMetaDataCache.Source() {
+			@Override
+			public String readMetaData( String layerId ) throws IOException {
+				return readLayerMetaData( layerId );
+			}
+		} );
         _layerConfigurationProvider = layerConfigProvider;
         _configService = configService;
 
@@ -82,11 +87,29 @@ public class LayerServiceImpl implements LayerService {
             CachingLayerConfigurationProvider caching = (CachingLayerConfigurationProvider)layerConfigProvider;
 			caching.addLayerListener( new LayerDataChangedListener() {
                 public void onLayerDataChanged( String layerId ) {
-                    _metaDataCache.remove( layerId );
+                    _metaDataCache.refresh( layerId );
                 }
             } );
 		}
 		readConfigFiles( getConfigurationFiles( layerConfigurationLocation ) );
+
+		if (layerConfigProvider instanceof CachingLayerConfigurationProvider
+		    && ((CachingLayerConfigurationProvider) layerConfigProvider).isWarmupEnabled()) {
+			warmUpLayers( (CachingLayerConfigurationProvider) layerConfigProvider );
+		}
+	}
+
+	/*
+	 * Preload the top of each configured layer into the tile cache.  The reads
+	 * themselves happen in the background.
+	 */
+	private void warmUpLayers( CachingLayerConfigurationProvider caching ) {
+		for ( String layerId : getLayerIds() ) {
+			LayerConfiguration config = getLayerConfiguration( layerId, null );
+			if ( null != config ) {
+				caching.warmUp( config );
+			}
+		}
 	}
 
 	@Override
@@ -114,46 +137,35 @@ public class LayerServiceImpl implements LayerService {
 
 	@Override
 	public PyramidMetaData getMetaData( String layerId ) {
+		LayerMetaData metaData = getLayerMetaData( layerId );
+		return null == metaData ? null : metaData.getMetaData();
+	}
+
+	@Override
+	public LayerMetaData getLayerMetaData( String layerId ) {
+		return _metaDataCache.get( layerId );
+	}
+
+	private String readLayerMetaData( String layerId ) throws IOException {
 		try {
 			LayerConfiguration config = getLayerConfiguration( layerId, null );
+			if ( config == null ) {
+				throw new IOException( "Couldn't configure layer: "+layerId );
+			}
             String dataId = config.getPropertyValue(LayerConfiguration.DATA_ID);
             if ( dataId == null ) {
-				LOGGER.error( "Couldn't determine data id for layer: "+layerId+" , please ensure the layer config file is correct." );
-                return null;
+				throw new IOException( "Couldn't determine data id for layer: "+layerId+" , please ensure the layer config file is correct." );
             }
 			PyramidIO pyramidIO = config.produce( PyramidIO.class );
 			if ( pyramidIO == null ) {
-				LOGGER.error( "Couldn't produce the pyramid io instance for layer: "+layerId+" , this is most likely due to either:\n" +
+				throw new IOException( "Couldn't produce the pyramid io instance for layer: "+layerId+" , this is most likely due to either:\n" +
 					"\t1) Missing or incorrectly configured 'data' node. Please confirm 'data.id' and 'pyramidio.*' are correct.\n" +
 					"\t2) The layer files are unavailable. Please confirm that the database is available, or the files are in the correct directory Default='res://'." );
-				return null;
 			}
-			return getCachedMetaData( layerId, dataId, pyramidIO );
+			return pyramidIO.readMetaData( dataId );
 		} catch (ConfigurationException e) {
-			LOGGER.error( "Couldn't determine pyramid I/O method for {}", layerId, e );
-			return null;
-		}
-	}
-
-	private PyramidMetaData getCachedMetaData( String layerId, String dataId, PyramidIO pyramidIO ) {
-		try {
-			JSONObject metadata = _metaDataCache.get( layerId );
-			if ( metadata == null ) {
-				String s = pyramidIO.readMetaData( dataId );
-				if ( s == null ) {
-                    metadata = new JSONObject();
-				} else {
-                    metadata = new JSONObject( s );
-                }
-				_metaDataCache.put( layerId, metadata );
-			}
-			return new PyramidMetaData( metadata );
-		} catch (JSONException e) {
-			LOGGER.error("Metadata file for layer is missing or corrupt: {}", layerId, e);
-		} catch (IOException e) {
-			LOGGER.error("Couldn't read metadata: {}", layerId, e);
+			throw new IOException( "Couldn't determine pyramid I/O method for "+layerId, e );
 		}
-		return null;
 	}
 
 	/**
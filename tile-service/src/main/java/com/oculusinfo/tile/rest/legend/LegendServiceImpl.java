@@ -87,18 +87,24 @@ public class LegendServiceImpl implements LegendService {
 			
 			ValueTransformer<Double> t = new LinearValueTransformer(min, max);
 
+			// colour every line of the legend in a single batch
+			int lines = renderHorizontally ? width : height+1;
+			double[] scales = new double[lines];
+			for (int i = 0; i < lines; i++) {
+				double v = ((double)(i+1)/(double)(renderHorizontally ? width : height)) * levelMax;
+				scales[i] = t.transform(v);
+			}
+			int[] colors = new int[lines];
+			colorRamp.getRGB(scales, colors);
+
 			if ( renderHorizontally ) {
 				for (int i = 0; i < width; i++){
-					double v = ((double)(i+1)/(double)width) * levelMax;
-					int colorInt = colorRamp.getRGB(t.transform(v));		
-					g.setColor(new Color(colorInt, true));
+					g.setColor(new Color(colors[i], true));
 					g.drawLine(i, 0, i, height);
 				}
 			} else {
 				for(int i = 0; i <= height; i++){
-					double v = ((double)(i+1)/(double)height) * levelMax;
-					int colorInt = colorRamp.getRGB(t.transform(v));		
-					g.setColor(new Color(colorInt, true));
+					g.setColor(new Color(colors[i], true));
 					int y = height-i;
 					g.drawLine(0, y, width, y);
 				}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rest.metrics;
+
+import org.json.JSONException;
+import org.restlet.data.Status;
+import org.restlet.ext.json.JsonRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.resource.Get;
+import org.restlet.resource.ResourceException;
+import org.restlet.resource.ServerResource;
+
+import com.oculusinfo.tile.metrics.TileMetrics;
+
+/**
+ * Reports the current {@link TileMetrics} - per-stage, per-layer and
+ * per-backend latencies, tile and byte counts, the tile cache hit ratio, and
+ * work queue depths - as JSON.
+ */
+public class MetricsResource extends ServerResource {
+	@Get
+	public Representation getMetrics () throws ResourceException {
+		try {
+			setStatus(Status.SUCCESS_OK);
+			return new JsonRepresentation(TileMetrics.toJSON());
+		} catch (JSONException e) {
+			throw new ResourceException(Status.SERVER_ERROR_INTERNAL,
+			                            "Unable to describe tile metrics",
+			                            e);
+		}
+	}
+}
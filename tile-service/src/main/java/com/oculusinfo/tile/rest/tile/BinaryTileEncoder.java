@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rest.tile;
+
+import com.oculusinfo.binning.BinIndex;
+import com.oculusinfo.binning.TileData;
+import com.oculusinfo.binning.TileIndex;
+import com.oculusinfo.binning.impl.DenseTileData;
+import com.oculusinfo.binning.impl.SparseTileData;
+import com.oculusinfo.factory.util.Pair;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes tile data in a compact binary form, so clients can read bin values straight into typed
+ * arrays instead of parsing JSON.
+ *
+ * All multi-byte numbers are little-endian. The layout is:
+ * <pre>
+ *   bytes 0-3   magic: 'T' 'I' 'L' 'E'
+ *   byte  4     format version (1)
+ *   byte  5     layout: 0 = dense, 1 = sparse
+ *   byte  6     value type: 0 = int32, 1 = int64, 2 = float32, 3 = float64,
+ *               4 = topic list (string table plus float64 values)
+ *   byte  7     reserved (0)
+ *   bytes 8-27  level, x, y, x bins, y bins (int32 each)
+ *   int32       length of tile metadata, then the metadata as UTF-8 JSON
+ *   padding     zeros to the next multiple of 8 bytes
+ * </pre>
+ * followed by the bin values. For numeric tiles, the default bin value comes first. Then
+ * either every bin in row-major order (dense), or a varint count of bins and, for each, the
+ * varint difference between its row-major offset and the previous bin's, followed by its value
+ * (sparse). Dense values are aligned to their own size, so they can be viewed directly as a
+ * typed array.
+ *
+ * Topic tiles start with a string table: a varint count of strings, each written as a varint
+ * byte length and UTF-8 bytes. Each bin is then written as a varint count of entries, each a
+ * varint string table index and a float64 value. Bins are laid out as for numeric tiles, except
+ * that there is no default value.
+ */
+public class BinaryTileEncoder {
+	public static final byte[] MAGIC          = {'T', 'I', 'L', 'E'};
+	public static final byte   FORMAT_VERSION = 1;
+
+	public static final byte   LAYOUT_DENSE   = 0;
+	public static final byte   LAYOUT_SPARSE  = 1;
+
+	public static final byte   TYPE_INT32     = 0;
+	public static final byte   TYPE_INT64     = 1;
+	public static final byte   TYPE_FLOAT32   = 2;
+	public static final byte   TYPE_FLOAT64   = 3;
+	public static final byte   TYPE_TOPICS    = 4;
+
+
+
+	/**
+	 * Write a tile in binary form.
+	 *
+	 * @param tile The tile to write
+	 * @param stream The stream to which to write it
+	 * @throws IllegalArgumentException if the bins of the tile are neither numbers nor lists of
+	 *             string/number pairs
+	 */
+	public static void write (TileData<?> tile, OutputStream stream) throws IOException {
+		TileIndex index = tile.getDefinition();
+		int xBins = index.getXBins();
+		int yBins = index.getYBins();
+		boolean sparse = tile instanceof SparseTileData;
+
+		// Get the set bins, in row-major order, as offset/value pairs
+		List<Pair<Integer, Object>> bins = new ArrayList<>();
+		if (sparse) {
+			Iterator<? extends Pair<BinIndex, ?>> data = ((SparseTileData<?>) tile).getData();
+			while (data.hasNext()) {
+				Pair<BinIndex, ?> bin = data.next();
+				bins.add(new Pair<Integer, Object>(bin.getFirst().getY() * xBins + bin.getFirst().getX(), bin.getSecond()));
+			}
+			Collections.sort(bins, new Comparator<Pair<Integer, Object>>() {
+				@Override
+				public int compare (Pair<Integer, Object> a, Pair<Integer, Object> b) {
+					return a.getFirst().compareTo(b.getFirst());
+				}
+			});
+		} else {
+			List<?> data = DenseTileData.getData(tile);
+			for (int i = 0; i < data.size(); ++i) {
+				bins.add(new Pair<Integer, Object>(i, data.get(i)));
+			}
+		}
+
+		byte valueType = getValueType(tile.getDefaultValue(), bins);
+
+		LittleEndianOutput output = new LittleEndianOutput(stream);
+		output.write(MAGIC);
+		output.writeByte(FORMAT_VERSION);
+		output.writeByte(sparse ? LAYOUT_SPARSE : LAYOUT_DENSE);
+		output.writeByte(valueType);
+		output.writeByte(0);
+		output.writeInt(index.getLevel());
+		output.writeInt(index.getX());
+		output.writeInt(index.getY());
+		output.writeInt(xBins);
+		output.writeInt(yBins);
+		byte[] metaData = getMetaData(tile).getBytes(StandardCharsets.UTF_8);
+		output.writeInt(metaData.length);
+		output.write(metaData);
+		output.pad(8);
+
+		if (TYPE_TOPICS == valueType) {
+			writeTopicBins(output, bins, sparse);
+		} else {
+			output.writeNumber(valueType, (Number) tile.getDefaultValue());
+			if (sparse) output.writeVarint(bins.size());
+			int lastOffset = 0;
+			for (Pair<Integer, Object> bin: bins) {
+				if (sparse) {
+					output.writeVarint(bin.getFirst() - lastOffset);
+					lastOffset = bin.getFirst();
+				}
+				output.writeNumber(valueType, (Number) bin.getSecond());
+			}
+		}
+		output.flush();
+	}
+
+	// Determine the value type from the first non-null bin value
+	private static byte getValueType (Object defaultValue, List<Pair<Integer, Object>> bins) {
+		Object sample = defaultValue;
+		for (Pair<Integer, Object> bin: bins) {
+			if (null != bin.getSecond() && !(bin.getSecond() instanceof List && ((List<?>) bin.getSecond()).isEmpty())) {
+				sample = bin.getSecond();
+				break;
+			}
+		}
+
+		if (null == sample) return TYPE_FLOAT64;
+		else if (sample instanceof Integer || sample instanceof Short || sample instanceof Byte) return TYPE_INT32;
+		else if (sample instanceof Long) return TYPE_INT64;
+		else if (sample instanceof Float) return TYPE_FLOAT32;
+		else if (sample instanceof Number) return TYPE_FLOAT64;
+		else if (sample instanceof List) {
+			for (Object entry: (List<?>) sample) {
+				if (!(entry instanceof Pair) ||
+				    !(((Pair<?, ?>) entry).getFirst() instanceof String) ||
+				    !(((Pair<?, ?>) entry).getSecond() instanceof Number)) {
+					throw new IllegalArgumentException("Binary encoding not supported for list bins of "+entry.getClass());
+				}
+			}
+			return TYPE_TOPICS;
+		} else {
+			throw new IllegalArgumentException("Binary encoding not supported for bins of "+sample.getClass());
+		}
+	}
+
+	private static String getMetaData (TileData<?> tile) throws IOException {
+		JSONObject metaData = new JSONObject();
+		Collection<String> properties = tile.getMetaDataProperties();
+		if (null != properties) {
+			try {
+				for (String property: properties) {
+					metaData.put(property, tile.getMetaData(property));
+				}
+			} catch (JSONException e) {
+				throw new IOException("Unable to write tile metadata", e);
+			}
+		}
+		return metaData.toString();
+	}
+
+	private static void writeTopicBins (LittleEndianOutput output, List<Pair<Integer, Object>> bins, boolean sparse) throws IOException {
+		// Build the string table
+		Map<String, Integer> topicIndices = new HashMap<>();
+		List<String> topics = new ArrayList<>();
+		for (Pair<Integer, Object> bin: bins) {
+			if (null == bin.getSecond()) continue;
+			for (Object entry: (List<?>) bin.getSecond()) {
+				String topic = (String) ((Pair<?, ?>) entry).getFirst();
+				if (!topicIndices.containsKey(topic)) {
+					topicIndices.put(topic, topics.size());
+					topics.add(topic);
+				}
+			}
+		}
+		output.writeVarint(topics.size());
+		for (String topic: topics) {
+			byte[] bytes = topic.getBytes(StandardCharsets.UTF_8);
+			output.writeVarint(bytes.length);
+			output.write(bytes);
+		}
+
+		if (sparse) output.writeVarint(bins.size());
+		int lastOffset = 0;
+		for (Pair<Integer, Object> bin: bins) {
+			if (sparse) {
+				output.writeVarint(bin.getFirst() - lastOffset);
+				lastOffset = bin.getFirst();
+			}
+			List<?> entries = null == bin.getSecond() ? Collections.emptyList() : (List<?>) bin.getSecond();
+			output.writeVarint(entries.size());
+			for (Object entry: entries) {
+				Pair<?, ?> pair = (Pair<?, ?>) entry;
+				output.writeVarint(topicIndices.get(pair.getFirst()));
+				output.writeDouble(((Number) pair.getSecond()).doubleValue());
+			}
+		}
+	}
+
+
+
+	// A minimal little-endian writer that keeps track of its position, for alignment
+	private static class LittleEndianOutput {
+		private OutputStream _stream;
+		private byte[]       _buffer;
+		private long         _position;
+
+		LittleEndianOutput (OutputStream stream) {
+			_stream = stream;
+			_buffer = new byte[8];
+			_position = 0;
+		}
+
+		void write (byte[] bytes) throws IOException {
+			_stream.write(bytes);
+			_position += bytes.length;
+		}
+
+		void writeByte (int value) throws IOException {
+			_stream.write(value);
+			++_position;
+		}
+
+		void writeInt (int value) throws IOException {
+			writeBytes(value, 4);
+		}
+
+		void writeLong (long value) throws IOException {
+			writeBytes(value, 8);
+		}
+
+		void writeFloat (float value) throws IOException {
+			writeInt(Float.floatToRawIntBits(value));
+		}
+
+		void writeDouble (double value) throws IOException {
+			writeLong(Double.doubleToRawLongBits(value));
+		}
+
+		void writeVarint (int value) throws IOException {
+			while ((value & ~0x7F) != 0) {
+				writeByte((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			writeByte(value);
+		}
+
+		// Write a possibly-null number as the given value type; nulls are written as 0 or NaN
+		void writeNumber (byte valueType, Number value) throws IOException {
+			switch (valueType) {
+			case TYPE_INT32:
+				writeInt(null == value ? 0 : value.intValue());
+				break;
+			case TYPE_INT64:
+				writeLong(null == value ? 0L : value.longValue());
+				break;
+			case TYPE_FLOAT32:
+				writeFloat(null == value ? Float.NaN : value.floatValue());
+				break;
+			default:
+				writeDouble(null == value ? Double.NaN : value.doubleValue());
+			}
+		}
+
+		void pad (int alignment) throws IOException {
+			while (0 != _position % alignment) {
+				writeByte(0);
+			}
+		}
+
+		void flush () throws IOException {
+			_stream.flush();
+		}
+
+		private void writeBytes (long value, int size) throws IOException {
+			for (int i = 0; i < size; ++i) {
+				_buffer[i] = (byte) (value >>> (8 * i));
+			}
+			_stream.write(_buffer, 0, size);
+			_position += size;
+		}
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rest.tile;
+
+import org.json.JSONObject;
+
+import com.oculusinfo.tile.util.ImageCompositor.BlendMode;
+
+/**
+ * One layer of a composite tile request: which layer to draw, and how to draw
+ * it over the layers beneath it.
+ */
+public class CompositeLayer {
+	private String     _layer;
+	private JSONObject _query;
+	private BlendMode  _blendMode;
+	private double     _opacity;
+
+	/**
+	 * @param layer The id of the layer
+	 * @param query Query parameters overriding the layer's configuration, as
+	 *            for a single tile request; may be null
+	 * @param blendMode How to combine this layer with those beneath it
+	 * @param opacity The opacity (0-1) with which to draw this layer
+	 */
+	public CompositeLayer (String layer, JSONObject query, BlendMode blendMode, double opacity) {
+		_layer = layer;
+		_query = query;
+		_blendMode = blendMode;
+		_opacity = opacity;
+	}
+
+	public String getLayer () {
+		return _layer;
+	}
+
+	public JSONObject getQuery () {
+		return _query;
+	}
+
+	public BlendMode getBlendMode () {
+		return _blendMode;
+	}
+
+	public double getOpacity () {
+		return _opacity;
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rest.tile;
+
+import com.google.inject.Inject;
+import com.oculusinfo.binning.TileIndex;
+import com.oculusinfo.tile.rest.ImageEncodingService;
+import com.oculusinfo.tile.rest.ImageOutputRepresentation;
+import com.oculusinfo.tile.rest.QueryParamDecoder;
+import com.oculusinfo.tile.util.ImageCompositor.BlendMode;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.restlet.data.Status;
+import org.restlet.representation.Representation;
+import org.restlet.resource.Get;
+import org.restlet.resource.ResourceException;
+import org.restlet.resource.ServerResource;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Serves a single image combining the same tile of several layers, so that
+ * clients showing many overlaid layers need make only one request per tile.
+ *
+ * Layers are listed, bottom first, in the "layers" query parameter, with
+ * matching (optional) "blend" and "opacity" lists:
+ * <pre>
+ *     /composite/4/3/5.png?layers=heatmap,topics&amp;blend=normal,screen&amp;opacity=1,0.6
+ * </pre>
+ * Blend modes are those of {@link BlendMode}; missing blend modes are
+ * normal, and missing opacities are 1.  Configuration overrides for a single
+ * layer are given under that layer's id, as in
+ * "heatmap.renderer.ramp=hot".
+ */
+public class CompositeTileResource extends ServerResource {
+	private TileService          _service;
+	private ImageEncodingService _imageEncoder;
+
+	@Inject
+	public CompositeTileResource( TileService service, ImageEncodingService imageEncoder ) {
+		_service = service;
+		_imageEncoder = imageEncoder;
+	}
+
+	// Query values may be single values, or lists of them
+	private static List<String> getList( JSONObject query, String key ) throws JSONException {
+		if ( null == query || !query.has( key ) ) {
+			return Collections.emptyList();
+		}
+		JSONArray values = query.optJSONArray( key );
+		if ( null == values ) {
+			return Collections.singletonList( query.getString( key ) );
+		}
+		List<String> result = new ArrayList<>( values.length() );
+		for ( int i = 0; i < values.length(); i++ ) {
+			result.add( values.getString( i ) );
+		}
+		return result;
+	}
+
+	static List<CompositeLayer> parseLayers( JSONObject query ) throws JSONException {
+		List<String> ids = getList( query, "layers" );
+		List<String> blends = getList( query, "blend" );
+		List<String> opacities = getList( query, "opacity" );
+
+		List<CompositeLayer> layers = new ArrayList<>( ids.size() );
+		for ( int i = 0; i < ids.size(); i++ ) {
+			String id = ids.get( i ).trim();
+			BlendMode blend = i < blends.size() ? BlendMode.fromString( blends.get( i ) ) : BlendMode.Normal;
+			double opacity = i < opacities.size() ? Double.parseDouble( opacities.get( i ).trim() ) : 1.0;
+			layers.add( new CompositeLayer( id, query.optJSONObject( id ), blend, opacity ) );
+		}
+		return layers;
+	}
+
+	@Get
+	public Representation getTile() throws ResourceException {
+		try {
+			int zoomLevel = Integer.parseInt( (String) getRequest().getAttributes().get( "level" ) );
+			int x = Integer.parseInt( (String) getRequest().getAttributes().get( "x" ) );
+			int y = Integer.parseInt( (String) getRequest().getAttributes().get( "y" ) );
+			TileIndex index = new TileIndex( zoomLevel, x, y );
+			String ext = (String) getRequest().getAttributes().get( "ext" );
+			TileResource.ExtensionType extType = TileResource.ExtensionType.valueOf( ext.trim().toLowerCase() );
+
+			JSONObject decodedQueryParams = QueryParamDecoder.decode( getRequest().getResourceRef().getQuery() );
+			List<CompositeLayer> layers = parseLayers( decodedQueryParams );
+
+			if ( layers.isEmpty() || !TileResource.ResponseType.Image.equals( extType.getResponseType() ) ) {
+				throw new ResourceException( Status.CLIENT_ERROR_BAD_REQUEST,
+											 "Composite tiles need at least one layer, and an image format." );
+			}
+
+			BufferedImage tile = _service.getCompositeTileImage( layers, index, Collections.singleton( index ) );
+			setStatus( Status.SUCCESS_OK );
+			return new ImageOutputRepresentation( extType.getMediaType(), tile, _imageEncoder );
+		} catch ( ResourceException e ) {
+			throw e;
+		} catch ( TileRequestRejectedException e ) {
+			setStatus( Status.SERVER_ERROR_SERVICE_UNAVAILABLE, e.getMessage() );
+			getResponse().setRetryAfter( new Date( System.currentTimeMillis() + 1000L * e.getRetryAfter() ) );
+			return null;
+		} catch ( Exception e ) {
+			throw new ResourceException( Status.CLIENT_ERROR_BAD_REQUEST,
+										 "Unable to interpret requested composite tile from supplied URL.", e );
+		}
+	}
+}
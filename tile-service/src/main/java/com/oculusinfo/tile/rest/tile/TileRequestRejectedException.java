@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rest.tile;
+
+/**
+ * Thrown when the {@link TileRequestScheduler} refuses to run a tile request,
+ * either because the server is overloaded or because the client has since
+ * asked for something newer.  Either way, the client may retry after
+ * {@link #getRetryAfter()} seconds.
+ */
+public class TileRequestRejectedException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	private int _retryAfter;
+
+	public TileRequestRejectedException (String message, int retryAfter) {
+		super(message);
+		_retryAfter = retryAfter;
+	}
+
+	/**
+	 * @return The number of seconds after which the request may be retried
+	 */
+	public int getRetryAfter () {
+		return _retryAfter;
+	}
+}
@@ -0,0 +1,500 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rest.tile;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.restlet.Request;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.oculusinfo.binning.util.LRUCache;
+import com.oculusinfo.tile.metrics.TileMetrics;
+
+/**
+ * Decides when tile requests may read and render, so that a burst of requests
+ * can't take over the server.
+ *
+ * <ul>
+ * <li>At most a fixed number of requests run at once overall, per layer, and
+ * per storage backend; the rest wait.</li>
+ * <li>Waiting requests run coarsest level first, and, within a level, newest
+ * first - the newest are the ones most likely to still be on screen.</li>
+ * <li>When a client asks for a tile at a new level, its requests still waiting
+ * at other levels are cancelled; the client has zoomed away from them.  Clients
+ * are told apart by the session cookie they send (see
+ * {@link #getCurrentSession()}); requests without one are never cancelled.</li>
+ * <li>Background reads - prefetching and cache warm-up - wait behind all client
+ * requests, and only a limited number of them run at once.</li>
+ * <li>When too many requests are waiting, the lowest priority ones are turned
+ * away, as are requests that wait too long.</li>
+ * </ul>
+ * Requests that don't run throw a {@link TileRequestRejectedException}, which
+ * should be answered with a 503 (Service Unavailable) and a Retry-After.
+ *
+ * The limits may be set with the optional properties
+ * <ul>
+ * <li>com.oculusinfo.tile.scheduler.concurrency (default: twice the number of
+ * processors)</li>
+ * <li>com.oculusinfo.tile.scheduler.layerConcurrency (default: the number of
+ * processors)</li>
+ * <li>com.oculusinfo.tile.scheduler.backendConcurrency (default: twice the
+ * number of processors)</li>
+ * <li>com.oculusinfo.tile.scheduler.backgroundConcurrency - how many
+ * background reads may run at once (default: half the overall
+ * concurrency)</li>
+ * <li>com.oculusinfo.tile.scheduler.queueSize - how many requests may wait
+ * (default 256)</li>
+ * <li>com.oculusinfo.tile.scheduler.maxWait - how long, in milliseconds, a
+ * request may wait (default 10000)</li>
+ * <li>com.oculusinfo.tile.scheduler.retryAfter - the number of seconds after
+ * which rejected clients are told to retry (default 1)</li>
+ * </ul>
+ */
+@Singleton
+public class TileRequestScheduler {
+	private static final int MAX_SESSIONS = 1000;
+
+	/**
+	 * The cookie by which clients identify themselves. The tile client sets a
+	 * random one per browser.
+	 */
+	public static final String SESSION_COOKIE         = "tileSession";
+	// The servlet container's session, for clients that have one instead
+	private static final String SERVLET_SESSION_COOKIE = "JSESSIONID";
+
+	/**
+	 * The work of one tile request.
+	 */
+	public interface Task<T> {
+		public T run ();
+	}
+
+	private enum State {Waiting, Running, Rejected}
+
+	private ReentrantLock              _lock;
+	private int                        _maxConcurrent;
+	private int                        _maxPerLayer;
+	private int                        _maxPerBackend;
+	private int                        _maxBackground;
+	private int                        _maxQueued;
+	private long                       _maxWait;
+	private int                        _retryAfter;
+
+	private int                        _running;
+	private int                        _runningBackground;
+	private Map<String, Integer>       _runningByLayer;
+	private Map<String, Integer>       _runningByBackend;
+	private TreeSet<Ticket>            _waiting;
+	private LRUCache<String, Integer>  _sessionLevels;
+	private long                       _nextSequence;
+
+	@Inject
+	public TileRequestScheduler () {
+		this(2 * Runtime.getRuntime().availableProcessors(),
+		     Runtime.getRuntime().availableProcessors(),
+		     2 * Runtime.getRuntime().availableProcessors(),
+		     256, 10000);
+	}
+
+	/**
+	 * Create a scheduler
+	 *
+	 * @param maxConcurrent The maximum number of requests to run at once
+	 * @param maxPerLayer The maximum number of requests for any one layer to
+	 *            run at once
+	 * @param maxPerBackend The maximum number of requests reading from any one
+	 *            type of storage to run at once
+	 * @param maxQueued The maximum number of requests that may wait to run
+	 * @param maxWait The longest a request may wait to run, in milliseconds
+	 */
+	public TileRequestScheduler (int maxConcurrent, int maxPerLayer, int maxPerBackend,
+	                             int maxQueued, long maxWait) {
+		_lock = new ReentrantLock();
+		_maxConcurrent = maxConcurrent;
+		_maxPerLayer = maxPerLayer;
+		_maxPerBackend = maxPerBackend;
+		_maxBackground = Math.max(1, maxConcurrent / 2);
+		_maxQueued = maxQueued;
+		_maxWait = maxWait;
+		_retryAfter = 1;
+
+		_running = 0;
+		_runningBackground = 0;
+		_runningByLayer = new HashMap<>();
+		_runningByBackend = new HashMap<>();
+		_waiting = new TreeSet<>();
+		_sessionLevels = new LRUCache<>(MAX_SESSIONS);
+		_nextSequence = 0;
+
+		TileMetrics.registerGauge(TileMetrics.SCHEDULER_QUEUE, new TileMetrics.Gauge() {
+			@Override
+			public long getValue () {
+				return getWaitingCount();
+			}
+		});
+	}
+
+	@Inject(optional = true)
+	public void setConcurrency (@Named("com.oculusinfo.tile.scheduler.concurrency") int maxConcurrent) {
+		_lock.lock();
+		try {
+			_maxConcurrent = maxConcurrent;
+			dispatch();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	@Inject(optional = true)
+	public void setLayerConcurrency (@Named("com.oculusinfo.tile.scheduler.layerConcurrency") int maxPerLayer) {
+		_lock.lock();
+		try {
+			_maxPerLayer = maxPerLayer;
+			dispatch();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	@Inject(optional = true)
+	public void setBackendConcurrency (@Named("com.oculusinfo.tile.scheduler.backendConcurrency") int maxPerBackend) {
+		_lock.lock();
+		try {
+			_maxPerBackend = maxPerBackend;
+			dispatch();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	@Inject(optional = true)
+	public void setBackgroundConcurrency (@Named("com.oculusinfo.tile.scheduler.backgroundConcurrency") int maxBackground) {
+		_lock.lock();
+		try {
+			_maxBackground = maxBackground;
+			dispatch();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	@Inject(optional = true)
+	public void setQueueSize (@Named("com.oculusinfo.tile.scheduler.queueSize") int maxQueued) {
+		_lock.lock();
+		try {
+			_maxQueued = maxQueued;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	@Inject(optional = true)
+	public void setMaxWait (@Named("com.oculusinfo.tile.scheduler.maxWait") long maxWait) {
+		_lock.lock();
+		try {
+			_maxWait = maxWait;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	@Inject(optional = true)
+	public void setRetryAfter (@Named("com.oculusinfo.tile.scheduler.retryAfter") int retryAfter) {
+		_retryAfter = retryAfter;
+	}
+
+	/**
+	 * Identify the client making the current request, so that its newer
+	 * requests can supersede its older ones.
+	 *
+	 * Clients are identified only by a session cookie -
+	 * {@link #SESSION_COOKIE}, or failing that, the servlet session - never by
+	 * address, which many clients behind one proxy may share.
+	 *
+	 * @return A key for the current client, or null if this thread isn't
+	 *         serving a request, or the client didn't identify itself
+	 */
+	public static String getCurrentSession () {
+		Request request = Request.getCurrent();
+		if (null == request || null == request.getCookies()) {
+			return null;
+		}
+		for (String cookie: new String[] {SESSION_COOKIE, SERVLET_SESSION_COOKIE}) {
+			String session = request.getCookies().getFirstValue(cookie);
+			if (null != session && !session.isEmpty()) {
+				return cookie + "=" + session;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Run a tile request once there is room for it.
+	 *
+	 * @param session The client making the request, from
+	 *            {@link #getCurrentSession()}; null if the request isn't on
+	 *            behalf of any particular client
+	 * @param layer The layer requested
+	 * @param backend The type of storage from which the layer is read
+	 * @param level The level of the tile requested
+	 * @param task The work of the request
+	 * @return The result of the task
+	 * @throws TileRequestRejectedException if the request was shed or
+	 *             cancelled rather than run
+	 */
+	public <T> T execute (String session, String layer, String backend, int level, Task<T> task) {
+		long start = System.nanoTime();
+		Ticket ticket = acquire(session, layer, backend, level, false);
+		TileMetrics.recordSince(TileMetrics.SCHEDULER_WAIT, start);
+		try {
+			return task.run();
+		} finally {
+			release(ticket);
+		}
+	}
+
+	/**
+	 * Run a read that no client is waiting for, such as a prefetch, once there
+	 * is room for it. Background reads count against the same limits as
+	 * client requests, but run only when no client request can, and only a
+	 * few at a time.
+	 *
+	 * @param layer The layer to be read
+	 * @param backend The type of storage from which the layer is read
+	 * @param level The coarsest level to be read
+	 * @param task The work of the read
+	 * @return The result of the task
+	 * @throws TileRequestRejectedException if the read was shed rather than
+	 *             run
+	 */
+	public <T> T executeInBackground (String layer, String backend, int level, Task<T> task) {
+		Ticket ticket = acquire(null, layer, backend, level, true);
+		try {
+			return task.run();
+		} finally {
+			release(ticket);
+		}
+	}
+
+	public int getWaitingCount () {
+		_lock.lock();
+		try {
+			return _waiting.size();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public int getRunningCount () {
+		_lock.lock();
+		try {
+			return _running;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	private Ticket acquire (String session, String layer, String backend, int level, boolean background) {
+		_lock.lock();
+		try {
+			Ticket ticket = new Ticket(session, layer, backend, level, background, _nextSequence++, _lock.newCondition());
+			if (null != session) {
+				cancelSuperseded(session, level);
+			}
+
+			_waiting.add(ticket);
+			dispatch();
+			if (_waiting.size() > _maxQueued) {
+				// Overloaded - turn away whoever is least important, which
+				// may well be this request
+				reject(_waiting.last(), "Server overloaded", TileMetrics.SCHEDULER_SHED);
+			}
+
+			long remaining = TimeUnit.MILLISECONDS.toNanos(_maxWait);
+			while (State.Waiting == ticket._state) {
+				if (remaining <= 0L) {
+					reject(ticket, "Timed out waiting for server", TileMetrics.SCHEDULER_SHED);
+				} else {
+					try {
+						remaining = ticket._ready.awaitNanos(remaining);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						// We may have been dispatched between the interruption
+						// and getting the lock back; if so, give up our slot.
+						if (State.Running == ticket._state) {
+							freeSlot(ticket);
+						}
+						reject(ticket, "Request interrupted", TileMetrics.SCHEDULER_CANCELLED);
+					}
+				}
+			}
+
+			if (State.Rejected == ticket._state) {
+				throw new TileRequestRejectedException(ticket._rejection, _retryAfter);
+			}
+			return ticket;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	private void release (Ticket ticket) {
+		_lock.lock();
+		try {
+			freeSlot(ticket);
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	// Give up the slot of a running request, and start whatever can take its
+	// place.  Must be called with the lock held.
+	private void freeSlot (Ticket ticket) {
+		--_running;
+		if (ticket._background) {
+			--_runningBackground;
+		}
+		adjust(_runningByLayer, ticket._layer, -1);
+		adjust(_runningByBackend, ticket._backend, -1);
+		dispatch();
+	}
+
+	// Start as many waiting requests as the limits allow, best first.  Must
+	// be called with the lock held.
+	private void dispatch () {
+		Iterator<Ticket> i = _waiting.iterator();
+		while (_running < _maxConcurrent && i.hasNext()) {
+			Ticket ticket = i.next();
+			if (ticket._background && _runningBackground >= _maxBackground) {
+				// Everything after this is background too
+				break;
+			}
+			if (get(_runningByLayer, ticket._layer) < _maxPerLayer &&
+			    get(_runningByBackend, ticket._backend) < _maxPerBackend) {
+				i.remove();
+				++_running;
+				if (ticket._background) {
+					++_runningBackground;
+				}
+				adjust(_runningByLayer, ticket._layer, 1);
+				adjust(_runningByBackend, ticket._backend, 1);
+				ticket._state = State.Running;
+				ticket._ready.signal();
+			}
+		}
+	}
+
+	// A client asking for a new level has zoomed away from whatever it was
+	// waiting for at other levels.  Must be called with the lock held.
+	private void cancelSuperseded (String session, int level) {
+		Integer lastLevel = _sessionLevels.get(session);
+		_sessionLevels.put(session, level);
+		if (null == lastLevel || lastLevel.intValue() == level) {
+			return;
+		}
+
+		Iterator<Ticket> i = _waiting.iterator();
+		while (i.hasNext()) {
+			Ticket ticket = i.next();
+			if (session.equals(ticket._session) && ticket._level != level) {
+				i.remove();
+				reject(ticket, "Superseded by a request at level "+level, TileMetrics.SCHEDULER_CANCELLED);
+			}
+		}
+	}
+
+	// Must be called with the lock held.
+	private void reject (Ticket ticket, String reason, String counter) {
+		_waiting.remove(ticket);
+		ticket._state = State.Rejected;
+		ticket._rejection = reason;
+		ticket._ready.signal();
+		TileMetrics.increment(counter, 1);
+	}
+
+	private static int get (Map<String, Integer> counts, String key) {
+		Integer count = counts.get(key);
+		return null == count ? 0 : count;
+	}
+
+	private static void adjust (Map<String, Integer> counts, String key, int delta) {
+		int count = get(counts, key) + delta;
+		if (0 == count) {
+			counts.remove(key);
+		} else {
+			counts.put(key, count);
+		}
+	}
+
+
+
+	private static class Ticket implements Comparable<Ticket> {
+		final String    _session;
+		final String    _layer;
+		final String    _backend;
+		final int       _level;
+		final boolean   _background;
+		final long      _sequence;
+		final Condition _ready;
+		State           _state;
+		String          _rejection;
+
+		Ticket (String session, String layer, String backend, int level, boolean background,
+		        long sequence, Condition ready) {
+			_session = session;
+			_layer = layer;
+			_backend = backend;
+			_level = level;
+			_background = background;
+			_sequence = sequence;
+			_ready = ready;
+			_state = State.Waiting;
+		}
+
+		// Client requests before background ones, then coarsest level first,
+		// then newest first
+		@Override
+		public int compareTo (Ticket that) {
+			if (this._background != that._background) {
+				return this._background ? 1 : -1;
+			}
+			if (this._level != that._level) {
+				return this._level < that._level ? -1 : 1;
+			}
+			if (this._sequence != that._sequence) {
+				return this._sequence > that._sequence ? -1 : 1;
+			}
+			return 0;
+		}
+	}
+}
@@ -25,13 +25,17 @@
 package com.oculusinfo.tile.rest.tile;
 
 import com.google.inject.Inject;
+import com.oculusinfo.binning.TileData;
 import com.oculusinfo.binning.TileIndex;
 import com.oculusinfo.tile.rendering.LayerConfiguration;
+import com.oculusinfo.tile.rest.ImageEncodingService;
 import com.oculusinfo.tile.rest.ImageOutputRepresentation;
 import com.oculusinfo.tile.rest.QueryParamDecoder;
+import com.oculusinfo.tile.rest.TileDataOutputRepresentation;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.restlet.data.MediaType;
+import org.restlet.data.Preference;
 import org.restlet.data.Status;
 import org.restlet.ext.json.JsonRepresentation;
 import org.restlet.representation.Representation;
@@ -46,13 +50,15 @@ public class TileResource extends ServerResource {
 
 	public enum ResponseType {
 		Image,
-		Tile
+		Tile,
+		Data
 	}
 	public enum ExtensionType {
 		png(ResponseType.Image, MediaType.IMAGE_PNG),
 		jpg(ResponseType.Image, MediaType.IMAGE_JPEG),
 		jpeg(ResponseType.Image, MediaType.IMAGE_JPEG),
-		json(ResponseType.Tile, MediaType.APPLICATION_JSON);
+		json(ResponseType.Tile, MediaType.APPLICATION_JSON),
+		bin(ResponseType.Data, MediaType.APPLICATION_OCTET_STREAM);
 
 		private ResponseType _responseType;
 		private MediaType _mediaType;
@@ -69,11 +75,13 @@ public class TileResource extends ServerResource {
 	}
 
 	private TileService _service;
+	private ImageEncodingService _imageEncoder;
 
 
 	@Inject
-	public TileResource(TileService service) {
+	public TileResource(TileService service, ImageEncodingService imageEncoder) {
 		this._service = service;
+		this._imageEncoder = imageEncoder;
 	}
 
     /**
@@ -138,9 +146,24 @@ public class TileResource extends ServerResource {
 	}
 
 
+	/*
+	 * Determine if the client has explicitly asked for binary data, in which case data tile
+	 * requests are answered in binary form rather than JSON.
+	 */
+	private boolean acceptsBinaryTiles () {
+		for (Preference<MediaType> accepted: getClientInfo().getAcceptedMediaTypes()) {
+			if (MediaType.APPLICATION_OCTET_STREAM.equals(accepted.getMetadata()) && accepted.getQuality() > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+
     /**
      * GET request. Returns a tile from a layer at specified level, xIndex, yIndex. Currently
-     * supports png/jpg image formats and JSON data tiles.
+     * supports png/jpg image formats, JSON data tiles, and binary data tiles (either requested
+     * with a .bin extension, or as JSON with an Accept header asking for application/octet-stream).
      */
 	@Get
 	public Representation getTile() throws ResourceException {
@@ -174,10 +197,21 @@ public class TileResource extends ServerResource {
 			} else if (ResponseType.Image.equals(extType.getResponseType())) {
 
 				BufferedImage tile = _service.getTileImage( layer, index, tileSet, decodedQueryParams );
-				ImageOutputRepresentation imageRep = new ImageOutputRepresentation(extType.getMediaType(), tile);
+				ImageOutputRepresentation imageRep = new ImageOutputRepresentation(extType.getMediaType(), tile, _imageEncoder);
 				setStatus(Status.SUCCESS_OK);
 				return imageRep;
 
+			} else if (ResponseType.Data.equals(extType.getResponseType()) ||
+			           (ResponseType.Tile.equals(extType.getResponseType()) && acceptsBinaryTiles())) {
+				// Raw tile data, in binary form; see BinaryTileEncoder for the format.
+				TileData<?> tile = _service.getTileData( layer, index, tileSet, decodedQueryParams );
+				if (null == tile) {
+					setStatus(Status.SUCCESS_NO_CONTENT);
+					return null;
+				}
+				setStatus(Status.SUCCESS_OK);
+				return new TileDataOutputRepresentation(tile);
+
 			} else if (ResponseType.Tile.equals(extType.getResponseType())) {
 				// We return an object including the tile index ("index") and
 				// the tile data ("data").
@@ -199,6 +233,11 @@ public class TileResource extends ServerResource {
 				setStatus(Status.SERVER_ERROR_INTERNAL);
 			}
 
+			return null;
+		} catch (TileRequestRejectedException e) {
+			// Overloaded, or superseded by a newer request from the same client
+			setStatus(Status.SERVER_ERROR_SERVICE_UNAVAILABLE, e.getMessage());
+			getResponse().setRetryAfter(new Date(System.currentTimeMillis() + 1000L * e.getRetryAfter()));
 			return null;
 		} catch (Exception e){
 			throw new ResourceException(Status.CLIENT_ERROR_BAD_REQUEST,
@@ -25,9 +25,11 @@
 package com.oculusinfo.tile.rest.tile;
 
 import java.awt.image.BufferedImage;
+import java.util.List;
 
 import org.json.JSONObject;
 
+import com.oculusinfo.binning.TileData;
 import com.oculusinfo.binning.TileIndex;
 
 public interface TileService {
@@ -52,4 +54,28 @@ public interface TileService {
 	 * @return The raw data for the indicated tile
 	 */
 	public JSONObject getTileObject( String layer, TileIndex index, Iterable<TileIndex> tileSet, JSONObject query );
+
+	/**
+	 * Raw tile data request, for binary output.  Unlike {@link #getTileObject}, the tile is
+	 * never converted to JSON; the layer's tile transformer is applied to the tile data directly.
+	 *
+	 * @param layer - The layer for which to get tile data
+	 * @param index The index of the desired tile
+	 * @param tileSet A set of other tiles which will be wanted along with this
+	 *            one
+	 * @return The transformed data for the indicated tile, or null if there is none
+	 */
+	public TileData<?> getTileData( String layer, TileIndex index, Iterable<TileIndex> tileSet, JSONObject query );
+
+	/**
+	 * Composite tile request: renders the same tile of several layers, and
+	 * combines them, bottom to top, into a single image.
+	 *
+	 * @param layers The layers to draw, bottom first, with how to draw each
+	 * @param index The index of the desired tile
+	 * @param tileSet A set of other tiles which will be wanted along with this
+	 *            one
+	 * @return The composite image
+	 */
+	public BufferedImage getCompositeTileImage( List<CompositeLayer> layers, TileIndex index, Iterable<TileIndex> tileSet );
 }
@@ -26,41 +26,113 @@ package com.oculusinfo.tile.rest.tile;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 import com.oculusinfo.binning.TileData;
 import com.oculusinfo.binning.TileIndex;
 import com.oculusinfo.binning.impl.SubTileDataView;
 import com.oculusinfo.binning.io.PyramidIO;
 import com.oculusinfo.binning.io.serialization.TileSerializer;
-import com.oculusinfo.binning.metadata.PyramidMetaData;
 import com.oculusinfo.binning.util.AvroJSONConverter;
 import com.oculusinfo.binning.util.TileIOUtils;
 import com.oculusinfo.factory.ConfigurationException;
+import com.oculusinfo.tile.metrics.TileMetrics;
+import com.oculusinfo.tile.metrics.TimedTileSerializer;
 import com.oculusinfo.tile.rendering.LayerConfiguration;
 import com.oculusinfo.tile.rendering.TileDataImageRenderer;
 import com.oculusinfo.tile.rendering.transformations.combine.TileCombiner;
 import com.oculusinfo.tile.rendering.transformations.tile.TileTransformer;
+import com.oculusinfo.tile.rest.layer.LayerMetaData;
 import com.oculusinfo.tile.rest.layer.LayerService;
+import com.oculusinfo.tile.rest.tile.caching.CachingPyramidIO;
+import com.oculusinfo.tile.util.ImageBufferPool;
+import com.oculusinfo.tile.util.ImageCompositor;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
+/**
+ * Every tile request reads and renders under a {@link TileRequestScheduler},
+ * which bounds how many run at once and sheds or cancels the rest.
+ *
+ * The time taken by each stage of rendering an image tile, and by each layer
+ * and storage backend, is recorded in {@link TileMetrics}.
+ *
+ * The layers of composite tiles are rendered in parallel; the number of
+ * threads used to do so may be set with the optional property
+ * com.oculusinfo.tile.composite.threads (default: the number of processors).
+ */
 @Singleton
 public class TileServiceImpl implements TileService {
 	private static final Logger LOGGER = LoggerFactory.getLogger( TileServiceImpl.class );
-	private static final Color COLOR_BLANK = new Color( 255, 255, 255, 0 );
 
-	private LayerService _layerService;
+	private static final int QUEUE_SIZE_PER_RENDERER = 16;
+
+	private LayerService         _layerService;
+	private TileRequestScheduler _scheduler;
+	private ThreadPoolExecutor   _layerRenderers;
 
 	@Inject
-	public TileServiceImpl( LayerService layerService ) {
+	public TileServiceImpl( LayerService layerService, TileRequestScheduler scheduler ) {
 		_layerService = layerService;
+		_scheduler = scheduler;
+		setCompositeThreads( Runtime.getRuntime().availableProcessors() );
+		TileMetrics.registerGauge( TileMetrics.COMPOSITE_QUEUE, new TileMetrics.Gauge() {
+			@Override
+			public long getValue() {
+				return _layerRenderers.getQueue().size();
+			}
+		} );
+	}
+
+	@Inject(optional = true)
+	public void setCompositeThreads( @Named("com.oculusinfo.tile.composite.threads") int threads ) {
+		final AtomicInteger threadNumber = new AtomicInteger( 0 );
+		ThreadFactory threadFactory = new ThreadFactory() {
+			@Override
+			public Thread newThread( Runnable runnable ) {
+				Thread thread = new Thread( runnable, "tile-layer-renderer-" + threadNumber.incrementAndGet() );
+				thread.setDaemon( true );
+				return thread;
+			}
+		};
+		ThreadPoolExecutor oldExecutor = _layerRenderers;
+		// When busy, layers are rendered on the requesting thread instead
+		_layerRenderers = new ThreadPoolExecutor( threads, threads, 60, TimeUnit.SECONDS,
+												  new ArrayBlockingQueue<Runnable>( threads * QUEUE_SIZE_PER_RENDERER ),
+												  threadFactory, new ThreadPoolExecutor.CallerRunsPolicy() );
+		if ( null != oldExecutor ) {
+			oldExecutor.shutdown();
+		}
+	}
+
+	// The type of storage from which a layer is read, as given in its configuration
+	private String getBackend( String layer ) {
+		JSONObject config = _layerService.getLayerJSON( layer );
+		for ( String key : LayerConfiguration.PYRAMID_IO_PATH ) {
+			if ( null == config ) {
+				break;
+			}
+			config = config.optJSONObject( key );
+		}
+		return null == config ? "unknown" : config.optString( "type", "unknown" );
 	}
 
 	/* (non-Javadoc)
@@ -68,20 +140,35 @@ public class TileServiceImpl implements TileService {
 	 */
 	@Override
 	public BufferedImage getTileImage( String layer, TileIndex index, Iterable<TileIndex> tileSet, JSONObject query ) {
+		return getTileImage( TileRequestScheduler.getCurrentSession(), layer, index, tileSet, query );
+	}
+
+	private BufferedImage getTileImage( final String session, final String layer, final TileIndex index,
+										final Iterable<TileIndex> tileSet, final JSONObject query ) {
+		return _scheduler.execute( session, layer, getBackend( layer ), index.getLevel(), new TileRequestScheduler.Task<BufferedImage>() {
+			@Override
+			public BufferedImage run() {
+				return renderLayer( session, layer, index, tileSet, query );
+			}
+		} );
+	}
+
+	private BufferedImage renderLayer( String session, String layer, TileIndex index, Iterable<TileIndex> tileSet, JSONObject query ) {
 		BufferedImage bi = null;
+		long start = System.nanoTime();
 
 		// get layer configuration
 		LayerConfiguration config = _layerService.getLayerConfiguration( layer, query );
 
 		try {
 			// set level extrema
-			PyramidMetaData metadata = _layerService.getMetaData( layer );
-			String minimum = metadata.getCustomMetaData( "" + index.getLevel(), "minimum" );
-			String maximum = metadata.getCustomMetaData( "" + index.getLevel(), "maximum" );
+			LayerMetaData metadata = _layerService.getLayerMetaData( layer );
+			String minimum = null == metadata ? null : metadata.getLevelMinimum( index.getLevel() );
+			String maximum = null == metadata ? null : metadata.getLevelMaximum( index.getLevel() );
 			config.setLevelProperties( index, minimum, maximum );
 			// produce the tile renderer from the configuration
 			TileDataImageRenderer<?> tileRenderer = config.produce( TileDataImageRenderer.class );
-			bi = renderTileImage( config, layer, index, tileSet, tileRenderer );
+			bi = renderTileImage( config, session, layer, index, tileSet, tileRenderer, start );
 
 		} catch ( ConfigurationException e ) {
 			LOGGER.warn( "No renderer specified for tile request. " + e.getMessage() );
@@ -94,28 +181,99 @@ public class TileServiceImpl implements TileService {
 
 		// always return a blank tile if there is no data
 		if ( bi == null ) {
-			int outputWidth = 256;
-			int outputHeight = 256;
+			bi = getBlankImage( config );
+		}
+		TileMetrics.recordSince( TileMetrics.LAYER_PREFIX + layer, start );
+		return bi;
+	}
+
+	// Get a blank image of the size a layer is configured to output
+	private BufferedImage getBlankImage( LayerConfiguration config ) {
+		int outputWidth = 256;
+		int outputHeight = 256;
+		try {
+			outputWidth = config.getPropertyValue(LayerConfiguration.OUTPUT_WIDTH);
+			outputHeight = config.getPropertyValue(LayerConfiguration.OUTPUT_HEIGHT);
+		} catch (ConfigurationException e) {
+			LOGGER.warn("Error reading image height or width; defaulting to "+outputWidth+" x "+outputHeight, e);
+		}
+		return ImageBufferPool.getBlankImage( outputWidth, outputHeight );
+	}
+
+	@Override
+	public BufferedImage getCompositeTileImage( List<CompositeLayer> layers, final TileIndex index, final Iterable<TileIndex> tileSet ) {
+		// Layers render off the request thread, so note whose request this is
+		final String session = TileRequestScheduler.getCurrentSession();
+
+		// Start every layer rendering at once...
+		List<Future<BufferedImage>> images = new ArrayList<>( layers.size() );
+		for ( final CompositeLayer layer : layers ) {
+			images.add( _layerRenderers.submit( new Callable<BufferedImage>() {
+				@Override
+				public BufferedImage call() throws Exception {
+					return getTileImage( session, layer.getLayer(), index, tileSet, layer.getQuery() );
+				}
+			} ) );
+		}
+
+		// ... and combine them, in order, as they finish
+		ImageCompositor compositor = null;
+		for ( int i = 0; i < layers.size(); i++ ) {
+			CompositeLayer layer = layers.get( i );
+			BufferedImage image = null;
 			try {
-				outputWidth = config.getPropertyValue(LayerConfiguration.OUTPUT_WIDTH);
-				outputHeight = config.getPropertyValue(LayerConfiguration.OUTPUT_HEIGHT);
-			} catch (ConfigurationException e) {
-				LOGGER.warn("Error reading image height or width; defaulting to "+outputWidth+" x "+outputHeight, e);
+				image = images.get( i ).get();
+				if ( null == compositor ) {
+					compositor = new ImageCompositor( image.getWidth(), image.getHeight() );
+				}
+				compositor.addLayer( image, layer.getBlendMode(), layer.getOpacity() );
+			} catch ( ExecutionException e ) {
+				// A composite missing a layer is wrong, so if any layer is turned away, so is the whole tile
+				if ( e.getCause() instanceof TileRequestRejectedException ) {
+					abandonLayers( images.subList( i + 1, images.size() ) );
+					throw ( TileRequestRejectedException ) e.getCause();
+				}
+				LOGGER.warn( "Error rendering layer {} of composite tile {}", layer.getLayer(), index, e );
+			} catch ( InterruptedException e ) {
+				LOGGER.warn( "Error rendering layer {} of composite tile {}", layer.getLayer(), index, e );
+			} catch ( IllegalArgumentException e ) {
+				LOGGER.warn( "Layer {} doesn't match the size of the other layers of composite tile {}", layer.getLayer(), index );
+			} finally {
+				ImageBufferPool.release( image );
+			}
+		}
+
+		if ( null == compositor ) {
+			if ( layers.isEmpty() ) {
+				return ImageBufferPool.getBlankImage( 256, 256 );
+			}
+			CompositeLayer first = layers.get( 0 );
+			return getBlankImage( _layerService.getLayerConfiguration( first.getLayer(), first.getQuery() ) );
+		}
+		return compositor.getImage();
+	}
+
+	/*
+	 * Stop rendering layers whose results are no longer wanted, returning the
+	 * images of any that have already finished to the pool.
+	 */
+	private void abandonLayers( List<Future<BufferedImage>> images ) {
+		for ( Future<BufferedImage> image : images ) {
+			if ( !image.cancel( true ) ) {
+				try {
+					ImageBufferPool.release( image.get() );
+				} catch ( ExecutionException | InterruptedException | CancellationException e ) {
+					// Nothing was rendered, so there is nothing to release
+				}
 			}
-			bi = new BufferedImage( outputWidth, outputHeight, BufferedImage.TYPE_INT_ARGB );
-			Graphics2D g = bi.createGraphics();
-			g.setColor( COLOR_BLANK );
-			g.fillRect( 0, 0, 256, 256 );
-			g.dispose();
 		}
-		return bi;
 	}
 
-	private <T> BufferedImage renderTileImage( LayerConfiguration config, String layer,
+	private <T> BufferedImage renderTileImage( LayerConfiguration config, String session, String layer,
 											   TileIndex index, Iterable<TileIndex> tileSet,
-											   TileDataImageRenderer<T> renderer ) throws ConfigurationException, IOException, Exception {
+											   TileDataImageRenderer<T> renderer, long start ) throws ConfigurationException, IOException, Exception {
 		// prepare for rendering
-		config.prepareForRendering( layer, index, tileSet );
+		config.prepareForRendering( session, layer, index, tileSet );
 
 		// get data source id, and produce the pyramidio and serializer
 		// these are all common points of failure in the config, so explicitly log these
@@ -125,7 +283,7 @@ public class TileServiceImpl implements TileService {
 			return null;
 		}
 		PyramidIO pyramidIO = config.produce( PyramidIO.class );
-		if ( dataId == null ) {
+		if ( pyramidIO == null ) {
 			LOGGER.error( "Could not produce pyramidio for layer:" + layer + ", please confirm that it has been configured correctly and data is avalable." );
 			return null;
 		}
@@ -133,6 +291,8 @@ public class TileServiceImpl implements TileService {
 		TileSerializer<T> serializer = config.produce( TileSerializer.class );
 		if ( serializer == null ) {
 			LOGGER.error( "Could not produce tile serializer, please confirm that it has been configured correctly." );
+		} else {
+			serializer = new TimedTileSerializer<>( serializer, TileMetrics.RENDER_DESERIALIZE );
 		}
 
 		int coarseness = config.getPropertyValue( LayerConfiguration.COARSENESS );
@@ -143,24 +303,46 @@ public class TileServiceImpl implements TileService {
 
 		JSONObject tileProperties = config.getPropertyValue(LayerConfiguration.FILTER_PROPS);
 
+		Boolean applyAlphaRamp = config.getPropertyValue( LayerConfiguration.ALPHA_RAMP );
+		long stageStart = TileMetrics.recordSince( TileMetrics.RENDER_CONFIG, start );
+
+		// Reading includes deserialization, which is also recorded separately
 		TileData<T> data = TileIOUtils.tileDataForIndex(index, dataId, serializer, pyramidIO, coarseness, tileProperties);
+		long readTime = System.nanoTime() - stageStart;
+		TileMetrics.getLatency( TileMetrics.RENDER_READ ).record( readTime );
+		// The cache times its own reads from the underlying storage, which are all that hit the backend
+		if ( !( pyramidIO instanceof CachingPyramidIO ) ) {
+			TileMetrics.getLatency( TileMetrics.BACKEND_PREFIX + pyramidIO.getClass().getSimpleName() ).record( readTime );
+		}
+		stageStart += readTime;
 
 		if (data == null) {
 			return null;
 		}
 
 		TileData<T> modifiedData = tileCombiner.combine(data, index, coarseness, tileProperties);
+		stageStart = TileMetrics.recordSince( TileMetrics.RENDER_COMBINE, stageStart );
 		modifiedData = tileTransformer.transform( modifiedData );
+		stageStart = TileMetrics.recordSince( TileMetrics.RENDER_TRANSFORM, stageStart );
 
-		Boolean applyAlphaRamp = config.getPropertyValue( LayerConfiguration.ALPHA_RAMP );
-		if ( data != null ) {
-			return renderer.render( modifiedData, applyAlphaRamp ? data : null, config );
-		}
-		return null;
+		BufferedImage image = renderer.render( modifiedData, applyAlphaRamp ? data : null, config );
+		TileMetrics.recordSince( TileMetrics.RENDER_RENDER, stageStart );
+		return image;
 	}
 
 	@Override
-	public JSONObject getTileObject( String layer, TileIndex index, Iterable<TileIndex> tileSet, JSONObject query ) {
+	public JSONObject getTileObject( final String layer, final TileIndex index, final Iterable<TileIndex> tileSet, final JSONObject query ) {
+		final String session = TileRequestScheduler.getCurrentSession();
+		return _scheduler.execute( session, layer, getBackend( layer ), index.getLevel(),
+								   new TileRequestScheduler.Task<JSONObject>() {
+			@Override
+			public JSONObject run() {
+				return readTileObject( session, layer, index, tileSet, query );
+			}
+		} );
+	}
+
+	private JSONObject readTileObject( String session, String layer, TileIndex index, Iterable<TileIndex> tileSet, JSONObject query ) {
 		try {
 			// get layer configuration
 			LayerConfiguration config = _layerService.getLayerConfiguration( layer, query );
@@ -184,7 +366,7 @@ public class TileServiceImpl implements TileService {
 			}
 
 			// prepare for rendering
-			config.prepareForRendering( layer, index, tileSet );
+			config.prepareForRendering( session, layer, index, tileSet );
 
 			// pull tile data from pyramid io
 			InputStream tile = pyramidIO.getTileStream( dataId, serializer, index );
@@ -203,4 +385,57 @@ public class TileServiceImpl implements TileService {
 		}
 		return null;
 	}
+
+	@Override
+	public TileData<?> getTileData( final String layer, final TileIndex index, final Iterable<TileIndex> tileSet, final JSONObject query ) {
+		final String session = TileRequestScheduler.getCurrentSession();
+		return _scheduler.execute( session, layer, getBackend( layer ), index.getLevel(),
+								   new TileRequestScheduler.Task<TileData<?>>() {
+			@Override
+			public TileData<?> run() {
+				return readTileData( session, layer, index, tileSet, query );
+			}
+		} );
+	}
+
+	private TileData<?> readTileData( String session, String layer, TileIndex index, Iterable<TileIndex> tileSet, JSONObject query ) {
+		try {
+			// get layer configuration
+			LayerConfiguration config = _layerService.getLayerConfiguration( layer, query );
+
+			String dataId = config.getPropertyValue( LayerConfiguration.DATA_ID );
+			if ( dataId == null ) {
+				LOGGER.error( "Could not determine data id for layer:" + layer + ", please confirm that it has been configured correctly." );
+				return null;
+			}
+			PyramidIO pyramidIO = config.produce( PyramidIO.class );
+			TileSerializer<?> serializer = config.produce( TileSerializer.class );
+			if ( serializer == null ) {
+				LOGGER.error( "Could not produce tile serializer, please confirm that it has been configured correctly." );
+				return null;
+			}
+
+			// prepare for rendering
+			config.prepareForRendering( session, layer, index, tileSet );
+
+			TileTransformer<?> transformer = config.produce( TileTransformer.class );
+			JSONObject tileProperties = config.getPropertyValue( LayerConfiguration.FILTER_PROPS );
+			return readTransformedTile( dataId, index, pyramidIO, serializer, transformer, tileProperties );
+
+		} catch ( Exception e ) {
+			LOGGER.warn( "Exception getting tile data for {}", index, e );
+		}
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> TileData<T> readTransformedTile( String dataId, TileIndex index, PyramidIO pyramidIO,
+												 TileSerializer<T> serializer, TileTransformer<?> transformer,
+												 JSONObject tileProperties ) throws Exception {
+		List<TileData<T>> tiles = pyramidIO.readTiles( dataId, serializer, Collections.singleton( index ), tileProperties );
+		if ( null == tiles || tiles.isEmpty() || null == tiles.get( 0 ) ) {
+			return null;
+		}
+		return ( (TileTransformer<T>) transformer ).transform( tiles.get( 0 ) );
+	}
 }
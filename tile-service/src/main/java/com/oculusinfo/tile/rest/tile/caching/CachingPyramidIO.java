@@ -43,6 +43,8 @@ import com.oculusinfo.binning.io.PyramidIO;
 import com.oculusinfo.binning.io.serialization.TileSerializer;
 import com.oculusinfo.factory.ConfigurableFactory;
 import com.oculusinfo.factory.ConfigurationException;
+import com.oculusinfo.tile.metrics.TileMetrics;
+import com.oculusinfo.tile.rest.tile.TileRequestScheduler;
 import com.oculusinfo.tile.rest.tile.caching.TileCacheEntry.CacheRequestCallback;
 
 public class CachingPyramidIO implements PyramidIO {
@@ -50,12 +52,24 @@ public class CachingPyramidIO implements PyramidIO {
 
 	private Map<String, TileCache<?>>                    _tileCaches;
 	private Map<String, PyramidIO>                       _basePyramidIOs;
+	private Map<String, String>                          _backends;
 	private List<LayerDataChangedListener>               _layerListeners;
+	private TileRequestScheduler                         _scheduler;
 
 	public CachingPyramidIO () {
 		_tileCaches = new HashMap<>();
 		_basePyramidIOs = new HashMap<>();
+		_backends = new HashMap<>();
 		_layerListeners = new ArrayList<>();
+		_scheduler = null;
+	}
+
+	/**
+	 * Set the scheduler through which speculative reads are made, so that
+	 * they wait for client requests. Without one, they are read immediately.
+	 */
+	public void setScheduler (TileRequestScheduler scheduler) {
+		_scheduler = scheduler;
 	}
 
 	public void addLayerListener (LayerDataChangedListener listener) {
@@ -122,14 +136,19 @@ public class CachingPyramidIO implements PyramidIO {
 
 	/*
 	 * Set up a base pyramid from which to read when we get a cache miss
+	 *
+	 * The backend is the type of storage the base pyramid reads, as the
+	 * scheduler knows it.
 	 */
-	public void setupBasePyramidIO (String pyramidId, ConfigurableFactory<? extends PyramidIO> factory) {
+	public void setupBasePyramidIO (String pyramidId, ConfigurableFactory<? extends PyramidIO> factory,
+	                                String backend) {
 		if (!_basePyramidIOs.containsKey(pyramidId)) {
 			synchronized (_basePyramidIOs) {
 				if (!_basePyramidIOs.containsKey(pyramidId)) {
 					try {
 						PyramidIO basePyramidIO = factory.produce(PyramidIO.class);
 						_basePyramidIOs.put(pyramidId, basePyramidIO);
+						_backends.put(pyramidId, backend);
 					} catch (ConfigurationException e) {
 						LOGGER.warn("Error creating base pyramid IO", e);
 					}
@@ -167,11 +186,14 @@ public class CachingPyramidIO implements PyramidIO {
 			// First, request and retrieve all tiles needed over the long term
 			// Only request those we don't already have
 			List<TileIndex> newIndices = new ArrayList<>(cache.getNewRequests(indices));
+			recordCacheRequests(indices, newIndices.size());
 			if (newIndices.isEmpty())
 				return;
 
 			PyramidIO base = getBasePyramidIO(pyramidId);
+			long start = System.nanoTime();
 			List<TileData<T>> tiles = base.readTiles(pyramidId, serializer, newIndices);
+			TileMetrics.recordSince(TileMetrics.BACKEND_PREFIX + base.getClass().getSimpleName(), start);
 
 			// Cache recieved tiles...
 			for (TileData<T> tile: tiles) {
@@ -185,6 +207,103 @@ public class CachingPyramidIO implements PyramidIO {
 		}
 	}
 
+	private void recordCacheRequests (Iterable<TileIndex> indices, int misses) {
+		int requests = 0;
+		for (@SuppressWarnings("unused") TileIndex index: indices) {
+			++requests;
+		}
+		TileMetrics.increment(TileMetrics.CACHE_REQUESTS, requests);
+		TileMetrics.increment(TileMetrics.CACHE_HITS, requests - misses);
+	}
+
+	/**
+	 * Request a set of tiles speculatively, on behalf of a {@link TilePrefetcher}.
+	 *
+	 * Unlike {@link #requestTiles(String, TileSerializer, Iterable)}, the cache is
+	 * not locked while the tiles are read, so a slow speculative read never
+	 * holds up a real one. Nor are the tiles registered in the cache until they
+	 * have been read; a real request for them in the meantime reads them itself,
+	 * and the speculative copies are then simply dropped.
+	 *
+	 * Tiles the read finds empty are recorded as such; once retrieved, they
+	 * drop out of the cache, and the next request will read them again.
+	 *
+	 * The read is made as a background request of the scheduler, if there is
+	 * one, and so may be turned away with a
+	 * {@link com.oculusinfo.tile.rest.tile.TileRequestRejectedException}.
+	 */
+	public <T> void prefetchTiles (String pyramidId,
+	                               TileSerializer<T> serializer,
+	                               Iterable<TileIndex> indices) throws IOException {
+		PyramidIO base = getBasePyramidIO(pyramidId);
+		if (null == base)
+			return;
+
+		TileCache<T> cache = getTileCache(pyramidId);
+		List<TileIndex> unrequested = cache.getUnrequested(indices);
+		if (unrequested.isEmpty())
+			return;
+
+		List<TileData<T>> tiles = readInBackground(base, pyramidId, serializer, unrequested);
+
+		synchronized (cache) {
+			// Only cache those tiles no one else has requested while we read
+			List<TileIndex> newIndices = new ArrayList<>(cache.getNewRequests(unrequested));
+			for (TileData<T> tile: tiles) {
+				if (newIndices.remove(tile.getDefinition()))
+					cache.provideTile(tile);
+			}
+			for (TileIndex index: newIndices) {
+				cache.provideEmptyTile(index);
+			}
+		}
+	}
+
+	private <T> List<TileData<T>> readInBackground (final PyramidIO base, final String pyramidId,
+	                                                final TileSerializer<T> serializer,
+	                                                final List<TileIndex> indices) throws IOException {
+		TileRequestScheduler scheduler = _scheduler;
+		if (null == scheduler)
+			return timedRead(base, pyramidId, serializer, indices);
+
+		int level = Integer.MAX_VALUE;
+		for (TileIndex index: indices)
+			level = Math.min(level, index.getLevel());
+
+		final IOException[] error = new IOException[1];
+		List<TileData<T>> tiles = scheduler.executeInBackground(pyramidId, getBackend(pyramidId), level,
+			new TileRequestScheduler.Task<List<TileData<T>>>() {
+				@Override
+				public List<TileData<T>> run () {
+					try {
+						return timedRead(base, pyramidId, serializer, indices);
+					} catch (IOException e) {
+						error[0] = e;
+						return null;
+					}
+				}
+			});
+		if (null != error[0])
+			throw error[0];
+		return tiles;
+	}
+
+	private <T> List<TileData<T>> timedRead (PyramidIO base, String pyramidId,
+	                                         TileSerializer<T> serializer,
+	                                         List<TileIndex> indices) throws IOException {
+		long start = System.nanoTime();
+		List<TileData<T>> tiles = base.readTiles(pyramidId, serializer, indices);
+		TileMetrics.recordSince(TileMetrics.BACKEND_PREFIX + base.getClass().getSimpleName(), start);
+		return tiles;
+	}
+
+	private String getBackend (String pyramidId) {
+		synchronized (_basePyramidIOs) {
+			String backend = _backends.get(pyramidId);
+			return null == backend ? "unknown" : backend;
+		}
+	}
+
 	@Override
 	public <T> List<TileData<T>> readTiles (String pyramidId,
 	                                        TileSerializer<T> serializer,
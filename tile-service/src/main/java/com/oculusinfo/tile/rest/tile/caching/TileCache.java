@@ -108,6 +108,27 @@ public class TileCache<T> {
 		return needed;
 	}
 
+	/**
+	 * Take a list of tiles, and return the subset not already in the cache,
+	 * without requesting them.
+	 * 
+	 * @param requests
+	 *            The list of tiles of interest
+	 * @return A sublist of just those tiles not already requested
+	 */
+	public List<TileIndex> getUnrequested (Iterable<TileIndex> requests) {
+		List<TileIndex> unrequested = new ArrayList<>();
+		synchronized (_cache) {
+			for (TileIndex index : requests) {
+				if (!_cache.containsKey(index)) {
+					unrequested.add(index);
+				}
+			}
+		}
+
+		return unrequested;
+	}
+
 	/**
 	 * Request a tile.
 	 * 
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rest.tile.caching;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.oculusinfo.binning.TileIndex;
+import com.oculusinfo.binning.io.serialization.TileSerializer;
+import com.oculusinfo.binning.util.SynchronizedLRUCache;
+import com.oculusinfo.tile.rest.tile.TileRequestRejectedException;
+
+
+
+/**
+ * Server-side look-ahead for the tile cache.
+ *
+ * The prefetcher watches the stream of tile requests from each session (a
+ * client viewing a layer), and guesses from it which tiles will be wanted
+ * next:
+ * <ul>
+ * <li>While panning, the neighbours of each newly exposed tile in the
+ * direction of the pan</li>
+ * <li>After zooming in, the children of each tile, in case the zoom
+ * continues</li>
+ * <li>After zooming out, the parent of each tile</li>
+ * </ul>
+ * When a layer is rendered with a coarseness greater than one, tiles are read
+ * from further up the pyramid, so those ancestors are what get prefetched.
+ *
+ * Guesses are loaded into a {@link CachingPyramidIO} on a small pool of
+ * low-priority threads; the size of that pool is the global cap on
+ * concurrent prefetch reads.  When the pool falls behind, the oldest queued
+ * guesses are dropped, as they are the ones most likely to be out of date.
+ */
+public class TilePrefetcher {
+	private static final Logger LOGGER = LoggerFactory.getLogger(TilePrefetcher.class);
+
+	// Requests from a session further apart than this (in milliseconds) are
+	// treated as unrelated - the user has stopped, and their next move tells
+	// us nothing about their last one.
+	static final long        SESSION_IDLE_TIME     = 2000;
+	private static final int MAX_SESSIONS          = 1000;
+	private static final int QUEUE_SIZE_PER_THREAD = 64;
+
+	private int                                        _depth;
+	private SynchronizedLRUCache<String, SessionState> _sessions;
+	private ThreadPoolExecutor                         _executor;
+
+	/**
+	 * Create a prefetcher
+	 *
+	 * @param threads The maximum number of prefetch reads to run at once. 0
+	 *            disables prefetching.
+	 * @param depth How many tiles ahead of a pan to prefetch
+	 */
+	public TilePrefetcher (int threads, int depth) {
+		_depth = depth;
+		_sessions = new SynchronizedLRUCache<>(MAX_SESSIONS);
+		setThreads(threads);
+	}
+
+	public void setDepth (int depth) {
+		_depth = depth;
+	}
+
+	synchronized public void setThreads (int threads) {
+		ThreadPoolExecutor oldExecutor = _executor;
+		if (threads > 0) {
+			final AtomicInteger threadNumber = new AtomicInteger(0);
+			ThreadFactory threadFactory = new ThreadFactory() {
+				@Override
+				public Thread newThread (Runnable runnable) {
+					Thread thread = new Thread(runnable, "tile-prefetch-" + threadNumber.incrementAndGet());
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			};
+			_executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+			                                   new ArrayBlockingQueue<Runnable>(threads * QUEUE_SIZE_PER_THREAD),
+			                                   threadFactory, new ThreadPoolExecutor.DiscardOldestPolicy());
+		} else {
+			_executor = null;
+		}
+		if (null != oldExecutor) {
+			oldExecutor.shutdown();
+		}
+	}
+
+	/**
+	 * @return The number of prefetch reads waiting for a thread
+	 */
+	public int getQueueDepth () {
+		ThreadPoolExecutor executor = _executor;
+		return null == executor ? 0 : executor.getQueue().size();
+	}
+
+	public boolean isEnabled () {
+		return null != _executor;
+	}
+
+	/**
+	 * Note a tile request, and predict what the same session will want next.
+	 *
+	 * @param session An identifier of the client and layer making the request
+	 * @param tile The tile requested
+	 * @param coarseness The coarseness with which the layer is being rendered
+	 * @return The tiles to prefetch, in order of likelihood
+	 */
+	public List<TileIndex> observe (String session, TileIndex tile, int coarseness) {
+		return observe(session, tile, coarseness, System.currentTimeMillis());
+	}
+
+	List<TileIndex> observe (String session, TileIndex tile, int coarseness, long time) {
+		SessionState state;
+		synchronized (_sessions) {
+			state = _sessions.get(session);
+			if (null == state) {
+				state = new SessionState();
+				_sessions.put(session, state);
+			}
+		}
+
+		Set<TileIndex> predictions = new LinkedHashSet<>();
+		int level = tile.getLevel();
+		int x = tile.getX();
+		int y = tile.getY();
+		synchronized (state) {
+			if (time - state._lastTime > SESSION_IDLE_TIME) {
+				state.reset(tile, 0);
+			} else if (level != state._level) {
+				int levelChange = level - state._level;
+				state.reset(tile, 1 == Math.abs(levelChange) ? levelChange : 0);
+			} else {
+				// A tile outside the area we've seen recently is newly exposed
+				// by a pan; keep going the same way.
+				int dx = (x > state._maxX ? 1 : (x < state._minX ? -1 : 0));
+				int dy = (y > state._maxY ? 1 : (y < state._minY ? -1 : 0));
+				state.include(tile);
+				if (0 != dx || 0 != dy) {
+					for (int k = 1; k <= _depth; ++k) {
+						predictions.add(new TileIndex(level, x + k * dx, y + k * dy));
+					}
+				}
+			}
+			state._lastTime = time;
+
+			if (state._zoom > 0) {
+				for (int i = 0; i < 2; ++i) {
+					for (int j = 0; j < 2; ++j) {
+						predictions.add(new TileIndex(level + 1, 2 * x + i, 2 * y + j));
+					}
+				}
+			} else if (state._zoom < 0) {
+				predictions.add(new TileIndex(level - 1, x / 2, y / 2));
+			}
+		}
+
+		Set<TileIndex> toRead = new LinkedHashSet<>();
+		for (TileIndex prediction: predictions) {
+			TileIndex readIndex = getReadIndex(prediction, coarseness);
+			if (null != readIndex && isValid(readIndex) && !readIndex.equals(tile)) {
+				toRead.add(readIndex);
+			}
+		}
+		return new ArrayList<>(toRead);
+	}
+
+	/**
+	 * Queue a set of tiles to be read into the cache in the background.
+	 */
+	public <T> void prefetch (final CachingPyramidIO pyramidIO, final String pyramidId,
+	                          final TileSerializer<T> serializer, final List<TileIndex> tiles) {
+		ThreadPoolExecutor executor = _executor;
+		if (null == executor || tiles.isEmpty()) {
+			return;
+		}
+		executor.execute(new Runnable() {
+				@Override
+				public void run () {
+					try {
+						pyramidIO.prefetchTiles(pyramidId, serializer, tiles);
+					} catch (TileRequestRejectedException e) {
+						// Clients were busy; they will read what they need themselves
+						LOGGER.debug("Prefetch of {} turned away: {}", pyramidId, e.getMessage());
+					} catch (IOException|RuntimeException e) {
+						LOGGER.warn("Error prefetching tiles for {}", pyramidId, e);
+					}
+				}
+			});
+	}
+
+	/**
+	 * Queue all the tiles of the top levels of a pyramid to be read into the
+	 * cache, one level at a time, starting at the top.
+	 *
+	 * @param maxLevel The lowest level to read
+	 */
+	public <T> void warmUp (CachingPyramidIO pyramidIO, String pyramidId,
+	                        TileSerializer<T> serializer, int maxLevel) {
+		for (int level = 0; level <= maxLevel; ++level) {
+			prefetch(pyramidIO, pyramidId, serializer, getLevel(level));
+		}
+	}
+
+	/**
+	 * Get every tile in a level of a quad-tree pyramid
+	 */
+	static List<TileIndex> getLevel (int level) {
+		if (level < 0) {
+			return Collections.emptyList();
+		}
+		int size = 1 << level;
+		List<TileIndex> tiles = new ArrayList<>(size * size);
+		for (int x = 0; x < size; ++x) {
+			for (int y = 0; y < size; ++y) {
+				tiles.add(new TileIndex(level, x, y));
+			}
+		}
+		return tiles;
+	}
+
+	// With a coarseness greater than 1, the data for a tile is read from its
+	// ancestor coarseness-1 levels up (see TileIOUtils.tileDataForIndex).
+	private static TileIndex getReadIndex (TileIndex tile, int coarseness) {
+		if (coarseness <= 1) {
+			return tile;
+		}
+		int levels = coarseness - 1;
+		if (tile.getLevel() < levels) {
+			return null;
+		}
+		return new TileIndex(tile.getLevel() - levels, tile.getX() >> levels, tile.getY() >> levels);
+	}
+
+	private static boolean isValid (TileIndex tile) {
+		int level = tile.getLevel();
+		if (level < 0 || level > 30) {
+			return false;
+		}
+		int size = 1 << level;
+		return tile.getX() >= 0 && tile.getX() < size && tile.getY() >= 0 && tile.getY() < size;
+	}
+
+
+
+	// What we know of where a session has been looking lately
+	private static class SessionState {
+		int  _level = -1;
+		int  _minX, _maxX, _minY, _maxY;
+		// +1 if the session last zoomed in, -1 if out, 0 if neither
+		int  _zoom;
+		long _lastTime = Long.MIN_VALUE / 2;
+
+		void reset (TileIndex tile, int zoom) {
+			_level = tile.getLevel();
+			_minX = _maxX = tile.getX();
+			_minY = _maxY = tile.getY();
+			_zoom = zoom;
+		}
+
+		void include (TileIndex tile) {
+			_minX = Math.min(_minX, tile.getX());
+			_maxX = Math.max(_maxX, tile.getX());
+			_minY = Math.min(_minY, tile.getY());
+			_maxY = Math.max(_maxY, tile.getY());
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTests {
+	// Bucket widths are at most 1/16 of their values
+	private static final double PRECISION = 1.0 / 16.0;
+
+	private static void assertClose (double expected, double actual) {
+		Assert.assertEquals(expected, actual, expected * PRECISION + 0.001);
+	}
+
+	@Test
+	public void testBucketsAreContiguous () {
+		int lastBucket = 0;
+		for (long micros = 0; micros < 1L << 20; ++micros) {
+			int bucket = LatencyHistogram.getBucket(micros);
+			Assert.assertTrue(bucket == lastBucket || bucket == lastBucket + 1);
+			lastBucket = bucket;
+
+			long midpoint = LatencyHistogram.getBucketMidpoint(bucket);
+			Assert.assertTrue(Math.abs(midpoint - micros) <= micros * PRECISION);
+		}
+	}
+
+	@Test
+	public void testHugeValuesAreClamped () {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(Long.MAX_VALUE);
+		histogram.record(365, TimeUnit.DAYS);
+		Assert.assertEquals(2, histogram.getCount());
+		Assert.assertTrue(histogram.getPercentile(50) > 0.0);
+	}
+
+	@Test
+	public void testPercentiles () {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; ++i) {
+			histogram.record(i, TimeUnit.MILLISECONDS);
+		}
+		Assert.assertEquals(1000, histogram.getCount());
+		assertClose(500.5, histogram.getMean());
+		assertClose(1000.0, histogram.getMax());
+		assertClose(500.0, histogram.getPercentile(50));
+		assertClose(900.0, histogram.getPercentile(90));
+		assertClose(990.0, histogram.getPercentile(99));
+		assertClose(1000.0, histogram.getPercentile(100));
+		assertClose(1.0, histogram.getPercentile(0));
+	}
+
+	@Test
+	public void testEmpty () {
+		LatencyHistogram histogram = new LatencyHistogram();
+		Assert.assertEquals(0, histogram.getCount());
+		Assert.assertEquals(0.0, histogram.getMean(), 0.0);
+		Assert.assertEquals(0.0, histogram.getPercentile(99), 0.0);
+	}
+
+	@Test
+	public void testReset () {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(5, TimeUnit.MILLISECONDS);
+		histogram.reset();
+		Assert.assertEquals(0, histogram.getCount());
+		Assert.assertEquals(0.0, histogram.getMax(), 0.0);
+		Assert.assertEquals(0.0, histogram.getPercentile(50), 0.0);
+	}
+
+	@Test
+	public void testConcurrentRecording () throws Exception {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		final int threads = 8;
+		final int recordsPerThread = 100000;
+		List<Thread> recorders = new ArrayList<>();
+		for (int t = 0; t < threads; ++t) {
+			final long latency = TimeUnit.MILLISECONDS.toNanos(t + 1);
+			recorders.add(new Thread() {
+				@Override
+				public void run () {
+					for (int i = 0; i < recordsPerThread; ++i) {
+						histogram.record(latency);
+					}
+				}
+			});
+		}
+		for (Thread recorder: recorders) recorder.start();
+		for (Thread recorder: recorders) recorder.join();
+
+		Assert.assertEquals(threads * recordsPerThread, histogram.getCount());
+		assertClose(4.5, histogram.getMean());
+		Assert.assertEquals(8.0, histogram.getMax(), 0.0);
+		assertClose(4.0, histogram.getPercentile(50));
+	}
+}
@@ -50,5 +50,9 @@ public class TileResourceTests {
 		ext = ExtensionType.valueOf("json");
 		Assert.assertEquals(ResponseType.Tile, ext.getResponseType());
 		Assert.assertEquals(MediaType.APPLICATION_JSON, ext.getMediaType());
+
+		ext = ExtensionType.valueOf("bin");
+		Assert.assertEquals(ResponseType.Data, ext.getResponseType());
+		Assert.assertEquals(MediaType.APPLICATION_OCTET_STREAM, ext.getMediaType());
 	}
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rest.layer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LayerMetaDataCacheTests {
+	private static final String METADATA =
+		"{\"meta\": {\"0\": {\"minimum\": \"0.0\", \"maximum\": \"12.5\"}, "+
+		"\"2\": {\"minimum\": \"1\", \"maximum\": \"[1, 2]\"}}}";
+	private static final String UPDATED_METADATA =
+		"{\"meta\": {\"0\": {\"minimum\": \"0.0\", \"maximum\": \"20.0\"}}}";
+
+	private String             _metaData;
+	private int                _reads;
+	private List<Runnable>     _refreshes;
+	private LayerMetaDataCache _cache;
+
+	@Before
+	public void setup () {
+		_metaData = METADATA;
+		_reads = 0;
+		_refreshes = new ArrayList<>();
+		_cache = new LayerMetaDataCache(new LayerMetaDataCache.Source() {
+			@Override
+			public String readMetaData (String layerId) throws IOException {
+				++_reads;
+				if (null == _metaData) throw new IOException("No metadata");
+				return _metaData;
+			}
+		}, new Executor() {
+			// Hold refreshes until the test runs them
+			@Override
+			public void execute (Runnable command) {
+				_refreshes.add(command);
+			}
+		});
+	}
+
+	private void runRefreshes () {
+		List<Runnable> refreshes = new ArrayList<>(_refreshes);
+		_refreshes.clear();
+		for (Runnable refresh: refreshes) refresh.run();
+	}
+
+	@Test
+	public void testLevelExtrema () {
+		LayerMetaData metaData = _cache.get("layer");
+		Assert.assertEquals("0.0", metaData.getLevelMinimum(0));
+		Assert.assertEquals("12.5", metaData.getLevelMaximum(0));
+		Assert.assertEquals(12.5, metaData.getLevelMaximumValue(0), 0.0);
+		Assert.assertEquals("1", metaData.getLevelMinimum(2));
+		Assert.assertEquals(1.0, metaData.getLevelMinimumValue(2), 0.0);
+
+		// Non-scalar extrema are only available as strings
+		Assert.assertEquals("[1, 2]", metaData.getLevelMaximum(2));
+		Assert.assertTrue(Double.isNaN(metaData.getLevelMaximumValue(2)));
+
+		// Unrecorded levels
+		Assert.assertNull(metaData.getLevelMinimum(1));
+		Assert.assertNull(metaData.getLevelMaximum(3));
+		Assert.assertNull(metaData.getLevelMaximum(-1));
+		Assert.assertTrue(Double.isNaN(metaData.getLevelMinimumValue(12)));
+	}
+
+	@Test
+	public void testMetaDataIsReadOnce () {
+		LayerMetaData first = _cache.get("layer");
+		LayerMetaData second = _cache.get("layer");
+		Assert.assertSame(first, second);
+		Assert.assertEquals(1, _reads);
+		Assert.assertEquals(0L, first.getVersion());
+	}
+
+	@Test
+	public void testRefreshes () {
+		LayerMetaData original = _cache.get("layer");
+		_metaData = UPDATED_METADATA;
+
+		// Repeated changes before a refresh is read make only one read...
+		_cache.refresh("layer");
+		_cache.refresh("layer");
+		_cache.refresh("layer");
+		Assert.assertEquals(1, _refreshes.size());
+
+		// ... and until it is read, the old version is still used
+		Assert.assertSame(original, _cache.get("layer"));
+
+		runRefreshes();
+		LayerMetaData updated = _cache.get("layer");
+		Assert.assertEquals(1L, updated.getVersion());
+		Assert.assertEquals("20.0", updated.getLevelMaximum(0));
+		Assert.assertNull(updated.getLevelMaximum(2));
+		Assert.assertEquals(2, _reads);
+
+		// Once read, the next change gets a refresh of its own
+		_cache.refresh("layer");
+		Assert.assertEquals(1, _refreshes.size());
+	}
+
+	@Test
+	public void testUnchangedRefreshKeepsVersion () {
+		LayerMetaData original = _cache.get("layer");
+		_cache.refresh("layer");
+		runRefreshes();
+		Assert.assertSame(original, _cache.get("layer"));
+	}
+
+	@Test
+	public void testRefreshOfUnreadLayerDoesNothing () {
+		_cache.refresh("layer");
+		Assert.assertTrue(_refreshes.isEmpty());
+		Assert.assertEquals(0, _reads);
+	}
+
+	@Test
+	public void testFailuresAreNotCached () {
+		_metaData = null;
+		Assert.assertNull(_cache.get("layer"));
+		_metaData = METADATA;
+		Assert.assertNotNull(_cache.get("layer"));
+
+		// A failed refresh keeps the last good version
+		LayerMetaData good = _cache.get("layer");
+		_metaData = null;
+		_cache.refresh("layer");
+		runRefreshes();
+		Assert.assertSame(good, _cache.get("layer"));
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rest.tile;
+
+import com.oculusinfo.binning.TileIndex;
+import com.oculusinfo.binning.impl.DenseTileData;
+import com.oculusinfo.binning.impl.SparseTileData;
+import com.oculusinfo.factory.util.Pair;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+public class BinaryTileEncoderTests {
+	private ByteBuffer encode (com.oculusinfo.binning.TileData<?> tile) throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		BinaryTileEncoder.write(tile, output);
+		return ByteBuffer.wrap(output.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	// Check the header, returning the metadata, and leaving the buffer positioned at the bins
+	private JSONObject readHeader (ByteBuffer buffer, byte layout, byte valueType, TileIndex index) throws Exception {
+		byte[] magic = new byte[4];
+		buffer.get(magic);
+		Assert.assertArrayEquals(BinaryTileEncoder.MAGIC, magic);
+		Assert.assertEquals(BinaryTileEncoder.FORMAT_VERSION, buffer.get());
+		Assert.assertEquals(layout, buffer.get());
+		Assert.assertEquals(valueType, buffer.get());
+		Assert.assertEquals(0, buffer.get());
+		Assert.assertEquals(index.getLevel(), buffer.getInt());
+		Assert.assertEquals(index.getX(), buffer.getInt());
+		Assert.assertEquals(index.getY(), buffer.getInt());
+		Assert.assertEquals(index.getXBins(), buffer.getInt());
+		Assert.assertEquals(index.getYBins(), buffer.getInt());
+		byte[] metaData = new byte[buffer.getInt()];
+		buffer.get(metaData);
+		while (0 != buffer.position() % 8) {
+			Assert.assertEquals(0, buffer.get());
+		}
+		return new JSONObject(new String(metaData, StandardCharsets.UTF_8));
+	}
+
+	private int readVarint (ByteBuffer buffer) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while (0 != (b & 0x80));
+		return value;
+	}
+
+	@Test
+	public void testDenseDoubleTile () throws Exception {
+		TileIndex index = new TileIndex(3, 2, 1, 2, 2);
+		DenseTileData<Double> tile = new DenseTileData<>(index, Arrays.asList(1.0, 2.5, -3.0, 4.0));
+		tile.setMetaData("maximum", "4.0");
+
+		ByteBuffer buffer = encode(tile);
+		JSONObject metaData = readHeader(buffer, BinaryTileEncoder.LAYOUT_DENSE, BinaryTileEncoder.TYPE_FLOAT64, index);
+		Assert.assertEquals("4.0", metaData.getString("maximum"));
+
+		Assert.assertTrue(Double.isNaN(buffer.getDouble()));
+		// Dense values should be aligned for direct typed array access
+		Assert.assertEquals(0, buffer.position() % 8);
+		Assert.assertEquals(1.0, buffer.getDouble(), 0.0);
+		Assert.assertEquals(2.5, buffer.getDouble(), 0.0);
+		Assert.assertEquals(-3.0, buffer.getDouble(), 0.0);
+		Assert.assertEquals(4.0, buffer.getDouble(), 0.0);
+		Assert.assertFalse(buffer.hasRemaining());
+	}
+
+	@Test
+	public void testSparseIntegerTile () throws Exception {
+		TileIndex index = new TileIndex(4, 0, 0, 256, 256);
+		SparseTileData<Integer> tile = new SparseTileData<>(index, 0);
+		tile.setBin(200, 100, 7);
+		tile.setBin(3, 0, 5);
+
+		ByteBuffer buffer = encode(tile);
+		readHeader(buffer, BinaryTileEncoder.LAYOUT_SPARSE, BinaryTileEncoder.TYPE_INT32, index);
+
+		Assert.assertEquals(0, buffer.getInt());
+		Assert.assertEquals(2, readVarint(buffer));
+		Assert.assertEquals(3, readVarint(buffer));
+		Assert.assertEquals(5, buffer.getInt());
+		Assert.assertEquals(100 * 256 + 200 - 3, readVarint(buffer));
+		Assert.assertEquals(7, buffer.getInt());
+		Assert.assertFalse(buffer.hasRemaining());
+	}
+
+	@Test
+	public void testTopicTile () throws Exception {
+		TileIndex index = new TileIndex(0, 0, 0, 1, 2);
+		List<Pair<String, Integer>> bin0 = Arrays.asList(new Pair<>("cat", 3), new Pair<>("dog", 2));
+		List<Pair<String, Integer>> bin1 = Arrays.asList(new Pair<>("dog", 1));
+		DenseTileData<List<Pair<String, Integer>>> tile = new DenseTileData<>(index, Arrays.asList(bin0, bin1));
+
+		ByteBuffer buffer = encode(tile);
+		readHeader(buffer, BinaryTileEncoder.LAYOUT_DENSE, BinaryTileEncoder.TYPE_TOPICS, index);
+
+		Assert.assertEquals(2, readVarint(buffer));
+		String[] topics = new String[2];
+		for (int i = 0; i < 2; ++i) {
+			byte[] topic = new byte[readVarint(buffer)];
+			buffer.get(topic);
+			topics[i] = new String(topic, StandardCharsets.UTF_8);
+		}
+		Assert.assertArrayEquals(new String[] {"cat", "dog"}, topics);
+
+		Assert.assertEquals(2, readVarint(buffer));
+		Assert.assertEquals(0, readVarint(buffer));
+		Assert.assertEquals(3.0, buffer.getDouble(), 0.0);
+		Assert.assertEquals(1, readVarint(buffer));
+		Assert.assertEquals(2.0, buffer.getDouble(), 0.0);
+		Assert.assertEquals(1, readVarint(buffer));
+		Assert.assertEquals(1, readVarint(buffer));
+		Assert.assertEquals(1.0, buffer.getDouble(), 0.0);
+		Assert.assertFalse(buffer.hasRemaining());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedBins () throws Exception {
+		TileIndex index = new TileIndex(0, 0, 0, 1, 1);
+		encode(new DenseTileData<String>(index, Arrays.asList("not a number")));
+	}
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rest.tile;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TileRequestSchedulerTests {
+	private List<Request> _requests = new ArrayList<>();
+
+	@After
+	public void cleanup () throws Exception {
+		for (Request request: _requests) {
+			request.finish();
+			request.join(1000);
+		}
+	}
+
+	// A tile request, run on its own thread, which holds its place until
+	// told to finish
+	private class Request extends Thread {
+		private TileRequestScheduler _scheduler;
+		private String               _session;
+		private String               _layer;
+		private String               _backend;
+		private int                  _level;
+		private boolean              _background;
+		private List<Integer>        _order;
+		private CountDownLatch       _finish;
+		volatile boolean             _ran;
+		volatile boolean             _rejected;
+
+		Request (TileRequestScheduler scheduler, String session, String layer, String backend,
+		         int level, List<Integer> order) {
+			_scheduler = scheduler;
+			_session = session;
+			_layer = layer;
+			_backend = backend;
+			_level = level;
+			_order = order;
+			_finish = new CountDownLatch(1);
+			_requests.add(this);
+		}
+
+		void finish () {
+			_finish.countDown();
+		}
+
+		@Override
+		public void run () {
+			TileRequestScheduler.Task<Void> task = new TileRequestScheduler.Task<Void>() {
+				@Override
+				public Void run () {
+					_ran = true;
+					if (null != _order) _order.add(_level);
+					try {
+						_finish.await(10, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					return null;
+				}
+			};
+			try {
+				if (_background) {
+					_scheduler.executeInBackground(_layer, _backend, _level, task);
+				} else {
+					_scheduler.execute(_session, _layer, _backend, _level, task);
+				}
+			} catch (TileRequestRejectedException e) {
+				_rejected = true;
+			}
+		}
+	}
+
+	private Request start (TileRequestScheduler scheduler, String session, String layer, int level,
+	                       List<Integer> order) throws InterruptedException {
+		return start(new Request(scheduler, session, layer, "hbase", level, order));
+	}
+
+	private Request startBackground (TileRequestScheduler scheduler, String layer, int level,
+	                                 List<Integer> order) throws InterruptedException {
+		Request request = new Request(scheduler, null, layer, "hbase", level, order);
+		request._background = true;
+		return start(request);
+	}
+
+	private Request start (Request request) throws InterruptedException {
+		request.start();
+		// Wait until the request is either running or queued (and so parked),
+		// or has been turned away
+		long end = System.currentTimeMillis() + 5000;
+		while (System.currentTimeMillis() < end) {
+			Thread.State state = request.getState();
+			if (Thread.State.WAITING == state || Thread.State.TIMED_WAITING == state ||
+			    Thread.State.TERMINATED == state) {
+				break;
+			}
+			Thread.sleep(1);
+		}
+		return request;
+	}
+
+	private static void waitFor (Request request) throws InterruptedException {
+		request.join(5000);
+		Assert.assertFalse(request.isAlive());
+	}
+
+	@Test
+	public void testConcurrencyLimit () throws Exception {
+		TileRequestScheduler scheduler = new TileRequestScheduler(2, 2, 2, 10, 10000);
+		Request a = start(scheduler, null, "layer", 3, null);
+		Request b = start(scheduler, null, "layer", 3, null);
+		Request c = start(scheduler, null, "layer", 3, null);
+		Assert.assertEquals(2, scheduler.getRunningCount());
+		Assert.assertEquals(1, scheduler.getWaitingCount());
+		Assert.assertFalse(c._ran);
+
+		a.finish();
+		waitFor(a);
+		c.finish();
+		waitFor(c);
+		Assert.assertTrue(c._ran);
+		b.finish();
+		waitFor(b);
+		Assert.assertEquals(0, scheduler.getRunningCount());
+	}
+
+	@Test
+	public void testLayerLimit () throws Exception {
+		TileRequestScheduler scheduler = new TileRequestScheduler(4, 1, 4, 10, 10000);
+		start(scheduler, null, "a", 3, null);
+		Request blocked = start(scheduler, null, "a", 3, null);
+		Request other = start(scheduler, null, "b", 3, null);
+		// The second request for layer a waits, but doesn't hold up layer b
+		Assert.assertEquals(2, scheduler.getRunningCount());
+		Assert.assertEquals(1, scheduler.getWaitingCount());
+		Assert.assertFalse(blocked._ran);
+		Assert.assertTrue(other._ran);
+	}
+
+	@Test
+	public void testPriority () throws Exception {
+		TileRequestScheduler scheduler = new TileRequestScheduler(1, 1, 1, 10, 10000);
+		List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+		Request first = start(scheduler, null, "layer", 0, order);
+		Request olderFine = start(scheduler, null, "layer", 5, order);
+		Request coarse = start(scheduler, null, "layer", 3, order);
+		Request newerFine = start(scheduler, null, "layer", 6, order);
+		Request newestFine = start(scheduler, null, "layer", 5, order);
+
+		// Coarsest first; then, within a level, newest first
+		for (Request request: new Request[] {first, coarse, newestFine, olderFine, newerFine}) {
+			request.finish();
+			waitFor(request);
+		}
+		Assert.assertEquals(Arrays.asList(0, 3, 5, 5, 6), order);
+		Assert.assertTrue(newestFine._ran && olderFine._ran);
+	}
+
+	@Test
+	public void testLoadShedding () throws Exception {
+		TileRequestScheduler scheduler = new TileRequestScheduler(1, 1, 1, 1, 10000);
+		start(scheduler, null, "layer", 0, null);
+		Request waiting = start(scheduler, null, "layer", 3, null);
+
+		// A less important request than the one waiting is turned away...
+		Request fine = start(scheduler, null, "layer", 5, null);
+		waitFor(fine);
+		Assert.assertTrue(fine._rejected);
+		Assert.assertFalse(waiting._rejected);
+
+		// ... while a more important one displaces it
+		Request coarse = start(scheduler, null, "layer", 1, null);
+		waitFor(waiting);
+		Assert.assertTrue(waiting._rejected);
+		Assert.assertFalse(coarse._rejected);
+		Assert.assertEquals(1, scheduler.getWaitingCount());
+	}
+
+	@Test
+	public void testTimeout () throws Exception {
+		TileRequestScheduler scheduler = new TileRequestScheduler(1, 1, 1, 10, 50);
+		start(scheduler, null, "layer", 0, null);
+		Request late = start(scheduler, null, "layer", 0, null);
+		waitFor(late);
+		Assert.assertTrue(late._rejected);
+		Assert.assertFalse(late._ran);
+	}
+
+	@Test
+	public void testSupersededRequestsAreCancelled () throws Exception {
+		TileRequestScheduler scheduler = new TileRequestScheduler(1, 1, 1, 10, 10000);
+		start(scheduler, "other", "layer", 2, null);
+		Request stale = start(scheduler, "client", "layer", 3, null);
+		Request sameLevel = start(scheduler, "client", "layer", 3, null);
+		Request otherClient = start(scheduler, "other", "layer", 3, null);
+
+		// The client zooms in; its waiting requests at the old level are dropped
+		Request zoomed = start(scheduler, "client", "layer", 4, null);
+		waitFor(stale);
+		waitFor(sameLevel);
+		Assert.assertTrue(stale._rejected);
+		Assert.assertTrue(sameLevel._rejected);
+		Assert.assertFalse(otherClient._rejected);
+		Assert.assertFalse(zoomed._rejected);
+		Assert.assertEquals(2, scheduler.getWaitingCount());
+	}
+
+	@Test
+	public void testBackgroundWaitsForClients () throws Exception {
+		TileRequestScheduler scheduler = new TileRequestScheduler(1, 1, 1, 10, 10000);
+		List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+		Request first = start(scheduler, null, "layer", 0, order);
+		Request prefetch = startBackground(scheduler, "layer", 1, order);
+		Request client = start(scheduler, null, "layer", 5, order);
+
+		// Even a finer client request runs before a waiting background read
+		for (Request request: new Request[] {first, client, prefetch}) {
+			request.finish();
+			waitFor(request);
+		}
+		Assert.assertEquals(Arrays.asList(0, 5, 1), order);
+	}
+
+	@Test
+	public void testBackgroundIsShedFirst () throws Exception {
+		TileRequestScheduler scheduler = new TileRequestScheduler(1, 1, 1, 1, 10000);
+		start(scheduler, null, "layer", 0, null);
+		Request prefetch = startBackground(scheduler, "layer", 0, null);
+		Request client = start(scheduler, null, "layer", 8, null);
+		waitFor(prefetch);
+		Assert.assertTrue(prefetch._rejected);
+		Assert.assertFalse(client._rejected);
+	}
+
+	@Test
+	public void testBackgroundConcurrencyLimit () throws Exception {
+		TileRequestScheduler scheduler = new TileRequestScheduler(4, 4, 4, 10, 10000);
+		scheduler.setBackgroundConcurrency(1);
+		Request a = startBackground(scheduler, "layer", 0, null);
+		Request b = startBackground(scheduler, "layer", 0, null);
+		Request client = start(scheduler, null, "layer", 3, null);
+		// Only one background read at a time, leaving the rest for clients
+		Assert.assertTrue(a._ran);
+		Assert.assertFalse(b._ran);
+		Assert.assertTrue(client._ran);
+		Assert.assertEquals(2, scheduler.getRunningCount());
+
+		a.finish();
+		waitFor(a);
+		b.finish();
+		waitFor(b);
+		Assert.assertTrue(b._ran);
+	}
+
+	@Test
+	public void testInterruptAfterDispatch () throws Exception {
+		TileRequestScheduler scheduler = new TileRequestScheduler(1, 2, 2, 10, 10000);
+		Request first = start(scheduler, "a", "layer", 3, null);
+		Request second = start(scheduler, "b", "layer", 3, null);
+		Assert.assertEquals(1, scheduler.getWaitingCount());
+
+		// Interrupt the waiting request, and make room for it before it can get
+		// the lock back to notice the interruption
+		Field lockField = TileRequestScheduler.class.getDeclaredField("_lock");
+		lockField.setAccessible(true);
+		ReentrantLock lock = (ReentrantLock) lockField.get(scheduler);
+		lock.lock();
+		try {
+			second.interrupt();
+			long end = System.currentTimeMillis() + 5000;
+			while (!lock.hasQueuedThread(second) && System.currentTimeMillis() < end) {
+				Thread.sleep(1);
+			}
+			scheduler.setConcurrency(2);
+		} finally {
+			lock.unlock();
+		}
+
+		// It must give back the slot it was given
+		waitFor(second);
+		Assert.assertTrue(second._rejected);
+		Assert.assertFalse(second._ran);
+		Assert.assertEquals(1, scheduler.getRunningCount());
+
+		first.finish();
+		waitFor(first);
+		Assert.assertEquals(0, scheduler.getRunningCount());
+	}
+}
@@ -34,6 +34,7 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -178,6 +179,18 @@ public class TileCacheTests {
 	}
 
 
+	// Make sure checking for unrequested tiles doesn't request them
+	@Test
+	public void testUnrequestedTilesAreNotRequested () {
+		checkRequest(_indices[0], true);
+
+		List<TileIndex> unrequested = _cache.getUnrequested(Arrays.asList(_indices[0], _indices[1]));
+		Assert.assertEquals(Collections.singletonList(_indices[1]), unrequested);
+		// Still unrequested
+		checkRequest(_indices[1], true);
+	}
+
+
 
 	// Simple callback to do nothing, but act as if we've done something.
 	private class NoOpCacheRequestCallback implements CacheRequestCallback<Integer> {
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2015 Uncharted Software Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rest.tile.caching;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.oculusinfo.binning.TileIndex;
+
+
+
+public class TilePrefetcherTests {
+	private TilePrefetcher _prefetcher;
+
+	@Before
+	public void setup () {
+		// No threads - we only test prediction here
+		_prefetcher = new TilePrefetcher(0, 1);
+	}
+
+	@Test
+	public void testFirstRequestPredictsNothing () {
+		Assert.assertTrue(_prefetcher.observe("a", new TileIndex(4, 5, 5), 1, 0L).isEmpty());
+	}
+
+	@Test
+	public void testPan () {
+		_prefetcher.observe("a", new TileIndex(4, 5, 5), 1, 0L);
+		_prefetcher.observe("a", new TileIndex(4, 5, 6), 1, 10L);
+		// Panning right
+		List<TileIndex> predicted = _prefetcher.observe("a", new TileIndex(4, 6, 6), 1, 20L);
+		Assert.assertEquals(Arrays.asList(new TileIndex(4, 7, 6)), predicted);
+		// Inside the area already seen - no new information
+		Assert.assertTrue(_prefetcher.observe("a", new TileIndex(4, 5, 5), 1, 30L).isEmpty());
+		// Down and left
+		predicted = _prefetcher.observe("a", new TileIndex(4, 4, 4), 1, 40L);
+		Assert.assertEquals(Arrays.asList(new TileIndex(4, 3, 3)), predicted);
+	}
+
+	@Test
+	public void testPanDepth () {
+		_prefetcher.setDepth(3);
+		_prefetcher.observe("a", new TileIndex(4, 5, 5), 1, 0L);
+		List<TileIndex> predicted = _prefetcher.observe("a", new TileIndex(4, 5, 6), 1, 10L);
+		Assert.assertEquals(Arrays.asList(new TileIndex(4, 5, 7), new TileIndex(4, 5, 8), new TileIndex(4, 5, 9)),
+		                    predicted);
+	}
+
+	@Test
+	public void testPanStopsAtEdge () {
+		_prefetcher.observe("a", new TileIndex(2, 2, 0), 1, 0L);
+		Assert.assertTrue(_prefetcher.observe("a", new TileIndex(2, 3, 0), 1, 10L).isEmpty());
+	}
+
+	@Test
+	public void testSessionsAreIndependent () {
+		_prefetcher.observe("a", new TileIndex(4, 5, 5), 1, 0L);
+		Assert.assertTrue(_prefetcher.observe("b", new TileIndex(4, 6, 5), 1, 10L).isEmpty());
+	}
+
+	@Test
+	public void testIdleSessionForgets () {
+		_prefetcher.observe("a", new TileIndex(4, 5, 5), 1, 0L);
+		Assert.assertTrue(_prefetcher.observe("a", new TileIndex(4, 6, 5), 1,
+		                                      TilePrefetcher.SESSION_IDLE_TIME + 1).isEmpty());
+	}
+
+	@Test
+	public void testZoomIn () {
+		_prefetcher.observe("a", new TileIndex(3, 2, 2), 1, 0L);
+		List<TileIndex> predicted = _prefetcher.observe("a", new TileIndex(4, 5, 5), 1, 10L);
+		Assert.assertEquals(new HashSet<>(Arrays.asList(new TileIndex(5, 10, 10), new TileIndex(5, 10, 11),
+		                                                new TileIndex(5, 11, 10), new TileIndex(5, 11, 11))),
+		                    new HashSet<>(predicted));
+	}
+
+	@Test
+	public void testZoomOut () {
+		_prefetcher.observe("a", new TileIndex(5, 10, 10), 1, 0L);
+		List<TileIndex> predicted = _prefetcher.observe("a", new TileIndex(4, 5, 5), 1, 10L);
+		Assert.assertEquals(Arrays.asList(new TileIndex(3, 2, 2)), predicted);
+	}
+
+	@Test
+	public void testCoarseness () {
+		// With coarseness 3, data comes from two levels up
+		_prefetcher.observe("a", new TileIndex(4, 3, 4), 3, 0L);
+		List<TileIndex> predicted = _prefetcher.observe("a", new TileIndex(4, 4, 4), 3, 10L);
+		Assert.assertEquals(Arrays.asList(new TileIndex(2, 1, 1)), predicted);
+	}
+
+	@Test
+	public void testWarmupLevels () {
+		Assert.assertEquals(1, TilePrefetcher.getLevel(0).size());
+		List<TileIndex> level2 = TilePrefetcher.getLevel(2);
+		Assert.assertEquals(16, level2.size());
+		Assert.assertEquals(16, new HashSet<>(level2).size());
+		for (TileIndex index: level2) {
+			Assert.assertEquals(2, index.getLevel());
+		}
+	}
+}